@@ -0,0 +1,55 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs the plugin benchmarks and stores the results as JSON, so that a run can be compared against an earlier one.
+ * <p/>
+ * Arguments: optional regular expression selecting the benchmarks to run (all by default). The result file is
+ * {@code benchmarks/results/<timestamp>.json} unless given by the {@code org.jetbrains.tfsIntegration.benchmarks.result} property.
+ */
+public class BenchmarkRunner {
+  private static final String ALL_BENCHMARKS = "org\\.jetbrains\\.tfsIntegration\\..*Benchmark";
+
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : ALL_BENCHMARKS;
+    String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    File result = new File(System.getProperty("org.jetbrains.tfsIntegration.benchmarks.result", "benchmarks/results/" + timestamp + ".json"));
+    File parent = result.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new RunnerException("Cannot create " + parent);
+    }
+
+    Options options = new OptionsBuilder()
+      .include(include)
+      .resultFormat(ResultFormatType.JSON)
+      .result(result.getPath())
+      .build();
+    new Runner(options).run();
+    System.out.println("Results saved to " + result.getAbsolutePath());
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.benchmarks;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Headless application for the benchmarks that create {@link com.intellij.openapi.vcs.FilePath}s or send requests through
+ * {@link org.jetbrains.tfsIntegration.webservice.TfsRequestManager}: inject it into the setup method of the benchmark state.
+ */
+@State(Scope.Benchmark)
+public class PlatformState {
+  private IdeaProjectTestFixture myFixture;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    myFixture = IdeaTestFixtureFactory.getFixtureFactory().createLightFixtureBuilder().getFixture();
+    EdtTestUtil.runInEdtAndWait(() -> myFixture.setUp());
+  }
+
+  public Project getProject() {
+    return myFixture.getProject();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    EdtTestUtil.runInEdtAndWait(() -> myFixture.tearDown());
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.benchmarks;
+
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Server folder tree mapped to a local folder, the same for the same size so that benchmark results are comparable between runs.
+ * Items are listed parents first.
+ */
+public class SyntheticTree {
+  public static final String SERVER_ROOT = "$/Benchmark";
+  public static final File LOCAL_ROOT = new File(System.getProperty("java.io.tmpdir"), "tfs-benchmark-workspace");
+
+  private static final long SEED = 20081001L;
+  private static final double FOLDER_RATIO = 0.15;
+
+  public static class Item {
+    public final int id;
+    public final String serverPath;
+    public final boolean isFolder;
+    public final int depth;
+
+    private Item(int id, String serverPath, boolean isFolder, int depth) {
+      this.id = id;
+      this.serverPath = serverPath;
+      this.isFolder = isFolder;
+      this.depth = depth;
+    }
+
+    public File getLocalFile() {
+      return new File(LOCAL_ROOT, serverPath.substring(SERVER_ROOT.length()).replace('/', File.separatorChar));
+    }
+
+    public String getLocalPath() {
+      return getLocalFile().getPath();
+    }
+  }
+
+  private final List<Item> myItems;
+  private final Random myRandom = new Random(SEED + 1);
+
+  /**
+   * @param size number of items including the root folder
+   */
+  public SyntheticTree(int size) {
+    myItems = new ArrayList<>(size);
+    List<Item> folders = new ArrayList<>();
+    Item root = new Item(1, SERVER_ROOT, true, 0);
+    myItems.add(root);
+    folders.add(root);
+    Random random = new Random(SEED);
+    while (myItems.size() < size) {
+      Item parent = folders.get(random.nextInt(folders.size()));
+      boolean isFolder = random.nextDouble() < FOLDER_RATIO;
+      int id = myItems.size() + 1;
+      String name = isFolder ? "folder" + id : "File" + id + ".java";
+      Item item = new Item(id, VersionControlPath.getCombinedServerPath(parent.serverPath, name), isFolder, parent.depth + 1);
+      myItems.add(item);
+      if (isFolder) {
+        folders.add(item);
+      }
+    }
+  }
+
+  public List<Item> getItems() {
+    return Collections.unmodifiableList(myItems);
+  }
+
+  public List<Item> getFolders() {
+    List<Item> result = new ArrayList<>();
+    for (Item item : myItems) {
+      if (item.isFolder) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return items in a fixed random order
+   */
+  public List<Item> getShuffledItems() {
+    List<Item> result = new ArrayList<>(myItems);
+    Collections.shuffle(result, new Random(SEED));
+    return result;
+  }
+
+  /**
+   * @return random generator with a fixed seed for the benchmark setup
+   */
+  public Random getRandom() {
+    return myRandom;
+  }
+}
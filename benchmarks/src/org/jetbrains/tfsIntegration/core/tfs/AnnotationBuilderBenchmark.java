@@ -0,0 +1,116 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.util.diff.Diff;
+import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line mapping of {@link AnnotationBuilder} over the history of a file of {@link #lines} lines where every revision inserts, deletes
+ * and modifies a few blocks of lines. Diffs are either precomputed or built the way the annotation does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotationBuilderBenchmark {
+  private static final long SEED = 20081001L;
+  private static final int EDITS_PER_REVISION = 5;
+  private static final int MAX_EDIT_LENGTH = 5;
+
+  @Param({"1000", "10000"})
+  public int lines;
+
+  @Param({"50", "500"})
+  public int revisions;
+
+  private String[][] myContents; // annotated revision first
+  private Diff.Change[] myChanges; // from revision i + 1 to revision i
+
+  @Setup
+  public void setUp() throws FilesTooBigForDiffException {
+    Random random = new Random(SEED);
+    int[] lineCounter = {0};
+    List<String> content = new ArrayList<>(lines);
+    while (content.size() < lines) {
+      content.add(newLine(lineCounter));
+    }
+
+    myContents = new String[revisions][];
+    myContents[revisions - 1] = content.toArray(new String[0]);
+    for (int i = revisions - 2; i >= 0; i--) {
+      for (int edit = 0; edit < EDITS_PER_REVISION; edit++) {
+        int position = random.nextInt(content.size());
+        int length = 1 + random.nextInt(MAX_EDIT_LENGTH);
+        switch (random.nextInt(3)) {
+          case 0: // insert
+            for (int j = 0; j < length; j++) {
+              content.add(position, newLine(lineCounter));
+            }
+            break;
+          case 1: // delete
+            for (int j = 0; j < length && position < content.size() && content.size() > 1; j++) {
+              content.remove(position);
+            }
+            break;
+          default: // modify
+            for (int j = position; j < Math.min(position + length, content.size()); j++) {
+              content.set(j, newLine(lineCounter));
+            }
+        }
+      }
+      myContents[i] = content.toArray(new String[0]);
+    }
+
+    myChanges = new Diff.Change[revisions - 1];
+    for (int i = 0; i < revisions - 1; i++) {
+      myChanges[i] = Diff.buildChanges(myContents[i + 1], myContents[i]);
+    }
+  }
+
+  private static String newLine(int[] counter) {
+    return "    line " + counter[0]++ + ";";
+  }
+
+  @Benchmark
+  public int mapLines() {
+    AnnotationBuilder.LineMapping mapping = new AnnotationBuilder.LineMapping(myContents[0].length);
+    int[] annotated = {0};
+    for (Diff.Change change : myChanges) {
+      mapping.apply(change, line -> annotated[0]++);
+    }
+    return annotated[0];
+  }
+
+  @Benchmark
+  public int diffAndMapLines() throws FilesTooBigForDiffException {
+    AnnotationBuilder.LineMapping mapping = new AnnotationBuilder.LineMapping(myContents[0].length);
+    int[] annotated = {0};
+    for (int i = 0; i < revisions - 1; i++) {
+      mapping.apply(Diff.buildChanges(myContents[i + 1], myContents[i]), line -> annotated[0]++);
+    }
+    return annotated[0];
+  }
+}
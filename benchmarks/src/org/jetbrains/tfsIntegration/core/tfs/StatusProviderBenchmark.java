@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.*;
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of local items against the server state in {@link StatusProvider#visitByStatus}: the extended items and pending changes
+ * are synthetic, the request to the server and the local file system traversal are not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusProviderBenchmark {
+  private static final double OUT_OF_DATE_RATIO = 0.1;
+  private static final double EDITED_RATIO = 0.1;
+  private static final double ADDED_RATIO = 0.03;
+  private static final double DELETED_RATIO = 0.03;
+  private static final double UNVERSIONED_RATIO = 0.05;
+
+  @Param({"1000", "10000", "50000"})
+  public int size;
+
+  private List<ExtendedItem> myExtendedItems;
+  private List<PendingChange> myPendingChanges;
+  private List<File> myLocalItems;
+
+  @Setup
+  public void setUp() {
+    SyntheticTree tree = new SyntheticTree(size);
+    Random random = tree.getRandom();
+    myExtendedItems = new ArrayList<>(size);
+    myPendingChanges = new ArrayList<>();
+    myLocalItems = new ArrayList<>(size);
+    for (SyntheticTree.Item item : tree.getShuffledItems()) {
+      String local = VersionControlPath.toTfsRepresentation(item.getLocalPath());
+      ExtendedItem extendedItem = new ExtendedItem();
+      extendedItem.setItemid(item.id);
+      extendedItem.setTitem(item.serverPath);
+      extendedItem.setSitem(item.serverPath);
+      extendedItem.setType(item.isFolder ? ItemType.Folder : ItemType.File);
+      extendedItem.setLocal(local);
+      extendedItem.setLver(1);
+      extendedItem.setLatest(random.nextDouble() < OUT_OF_DATE_RATIO ? 2 : 1);
+
+      double kind = random.nextDouble();
+      if (kind < EDITED_RATIO && !item.isFolder) {
+        extendedItem.setChg(changeType(ChangeType_type0.Edit));
+        myPendingChanges.add(pendingChange(item, local, extendedItem.getChg()));
+      }
+      else if (kind < EDITED_RATIO + ADDED_RATIO) {
+        extendedItem.setChg(changeType(ChangeType_type0.Add, ChangeType_type0.Edit, ChangeType_type0.Encoding));
+        extendedItem.setLver(Integer.MIN_VALUE);
+        extendedItem.setLatest(Integer.MIN_VALUE);
+        myPendingChanges.add(pendingChange(item, local, extendedItem.getChg()));
+      }
+      else if (kind < EDITED_RATIO + ADDED_RATIO + DELETED_RATIO) {
+        extendedItem.setChg(changeType(ChangeType_type0.Delete));
+        extendedItem.setLocal(null);
+        myPendingChanges.add(pendingChange(item, local, extendedItem.getChg()));
+      }
+      else {
+        extendedItem.setChg(changeType(ChangeType_type0.None));
+      }
+      myExtendedItems.add(extendedItem);
+
+      if (extendedItem.getLocal() != null) {
+        myLocalItems.add(item.getLocalFile());
+      }
+      if (random.nextDouble() < UNVERSIONED_RATIO) {
+        myLocalItems.add(new File(item.getLocalPath() + ".unversioned"));
+      }
+    }
+  }
+
+  private static ChangeType changeType(ChangeType_type0... values) {
+    ChangeType result = new ChangeType();
+    result.setChangeType_type0(values);
+    return result;
+  }
+
+  private static PendingChange pendingChange(SyntheticTree.Item item, String local, ChangeType changeType) {
+    PendingChange result = new PendingChange();
+    result.setItemid(item.id);
+    result.setItem(item.serverPath);
+    result.setLocal(local);
+    result.setType(item.isFolder ? ItemType.Folder : ItemType.File);
+    result.setChg(changeType);
+    result.setVer(1);
+    return result;
+  }
+
+  @Benchmark
+  public void determineStatuses(Blackhole blackhole) {
+    // the same steps visitByStatus() does once the server has responded
+    StatusProvider.ServerItemsIndex index = new StatusProvider.ServerItemsIndex(myPendingChanges, myExtendedItems);
+    for (File localItem : myLocalItems) {
+      blackhole.consume(index.match(localItem).getServerStatus());
+    }
+    for (StatusProvider.ServerItemsIndex.Match match : index.matchRemaining()) {
+      blackhole.consume(match.getServerStatus());
+    }
+  }
+}
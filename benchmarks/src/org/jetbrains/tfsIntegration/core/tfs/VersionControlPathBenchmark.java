@@ -0,0 +1,163 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server path primitives, every operation is applied to {@link #size} random (parent folder, item) pairs. The string versions of
+ * {@link VersionControlPath} are compared to the ones of {@link TfsPath}, the paths being interned in advance, as they are when a
+ * path is compared many times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionControlPathBenchmark {
+
+  @Param({"1000", "10000"})
+  public int size;
+
+  private String[] myParents;
+  private String[] myChildren;
+  private boolean[] myChildIsFolder;
+  private String[] myLocalPaths;
+  private TfsPath[] myParentTfsPaths;
+  private TfsPath[] myChildTfsPaths;
+
+  @Setup
+  public void setUp() {
+    SyntheticTree tree = new SyntheticTree(size);
+    List<SyntheticTree.Item> items = tree.getShuffledItems();
+    List<SyntheticTree.Item> folders = tree.getFolders();
+    Random random = tree.getRandom();
+
+    myParents = new String[size];
+    myChildren = new String[size];
+    myChildIsFolder = new boolean[size];
+    myLocalPaths = new String[size];
+    myParentTfsPaths = new TfsPath[size];
+    myChildTfsPaths = new TfsPath[size];
+    for (int i = 0; i < size; i++) {
+      SyntheticTree.Item item = items.get(i);
+      // mix upper case in to make case insensitive comparison do some work
+      String parent = folders.get(random.nextInt(folders.size())).serverPath;
+      myParents[i] = random.nextBoolean() ? parent : parent.toUpperCase();
+      myChildren[i] = item.serverPath;
+      myChildIsFolder[i] = item.isFolder;
+      myLocalPaths[i] = item.getLocalPath();
+      myParentTfsPaths[i] = TfsPath.create(myParents[i]);
+      myChildTfsPaths[i] = TfsPath.create(myChildren[i]);
+    }
+  }
+
+  @Benchmark
+  public int isUnder() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      if (VersionControlPath.isUnder(myParents[i], myChildren[i])) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int isUnderTfsPath() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      if (myChildTfsPaths[i].isUnder(myParentTfsPaths[i])) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int getCommonAncestor() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      result += VersionControlPath.getCommonAncestor(myParents[i], myChildren[i]).length();
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int getCommonAncestorTfsPath() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      TfsPath ancestor = myParentTfsPaths[i].getCommonAncestor(myChildTfsPaths[i]);
+      result += ancestor != null ? ancestor.getDepth() : 0;
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int compareParentToChild() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      result += Integer.signum(VersionControlPath.compareParentToChild(myParents[i], myChildren[i]));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int compareParentToChildFilesFirst() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      result += Integer.signum(VersionControlPath.compareParentToChild(myParents[i], true, myChildren[i], myChildIsFolder[i]));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int compareParentToChildFilesFirstTfsPath() {
+    int result = 0;
+    for (int i = 0; i < size; i++) {
+      result += Integer.signum(TfsPath.compareParentToChild(myParentTfsPaths[i], true, myChildTfsPaths[i], myChildIsFolder[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Cost of getting an interned path for a string, paid once per path
+   */
+  @Benchmark
+  public int createTfsPath() {
+    int result = 0;
+    for (String child : myChildren) {
+      result += TfsPath.create(child).getDepth();
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int toTfsRepresentation() {
+    int result = 0;
+    for (String localPath : myLocalPaths) {
+      result += VersionControlPath.toTfsRepresentation(localPath).length();
+    }
+    return result;
+  }
+}
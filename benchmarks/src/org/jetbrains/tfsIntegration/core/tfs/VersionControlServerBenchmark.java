@@ -0,0 +1,134 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.project.Project;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.*;
+import org.jetbrains.tfsIntegration.benchmarks.PlatformState;
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.jetbrains.tfsIntegration.core.TfsBeansHolder;
+import org.jetbrains.tfsIntegration.core.configuration.Credentials;
+import org.jetbrains.tfsIntegration.core.configuration.TFSConfigurationManager;
+import org.jetbrains.tfsIntegration.core.tfs.version.LatestVersionSpec;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.tests.fakeserver.FakeTfsServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests sent by {@link VersionControlServer} through the generated stubs to a {@link FakeTfsServer} on localhost: the whole stack
+ * from the request manager to the parsing of the responses is measured, the server side is kept trivial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionControlServerBenchmark {
+  private static final String WORKSPACE = "benchmark";
+  private static final String COMPUTER = "computer";
+  private static final String TITLE = "benchmark";
+  private static final int CHANGESETS = 500;
+  private static final int FILE_SIZE = 64 * 1024;
+
+  @Param({"1000", "10000"})
+  public int size;
+
+  private FakeTfsServer myServer;
+  private VersionControlServer myVcs;
+  private Project myProject;
+  private String myEditedItem;
+  private String myDownloadKey;
+
+  @Setup(Level.Trial)
+  public void setUp(PlatformState platform) throws Exception {
+    myProject = platform.getProject();
+    myServer = new FakeTfsServer("BENCHMARK", "user");
+    URI uri = myServer.getUri();
+    TFSConfigurationManager.getInstance()
+      .storeCredentials(uri, new Credentials("user", "BENCHMARK", "password", false, Credentials.Type.NtlmExplicit));
+    myVcs = new ServerInfo(uri, myServer.getInstanceId(), new TfsBeansHolder(uri)).getVCS();
+
+    SyntheticTree tree = new SyntheticTree(size);
+    Map<String, byte[]> items = new HashMap<>();
+    for (SyntheticTree.Item item : tree.getItems()) {
+      items.put(item.serverPath, item.isFolder ? null : new byte[]{(byte)item.id});
+    }
+    myServer.getRepository().addItems("initial", items);
+    for (SyntheticTree.Item item : tree.getItems()) {
+      if (!item.isFolder) {
+        myEditedItem = item.serverPath;
+        break;
+      }
+    }
+    Random random = tree.getRandom();
+    for (int i = 0; i < CHANGESETS; i++) {
+      byte[] content = new byte[FILE_SIZE];
+      random.nextBytes(content);
+      myServer.getRepository().editItems("edit " + i, Collections.singletonMap(myEditedItem, content));
+    }
+
+    WorkingFolder folder = new WorkingFolder();
+    folder.setItem(SyntheticTree.SERVER_ROOT);
+    folder.setLocal(VersionControlPath.toTfsRepresentation(SyntheticTree.LOCAL_ROOT.getPath()));
+    folder.setType(WorkingFolderType.Map);
+    ArrayOfWorkingFolder folders = new ArrayOfWorkingFolder();
+    folders.addWorkingFolder(folder);
+    Workspace workspace = new Workspace();
+    workspace.setName(WORKSPACE);
+    workspace.setOwner(myServer.getQualifiedUsername());
+    workspace.setComputer(COMPUTER);
+    workspace.setFolders(folders);
+    workspace.setLastAccessDate(Calendar.getInstance());
+    myVcs.createWorkspace(workspace, myProject);
+
+    myDownloadKey = myVcs.get(WORKSPACE, myServer.getQualifiedUsername(), myEditedItem, LatestVersionSpec.INSTANCE, myProject, TITLE)
+      .getDurl();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    myServer.stop();
+    TFSConfigurationManager.getInstance().remove(myServer.getUri());
+    myServer.checkNoErrors();
+  }
+
+  @Benchmark
+  public List<GetOperation> getTree() throws TfsException {
+    return myVcs.get(WORKSPACE, myServer.getQualifiedUsername(), SyntheticTree.SERVER_ROOT, LatestVersionSpec.INSTANCE,
+                     RecursionType.Full, myProject, TITLE);
+  }
+
+  @Benchmark
+  public List<Changeset> queryHistory() throws TfsException {
+    ItemSpec itemSpec = VersionControlServer.createItemSpec(myEditedItem, RecursionType.None);
+    return myVcs.queryHistory(WORKSPACE, myServer.getQualifiedUsername(), itemSpec, null, LatestVersionSpec.INSTANCE, null,
+                              LatestVersionSpec.INSTANCE, Integer.MAX_VALUE, myProject, TITLE);
+  }
+
+  @Benchmark
+  public int download() throws TfsException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream(FILE_SIZE);
+    myVcs.downloadItem(myProject, myDownloadKey, content, TITLE);
+    return content.size();
+  }
+}
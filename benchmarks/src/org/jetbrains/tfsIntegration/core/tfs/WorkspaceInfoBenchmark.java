@@ -0,0 +1,101 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.vcsUtil.VcsUtil;
+import org.jetbrains.tfsIntegration.benchmarks.PlatformState;
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of every item of the tree in a workspace with {@link #mappings} working folders, a fifth of them cloaked. The workspace is
+ * not bound to a server, so the lookups never load it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkspaceInfoBenchmark {
+  private static final int SIZE = 10000;
+  private static final double CLOAKED_RATIO = 0.2;
+
+  @Param({"10", "100"})
+  public int mappings;
+
+  private WorkspaceInfo myWorkspace;
+  private List<FilePath> myLocalPaths;
+  private List<SyntheticTree.Item> myItems;
+
+  @Setup
+  public void setUp(PlatformState platform) {
+    SyntheticTree tree = new SyntheticTree(SIZE);
+    Random random = tree.getRandom();
+    ServerInfo server = new ServerInfo(URI.create("http://benchmark:8080/tfs"), "benchmark", null);
+    myWorkspace = new WorkspaceInfo(server, "BENCHMARK\\user", "computer");
+
+    List<SyntheticTree.Item> folders = tree.getFolders();
+    myWorkspace.addWorkingFolderInfo(workingFolder(folders.get(0), WorkingFolderInfo.Status.Active));
+    for (int i = 1; i < mappings; i++) {
+      SyntheticTree.Item folder = folders.get(1 + random.nextInt(folders.size() - 1));
+      WorkingFolderInfo.Status status =
+        random.nextDouble() < CLOAKED_RATIO ? WorkingFolderInfo.Status.Cloaked : WorkingFolderInfo.Status.Active;
+      myWorkspace.addWorkingFolderInfo(workingFolder(folder, status));
+    }
+
+    myItems = tree.getShuffledItems();
+    myLocalPaths = new ArrayList<>(myItems.size());
+    for (SyntheticTree.Item item : myItems) {
+      myLocalPaths.add(VcsUtil.getFilePath(item.getLocalFile(), item.isFolder));
+    }
+  }
+
+  private static WorkingFolderInfo workingFolder(SyntheticTree.Item folder, WorkingFolderInfo.Status status) {
+    return new WorkingFolderInfo(status, VcsUtil.getFilePath(folder.getLocalFile(), true), folder.serverPath);
+  }
+
+  @Benchmark
+  public void findServerPathsByLocalPath(Blackhole blackhole) throws TfsException {
+    for (FilePath localPath : myLocalPaths) {
+      blackhole.consume(myWorkspace.findServerPathsByLocalPath(localPath, false, null));
+    }
+  }
+
+  @Benchmark
+  public void findLocalPathByServerPath(Blackhole blackhole) throws TfsException {
+    for (SyntheticTree.Item item : myItems) {
+      blackhole.consume(myWorkspace.findLocalPathByServerPath(item.serverPath, item.isFolder, null));
+    }
+  }
+
+  @Benchmark
+  public void hasMapping(Blackhole blackhole) {
+    for (FilePath localPath : myLocalPaths) {
+      blackhole.consume(myWorkspace.hasMappingCached(localPath, true));
+    }
+  }
+}
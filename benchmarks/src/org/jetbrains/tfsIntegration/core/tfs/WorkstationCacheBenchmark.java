@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.vcsUtil.VcsUtil;
+import org.jetbrains.tfsIntegration.benchmarks.PlatformState;
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading the workspace cache of {@link #WORKSPACES} workspaces spread over {@link #SERVERS} servers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkstationCacheBenchmark {
+  private static final int WORKSPACES = 500;
+  private static final int SERVERS = 20;
+  private static final int MAPPINGS_PER_WORKSPACE = 3;
+
+  private List<WorkstationCacheWriter.ServerSnapshot> myServers;
+  private Path myCacheFile;
+
+  @Setup
+  public void setUp(PlatformState platform) throws Exception {
+    List<ServerInfo> servers = new ArrayList<>(SERVERS);
+    for (int i = 0; i < SERVERS; i++) {
+      servers.add(new ServerInfo(URI.create("http://benchmark" + i + ":8080/tfs"), "guid" + i, null));
+    }
+    for (int i = 0; i < WORKSPACES; i++) {
+      ServerInfo server = servers.get(i % SERVERS);
+      WorkspaceInfo workspace =
+        new WorkspaceInfo(server, "Workspace" + i, "BENCHMARK\\user", "computer", "comment " + i, Calendar.getInstance(), false,
+                          "User", null, 0);
+      for (int j = 0; j < MAPPINGS_PER_WORKSPACE; j++) {
+        File localPath = new File(SyntheticTree.LOCAL_ROOT, "workspace" + i + File.separator + "folder" + j);
+        workspace.addWorkingFolderInfo(new WorkingFolderInfo(VcsUtil.getFilePath(localPath, true)));
+      }
+      workspace.addOwnerAlias("user@benchmark");
+      server.addWorkspaceInfo(workspace);
+    }
+    myServers = WorkstationCacheWriter.snapshot(servers);
+
+    myCacheFile = Files.createTempFile("tfs-benchmark", ".config");
+    WorkstationCacheWriter.save(myCacheFile, myServers);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(myCacheFile);
+  }
+
+  @Benchmark
+  public void save() throws Exception {
+    WorkstationCacheWriter.save(myCacheFile, myServers);
+  }
+
+  @Benchmark
+  public List<ServerInfo> load() throws Exception {
+    return WorkstationCacheReader.read(myCacheFile);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs.labels;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Item;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemType;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.RecursionType;
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlServer;
+import org.jetbrains.tfsIntegration.core.tfs.version.ChangesetVersionSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Items shown in the Apply Label dialog when {@link #specs} random folders of the tree, some of them nested, are added to the label
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelModelBenchmark {
+
+  @Param({"2000", "10000"})
+  public int size;
+
+  @Param({"10", "100"})
+  public int specs;
+
+  private List<LabelItemSpecWithItems> mySpecs;
+  private LabelModel myModel;
+
+  @Setup
+  public void setUp() {
+    SyntheticTree tree = new SyntheticTree(size);
+    Random random = tree.getRandom();
+    List<SyntheticTree.Item> folders = tree.getFolders();
+    mySpecs = new ArrayList<>(specs);
+    for (int i = 0; i < specs; i++) {
+      SyntheticTree.Item folder = folders.get(random.nextInt(folders.size()));
+      List<Item> items = new ArrayList<>();
+      for (SyntheticTree.Item item : tree.getItems()) {
+        if (item.serverPath.equals(folder.serverPath) || item.serverPath.startsWith(folder.serverPath + "/")) {
+          items.add(toBean(item, i + 1));
+        }
+      }
+      mySpecs.add(LabelItemSpecWithItems
+                    .createForAdd(VersionControlServer.createItemSpec(folder.serverPath, RecursionType.Full), new ChangesetVersionSpec(i + 1),
+                                  items));
+    }
+    // added one by one, a child spec added after its parent one overrides the parent's items
+    myModel = new LabelModel();
+    for (LabelItemSpecWithItems spec : mySpecs) {
+      myModel.add(spec);
+    }
+  }
+
+  private static Item toBean(SyntheticTree.Item item, int changeset) {
+    Item result = new Item();
+    result.setItemid(item.id);
+    result.setItem(item.serverPath);
+    result.setType(item.isFolder ? ItemType.Folder : ItemType.File);
+    result.setCs(changeset);
+    return result;
+  }
+
+  @Benchmark
+  public LabelModel addAll() {
+    LabelModel model = new LabelModel();
+    model.addAll(new ArrayList<>(mySpecs));
+    return model;
+  }
+
+  @Benchmark
+  public List<ItemAndVersion> calculateItemsToDisplay() {
+    return myModel.calculateItemsToDisplay();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs.operations;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.GetOperation;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemType;
+import org.jetbrains.tfsIntegration.benchmarks.SyntheticTree;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordering of get operations as returned by the server: mostly updates of existing items, some downloads of new ones and some moves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetOperationsUtilBenchmark {
+  private static final double NEW_ITEMS_RATIO = 0.1;
+  private static final double MOVED_ITEMS_RATIO = 0.1;
+
+  @Param({"100", "1000", "5000"})
+  public int size;
+
+  private List<GetOperation> myOperations;
+  private List<GetOperation> mySortedOperations;
+
+  @Setup
+  public void setUp() {
+    SyntheticTree tree = new SyntheticTree(size);
+    Random random = tree.getRandom();
+    myOperations = new ArrayList<>(size);
+    for (SyntheticTree.Item item : tree.getShuffledItems()) {
+      GetOperation operation = new GetOperation();
+      operation.setItemid(item.id);
+      operation.setTitem(item.serverPath);
+      operation.setType(item.isFolder ? ItemType.Folder : ItemType.File);
+      operation.setTlocal(VersionControlPath.toTfsRepresentation(item.getLocalPath()));
+      double kind = random.nextDouble();
+      if (kind >= NEW_ITEMS_RATIO) {
+        String sourceLocal = kind < NEW_ITEMS_RATIO + MOVED_ITEMS_RATIO ? item.getLocalPath() + "_old" : item.getLocalPath();
+        operation.setSlocal(VersionControlPath.toTfsRepresentation(sourceLocal));
+      }
+      myOperations.add(operation);
+    }
+    mySortedOperations = GetOperationsUtil.sortGetOperations(myOperations);
+  }
+
+  @Benchmark
+  public List<GetOperation> sortGetOperations() {
+    return GetOperationsUtil.sortGetOperations(myOperations);
+  }
+
+  @Benchmark
+  public int resolveSourcePaths() {
+    // what applying the operations does besides the file system changes
+    GetOperationsUtil.MovedFolders movedFolders = new GetOperationsUtil.MovedFolders();
+    int result = 0;
+    for (GetOperation operation : mySortedOperations) {
+      String source = movedFolders.getSourcePath(operation.getSlocal());
+      if (source != null) {
+        result += source.length();
+        if (operation.getType() == ItemType.Folder && !source.equals(operation.getTlocal())) {
+          movedFolders.folderMoved(operation.getSlocal(), operation.getTlocal());
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.actions;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.MessageType;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.tfsIntegration.core.TFSBundle;
+import org.jetbrains.tfsIntegration.core.tfs.TfsUtil;
+import org.jetbrains.tfsIntegration.webservice.auth.NtlmSessions;
+import org.jetbrains.tfsIntegration.webservice.metrics.RequestMetricsRecorder;
+
+import java.awt.datatransfer.StringSelection;
+
+/**
+ * Writes the statistics of the requests sent to the servers to the log and copies them to the clipboard
+ */
+public class DumpRequestStatisticsAction extends DumbAwareAction {
+
+  private static final Logger LOG = Logger.getInstance(DumpRequestStatisticsAction.class.getName());
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    Project project = e.getProject();
+    String statistics = RequestMetricsRecorder.getHistogram().dump();
+    if (statistics.isEmpty()) {
+      Messages.showInfoMessage(project, TFSBundle.message("request.statistics.empty"), TFSBundle.message("request.statistics.title"));
+      return;
+    }
+
+    statistics += "Connections: " + NtlmSessions.getStatistics() + "\n";
+    LOG.info("Request statistics:\n" + statistics);
+    CopyPasteManager.getInstance().setContents(new StringSelection(statistics));
+    if (project != null) {
+      TfsUtil.showBalloon(project, MessageType.INFO, TFSBundle.message("request.statistics.dumped"));
+    }
+  }
+}
@@ -30,7 +30,6 @@ import com.intellij.openapi.vcs.actions.VcsContextFactory;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
-import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Annotation;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.CheckinNoteFieldDefinition;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.CheckinWorkItemAction;
 import org.jdom.Element;
@@ -53,6 +52,8 @@ import java.util.*;
 
 public class CheckinParameters {
 
+  private static final int PARALLEL_REQUESTS = Integer.getInteger("org.jetbrains.tfsIntegration.checkinParametersThreads", 4);
+
   public static class CheckinNote {
     public @NotNull final String name;
     public final boolean required;
@@ -148,13 +149,12 @@ public class CheckinParameters {
           List<ServerInfo> sortedServers = new ArrayList<>(serverToProjects.keySet());
           Collections.sort(sortedServers, (o1, o2) -> o1.getPresentableUri().compareTo(o2.getPresentableUri()));
 
-          Map<ServerInfo, ServerData> data = new LinkedHashMap<>();
-          StringBuilder policiesLoadError = new StringBuilder();
-          for (ServerInfo server : sortedServers) {
-            final Collection<String> teamProjects = serverToProjects.get(server);
+          // servers are independent, so are the team projects of a server
+          List<Pair<ServerData, String>> serversData = TfsParallelUtil.map(sortedServers, PARALLEL_REQUESTS, pi, server -> {
+            final TeamProjectSettingsCache cache = TeamProjectSettingsCache.getInstance(server);
+            final List<String> teamProjects = new ArrayList<>(serverToProjects.get(server));
             final List<CheckinNoteFieldDefinition> checkinNoteDefinitions =
-              server.getVCS().queryCheckinNoteDefinition(teamProjects, myPanel.getProject(), null);
-            pi.checkCanceled();
+              cache.getCheckinNoteDefinitions(server, teamProjects, myPanel.getProject());
             Map<String, CheckinNoteFieldDefinition> nameToDefinition = new HashMap<>();
             // factorize different team projects definitions by name and sort them by display order field
             for (CheckinNoteFieldDefinition definition : checkinNoteDefinitions) {
@@ -170,88 +170,28 @@ public class CheckinParameters {
               checkinNotes.add(new CheckinNote(checkinNote.getName(), checkinNote.getReq()));
             }
 
-            Map<String, TeamProjectData> project2policies = new HashMap<>();
-            for (String teamProject : teamProjects) {
-              project2policies.put(teamProject, new TeamProjectData());
-            }
-
-            try {
-              Collection<Annotation> overridesAnnotations = new ArrayList<>();
-              for (String teamProjectPath : teamProjects) {
-                overridesAnnotations.addAll(
-                  server.getVCS().queryAnnotations(TFSConstants.OVERRRIDES_ANNOTATION, teamProjectPath, myPanel.getProject(), null, false));
-              }
-
-              boolean teamExplorerFound = TFSConfigurationManager.getInstance().getCheckinPoliciesCompatibility().teamExplorer;
-              boolean teampriseFound = TFSConfigurationManager.getInstance().getCheckinPoliciesCompatibility().teamprise;
-              for (Annotation annotation : overridesAnnotations) {
-                if (annotation.getValue() == null) continue;
-                String teamProject = VersionControlPath.getPathToProject(annotation.getItem());
-
-                TfsCheckinPoliciesCompatibility override =
-                  TfsCheckinPoliciesCompatibility.fromOverridesAnnotationValue(annotation.getValue());
-                project2policies.get(teamProject).myCompatibility = override;
-                teamExplorerFound |= override.teamExplorer;
-                teampriseFound |= override.teamprise;
-              }
+            List<Pair<TeamProjectData, String>> teamProjectsData = TfsParallelUtil
+              .map(teamProjects, PARALLEL_REQUESTS, ProgressManager.getInstance().getProgressIndicator(),
+                   teamProject -> loadTeamProjectData(server, cache, teamProject));
 
-              if (teamExplorerFound) {
-                Collection<Annotation> annotations = new ArrayList<>();
-                for (String teamProjectPath : teamProjects) {
-                  annotations.addAll(server.getVCS()
-                                       .queryAnnotations(TFSConstants.TFS_CHECKIN_POLICIES_ANNOTATION, teamProjectPath,
-                                                         myPanel.getProject(), null, false));
-                }
-
-                for (Annotation annotation : annotations) {
-                  if (annotation.getValue() == null) continue;
-                  String teamProject = VersionControlPath.getPathToProject(annotation.getItem());
-
-                  TeamProjectData teamProjectData = project2policies.get(teamProject);
-                  if (teamProjectData.myCompatibility.teamExplorer) {
-                    for (PolicyDescriptor descriptor : StatelessPolicyParser.parseDescriptors(annotation.getValue())) {
-                      if (descriptor.isEnabled()) {
-                        teamProjectData.myPolicies.add(descriptor);
-                      }
-                    }
-                  }
-                }
-              }
-
-              if (teampriseFound) {
-                Collection<Annotation> annotations = new ArrayList<>();
-                for (String teamProjectPath : teamProjects) {
-                  annotations.addAll(server.getVCS()
-                                       .queryAnnotations(TFSConstants.STATEFUL_CHECKIN_POLICIES_ANNOTATION, teamProjectPath,
-                                                         myPanel.getProject(), null, false));
-                }
-                for (Annotation annotation : annotations) {
-                  if (annotation.getValue() == null) continue;
-                  String teamProject = VersionControlPath.getPathToProject(annotation.getItem());
-
-                  TeamProjectData teamProjectData = project2policies.get(teamProject);
-                  if (teamProjectData.myCompatibility.teamprise) {
-                    for (PolicyDescriptor descriptor : StatefulPolicyParser.parseDescriptors(annotation.getValue())) {
-                      if (descriptor.isEnabled()) {
-                        teamProjectData.myPolicies.add(descriptor);
-                      }
-                    }
-                  }
-                }
+            Map<String, TeamProjectData> project2policies = new HashMap<>();
+            StringBuilder serverPoliciesLoadError = new StringBuilder();
+            for (int i = 0; i < teamProjects.size(); i++) {
+              project2policies.put(teamProjects.get(i), teamProjectsData.get(i).first);
+              if (teamProjectsData.get(i).second != null) {
+                serverPoliciesLoadError.append(teamProjectsData.get(i).second);
               }
             }
-            catch (PolicyParseException e) {
-              policiesLoadError.append(e.getMessage());
-            }
-            catch (JDOMException e) {
-              policiesLoadError.append(e.getMessage());
-            }
-            catch (IOException e) {
-              policiesLoadError.append(e.getMessage());
-            }
-            pi.checkCanceled();
+            return Pair.create(new ServerData(checkinNotes, new WorkItemsCheckinParameters(), serverToFiles.get(server), project2policies),
+                               serverPoliciesLoadError.toString());
+          });
+          pi.checkCanceled();
 
-            data.put(server, new ServerData(checkinNotes, new WorkItemsCheckinParameters(), serverToFiles.get(server), project2policies));
+          Map<ServerInfo, ServerData> data = new LinkedHashMap<>();
+          StringBuilder policiesLoadError = new StringBuilder();
+          for (int i = 0; i < sortedServers.size(); i++) {
+            data.put(sortedServers.get(i), serversData.get(i).first);
+            policiesLoadError.append(serversData.get(i).second);
           }
 
           myPoliciesLoadError = policiesLoadError.length() > 0 ? policiesLoadError.toString() : null;
@@ -272,6 +212,55 @@ public class CheckinParameters {
     validateNotes();
   }
 
+  /**
+   * @return policies of the team project and the error that occurred while loading them, if any
+   */
+  private Pair<TeamProjectData, String> loadTeamProjectData(ServerInfo server, TeamProjectSettingsCache cache, String teamProject)
+    throws TfsException {
+    TeamProjectData teamProjectData = new TeamProjectData();
+    try {
+      for (TfsCheckinPoliciesCompatibility override : cache
+        .getAnnotations(server, TFSConstants.OVERRRIDES_ANNOTATION, teamProject,
+                        TfsCheckinPoliciesCompatibility::fromOverridesAnnotationValue, myPanel.getProject())) {
+        teamProjectData.myCompatibility = override;
+      }
+
+      if (teamProjectData.myCompatibility.teamExplorer) {
+        for (List<PolicyDescriptor> descriptors : cache
+          .getAnnotations(server, TFSConstants.TFS_CHECKIN_POLICIES_ANNOTATION, teamProject,
+                          value -> Collections.unmodifiableList(StatelessPolicyParser.parseDescriptors(value)), myPanel.getProject())) {
+          for (PolicyDescriptor descriptor : descriptors) {
+            if (descriptor.isEnabled()) {
+              teamProjectData.myPolicies.add(descriptor);
+            }
+          }
+        }
+      }
+
+      if (teamProjectData.myCompatibility.teamprise) {
+        for (List<StatefulPolicyDescriptor> descriptors : cache
+          .getAnnotations(server, TFSConstants.STATEFUL_CHECKIN_POLICIES_ANNOTATION, teamProject,
+                          value -> Collections.unmodifiableList(StatefulPolicyParser.parseDescriptors(value)), myPanel.getProject())) {
+          for (PolicyDescriptor descriptor : descriptors) {
+            if (descriptor.isEnabled()) {
+              teamProjectData.myPolicies.add(descriptor);
+            }
+          }
+        }
+      }
+    }
+    catch (PolicyParseException e) {
+      return Pair.create(teamProjectData, e.getMessage());
+    }
+    catch (JDOMException e) {
+      return Pair.create(teamProjectData, e.getMessage());
+    }
+    catch (IOException e) {
+      return Pair.create(teamProjectData, e.getMessage());
+    }
+    return Pair.create(teamProjectData, null);
+  }
+
   public boolean policiesEvaluated() {
     return myPoliciesEvaluated;
   }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2000-2009 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.checkin;
+
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.Pair;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Annotation;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.CheckinNoteFieldDefinition;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Check-in notes and check-in policy definitions of team projects, kept between commits.
+ * <p/>
+ * Annotations are queried on every commit, but their values are parsed again only if the date of the annotation has changed since
+ * the previous commit. Check-in note definitions have no such date, so they are kept for a limited time.
+ */
+class TeamProjectSettingsCache {
+
+  private static final long NOTES_TTL_MILLIS = Long.getLong("org.jetbrains.tfsIntegration.checkinNotesCacheTtl", 300000);
+
+  private static final Map<URI, TeamProjectSettingsCache> ourInstances = new ConcurrentHashMap<>();
+
+  interface AnnotationParser<T> {
+    @NotNull
+    T parse(@NotNull String value) throws PolicyParseException, JDOMException, IOException;
+  }
+
+  private static class ParsedAnnotation {
+    @Nullable private final Calendar myDate;
+    @NotNull private final String myValue;
+    @NotNull private final Object myParsed;
+
+    private ParsedAnnotation(@Nullable Calendar date, @NotNull String value, @NotNull Object parsed) {
+      myDate = date;
+      myValue = value;
+      myParsed = parsed;
+    }
+
+    private boolean isUpToDate(@NotNull Annotation annotation) {
+      // the value is compared as well since the date has a precision of one second
+      return myDate != null && Comparing.equal(myDate, annotation.getDate()) && myValue.equals(annotation.getValue());
+    }
+  }
+
+  private static class CheckinNotes {
+    @NotNull private final List<CheckinNoteFieldDefinition> myDefinitions;
+    private final long myCreated = System.currentTimeMillis();
+
+    private CheckinNotes(@NotNull List<CheckinNoteFieldDefinition> definitions) {
+      myDefinitions = definitions;
+    }
+  }
+
+  // key is (annotation name, annotated item)
+  private final ConcurrentMap<Pair<String, String>, ParsedAnnotation> myAnnotations = new ConcurrentHashMap<>();
+  // key is set of team projects
+  private final ConcurrentMap<Set<String>, CheckinNotes> myCheckinNotes = new ConcurrentHashMap<>();
+
+  @NotNull
+  static TeamProjectSettingsCache getInstance(@NotNull ServerInfo server) {
+    return ourInstances.computeIfAbsent(server.getUri(), uri -> new TeamProjectSettingsCache());
+  }
+
+  @NotNull
+  List<CheckinNoteFieldDefinition> getCheckinNoteDefinitions(@NotNull ServerInfo server,
+                                                             @NotNull Collection<String> teamProjects,
+                                                             Object projectOrComponent) throws TfsException {
+    Set<String> key = Collections.unmodifiableSet(new HashSet<>(teamProjects));
+    CheckinNotes cached = myCheckinNotes.get(key);
+    if (cached != null && System.currentTimeMillis() - cached.myCreated <= NOTES_TTL_MILLIS) {
+      return cached.myDefinitions;
+    }
+
+    List<CheckinNoteFieldDefinition> definitions =
+      Collections.unmodifiableList(new ArrayList<>(server.getVCS().queryCheckinNoteDefinition(teamProjects, projectOrComponent, null)));
+    myCheckinNotes.put(key, new CheckinNotes(definitions));
+    return definitions;
+  }
+
+  /**
+   * Queries the annotations of the item and parses the values of the ones that changed since they were parsed last time
+   *
+   * @return parsed values of the annotations that have a value
+   */
+  @NotNull
+  <T> List<T> getAnnotations(@NotNull ServerInfo server,
+                             @NotNull String annotationName,
+                             @NotNull String serverItem,
+                             @NotNull AnnotationParser<T> parser,
+                             Object projectOrComponent) throws TfsException, PolicyParseException, JDOMException, IOException {
+    Collection<Annotation> annotations = server.getVCS().queryAnnotations(annotationName, serverItem, projectOrComponent, null, false);
+    List<T> result = new ArrayList<>(annotations.size());
+    for (Annotation annotation : annotations) {
+      if (annotation.getValue() == null) continue;
+
+      Pair<String, String> key = Pair.create(annotationName, annotation.getItem());
+      ParsedAnnotation parsed = myAnnotations.get(key);
+      if (parsed == null || !parsed.isUpToDate(annotation)) {
+        parsed = new ParsedAnnotation(annotation.getDate(), annotation.getValue(), parser.parse(annotation.getValue()));
+        myAnnotations.put(key, parsed);
+      }
+      //noinspection unchecked
+      result.add((T)parsed.myParsed);
+    }
+    return result;
+  }
+}
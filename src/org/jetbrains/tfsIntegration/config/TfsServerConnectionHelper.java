@@ -31,6 +31,7 @@ import org.jetbrains.tfsIntegration.exceptions.TfsException;
 import org.jetbrains.tfsIntegration.exceptions.TfsExceptionManager;
 import org.jetbrains.tfsIntegration.exceptions.UserCancelledException;
 import org.jetbrains.tfsIntegration.ui.ChooseTeamProjectCollectionDialog;
+import org.jetbrains.tfsIntegration.webservice.StubPool;
 import org.jetbrains.tfsIntegration.webservice.TfsRequestManager;
 import org.jetbrains.tfsIntegration.webservice.WebServiceHelper;
 
@@ -296,7 +297,7 @@ public class TfsServerConnectionHelper {
     if (justAuthenticate) {
       uri = getBareUri(uri);
     }
-    final ConfigurationContext context = WebServiceHelper.getStubConfigurationContext();
+    final ConfigurationContext context = WebServiceHelper.getStubConfigurationContext(uri);
 
     Pair<URI, ConnectResponse> connectResponse;
     Pair<URI, FrameworkRegistrationEntry[]> registrationEntries = null;
@@ -490,7 +491,17 @@ public class TfsServerConnectionHelper {
     QueryWorkspaces param = new QueryWorkspaces();
     param.setOwnerName(authorizedCredentials.getQualifiedUsername());
     param.setComputer(Workstation.getComputerName());
-    return beans.getRepositoryStub(authorizedCredentials, pi).queryWorkspaces(param).getQueryWorkspacesResult().getWorkspace();
+    try {
+      // not necessarily called within a request, see TfsRequestManager
+      return StubPool.withLeases(
+        () -> beans.getRepositoryStub(authorizedCredentials, pi).queryWorkspaces(param).getQueryWorkspacesResult().getWorkspace());
+    }
+    catch (RemoteException | HostNotApplicableException | RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new AssertionError(e); // no other checked exceptions are thrown
+    }
   }
 
   private static String getAuthorizedCredentialsFor200x(ConfigurationContext context, URI uri, Credentials credentials)
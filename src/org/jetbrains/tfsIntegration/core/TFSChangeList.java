@@ -33,6 +33,7 @@ import org.jetbrains.tfsIntegration.core.tfs.VersionControlServer;
 import org.jetbrains.tfsIntegration.core.tfs.WorkspaceInfo;
 import org.jetbrains.tfsIntegration.core.tfs.version.ChangesetVersionSpec;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.webservice.TfsRequestManager;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -40,6 +41,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SuppressWarnings({"AutoUnboxing"})
 public class TFSChangeList implements CommittedChangeList {
@@ -59,6 +61,7 @@ public class TFSChangeList implements CommittedChangeList {
   private final Map<FilePath, Pair<FilePath, Integer/*previous revision*/>> myMovedPaths = new HashMap<>();
   private URI myServerUri;
   private String myWorkspaceName;
+  private long myLoadRequestsCount;
 
   public TFSChangeList(final TFSVcs vcs, final DataInput stream) {
     myVcs = vcs;
@@ -108,7 +111,13 @@ public class TFSChangeList implements CommittedChangeList {
     if (myCachedChanges == null) {
       try {
         if (myWorkspace != null) { // otherwise paths were read from stream
-          loadChanges();
+          AtomicLong requestsCount = new AtomicLong();
+          TfsRequestManager.countRequests(requestsCount, () -> {
+            loadChanges();
+            return null;
+          });
+          myLoadRequestsCount = requestsCount.get();
+          TFSVcs.LOG.debug("Changes of changeset " + myRevisionNumber + " loaded with " + myLoadRequestsCount + " server calls");
         }
 
         myCachedChanges = new ArrayList<>();
@@ -143,6 +152,13 @@ public class TFSChangeList implements CommittedChangeList {
     return myCachedChanges;
   }
 
+  /**
+   * @return number of server calls made to load the changes
+   */
+  public long getLoadRequestsCount() {
+    return myLoadRequestsCount;
+  }
+
   @Override
   public boolean isModifiable() {
     return true;
@@ -181,18 +197,23 @@ public class TFSChangeList implements CommittedChangeList {
       Changeset changeset =
         myWorkspace.getServer().getVCS().queryChangeset(myRevisionNumber, myVcs.getProject(), TFSBundle.message("loading.changes"));
 
+      Map<FilePath, Item> renamedItems = new HashMap<>();
       for (com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Change change : changeset.getChanges()
         .getChange()) {
-        processChange(changeset.getCset(), change);
+        processChange(change, renamedItems);
       }
+      processRenames(changeset.getCset(), renamedItems);
     }
     catch (TfsException e) {
       AbstractVcsHelper.getInstance(myVcs.getProject()).showError(new VcsException(e.getMessage(), e), TFSVcs.TFS_NAME);
     }
   }
 
-  private void processChange(int changeset,
-                             final com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Change change)
+  /**
+   * @param renamedItems receives renamed items by their current local paths, they are processed later all together
+   */
+  private void processChange(final com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Change change,
+                             Map<FilePath, Item> renamedItems)
     throws TfsException {
     final ChangeTypeMask changeType = new ChangeTypeMask(change.getType());
 
@@ -237,16 +258,7 @@ public class TFSChangeList implements CommittedChangeList {
         // the item was deleted in some previous checkin
         return;
       }
-      Item item = getPreviousVersion(change.getItem(), changeset);
-      FilePath originalPath = myWorkspace
-        .findLocalPathByServerPath(item.getItem(), item.getType() == ItemType.Folder, getVcs().getProject());
-
-      if (originalPath != null) {
-        myMovedPaths.put(originalPath, Pair.create(localPath, item.getCs()));
-      }
-      else {
-        // original path is out of current mappings -> no way to determine local path for it
-      }
+      renamedItems.put(localPath, change.getItem());
       return;
     }
 
@@ -338,6 +350,39 @@ public class TFSChangeList implements CommittedChangeList {
     return VcsUtil.getFilePath(stream.readUTF(), stream.readBoolean());
   }
 
+  private void processRenames(int changeset, Map<FilePath, Item> renamedItems) throws TfsException {
+    if (renamedItems.isEmpty()) {
+      return;
+    }
+
+    // items at the previous changeset have the original paths, query them all at once instead of the history of every item
+    Set<Integer> itemIds = new HashSet<>();
+    for (Item item : renamedItems.values()) {
+      itemIds.add(item.getItemid());
+    }
+    Map<Integer, Item> previousItems = new HashMap<>();
+    for (Item item : myWorkspace.getServer().getVCS()
+      .queryItemsById(itemIds, changeset - 1, false, myVcs.getProject(), TFSBundle.message("loading.changes"))) {
+      previousItems.put(item.getItemid(), item);
+    }
+
+    for (Map.Entry<FilePath, Item> entry : renamedItems.entrySet()) {
+      Item item = previousItems.get(entry.getValue().getItemid());
+      if (item == null) {
+        item = getPreviousVersion(entry.getValue(), changeset);
+      }
+      FilePath originalPath = myWorkspace
+        .findLocalPathByServerPath(item.getItem(), item.getType() == ItemType.Folder, getVcs().getProject());
+
+      if (originalPath != null) {
+        myMovedPaths.put(originalPath, Pair.create(entry.getKey(), item.getCs()));
+      }
+      else {
+        // original path is out of current mappings -> no way to determine local path for it
+      }
+    }
+  }
+
   private Item getPreviousVersion(Item item, int changeset) throws TfsException {
     ItemSpec itemSpec = VersionControlServer.createItemSpec(item.getItem(), item.getDid(), RecursionType.None);
     List<Changeset> shortHistory = myWorkspace.getServer().getVCS().queryHistory(myWorkspace.getName(), myWorkspace.getOwnerName(),
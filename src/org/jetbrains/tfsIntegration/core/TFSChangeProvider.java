@@ -82,12 +82,14 @@ public class TFSChangeProvider implements ChangeProvider {
     try {
       final Ref<Boolean> mappingFound = Ref.create(false);
       // ingore orphan roots here
-      WorkstationHelper.processByWorkspaces(roots, true, myProject, new WorkstationHelper.VoidProcessDelegate() {
-        public void executeRequest(final WorkspaceInfo workspace, final List<ItemPath> paths) throws TfsException {
-          StatusProvider
-            .visitByStatus(workspace, paths, true, progress, new ChangelistBuilderStatusVisitor(myProject, builder, workspace), myProject);
-          mappingFound.set(true);
-        }
+      // statuses are reported to the builder on this thread, in the order of workspaces
+      WorkstationHelper.processByWorkspacesInParallel(roots, true, myProject, progress, (workspace, paths) -> {
+        RecordingStatusVisitor statuses = new RecordingStatusVisitor();
+        StatusProvider.visitByStatus(workspace, paths, true, progress, statuses, myProject);
+        return statuses;
+      }, (workspace, statuses) -> {
+        statuses.replay(new ChangelistBuilderStatusVisitor(myProject, builder, workspace));
+        mappingFound.set(true);
       });
       if (!mappingFound.get()) {
         final String message;
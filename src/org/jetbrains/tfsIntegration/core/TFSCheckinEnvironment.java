@@ -196,21 +196,29 @@ public class TFSCheckinEnvironment implements CheckinEnvironment {
             }
 
             Collection<String> checkIn = new ArrayList<>();
-            // upload files
-            TFSProgressUtil.setProgressText(progressIndicator, TFSBundle.message("uploading.files"));
+            List<PendingChange> upload = new ArrayList<>();
             for (PendingChange pendingChange : pendingChanges) {
               if (pendingChange.getType() == ItemType.File) {
                 ChangeTypeMask changeType = new ChangeTypeMask(pendingChange.getChg());
                 if (changeType.contains(ChangeType_type0.Edit) || changeType.contains(ChangeType_type0.Add)) {
-                  TFSProgressUtil
-                    .setProgressText2(progressIndicator, VersionControlPath.localPathFromTfsRepresentation(pendingChange.getLocal()));
-                  workspace.getServer().getVCS()
-                    .uploadItem(workspace, pendingChange, myVcs.getProject(), null);
+                  upload.add(pendingChange);
                 }
               }
               checkIn.add(pendingChange.getItem());
             }
-            TFSProgressUtil.setProgressText2(progressIndicator, "");
+
+            // upload files
+            TFSProgressUtil.setProgressText(progressIndicator, TFSBundle.message("uploading.files"));
+            Map<String, Exception> uploadFailed = ParallelUpload.upload(workspace, upload, myVcs.getProject(), progressIndicator);
+            if (!uploadFailed.isEmpty()) {
+              // check in all or nothing
+              for (Map.Entry<String, Exception> failure : uploadFailed.entrySet()) {
+                //noinspection ThrowableInstanceNeverThrown
+                errors.add(new VcsException(TFSBundle.message("cannot.upload.0.1", failure.getKey(), failure.getValue().getMessage()),
+                                            failure.getValue()));
+              }
+              return;
+            }
 
             final WorkItemsCheckinParameters state = myVcs.getCheckinData().parameters.getWorkItems(workspace.getServer());
             final Map<WorkItem, CheckinWorkItemAction> workItemActions =
@@ -228,7 +236,7 @@ public class TFSCheckinEnvironment implements CheckinEnvironment {
                        myVcs.getCheckinData().parameters.getPolicyOverride(workspace.getServer()), myVcs.getProject(), null);
             errors.addAll(TfsUtil.getVcsExceptions(result.getFailures()));
 
-            Collection<String> commitFailed = new ArrayList<>(result.getFailures().size());
+            Set<String> commitFailed = new HashSet<>(result.getFailures().size());
             for (Failure failure : result.getFailures()) {
               TFSVcs.assertTrue(failure.getItem() != null);
               commitFailed.add(failure.getItem());
@@ -174,14 +174,15 @@ public class TFSCommittedChangesProvider implements CachingCommittedChangesProvi
           final RecursionType recursionType = localPath2ExtendedItem.getKey().isDirectory() ? RecursionType.Full : null;
           ItemSpec itemSpec = VersionControlServer.createItemSpec(extendedItem.getSitem(), recursionType);
 
-          List<Changeset> changeSets = workspace.getServer().getVCS()
+          // changes are shown while the rest of the history is being loaded
+          workspace.getServer().getVCS()
             .queryHistory(workspace.getName(), workspace.getOwnerName(), itemSpec, settings.getUserFilter(), itemVersion, versionFrom,
-                          versionTo, maxCount, myProject, TFSBundle.message("loading.history"));
-          for (Changeset changeset : changeSets) {
-            final TFSChangeList newList = new TFSChangeList(workspace, changeset.getCset(), changeset.getOwner(),
-                                                            changeset.getDate().getTime(), changeset.getComment(), myVcs);
-            consumer.consume(newList);
-          }
+                          versionTo, maxCount, myProject, TFSBundle.message("loading.history"), false, changeset -> {
+                final TFSChangeList newList = new TFSChangeList(workspace, changeset.getCset(), changeset.getOwner(),
+                                                                changeset.getDate().getTime(), changeset.getComment(), myVcs);
+                consumer.consume(newList);
+                return true;
+              });
 
         }
       }
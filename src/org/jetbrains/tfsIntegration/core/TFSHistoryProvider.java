@@ -17,6 +17,8 @@
 package org.jetbrains.tfsIntegration.core;
 
 import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vcs.FilePath;
@@ -24,15 +26,19 @@ import com.intellij.openapi.vcs.VcsConfiguration;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.history.*;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Processor;
 import com.intellij.util.ui.ColumnInfo;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Changeset;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ExtendedItem;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Item;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemSpec;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemType;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.RecursionType;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.core.tfs.TfsUtil;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlServer;
 import org.jetbrains.tfsIntegration.core.tfs.WorkspaceInfo;
 import org.jetbrains.tfsIntegration.core.tfs.version.ChangesetVersionSpec;
 import org.jetbrains.tfsIntegration.core.tfs.version.LatestVersionSpec;
@@ -41,9 +47,13 @@ import org.jetbrains.tfsIntegration.exceptions.TfsException;
 
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class TFSHistoryProvider implements VcsHistoryProvider {
+  // history of a folder is not followed through renames, which is faster for large folders
+  private static final boolean FOLDER_HISTORY_SLOT_MODE = Boolean.getBoolean("org.jetbrains.tfsIntegration.folderHistorySlotMode");
+
   private @NotNull final Project myProject;
 
   public TFSHistoryProvider(@NotNull Project project) {
@@ -114,10 +124,29 @@ public class TFSHistoryProvider implements VcsHistoryProvider {
     };
   }
 
-  public void reportAppendableHistory(FilePath path, VcsAppendableHistorySessionPartner partner) throws VcsException {
-    //??
-    final VcsHistorySession session = createSessionFor(path);
-    partner.reportCreatedEmptySession((VcsAbstractHistorySession)session);
+  public void reportAppendableHistory(FilePath path, final VcsAppendableHistorySessionPartner partner) throws VcsException {
+    try {
+      final Pair<WorkspaceInfo, ExtendedItem> workspaceAndItem =
+        TfsUtil.getWorkspaceAndExtendedItem(path, myProject, TFSBundle.message("loading.item"));
+      if (workspaceAndItem == null || workspaceAndItem.second == null) {
+        return;
+      }
+
+      partner.reportCreatedEmptySession(createSession(workspaceAndItem, Collections.emptyList()));
+      // revisions are shown while the rest of the history is being loaded
+      final ProgressIndicator pi = ProgressManager.getInstance().getProgressIndicator();
+      String serverPath = workspaceAndItem.second.getSitem();
+      processRevisions(myProject, serverPath, path.isDirectory(), workspaceAndItem.first, LatestVersionSpec.INSTANCE, revision -> {
+        if (pi != null && pi.isCanceled()) {
+          return false;
+        }
+        partner.acceptRevision(revision);
+        return true;
+      });
+    }
+    catch (TfsException e) {
+      throw new VcsException(e);
+    }
   }
 
   public static List<TFSFileRevision> getRevisions(final Project project,
@@ -125,21 +154,33 @@ public class TFSHistoryProvider implements VcsHistoryProvider {
                                                    final boolean isDirectory,
                                                    WorkspaceInfo workspace,
                                                    VersionSpecBase versionTo) throws TfsException {
+    List<TFSFileRevision> revisions = new ArrayList<>();
+    processRevisions(project, serverPath, isDirectory, workspace, versionTo, revision -> revisions.add(revision));
+    return revisions;
+  }
+
+  /**
+   * Passes the revisions to the processor, latest first, page by page as they are read from the server
+   *
+   * @param processor returns false to stop loading
+   */
+  private static void processRevisions(final Project project,
+                                       final String serverPath,
+                                       final boolean isDirectory,
+                                       final WorkspaceInfo workspace,
+                                       VersionSpecBase versionTo,
+                                       final Processor<TFSFileRevision> processor) throws TfsException {
     VcsConfiguration vcsConfiguration = VcsConfiguration.getInstance(project);
     int maxCount = vcsConfiguration.LIMIT_HISTORY ? vcsConfiguration.MAXIMUM_HISTORY_ROWS : Integer.MAX_VALUE;
-    List<Changeset> changesets =
-      workspace.getServer().getVCS().queryHistory(workspace, serverPath, isDirectory, null, new ChangesetVersionSpec(1), versionTo, project,
-                                                  TFSBundle.message("loading.item"), maxCount);
-
-    List<TFSFileRevision> revisions = new ArrayList<>(changesets.size());
-    for (Changeset changeset : changesets) {
-      final Item item = changeset.getChanges().getChange()[0].getItem();
-      revisions.add(
-        new TFSFileRevision(project, workspace, item.getItemid(), changeset.getDate().getTime(), changeset.getComment(),
-                            changeset.getOwner(),
-                            changeset.getCset()));
-    }
-    return revisions;
+    ItemSpec itemSpec = VersionControlServer.createItemSpec(serverPath, isDirectory ? RecursionType.Full : null);
+    workspace.getServer().getVCS()
+      .queryHistory(workspace.getName(), workspace.getOwnerName(), itemSpec, null, LatestVersionSpec.INSTANCE, new ChangesetVersionSpec(1),
+                    versionTo, maxCount, project, TFSBundle.message("loading.item"), isDirectory && FOLDER_HISTORY_SLOT_MODE, changeset -> {
+          final Item item = changeset.getChanges().getChange()[0].getItem();
+          return processor.process(
+            new TFSFileRevision(project, workspace, item.getItemid(), changeset.getDate().getTime(), changeset.getComment(),
+                                changeset.getOwner(), changeset.getCset()));
+        });
   }
 
   public boolean supportsHistoryForDirectories() {
@@ -7,17 +7,19 @@ import com.microsoft.schemas.teamfoundation._2005._06.services.groupsecurity._03
 import com.microsoft.schemas.teamfoundation._2005._06.services.registration._03.*;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.RepositoryStub;
 import com.microsoft.schemas.teamfoundation._2005._06.workitemtracking.clientservices._03.ClientService2Stub;
+import org.apache.axis2.client.Stub;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
-import org.apache.commons.httpclient.params.HttpClientParams;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.core.configuration.Credentials;
 import org.jetbrains.tfsIntegration.core.tfs.TfsUtil;
 import org.jetbrains.tfsIntegration.exceptions.HostNotApplicableException;
+import org.jetbrains.tfsIntegration.webservice.StubPool;
 import org.jetbrains.tfsIntegration.webservice.WebServiceHelper;
+import org.jetbrains.tfsIntegration.webservice.auth.NtlmSessions;
 
 import java.net.URI;
 import java.rmi.RemoteException;
@@ -26,17 +28,44 @@ public class TfsBeansHolder {
 
   private static final Logger LOG = Logger.getInstance(TfsBeansHolder.class.getName());
 
+  private static final int MAX_UPLOAD_DOWNLOAD_CONNECTIONS =
+    Integer.getInteger("org.jetbrains.tfsIntegration.maxUploadDownloadConnections", 8);
+
   private final URI myServerUri;
 
-  private RepositoryStub myRepository;
-  // Newer version of repository service. Required for several operations with local workspaces.
-  private RepositoryStub myRepository4;
-  private ClientService2Stub myWorkItemTrackingClientService;
-  private GroupSecurityServiceStub myGroupSecurityService;
-  private String myDownloadUrl;
-  private String myUploadUrl;
+  // null until the services are found in the registration entries
+  private volatile Services myServices;
+  private final Object myServicesLock = new Object();
   private HttpClient[] myUploadDownloadClients = new HttpClient[2]; // regular, proxy
 
+  private static class Services {
+    private final StubPool<RepositoryStub> myRepository;
+    // Newer version of repository service. Required for several operations with local workspaces.
+    private final StubPool<RepositoryStub> myRepository4;
+    private final StubPool<ClientService2Stub> myWorkItemTrackingClientService;
+    private final StubPool<GroupSecurityServiceStub> myGroupSecurityService;
+    private final String myDownloadUrl;
+    private final String myUploadUrl;
+
+    private Services(URI serverUri,
+                     ConfigurationContext configContext,
+                     String isccProvider,
+                     String isccProvider4,
+                     String download,
+                     String upload,
+                     String workItemService,
+                     String groupSecurity) {
+      myRepository = new StubPool<>(() -> new RepositoryStub(configContext, TfsUtil.appendPath(serverUri, isccProvider)));
+      myRepository4 = new StubPool<>(() -> new RepositoryStub(configContext, TfsUtil.appendPath(serverUri, isccProvider4)));
+      myWorkItemTrackingClientService =
+        new StubPool<>(() -> new ClientService2Stub(configContext, TfsUtil.appendPath(serverUri, workItemService)));
+      myGroupSecurityService =
+        new StubPool<>(() -> new GroupSecurityServiceStub(configContext, TfsUtil.appendPath(serverUri, groupSecurity)));
+      myDownloadUrl = download;
+      myUploadUrl = upload;
+    }
+  }
+
   public TfsBeansHolder(URI serverUri) {
     myServerUri = serverUri;
   }
@@ -44,60 +73,60 @@ public class TfsBeansHolder {
   @NotNull
   public RepositoryStub getRepositoryStub(Credentials credentials, ProgressIndicator pi)
     throws HostNotApplicableException, RemoteException {
-    if (myRepository == null) {
-      createStubs(credentials, pi);
-    }
-    WebServiceHelper.setupStub(myRepository, credentials, myServerUri);
-    return myRepository;
+    return setupStub(getServices(credentials, pi).myRepository.acquire(), credentials);
   }
 
   @NotNull
   public RepositoryStub getRepository4Stub(Credentials credentials, ProgressIndicator pi)
     throws HostNotApplicableException, RemoteException {
-    if (myRepository4 == null) {
-      createStubs(credentials, pi);
-    }
-    WebServiceHelper.setupStub(myRepository4, credentials, myServerUri);
-    return myRepository4;
+    return setupStub(getServices(credentials, pi).myRepository4.acquire(), credentials);
   }
 
   @NotNull
   public ClientService2Stub getWorkItemServiceStub(Credentials credentials, ProgressIndicator pi)
     throws HostNotApplicableException, RemoteException {
-    if (myWorkItemTrackingClientService == null) {
-      createStubs(credentials, pi);
-    }
-    WebServiceHelper.setupStub(myWorkItemTrackingClientService, credentials, myServerUri);
-    return myWorkItemTrackingClientService;
+    return setupStub(getServices(credentials, pi).myWorkItemTrackingClientService.acquire(), credentials);
   }
 
   @NotNull
   public GroupSecurityServiceStub getGroupSecurityServiceStub(Credentials credentials, ProgressIndicator pi)
     throws HostNotApplicableException, RemoteException {
-    if (myGroupSecurityService == null) {
-      createStubs(credentials, pi);
-    }
-    WebServiceHelper.setupStub(myGroupSecurityService, credentials, myServerUri);
-    return myGroupSecurityService;
+    return setupStub(getServices(credentials, pi).myGroupSecurityService.acquire(), credentials);
   }
 
   @NotNull
   public String getDownloadUrl(Credentials credentials, ProgressIndicator pi) throws HostNotApplicableException, RemoteException {
-    if (myDownloadUrl == null) {
-      createStubs(credentials, pi);
-    }
-    return myDownloadUrl;
+    return getServices(credentials, pi).myDownloadUrl;
   }
 
   @NotNull
   public String getUploadUrl(Credentials credentials, ProgressIndicator pi) throws HostNotApplicableException, RemoteException {
-    if (myUploadUrl == null) {
-      createStubs(credentials, pi);
+    return getServices(credentials, pi).myUploadUrl;
+  }
+
+  @NotNull
+  private <S extends Stub> S setupStub(@NotNull S stub, Credentials credentials) {
+    WebServiceHelper.setupStub(stub, credentials, myServerUri);
+    return stub;
+  }
+
+  @NotNull
+  private Services getServices(Credentials credentials, @Nullable ProgressIndicator pi) throws HostNotApplicableException, RemoteException {
+    Services services = myServices;
+    if (services == null) {
+      synchronized (myServicesLock) {
+        services = myServices;
+        if (services == null) {
+          services = createServices(credentials, pi);
+          myServices = services;
+        }
+      }
     }
-    return myUploadUrl;
+    return services;
   }
 
-  private void createStubs(Credentials authorizedCredentials, @Nullable ProgressIndicator pi)
+  @NotNull
+  private Services createServices(Credentials authorizedCredentials, @Nullable ProgressIndicator pi)
     throws RemoteException, HostNotApplicableException {
     LOG.assertTrue(!ApplicationManager.getApplication().isDispatchThread());
 
@@ -107,7 +136,7 @@ public class TfsBeansHolder {
       pi.setText(TFSBundle.message("loading.services"));
     }
 
-    final ConfigurationContext configContext = WebServiceHelper.getStubConfigurationContext();
+    final ConfigurationContext configContext = WebServiceHelper.getStubConfigurationContext(myServerUri);
 
     RegistrationStub registrationStub =
       new RegistrationStub(configContext, TfsUtil.appendPath(myServerUri, TFSConstants.REGISTRATION_ASMX));
@@ -145,51 +174,38 @@ public class TfsBeansHolder {
     if (groupSecurityService == null) {
       throw new HostNotApplicableException(null);
     }
-    doCreateStubs(configContext, isccProvider, isccProvider4, download, upload, workItemService, groupSecurityService);
 
     if (pi != null) {
       pi.setText(piText);
     }
+    return new Services(myServerUri, configContext, isccProvider, isccProvider4, download, upload, workItemService, groupSecurityService);
   }
 
-  private void doCreateStubs(@Nullable ConfigurationContext configContext,
-                             String isccProvider,
-                             String isccProvider4,
-                             String download,
-                             String upload,
-                             String workItemService,
-                             String groupSecurity) {
-    myDownloadUrl = download;
-    myUploadUrl = upload;
-    try {
-      if (configContext == null) {
-        configContext = WebServiceHelper.getStubConfigurationContext();
-      }
-      myRepository = new RepositoryStub(configContext, TfsUtil.appendPath(myServerUri, isccProvider));
-      myRepository4 = new RepositoryStub(configContext, TfsUtil.appendPath(myServerUri, isccProvider4));
-      myWorkItemTrackingClientService =
-        new ClientService2Stub(configContext, TfsUtil.appendPath(myServerUri, workItemService));
-      myGroupSecurityService =
-        new GroupSecurityServiceStub(configContext, TfsUtil.appendPath(myServerUri, groupSecurity));
-    }
-    catch (Exception e) {
-      LOG.error("Failed to initialize web service stub", e);
-    }
-  }
-  
-  public HttpClient getUploadDownloadClient(boolean forProxy) {
+  public synchronized HttpClient getUploadDownloadClient(boolean forProxy) {
     int index = forProxy ? 1 : 0;
     if (myUploadDownloadClients[index] == null) {
-      HttpConnectionManager connManager = new MultiThreadedHttpConnectionManager();
-      myUploadDownloadClients[index] = new HttpClient(connManager);
-      HttpClientParams clientParams = new HttpClientParams();
-      // Set the default timeout in case we have a connection pool starvation to 30sec
-      clientParams.setConnectionManagerTimeout(30000);
-      myUploadDownloadClients[index].setParams(clientParams);
+      HttpConnectionManager connManager = NtlmSessions.createConnectionManager();
+      // allow parallel downloads to the same host
+      connManager.getParams().setDefaultMaxConnectionsPerHost(MAX_UPLOAD_DOWNLOAD_CONNECTIONS);
+      connManager.getParams().setMaxTotalConnections(MAX_UPLOAD_DOWNLOAD_CONNECTIONS * 2);
+      myUploadDownloadClients[index] = WebServiceHelper.createHttpClient(connManager);
     }
     return myUploadDownloadClients[index];
   }
 
+  /**
+   * Closes the upload and download connections, called when the server is removed
+   */
+  public synchronized void dispose() {
+    for (int i = 0; i < myUploadDownloadClients.length; i++) {
+      if (myUploadDownloadClients[i] != null) {
+        ((MultiThreadedHttpConnectionManager)myUploadDownloadClients[i].getHttpConnectionManager()).shutdown();
+        myUploadDownloadClients[i] = null;
+      }
+    }
+    myServices = null;
+  }
+
   @Nullable
   private static String findServicePath(ArrayOfFrameworkRegistrationEntry registrationEntries, String entryType, String... interfaceNames) {
     if (registrationEntries == null) {
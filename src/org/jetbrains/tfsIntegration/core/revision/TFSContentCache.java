@@ -0,0 +1,367 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.revision;
+
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.StreamUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.tfs.TfsFileUtil;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent content cache of item revisions, kept under the system caches folder between IDE sessions.
+ * <p/>
+ * Revisions are keyed by server GUID, item id and changeset, so that a known revision is found without a server call. The index file
+ * lists the stored revisions from least to most recently used, the least recently used ones are evicted when the total size of
+ * the cache exceeds the limit. A store returned by {@link #find} or saved with {@link TFSContentStore#saveContent} keeps its revision
+ * from being evicted until the content is loaded from it, more recently used revisions are evicted instead meanwhile.
+ * <p/>
+ * The index is written in background, once per save delay for a burst of changes. Files not listed in the index, e.g. the ones left
+ * by a crash, are deleted when the index is loaded.
+ */
+public class TFSContentCache {
+  private static final Logger LOG = Logger.getInstance(TFSContentCache.class.getName());
+
+  private static final long MAX_SIZE = Long.getLong("org.jetbrains.tfsIntegration.contentCacheSizeMb", 256) * 1024 * 1024;
+  private static final boolean COMPRESS = Boolean.parseBoolean(System.getProperty("org.jetbrains.tfsIntegration.contentCacheGzip", "true"));
+  private static final long INDEX_SAVE_DELAY_MILLIS = Long.getLong("org.jetbrains.tfsIntegration.contentCacheIndexSaveDelay", 1000);
+
+  @NonNls private static final String CACHE_DIR = "tfs-content";
+  @NonNls private static final String INDEX_FILE = "index";
+  @NonNls private static final String INDEX_VERSION = "1";
+  @NonNls private static final String GZIP_EXTENSION = ".gz";
+
+  private static TFSContentCache ourInstance;
+
+  private final File myDir;
+  private final long myMaxSize;
+  private final boolean myCompress;
+
+  private final Object myLock = new Object();
+  private final Object myWriteLock = new Object();
+  private final LinkedHashMap<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true); // access order
+  private long myTotalSize;
+  private boolean myLoaded;
+  private boolean myIndexChanged; // the index is to be written by a scheduled flush()
+
+  private static class Entry {
+    private final String myFileName;
+    private final long mySize;
+    private int myUsers; // stores the content is not loaded from yet, guarded by myLock
+
+    Entry(String fileName, long size) {
+      myFileName = fileName;
+      mySize = size;
+    }
+  }
+
+  public static synchronized TFSContentCache getInstance() {
+    if (ourInstance == null) {
+      ourInstance = new TFSContentCache(new File(PathManager.getSystemPath(), CACHE_DIR), MAX_SIZE, COMPRESS);
+      ShutDownTracker.getInstance().registerShutdownTask(ourInstance::flush);
+    }
+    return ourInstance;
+  }
+
+  public TFSContentCache(@NotNull File dir, long maxSize, boolean compress) {
+    myDir = dir;
+    myMaxSize = maxSize;
+    myCompress = compress;
+  }
+
+  @Nullable
+  public TFSContentStore find(@NotNull String serverGuid, int itemId, int revision) throws IOException {
+    String key = createKey(serverGuid, itemId, revision);
+    synchronized (myLock) {
+      ensureLoaded();
+      Entry entry = myEntries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      File file = new File(myDir, entry.myFileName);
+      if (!file.isFile()) {
+        myEntries.remove(key);
+        myTotalSize -= entry.mySize;
+        indexChanged();
+        return null;
+      }
+      entry.myUsers++;
+      return new Store(key, file, entry);
+    }
+  }
+
+  @NotNull
+  public TFSContentStore create(@NotNull String serverGuid, int itemId, int revision) throws IOException {
+    String key = createKey(serverGuid, itemId, revision);
+    synchronized (myLock) {
+      ensureLoaded();
+    }
+    return new Store(key, new File(myDir, key + (myCompress ? GZIP_EXTENSION : "")), null);
+  }
+
+  public long getTotalSize() {
+    synchronized (myLock) {
+      return myTotalSize;
+    }
+  }
+
+  private static String createKey(String serverGuid, int itemId, int revision) {
+    return serverGuid.toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9\\-]", "_") + "_" + itemId + "." + revision;
+  }
+
+  private void ensureLoaded() throws IOException {
+    if (myLoaded) {
+      return;
+    }
+    if (!myDir.isDirectory() && !myDir.mkdirs()) {
+      throw new IOException("Failed to create content cache folder " + myDir);
+    }
+    File indexFile = new File(myDir, INDEX_FILE);
+    if (indexFile.isFile()) {
+      try {
+        loadIndex(indexFile);
+      }
+      catch (IOException e) {
+        LOG.warn("Failed to load content cache index, the cache is cleared", e);
+        clear();
+      }
+    }
+    deleteUnindexedFiles();
+    myLoaded = true;
+  }
+
+  private void loadIndex(File indexFile) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8));
+    try {
+      if (!INDEX_VERSION.equals(reader.readLine())) {
+        throw new IOException("Unknown index version");
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split("\t");
+        if (parts.length != 3) {
+          throw new IOException("Malformed index line: " + line);
+        }
+        File file = new File(myDir, parts[1]);
+        if (file.isFile()) {
+          Entry entry = new Entry(parts[1], Long.parseLong(parts[2]));
+          myEntries.put(parts[0], entry);
+          myTotalSize += entry.mySize;
+        }
+      }
+    }
+    catch (NumberFormatException e) {
+      throw new IOException(e);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private void clear() {
+    myEntries.clear();
+    myTotalSize = 0;
+    File[] files = myDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        FileUtil.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Deletes the files of revisions that are not in the index and the temp files of the saves that have not completed
+   */
+  private void deleteUnindexedFiles() {
+    Set<String> indexed = new HashSet<>();
+    indexed.add(INDEX_FILE);
+    for (Entry entry : myEntries.values()) {
+      indexed.add(entry.myFileName);
+    }
+    File[] files = myDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!indexed.contains(file.getName())) {
+          FileUtil.delete(file);
+        }
+      }
+    }
+  }
+
+  // called under myLock
+  private void indexChanged() {
+    if (myIndexChanged) {
+      return;
+    }
+    myIndexChanged = true;
+    JobScheduler.getScheduler().schedule(() -> ApplicationManager.getApplication().executeOnPooledThread(this::flush),
+                                         INDEX_SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes the index if it has changed since the last write
+   */
+  public void flush() {
+    // writes go one after another, so that an older index never overwrites a newer one
+    synchronized (myWriteLock) {
+      StringBuilder index = new StringBuilder(INDEX_VERSION).append('\n');
+      synchronized (myLock) {
+        if (!myIndexChanged) {
+          return;
+        }
+        myIndexChanged = false;
+        for (Map.Entry<String, Entry> entry : myEntries.entrySet()) {
+          index.append(entry.getKey()).append('\t').append(entry.getValue().myFileName).append('\t').append(entry.getValue().mySize)
+            .append('\n');
+        }
+      }
+
+      File indexFile = new File(myDir, INDEX_FILE);
+      File tempFile = new File(myDir, INDEX_FILE + ".tmp");
+      try {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8));
+        try {
+          writer.write(index.toString());
+        }
+        finally {
+          writer.close();
+        }
+        FileUtil.rename(tempFile, indexFile);
+      }
+      catch (IOException e) {
+        LOG.warn("Failed to save content cache index", e);
+      }
+    }
+  }
+
+  @NotNull
+  private Entry added(String key, File file) {
+    synchronized (myLock) {
+      Entry previous = myEntries.remove(key);
+      if (previous != null) {
+        myTotalSize -= previous.mySize;
+        if (!previous.myFileName.equals(file.getName()) && previous.myUsers == 0) {
+          FileUtil.delete(new File(myDir, previous.myFileName));
+        }
+      }
+      Entry entry = new Entry(file.getName(), file.length());
+      entry.myUsers++; // the store that has saved the content is going to load it
+      myEntries.put(key, entry);
+      myTotalSize += entry.mySize;
+      evict();
+      indexChanged();
+      return entry;
+    }
+  }
+
+  private void released(@NotNull Entry entry) {
+    synchronized (myLock) {
+      entry.myUsers--;
+      if (myTotalSize > myMaxSize) {
+        evict();
+      }
+    }
+  }
+
+  // called under myLock
+  private void evict() {
+    Iterator<Map.Entry<String, Entry>> it = myEntries.entrySet().iterator();
+    while (myTotalSize > myMaxSize && it.hasNext()) {
+      Map.Entry<String, Entry> eldest = it.next();
+      if (eldest.getValue().myUsers > 0) {
+        continue; // the content is going to be loaded, the revision is evicted once released if the cache is still too big
+      }
+      it.remove();
+      myTotalSize -= eldest.getValue().mySize;
+      FileUtil.delete(new File(myDir, eldest.getValue().myFileName));
+      indexChanged();
+    }
+  }
+
+  private class Store implements TFSContentStore {
+    private final String myKey;
+    private final File myFile;
+    @Nullable private Entry myEntry; // not null while the revision is kept from eviction for this store
+
+    Store(String key, File file, @Nullable Entry entry) {
+      myKey = key;
+      myFile = file;
+      myEntry = entry;
+    }
+
+    public void saveContent(TfsFileUtil.ContentWriter contentWriter) throws TfsException, IOException {
+      File tempFile = FileUtil.createTempFile(myDir, myFile.getName(), ".tmp", true);
+      try {
+        OutputStream stream = new FileOutputStream(tempFile);
+        try {
+          if (myFile.getName().endsWith(GZIP_EXTENSION)) {
+            stream = new GZIPOutputStream(stream);
+          }
+          contentWriter.write(stream);
+        }
+        finally {
+          stream.close();
+        }
+        FileUtil.rename(tempFile, myFile);
+      }
+      finally {
+        FileUtil.delete(tempFile);
+      }
+      release();
+      myEntry = added(myKey, myFile);
+    }
+
+    public byte[] loadContent() throws IOException {
+      try {
+        InputStream stream = new FileInputStream(myFile);
+        try {
+          if (myFile.getName().endsWith(GZIP_EXTENSION)) {
+            stream = new GZIPInputStream(stream);
+          }
+          return StreamUtil.loadFromStream(stream);
+        }
+        finally {
+          stream.close();
+        }
+      }
+      finally {
+        release();
+      }
+    }
+
+    private void release() {
+      if (myEntry != null) {
+        released(myEntry);
+        myEntry = null;
+      }
+    }
+  }
+}
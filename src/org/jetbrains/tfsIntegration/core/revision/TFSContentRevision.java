@@ -17,7 +17,6 @@
 package org.jetbrains.tfsIntegration.core.revision;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.ByteBackedContentRevision;
@@ -204,7 +203,7 @@ public abstract class TFSContentRevision implements ByteBackedContentRevision {
     int itemId = getItemId();
     int changeset = getChangeset();
 
-    TFSContentStore store = TFSContentStoreFactory.find(myServer.getUri().toASCIIString(), itemId, changeset);
+    TFSContentStore store = TFSContentStoreFactory.find(myServer, itemId, changeset);
     if (store == null) {
       Item item = getItem();
       if (item == null) {
@@ -218,21 +217,13 @@ public abstract class TFSContentRevision implements ByteBackedContentRevision {
       final String downloadUrl = item.getDurl();
       TFSVcs.assertTrue(downloadUrl != null, "Item without download URL: " + item.getItem());
 
-      store = TFSContentStoreFactory.create(myServer.getUri().toASCIIString(), itemId, changeset);
-      final Ref<TfsException> exception = new Ref<>();
+      store = TFSContentStoreFactory.create(myServer, itemId, changeset);
+      // failed download is rethrown from saveContent(), so that incomplete content is not stored
       store.saveContent(new TfsFileUtil.ContentWriter() {
-        public void write(final OutputStream outputStream) {
-          try {
-            myServer.getVCS().downloadItem(myProject, downloadUrl, outputStream, TFSBundle.message("downloading.0", getFile().getName()));
-          }
-          catch (TfsException e) {
-            exception.set(e);
-          }
+        public void write(final OutputStream outputStream) throws TfsException {
+          myServer.getVCS().downloadItem(myProject, downloadUrl, outputStream, TFSBundle.message("downloading.0", getFile().getName()));
         }
       });
-      if (!exception.isNull()) {
-        throw exception.get();
-      }
     }
     return store.loadContent();
   }
@@ -16,20 +16,46 @@
 
 package org.jetbrains.tfsIntegration.core.revision;
 
-import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
 
 import java.io.IOException;
 
 public class TFSContentStoreFactory {
+  private static final Logger LOG = Logger.getInstance(TFSContentStoreFactory.class.getName());
 
-  public static TFSContentStore create(final String serverUri, final int itemId, final int revision) throws IOException {
-    return new TFSTmpFileStore(serverUri, itemId, revision);
+  public static TFSContentStore create(final @NotNull ServerInfo server, final int itemId, final int revision) throws IOException {
+    String serverGuid = server.getGuid();
+    if (serverGuid != null) {
+      try {
+        return TFSContentCache.getInstance().create(serverGuid, itemId, revision);
+      }
+      catch (IOException e) {
+        LOG.warn("Content cache is not available, falling back to temp files", e);
+      }
+    }
+    return new TFSTmpFileStore(server.getUri().toASCIIString(), itemId, revision);
   }
 
+  /**
+   * Finds already downloaded content of the revision, never calls the server
+   */
   @Nullable
-  public static TFSContentStore find(final String serverUri, final int itemId, final int revision) throws IOException {
-    return TFSTmpFileStore.find(serverUri, itemId, revision);
+  public static TFSContentStore find(final @NotNull ServerInfo server, final int itemId, final int revision) throws IOException {
+    String serverGuid = server.getGuid();
+    if (serverGuid != null) {
+      try {
+        TFSContentStore store = TFSContentCache.getInstance().find(serverGuid, itemId, revision);
+        if (store != null) {
+          return store;
+        }
+      }
+      catch (IOException e) {
+        LOG.warn("Content cache is not available, falling back to temp files", e);
+      }
+    }
+    return TFSTmpFileStore.find(server.getUri().toASCIIString(), itemId, revision);
   }
 }
-
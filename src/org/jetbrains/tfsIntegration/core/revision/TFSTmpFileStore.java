@@ -68,7 +68,16 @@ public class TFSTmpFileStore implements TFSContentStore {
   }
 
   public void saveContent(TfsFileUtil.ContentWriter contentWriter) throws TfsException, IOException {
-    TfsFileUtil.setFileContent(myTmpFile, contentWriter);
+    boolean saved = false;
+    try {
+      TfsFileUtil.setFileContent(myTmpFile, contentWriter);
+      saved = true;
+    }
+    finally {
+      if (!saved) {
+        FileUtil.delete(myTmpFile);
+      }
+    }
   }
 
   public byte[] loadContent() throws IOException {
@@ -16,126 +16,96 @@
 
 package org.jetbrains.tfsIntegration.core.tfs;
 
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.io.StreamUtil;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.history.VcsFileRevision;
 import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.core.TFSFileRevision;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
 
 public class AnnotationBuilder {
 
+  // number of revisions which contents are downloaded ahead of the one being diffed
+  private static final int PREFETCH_REVISIONS = Integer.getInteger("org.jetbrains.tfsIntegration.annotationPrefetch", 4);
+
+  private static final long POLL_TIMEOUT = 200; //ms
+
   public interface ContentProvider {
     String getContent(TFSFileRevision revision) throws VcsException;
   }
 
   private final String myAnnotatedContent;
   private final VcsFileRevision[] myLineRevisions;
-
-  // index of the stored record is the line number in the old revision of the file (which changes while we analyse different revisions),
-  // stored Integer is the corresponding line number in the revision which is being annotated. It is in range [0..myLineRevisions.size() - 1]
-  // and may be null if this line in old file does not appear in annotated file.
-  private final List<Integer> myLineNumbers;
+  private final LineMapping myLineMapping;
+  private int myNotAnnotatedCount;
 
   /**
    * @param revisions       sorted list containing revisions of the annotated file.
    *                        First element of the list (with zero index) must contain revision which is being annotated,
    *                        other list elements (if any) must give all file revisions which are older than the annotated one.
    * @param contentProvider delegate providing file content. {@link ContentProvider#getContent(TFSFileRevision)} method of provided object
-   *                        is called only for specified {@code revisions}
+   *                        is called only for specified {@code revisions}, possibly on pooled threads
    */
   public AnnotationBuilder(List<TFSFileRevision> revisions, ContentProvider contentProvider) throws VcsException {
     if (revisions == null || revisions.size() < 1) {
       throw new IllegalArgumentException();
     }
 
-    final Iterator<TFSFileRevision> iterator = revisions.iterator();
-    TFSFileRevision revision = iterator.next();
-    myAnnotatedContent = contentProvider.getContent(revision);
-    String[] lines = splitLines(myAnnotatedContent);
+    final RevisionContents contents = new RevisionContents(revisions, contentProvider);
+    try {
+      TFSFileRevision revision = revisions.get(0);
+      myAnnotatedContent = contents.get(0);
+      String[] lines = splitLines(myAnnotatedContent);
 
-    myLineRevisions = new VcsFileRevision[lines.length];
-    myLineNumbers = new ArrayList<>(lines.length);
-    for (int i = 0; i < lines.length; i++) {
-      myLineNumbers.add(i);
-    }
+      myLineRevisions = new VcsFileRevision[lines.length];
+      myLineMapping = new LineMapping(lines.length);
+      myNotAnnotatedCount = lines.length;
 
-    while (iterator.hasNext()) {
-      final TFSFileRevision previousRevision = iterator.next();
-      final String previousContent = contentProvider.getContent(previousRevision);
-      final String[] previousLines = splitLines(previousContent);
-      final Diff.Change change;
-      try {
-        change = Diff.buildChanges(previousLines, lines);
-      }
-      catch (FilesTooBigForDiffException e) {
-        throw new VcsException(e);
-      }
+      for (int i = 1; i < revisions.size() && myNotAnnotatedCount > 0; i++) {
+        final TFSFileRevision previousRevision = revisions.get(i);
+        final String[] previousLines = splitLines(contents.get(i));
+        final Diff.Change change;
+        try {
+          change = Diff.buildChanges(previousLines, lines);
+        }
+        catch (FilesTooBigForDiffException e) {
+          throw new VcsException(e);
+        }
 
-      annotateAll(change, revision);
-      if (allLinesAnnotated()) {
-        break;
+        annotateAll(change, revision);
+        lines = previousLines;
+        revision = previousRevision;
       }
-      lines = previousLines;
-      revision = previousRevision;
+    }
+    finally {
+      contents.dispose();
     }
 
     fillAllNotAnnotated(revisions.get(revisions.size() - 1));
   }
 
   private void annotateAll(final Diff.Change changesList, final VcsFileRevision revision) {
-    Diff.Change change = changesList;
-    while (change != null) {
-      annotate(change, revision);
-      change = change.link;
-    }
-    recalculateLineNumbers(changesList);
-  }
-
-  private void annotate(final Diff.Change change, VcsFileRevision revision) {
-    if (change.inserted > 0) {
-      for (int line = change.line1; line < change.line1 + change.inserted; line++) {
-        Integer origLine = myLineNumbers.get(line);
-        if (origLine != null) {
-          if (myLineRevisions[origLine.intValue()] == null) {
-            myLineRevisions[origLine.intValue()] = revision;
-          }
-        }
+    myLineMapping.apply(changesList, line -> {
+      if (myLineRevisions[line] == null) {
+        myLineRevisions[line] = revision;
+        myNotAnnotatedCount--;
       }
-    }
-  }
-
-  private void recalculateLineNumbers(final Diff.Change changesList) {
-    Diff.Change change = changesList;
-    int removedLinesCount = 0;
-    while (change != null) {
-      for (int i = 0; i < change.inserted; i++) {
-        myLineNumbers.remove(change.line1 - removedLinesCount);
-      }
-      removedLinesCount += change.inserted;
-      change = change.link;
-    }
-
-    change = changesList;
-    while (change != null) {
-      for (int i = 0; i < change.deleted; i++) {
-        myLineNumbers.add(change.line0, null);
-      }
-      change = change.link;
-    }
-  }
-
-  private boolean allLinesAnnotated() {
-    for (VcsFileRevision revision : myLineRevisions) {
-      if (revision == null) {
-        return false;
-      }
-    }
-    return true;
+    });
   }
 
   private void fillAllNotAnnotated(final VcsFileRevision vcsFileRevision) {
@@ -179,4 +149,205 @@ public class AnnotationBuilder {
   public VcsFileRevision[] getLineRevisions() {
     return myLineRevisions;
   }
+
+  /**
+   * Maps line numbers in an old revision of the file (which changes while we analyse different revisions) to the corresponding line numbers
+   * in the revision which is being annotated.
+   * <p/>
+   * Mapping is stored as a list of ranges: each range covers consecutive lines of the old revision that either correspond to consecutive
+   * lines of the annotated revision or do not appear in it. A diff is applied in a single pass over the ranges and the hunks.
+   */
+  public static class LineMapping {
+    private static final int NOT_MAPPED = -1;
+
+    // range i covers myLengths[i] lines starting from the end of range i - 1, first of them corresponds to line myStarts[i]
+    // of the annotated revision (or to none if NOT_MAPPED)
+    private int[] myStarts;
+    private int[] myLengths;
+    private int mySize;
+
+    public LineMapping(int lineCount) {
+      myStarts = new int[]{0};
+      myLengths = new int[]{lineCount};
+      mySize = lineCount > 0 ? 1 : 0;
+    }
+
+    /**
+     * Makes the mapping refer to the previous revision of the file.
+     *
+     * @param changesList      changes from the previous revision to the current one, ordered by line
+     * @param insertedConsumer receives the lines of the annotated revision which are inserted by the changes
+     */
+    public void apply(@Nullable Diff.Change changesList, IntConsumer insertedConsumer) {
+      Builder builder = new Builder(mySize);
+      int rangeIndex = 0; // current range
+      int rangeOffset = 0; // lines of the current range already passed
+      int line = 0; // current line of the current revision
+
+      for (Diff.Change change = changesList; ; change = change.link) {
+        // lines not changed are mapped as they were, inserted ones are reported and dropped
+        int unchangedEnd = change != null ? change.line1 : Integer.MAX_VALUE;
+        int insertedEnd = change != null ? change.line1 + change.inserted : Integer.MAX_VALUE;
+        while (rangeIndex < mySize && line < insertedEnd) {
+          int start = myStarts[rangeIndex];
+          int count = Math.min(myLengths[rangeIndex] - rangeOffset, line < unchangedEnd ? unchangedEnd - line : insertedEnd - line);
+          int first = start == NOT_MAPPED ? NOT_MAPPED : start + rangeOffset;
+          if (line < unchangedEnd) {
+            builder.add(first, count);
+          }
+          else if (first != NOT_MAPPED) {
+            for (int i = 0; i < count; i++) {
+              insertedConsumer.accept(first + i);
+            }
+          }
+          line += count;
+          rangeOffset += count;
+          if (rangeOffset == myLengths[rangeIndex]) {
+            rangeIndex++;
+            rangeOffset = 0;
+          }
+        }
+        if (change == null) {
+          break;
+        }
+        // deleted lines do not appear in the annotated revision
+        builder.add(NOT_MAPPED, change.deleted);
+      }
+
+      myStarts = builder.myStarts;
+      myLengths = builder.myLengths;
+      mySize = builder.mySize;
+    }
+
+    /**
+     * @return line number in the annotated revision, or -1 if the line does not appear in it
+     */
+    public int get(int line) {
+      int offset = 0;
+      for (int i = 0; i < mySize; i++) {
+        if (line < offset + myLengths[i]) {
+          return myStarts[i] == NOT_MAPPED ? NOT_MAPPED : myStarts[i] + line - offset;
+        }
+        offset += myLengths[i];
+      }
+      throw new IndexOutOfBoundsException(String.valueOf(line));
+    }
+
+    public int getLineCount() {
+      int result = 0;
+      for (int i = 0; i < mySize; i++) {
+        result += myLengths[i];
+      }
+      return result;
+    }
+
+    private static class Builder {
+      private int[] myStarts;
+      private int[] myLengths;
+      private int mySize;
+
+      Builder(int capacity) {
+        myStarts = new int[Math.max(capacity, 4)];
+        myLengths = new int[myStarts.length];
+      }
+
+      void add(int start, int length) {
+        if (length == 0) {
+          return;
+        }
+        if (mySize > 0) {
+          int lastStart = myStarts[mySize - 1];
+          if (lastStart == NOT_MAPPED ? start == NOT_MAPPED : start == lastStart + myLengths[mySize - 1]) {
+            myLengths[mySize - 1] += length;
+            return;
+          }
+        }
+        if (mySize == myStarts.length) {
+          myStarts = Arrays.copyOf(myStarts, mySize * 2);
+          myLengths = Arrays.copyOf(myLengths, mySize * 2);
+        }
+        myStarts[mySize] = start;
+        myLengths[mySize] = length;
+        mySize++;
+      }
+    }
+  }
+
+  /**
+   * Downloads contents of the revisions on pooled threads a few revisions ahead of the one requested
+   */
+  private static class RevisionContents {
+    private final List<TFSFileRevision> myRevisions;
+    private final ContentProvider myContentProvider;
+    private final List<Future<String>> myContents = new ArrayList<>();
+    @Nullable private final ProgressIndicator myIndicator;
+    private final ProgressIndicator myWorkersIndicator;
+
+    RevisionContents(List<TFSFileRevision> revisions, ContentProvider contentProvider) {
+      myRevisions = revisions;
+      myContentProvider = contentProvider;
+      myIndicator = ProgressManager.getInstance().getProgressIndicator();
+      myWorkersIndicator = new WorkerProgressIndicator(myIndicator);
+    }
+
+    String get(int index) throws VcsException {
+      if (PREFETCH_REVISIONS < 1) {
+        return myContentProvider.getContent(myRevisions.get(index));
+      }
+
+      // the requested revision and up to PREFETCH_REVISIONS after it
+      while (myContents.size() < Math.min(index + 1 + PREFETCH_REVISIONS, myRevisions.size())) {
+        final TFSFileRevision revision = myRevisions.get(myContents.size());
+        myContents.add(ApplicationManager.getApplication().executeOnPooledThread(() -> {
+          final Ref<String> content = new Ref<>();
+          final Ref<VcsException> exception = new Ref<>();
+          ProgressManager.getInstance().executeProcessUnderProgress(() -> {
+            try {
+              content.set(myContentProvider.getContent(revision));
+            }
+            catch (VcsException e) {
+              exception.set(e);
+            }
+          }, myWorkersIndicator);
+          if (!exception.isNull()) {
+            throw exception.get();
+          }
+          return content.get();
+        }));
+      }
+
+      final Future<String> content = myContents.get(index);
+      while (true) {
+        if (myIndicator != null) {
+          myIndicator.checkCanceled();
+        }
+        try {
+          return content.get(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+          // continue waiting
+        }
+        catch (InterruptedException e) {
+          throw new ProcessCanceledException(e);
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof VcsException) {
+            throw (VcsException)cause;
+          }
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error)cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+    }
+
+    void dispose() {
+      myWorkersIndicator.cancel();
+    }
+  }
 }
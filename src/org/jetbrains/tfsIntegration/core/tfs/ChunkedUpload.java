@@ -0,0 +1,168 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
+import org.apache.commons.httpclient.methods.multipart.FilePart;
+import org.apache.commons.httpclient.methods.multipart.Part;
+import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Uploads file content to the TFS upload handler in ranges of at most {@code chunkSize} bytes, each range in a separate POST.
+ * <p/>
+ * Every POST carries the whole file length and MD5 hash, so the hash is calculated before the first range is sent; the first range is
+ * read in the same pass, so files that fit in a single range are read only once. A range that failed with an I/O error (e.g. socket
+ * timeout) is sent again, the ranges already accepted by the server are not.
+ */
+public class ChunkedUpload {
+  private static final Logger LOG = Logger.getInstance(ChunkedUpload.class.getName());
+
+  public static final int CHUNK_SIZE = Integer.getInteger("org.jetbrains.tfsIntegration.uploadChunkSize", 8 * 1024 * 1024);
+  public static final int MAX_ATTEMPTS = Integer.getInteger("org.jetbrains.tfsIntegration.uploadChunkAttempts", 3);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  public interface ChunkPoster {
+    void post(@NotNull Part[] parts) throws IOException, TfsException;
+  }
+
+  private final int myChunkSize;
+  private final int myMaxAttempts;
+
+  public ChunkedUpload(int chunkSize, int maxAttempts) {
+    myChunkSize = Math.max(1, chunkSize);
+    myMaxAttempts = Math.max(1, maxAttempts);
+  }
+
+  public void upload(@NotNull File file, @NotNull List<Part> fields, @NotNull ChunkPoster poster, @Nullable ProgressIndicator pi)
+    throws IOException, TfsException {
+    upload(file, fields, poster, pi, null);
+  }
+
+  /**
+   * @param fields        fields sent with every range, e.g. server item and workspace
+   * @param uploadedBytes is told the length of every range accepted by the server
+   */
+  public void upload(@NotNull File file,
+                     @NotNull List<Part> fields,
+                     @NotNull ChunkPoster poster,
+                     @Nullable ProgressIndicator pi,
+                     @Nullable LongConsumer uploadedBytes) throws IOException, TfsException {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    try {
+      final long fileLength = input.length();
+      byte[] chunk = readChunk(input, 0, fileLength);
+      final String hash = Base64.getEncoder().encodeToString(calculateMD5(input, chunk, fileLength));
+
+      long offset = 0;
+      while (true) {
+        if (pi != null) {
+          pi.checkCanceled();
+        }
+        postChunk(fields, fileLength, hash, offset, chunk, poster, pi);
+        offset += chunk.length;
+        if (uploadedBytes != null) {
+          uploadedBytes.accept(chunk.length);
+        }
+        if (offset >= fileLength) {
+          break;
+        }
+        chunk = readChunk(input, offset, fileLength);
+      }
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  private byte[] readChunk(RandomAccessFile input, long offset, long fileLength) throws IOException {
+    byte[] chunk = new byte[(int)Math.min(myChunkSize, fileLength - offset)];
+    input.seek(offset);
+    input.readFully(chunk);
+    return chunk;
+  }
+
+  private static byte[] calculateMD5(RandomAccessFile input, byte[] firstChunk, long fileLength) throws IOException {
+    final MessageDigest digest;
+    try {
+      //noinspection HardCodedStringLiteral
+      digest = MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    digest.update(firstChunk);
+    if (firstChunk.length < fileLength) {
+      input.seek(firstChunk.length);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = input.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return digest.digest();
+  }
+
+  private void postChunk(List<Part> fields,
+                         long fileLength,
+                         String hash,
+                         long offset,
+                         byte[] chunk,
+                         ChunkPoster poster,
+                         @Nullable ProgressIndicator pi) throws IOException, TfsException {
+    List<Part> parts = new ArrayList<>(fields);
+    parts.add(new StringPart(VersionControlServer.LENGTH_FIELD, Long.toString(fileLength)));
+    parts.add(new StringPart(VersionControlServer.HASH_FIELD, hash));
+    String range = String.format("bytes=%d-%d/%d", offset, offset + chunk.length - 1, fileLength);
+    parts.add(new StringPart(VersionControlServer.RANGE_FIELD, range));
+    FilePart filePart =
+      new FilePart(VersionControlServer.CONTENT_FIELD, new ByteArrayPartSource(VersionControlServer.SERVER_ITEM_FIELD, chunk));
+    filePart.setCharSet(null);
+    parts.add(filePart);
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        poster.post(parts.toArray(new Part[parts.size()]));
+        return;
+      }
+      catch (IOException e) {
+        if (attempt >= myMaxAttempts) {
+          throw e;
+        }
+        LOG.info("Failed to upload range starting at " + offset + ", attempt " + attempt + " of " + myMaxAttempts, e);
+        if (pi != null) {
+          pi.checkCanceled();
+        }
+      }
+    }
+  }
+}
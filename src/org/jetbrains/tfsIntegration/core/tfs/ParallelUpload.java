@@ -0,0 +1,85 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.PendingChange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.TFSProgressUtil;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads the content of pending changes before check-in, several files at a time. Every file is hashed and sent by the worker that
+ * uploads it. A failed upload does not stop the others, so that all the files that cannot be uploaded are reported at once.
+ */
+public class ParallelUpload {
+
+  public static final int UPLOAD_THREADS = Integer.getInteger("org.jetbrains.tfsIntegration.uploadThreads", 4);
+
+  private ParallelUpload() {
+  }
+
+  /**
+   * Progress is reported by the number of bytes uploaded
+   *
+   * @return upload errors by server item of the failed pending change
+   */
+  @NotNull
+  public static Map<String, Exception> upload(@NotNull final WorkspaceInfo workspace,
+                                              @NotNull final List<PendingChange> changes,
+                                              Object projectOrComponent,
+                                              @Nullable final ProgressIndicator pi) {
+    long totalBytes = 0;
+    for (PendingChange change : changes) {
+      totalBytes += VersionControlPath.getFile(change.getLocal()).length();
+    }
+    final long total = Math.max(totalBytes, 1);
+    final AtomicLong uploaded = new AtomicLong();
+    TFSProgressUtil.setIndeterminate(pi, false);
+
+    List<Exception> results = TfsParallelUtil.map(changes, UPLOAD_THREADS, pi, change -> {
+      TFSProgressUtil.setProgressText2(pi, VersionControlPath.localPathFromTfsRepresentation(change.getLocal()));
+      try {
+        workspace.getServer().getVCS().uploadItem(workspace, change, bytes -> {
+          long done = uploaded.addAndGet(bytes);
+          if (pi != null) {
+            pi.setFraction(Math.min(1., (double)done / total));
+          }
+        }, projectOrComponent, null);
+        return null;
+      }
+      catch (TfsException | IOException e) {
+        return e;
+      }
+    });
+    TFSProgressUtil.setProgressText2(pi, "");
+
+    Map<String, Exception> failures = new LinkedHashMap<>();
+    for (int i = 0; i < changes.size(); i++) {
+      if (results.get(i) != null) {
+        failures.put(changes.get(i).getItem(), results.get(i));
+      }
+    }
+    return failures;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.vcs.FilePath;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Remembers the statuses reported to it, so that they can be reported to another visitor later, e.g. on another thread
+ */
+public class RecordingStatusVisitor implements StatusVisitor {
+
+  private interface Visit {
+    void visitBy(@NotNull StatusVisitor visitor) throws TfsException;
+  }
+
+  private final List<Visit> myVisits = new ArrayList<>();
+
+  /**
+   * Reports the statuses in the order they were reported to this visitor
+   */
+  public void replay(@NotNull StatusVisitor visitor) throws TfsException {
+    for (Visit visit : myVisits) {
+      visit.visitBy(visitor);
+    }
+  }
+
+  public void unversioned(final @NotNull FilePath localPath, final boolean localItemExists, final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.unversioned(localPath, localItemExists, serverStatus));
+  }
+
+  public void deleted(final @NotNull FilePath localPath, final boolean localItemExists, final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.deleted(localPath, localItemExists, serverStatus));
+  }
+
+  public void checkedOutForEdit(final @NotNull FilePath localPath,
+                                final boolean localItemExists,
+                                final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.checkedOutForEdit(localPath, localItemExists, serverStatus));
+  }
+
+  public void scheduledForAddition(final @NotNull FilePath localPath,
+                                   final boolean localItemExists,
+                                   final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.scheduledForAddition(localPath, localItemExists, serverStatus));
+  }
+
+  public void scheduledForDeletion(final @NotNull FilePath localPath,
+                                   final boolean localItemExists,
+                                   final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.scheduledForDeletion(localPath, localItemExists, serverStatus));
+  }
+
+  public void outOfDate(final @NotNull FilePath localPath, final boolean localItemExists, final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.outOfDate(localPath, localItemExists, serverStatus));
+  }
+
+  public void upToDate(final @NotNull FilePath localPath, final boolean localItemExists, final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.upToDate(localPath, localItemExists, serverStatus));
+  }
+
+  public void renamed(final @NotNull FilePath localPath, final boolean localItemExists, final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.renamed(localPath, localItemExists, serverStatus));
+  }
+
+  public void renamedCheckedOut(final @NotNull FilePath localPath,
+                                final boolean localItemExists,
+                                final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.renamedCheckedOut(localPath, localItemExists, serverStatus));
+  }
+
+  public void undeleted(final @NotNull FilePath localPath, final boolean localItemExists, final @NotNull ServerStatus serverStatus) {
+    myVisits.add(visitor -> visitor.undeleted(localPath, localItemExists, serverStatus));
+  }
+}
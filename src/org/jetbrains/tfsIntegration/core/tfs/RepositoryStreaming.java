@@ -0,0 +1,72 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.*;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.tfsIntegration.webservice.StreamingSoapCall;
+
+import javax.xml.namespace.QName;
+import java.rmi.RemoteException;
+
+/**
+ * Repository operations with large responses, whose results are passed to the consumer while the response is being read.
+ * See {@link StreamingSoapCall}.
+ */
+class RepositoryStreaming {
+
+  @NonNls private static final String NAMESPACE =
+    "http://schemas.microsoft.com/TeamFoundation/2005/06/VersionControl/ClientServices/03";
+
+  private RepositoryStreaming() {
+  }
+
+  /**
+   * GetResponse/GetResult/ArrayOfGetOperation/GetOperation, grouped by get request
+   *
+   * @return number of get requests answered
+   */
+  static int get(@NotNull RepositoryStub stub, @NotNull Get param, @NotNull StreamingSoapCall.ElementConsumer<GetOperation> consumer)
+    throws RemoteException {
+    return StreamingSoapCall.execute(stub, new QName(NAMESPACE, "get"), NAMESPACE + "/Get",
+                                     factory -> param.getOMElement(Get.MY_QNAME, factory), 3, GetOperation.Factory::parse, consumer);
+  }
+
+  /**
+   * QueryItemsExtendedResponse/QueryItemsExtendedResult/ArrayOfExtendedItem/ExtendedItem, grouped by item spec
+   *
+   * @return number of item specs answered
+   */
+  static int queryItemsExtended(@NotNull RepositoryStub stub,
+                                @NotNull QueryItemsExtended param,
+                                @NotNull StreamingSoapCall.ElementConsumer<ExtendedItem> consumer) throws RemoteException {
+    return StreamingSoapCall.execute(stub, new QName(NAMESPACE, "queryItemsExtended"), NAMESPACE + "/QueryItemsExtended",
+                                     factory -> param.getOMElement(QueryItemsExtended.MY_QNAME, factory), 3,
+                                     ExtendedItem.Factory::parse, consumer);
+  }
+
+  /**
+   * QueryHistoryResponse/QueryHistoryResult/Changeset, latest first
+   */
+  static void queryHistory(@NotNull RepositoryStub stub,
+                           @NotNull QueryHistory param,
+                           @NotNull StreamingSoapCall.ElementConsumer<Changeset> consumer) throws RemoteException {
+    StreamingSoapCall.execute(stub, new QName(NAMESPACE, "queryHistory"), NAMESPACE + "/QueryHistory",
+                              factory -> param.getOMElement(QueryHistory.MY_QNAME, factory), 2, Changeset.Factory::parse, consumer);
+  }
+}
@@ -117,6 +117,13 @@ public class ServerInfo {
     return myServer;
   }
 
+  /**
+   * Closes the connections to the server, called when the server is removed
+   */
+  void dispose() {
+    myBeans.dispose();
+  }
+
   public void refreshWorkspacesForCurrentOwnerAndComputer(Object projectOrComponent, boolean force) throws TfsException {
     Workspace[] newWorkspaces = getVCS().queryWorkspaces(Workstation.getComputerName(), projectOrComponent, force);
     String owner = getQualifiedUsername();
@@ -17,6 +17,7 @@
 package org.jetbrains.tfsIntegration.core.tfs;
 
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -59,15 +60,8 @@ public class StatusProvider {
       .getExtendedItemsAndPendingChanges(workspace.getName(), workspace.getOwnerName(), itemSpecs, ItemType.Any, projectOrComponent,
                                          TFSBundle.message("loading.changes"));
 
-    Map<Integer, PendingChange> pendingChanges = new HashMap<>(extendedItemsAndPendingChanges.pendingChanges.size());
-    for (PendingChange pendingChange : extendedItemsAndPendingChanges.pendingChanges) {
-      pendingChanges.put(pendingChange.getItemid(), pendingChange);
-    }
-
-    Map<Integer, ExtendedItem> extendedItems = new HashMap<>();
-    for (ExtendedItem extendedItem : extendedItemsAndPendingChanges.extendedItems) {
-      extendedItems.put(extendedItem.getItemid(), extendedItem);
-    }
+    ServerItemsIndex index =
+      new ServerItemsIndex(extendedItemsAndPendingChanges.pendingChanges, extendedItemsAndPendingChanges.extendedItems);
 
     TFSProgressUtil.checkCanceled(progress);
 
@@ -80,52 +74,144 @@ public class StatusProvider {
 
       // first process all local items given
       for (FilePath localItem : localItems) {
+        ServerItemsIndex.Match match = index.match(localItem.getIOFile());
+        final boolean localItemExists = TfsFileUtil.localItemExists(localItem);
+        if (!localItemExists && match.extendedItem != null) {
+          // if path is the original one from dirtyScope, it may have invalid 'isDirectory' status
+          localItem = VcsUtil.getFilePath(localItem.getPath(), match.extendedItem.getType() == ItemType.Folder);
+        }
+        match.getServerStatus().visitBy(localItem, localItemExists, statusVisitor);
+      }
+      TFSProgressUtil.checkCanceled(progress);
+    }
 
-        ExtendedItem extendedItem = null;
-        PendingChange pendingChange = null;
+    if (recursive) {
+      // then care about locally deleted
+      for (ServerItemsIndex.Match match : index.matchRemaining()) {
+        //noinspection ConstantConditions
+        FilePath localPath = VersionControlPath.getFilePath(match.pendingChange != null ? match.pendingChange.getLocal()
+                                                                                        : match.extendedItem.getLocal(),
+                                                            match.extendedItem.getType() == ItemType.Folder);
+        match.getServerStatus().visitBy(localPath, false, statusVisitor);
+      }
+    }
+  }
 
-        // TODO: what is faster: to search throughout pending changes or extended items?
+  /**
+   * Pending changes and extended items indexed by item id and by local path, so that local items can be matched in constant time.
+   * An extended item is matched only once: matched items are removed from the index.
+   */
+  public static class ServerItemsIndex {
+    private final Map<Integer, PendingChange> myPendingChanges;
+    private final Map<Integer, ExtendedItem> myExtendedItems;
+    private final Map<String, PendingChange> myPendingChangesByLocalPath;
+    private final Map<String, List<ExtendedItem>> myExtendedItemsByLocalPath;
 
-        for (PendingChange candidate : pendingChanges.values()) {
-          if (equals(localItem, VersionControlPath.localPathFromTfsRepresentation(candidate.getLocal()))) {
-            extendedItem = extendedItems.remove(candidate.getItemid());
-            //TFSVcs.assertTrue(extendedItem != null, "pending change without extended item for " +
-            //                                        VersionControlPath.localPathFromTfsRepresentation(candidate.getLocal()));
-            // don't assert: if there's no item, we will get 'unversioned' status as a result
-            pendingChange = candidate;
-            break;
-          }
+    public ServerItemsIndex(Collection<PendingChange> pendingChanges, Collection<ExtendedItem> extendedItems) {
+      myPendingChanges = new HashMap<>(pendingChanges.size());
+      myPendingChangesByLocalPath = new HashMap<>(pendingChanges.size());
+      for (PendingChange pendingChange : pendingChanges) {
+        myPendingChanges.put(pendingChange.getItemid(), pendingChange);
+      }
+      for (PendingChange pendingChange : myPendingChanges.values()) {
+        String key = getPathKey(pendingChange.getLocal());
+        if (key != null && !myPendingChangesByLocalPath.containsKey(key)) {
+          myPendingChangesByLocalPath.put(key, pendingChange);
         }
+      }
 
-        if (extendedItem == null) {
-          for (ExtendedItem candidate : extendedItems.values()) {
-            if (equals(localItem, VersionControlPath.localPathFromTfsRepresentation(candidate.getLocal()))) {
-              extendedItem = extendedItems.remove(candidate.getItemid());
-              break;
-            }
+      myExtendedItems = new HashMap<>(extendedItems.size());
+      myExtendedItemsByLocalPath = new HashMap<>(extendedItems.size());
+      for (ExtendedItem extendedItem : extendedItems) {
+        myExtendedItems.put(extendedItem.getItemid(), extendedItem);
+      }
+      for (ExtendedItem extendedItem : myExtendedItems.values()) {
+        String key = getPathKey(extendedItem.getLocal());
+        if (key != null) {
+          List<ExtendedItem> items = myExtendedItemsByLocalPath.get(key);
+          if (items == null) {
+            items = new ArrayList<>(1);
+            myExtendedItemsByLocalPath.put(key, items);
           }
+          items.add(extendedItem);
         }
+      }
+    }
 
-        final boolean localItemExists = TfsFileUtil.localItemExists(localItem);
-        if (!localItemExists && extendedItem != null) {
-          // if path is the original one from dirtyScope, it may have invalid 'isDirectory' status
-          localItem = VcsUtil.getFilePath(localItem.getPath(), extendedItem.getType() == ItemType.Folder);
-        }
-        determineServerStatus(pendingChange, extendedItem).visitBy(localItem, localItemExists, statusVisitor);
+    /**
+     * Finds the pending change of a local item and its extended item, by item id of the pending change or by the local path
+     */
+    @NotNull
+    public Match match(@NotNull File localPath) {
+      PendingChange pendingChange = myPendingChangesByLocalPath.get(getPathKey(localPath));
+      ExtendedItem extendedItem = null;
+      if (pendingChange != null) {
+        extendedItem = myExtendedItems.remove(pendingChange.getItemid());
+        //TFSVcs.assertTrue(extendedItem != null, "pending change without extended item for " +
+        //                                        VersionControlPath.localPathFromTfsRepresentation(candidate.getLocal()));
+        // don't assert: if there's no item, we will get 'unversioned' status as a result
       }
-      TFSProgressUtil.checkCanceled(progress);
+      if (extendedItem == null) {
+        extendedItem = removeExtendedItem(localPath);
+      }
+      return new Match(pendingChange, extendedItem);
     }
 
-    if (recursive) {
-      // then care about locally deleted
-      for (ExtendedItem extendedItem : extendedItems.values()) {
-        PendingChange pendingChange = pendingChanges.get(extendedItem.getItemid());
+    /**
+     * @return extended items not matched with local items that have a local path, i.e. the items deleted locally
+     */
+    @NotNull
+    public List<Match> matchRemaining() {
+      List<Match> result = new ArrayList<>();
+      for (ExtendedItem extendedItem : myExtendedItems.values()) {
+        PendingChange pendingChange = myPendingChanges.get(extendedItem.getItemid());
         if (pendingChange != null || extendedItem.getLocal() != null) {
-          FilePath localPath = VersionControlPath.getFilePath(pendingChange != null ? pendingChange.getLocal() : extendedItem.getLocal(),
-                                                              extendedItem.getType() == ItemType.Folder);
-          determineServerStatus(pendingChange, extendedItem).visitBy(localPath, false, statusVisitor);
+          result.add(new Match(pendingChange, extendedItem));
+        }
+      }
+      return result;
+    }
+
+    @Nullable
+    private ExtendedItem removeExtendedItem(@NotNull File localPath) {
+      List<ExtendedItem> candidates = myExtendedItemsByLocalPath.get(getPathKey(localPath));
+      if (candidates != null) {
+        for (ExtendedItem candidate : candidates) {
+          // may be already matched by item id
+          if (myExtendedItems.remove(candidate.getItemid()) != null) {
+            return candidate;
+          }
         }
       }
+      return null;
+    }
+
+    public Collection<ExtendedItem> getRemainingExtendedItems() {
+      return myExtendedItems.values();
+    }
+
+    @Nullable
+    private static String getPathKey(@Nullable String tfsLocalPath) {
+      return tfsLocalPath != null ? getPathKey(new File(VersionControlPath.localPathFromTfsRepresentation(tfsLocalPath))) : null;
+    }
+
+    private static String getPathKey(@NotNull File file) {
+      // compare regarding file system case sensitivity, the same way File.equals() does
+      return SystemInfo.isWindows ? file.getPath().toLowerCase(Locale.ENGLISH) : file.getPath();
+    }
+
+    public static class Match {
+      @Nullable public final PendingChange pendingChange;
+      @Nullable public final ExtendedItem extendedItem;
+
+      private Match(@Nullable PendingChange pendingChange, @Nullable ExtendedItem extendedItem) {
+        this.pendingChange = pendingChange;
+        this.extendedItem = extendedItem;
+      }
+
+      public ServerStatus getServerStatus() {
+        return determineServerStatus(pendingChange, extendedItem);
+      }
     }
   }
 
@@ -238,12 +324,4 @@ public class StatusProvider {
     return null;
   }
 
-  private static boolean equals(FilePath path1, String path2) {
-    if (path2 == null) {
-      return path1 == null;
-    }
-    // compare regarding file system case sensitivity
-    return path1.getIOFile().equals(new File(path2));
-  }
-
 }
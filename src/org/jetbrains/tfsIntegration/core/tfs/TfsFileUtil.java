@@ -19,6 +19,7 @@ package org.jetbrains.tfsIntegration.core.tfs;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.actions.VcsContextFactory;
 import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager;
@@ -221,6 +222,18 @@ public class TfsFileUtil {
     }
   }
 
+  /**
+   * Replaces the content of {@code destination} with {@code source} file, {@code source} file is removed
+   */
+  public static void moveFileContent(final @NotNull File source, final @NotNull File destination) throws IOException {
+    TFSVcs.assertTrue(!destination.isDirectory(), destination + " expected to be a file");
+    if (destination.exists() && !destination.canWrite()) {
+      setReadOnly(destination.getPath(), false);
+    }
+    FileUtil.createParentDirs(destination);
+    FileUtil.rename(source, destination);
+  }
+
   public static boolean hasWritableChildFile(File file) {
     File[] files = file.listFiles();
     if (files != null) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.util.ThrowableConvertor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.webservice.TfsRequestManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TfsParallelUtil {
+
+  /**
+   * Applies {@code task} to every item on pooled threads, running at most {@code maxInFlight} tasks at the same time.
+   * <p/>
+   * Results are returned in the order of {@code items}. The first failure cancels the tasks that are not started yet and is rethrown
+   * to the caller, cancelling {@code pi} cancels all the tasks. Tasks run under a {@link WorkerProgressIndicator} of {@code pi}, so
+   * that {@link ProgressManager#checkCanceled()} works inside them and the progress text they report is shown to the user. The server
+   * calls of the tasks are counted as the caller's ones, see {@link TfsRequestManager#countRequests}.
+   */
+  public static <T, R, E extends Exception> List<R> map(@NotNull List<T> items,
+                                                        int maxInFlight,
+                                                        @Nullable ProgressIndicator pi,
+                                                        @NotNull ThrowableConvertor<T, R, E> task) throws E {
+    if (items.size() < 2 || maxInFlight < 2) {
+      List<R> results = new ArrayList<>(items.size());
+      for (T item : items) {
+        if (pi != null) {
+          pi.checkCanceled();
+        }
+        results.add(task.convert(item));
+      }
+      return results;
+    }
+
+    final Object[] results = new Object[items.size()];
+    final AtomicInteger nextIndex = new AtomicInteger();
+    final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    final ProgressIndicator workersIndicator = new WorkerProgressIndicator(pi);
+    final AtomicLong requestsCounter = TfsRequestManager.getRequestsCounter();
+
+    Runnable tasks = () -> {
+      int index;
+      while (firstError.get() == null && !workersIndicator.isCanceled() && (index = nextIndex.getAndIncrement()) < items.size()) {
+        try {
+          results[index] = task.convert(items.get(index));
+        }
+        catch (ProcessCanceledException e) {
+          workersIndicator.cancel();
+        }
+        catch (Throwable e) {
+          if (firstError.compareAndSet(null, e)) {
+            workersIndicator.cancel();
+          }
+        }
+      }
+    };
+    Runnable worker = () -> ProgressManager.getInstance().executeProcessUnderProgress(
+      () -> TfsRequestManager.countRequests(requestsCounter, () -> {
+        tasks.run();
+        return null;
+      }), workersIndicator);
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < Math.min(maxInFlight, items.size()); i++) {
+      futures.add(ApplicationManager.getApplication().executeOnPooledThread(worker));
+    }
+
+    for (Future<?> future : futures) {
+      // the workers see the cancellation of pi through their indicator
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        workersIndicator.cancel();
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        firstError.compareAndSet(null, e.getCause());
+      }
+    }
+
+    Throwable error = firstError.get();
+    if (error != null) {
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException)error;
+      }
+      if (error instanceof Error) {
+        throw (Error)error;
+      }
+      //noinspection unchecked
+      throw (E)error;
+    }
+    if (pi != null) {
+      pi.checkCanceled();
+    }
+    if (workersIndicator.isCanceled()) {
+      throw new ProcessCanceledException();
+    }
+
+    //noinspection unchecked
+    return (List<R>)Arrays.asList(results);
+  }
+
+  public static <T> List<List<T>> splitInParts(List<T> items, int maxPartSize) {
+    final List<List<T>> parts = new ArrayList<>();
+    TfsUtil.consumeInParts(items, maxPartSize, parts::add);
+    return parts;
+  }
+}
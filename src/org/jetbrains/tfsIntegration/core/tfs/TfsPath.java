@@ -0,0 +1,242 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Server path with the parts {@link VersionControlPath} computes from the string on every call: the components, the parent path and the
+ * lower case form for case insensitive comparison. Paths are interned, so that {@link #isUnder} and {@link #getCommonAncestor} compare
+ * the ancestors by reference and take time proportional to the depth of the paths.
+ * <p/>
+ * A path is normalized when created: the trailing separator is dropped, except for the root folder {@code $/}.
+ */
+public final class TfsPath {
+
+  // weak values: a path is kept while it or its children are used
+  private static final ConcurrentMap<String, TfsPath> ourPaths = ContainerUtil.createConcurrentWeakValueMap();
+
+  @NotNull private final String myPath;
+  @Nullable private final TfsPath myParent;
+  @NotNull private final String[] myComponents;
+  // null if the path is in lower case already
+  @Nullable private final TfsPath myLowerCase;
+  private final int myHash;
+
+  private TfsPath(@NotNull String path, @Nullable TfsPath parent, @NotNull String name, @Nullable TfsPath lowerCase) {
+    myPath = path;
+    myParent = parent;
+    if (parent != null) {
+      myComponents = Arrays.copyOf(parent.myComponents, parent.myComponents.length + 1);
+      myComponents[parent.myComponents.length] = name;
+    }
+    else {
+      myComponents = new String[]{name};
+    }
+    myLowerCase = lowerCase;
+    myHash = path.hashCode();
+  }
+
+  @NotNull
+  public static TfsPath create(@NotNull String serverPath) {
+    TfsPath result = ourPaths.get(serverPath);
+    if (result == null) {
+      String[] components = VersionControlPath.getPathComponents(serverPath);
+      for (String component : components) {
+        result = intern(result, component);
+      }
+      if (result == null) {
+        // nothing but separators
+        result = intern(null, "");
+      }
+      if (!result.myPath.equals(serverPath)) {
+        ourPaths.putIfAbsent(serverPath, result);
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static TfsPath intern(@Nullable TfsPath parent, @NotNull String name) {
+    String path = parent == null
+                  ? name + VersionControlPath.SERVER_PATH_SEPARATOR
+                  : parent.myParent == null
+                    ? parent.myPath + name
+                    : parent.myPath + VersionControlPath.SERVER_PATH_SEPARATOR + name;
+    TfsPath result = ourPaths.get(path);
+    if (result == null) {
+      String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+      TfsPath lowerCaseParent = parent != null ? parent.toLowerCase() : null;
+      TfsPath lowerCase = lowerCaseName.equals(name) && lowerCaseParent == parent ? null : intern(lowerCaseParent, lowerCaseName);
+      result = new TfsPath(path, parent, name, lowerCase);
+      TfsPath existing = ourPaths.putIfAbsent(path, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  public String getPath() {
+    return myPath;
+  }
+
+  /**
+   * @return null for the root folder
+   */
+  @Nullable
+  public TfsPath getParent() {
+    return myParent;
+  }
+
+  @NotNull
+  public String getName() {
+    return myComponents[myComponents.length - 1];
+  }
+
+  /**
+   * @return number of components, 1 for the root folder
+   */
+  public int getDepth() {
+    return myComponents.length;
+  }
+
+  @NotNull
+  public String getComponent(int index) {
+    return myComponents[index];
+  }
+
+  @NotNull
+  public TfsPath toLowerCase() {
+    return myLowerCase != null ? myLowerCase : this;
+  }
+
+  /**
+   * @return this path or its parent that has the given depth, null if this path is not that deep
+   */
+  @Nullable
+  public TfsPath getAncestor(int depth) {
+    if (depth < 1 || depth > getDepth()) {
+      return null;
+    }
+    TfsPath result = this;
+    while (result.getDepth() > depth) {
+      result = result.myParent;
+    }
+    return result;
+  }
+
+  /**
+   * Case insensitive, same as {@link VersionControlPath#isUnder}
+   *
+   * @return true if this path is the same as {@code parent} or is under it
+   */
+  public boolean isUnder(@NotNull TfsPath parent) {
+    TfsPath ancestor = getAncestor(parent.getDepth());
+    return ancestor != null && ancestor.toLowerCase() == parent.toLowerCase();
+  }
+
+  /**
+   * Case sensitive, same as {@link VersionControlPath#getCommonAncestor}
+   *
+   * @return null if the paths have different roots
+   */
+  @Nullable
+  public TfsPath getCommonAncestor(@NotNull TfsPath path) {
+    int depth = Math.min(getDepth(), path.getDepth());
+    TfsPath ancestor1 = getAncestor(depth);
+    TfsPath ancestor2 = path.getAncestor(depth);
+    while (ancestor1 != ancestor2) {
+      //noinspection ConstantConditions
+      ancestor1 = ancestor1.myParent;
+      //noinspection ConstantConditions
+      ancestor2 = ancestor2.myParent;
+    }
+    return ancestor1;
+  }
+
+  /**
+   * Same as {@link VersionControlPath#compareParentToChild(String, boolean, String, boolean)}: at the same level files go before
+   * subfolders regardless of the names.
+   */
+  public static int compareParentToChild(@NotNull TfsPath path1, boolean isDirectory1, @NotNull TfsPath path2, boolean isDirectory2) {
+    if (path1 == path2 && isDirectory1 == isDirectory2) {
+      return 0;
+    }
+    String[] components1 = path1.myComponents;
+    String[] components2 = path2.myComponents;
+    int minLength = Math.min(components1.length, components2.length);
+
+    // first compare all the levels except last one, the common ancestor is found by reference
+    TfsPath ancestor1 = path1.getAncestor(minLength - 1);
+    TfsPath ancestor2 = path2.getAncestor(minLength - 1);
+    if (ancestor1 != ancestor2) {
+      for (int i = 0; i < minLength - 1; i++) {
+        if (!components1[i].equals(components2[i])) {
+          return components1[i].compareTo(components2[i]);
+        }
+      }
+    }
+
+    // compare last level
+    String last1 = components1[minLength - 1];
+    String last2 = components2[minLength - 1];
+    if (components1.length == components2.length) {
+      if (isDirectory1 == isDirectory2) {
+        return last1.compareTo(last2);
+      }
+      else {
+        return isDirectory1 ? 1 : -1;
+      }
+    }
+    else if (components1.length == minLength && !isDirectory1) {
+      return -1;
+    }
+    else if (components2.length == minLength && !isDirectory2) {
+      return 1;
+    }
+    else if (last1.equals(last2)) {
+      return components1.length - components2.length;
+    }
+    else {
+      return last1.compareTo(last2);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    // interned, comparing the strings is a fallback only
+    return this == o || o instanceof TfsPath && myPath.equals(((TfsPath)o).myPath);
+  }
+
+  @Override
+  public int hashCode() {
+    return myHash;
+  }
+
+  @Override
+  public String toString() {
+    return myPath;
+  }
+}
@@ -33,7 +33,7 @@ public class VersionControlPath {
   public static final String ROOT_FOLDER = "$" + SERVER_PATH_SEPARATOR;
 
   // TFS does not support unix paths at all so let's pretend we're on windows... (Teamprise does the same)
-  private static final String WINDOWS_PATH_SEPARATOR = "\\";
+  private static final char WINDOWS_PATH_SEPARATOR = '\\';
   @SuppressWarnings({"HardCodedStringLiteral"})
   private static final String FAKE_DRIVE_PREFIX = "U:";
 
@@ -41,7 +41,8 @@ public class VersionControlPath {
     if (localPath == null) {
       return null;
     }
-    localPath = localPath.replace("/", WINDOWS_PATH_SEPARATOR);
+    // replacing chars does not compile a pattern, unlike replacing strings
+    localPath = localPath.replace('/', WINDOWS_PATH_SEPARATOR);
     return SystemInfo.isWindows ? localPath : FAKE_DRIVE_PREFIX + localPath;
   }
 
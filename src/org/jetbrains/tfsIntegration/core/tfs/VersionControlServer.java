@@ -16,9 +16,11 @@
 
 package org.jetbrains.tfsIntegration.core.tfs;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.util.Pair;
@@ -26,6 +28,8 @@ import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.Consumer;
+import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import com.microsoft.schemas.teamfoundation._2005._06.services.authorization._03.Identity;
 import com.microsoft.schemas.teamfoundation._2005._06.services.authorization._03.QueryMembership;
@@ -36,7 +40,6 @@ import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservi
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.CheckinOptions;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.MergeOptions;
 import com.microsoft.schemas.teamfoundation._2005._06.workitemtracking.clientservices._03.*;
-import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
 import org.jetbrains.annotations.NonNls;
@@ -54,8 +57,10 @@ import org.jetbrains.tfsIntegration.core.tfs.version.VersionSpecBase;
 import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItem;
 import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItemField;
 import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItemSerialize;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItemUpdatePackage;
 import org.jetbrains.tfsIntegration.exceptions.HostNotApplicableException;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.exceptions.UserCancelledException;
 import org.jetbrains.tfsIntegration.webservice.TfsRequestManager;
 import org.jetbrains.tfsIntegration.webservice.WebServiceHelper;
 
@@ -65,6 +70,7 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.rmi.RemoteException;
 import java.util.*;
+import java.util.function.LongConsumer;
 
 public class VersionControlServer {
   @NonNls public static final String WORKSPACE_NAME_FIELD = "wsname";
@@ -79,6 +85,9 @@ public class VersionControlServer {
   public static final int LOCAL_CONFLICT_REASON_TARGET = 3;
 
   private static final int ITEMS_IN_GROUP = Integer.getInteger("org.jetbrains.tfsIntegration.requestGroupSize", 200);
+  private static final int PARALLEL_GROUPS = Integer.getInteger("org.jetbrains.tfsIntegration.parallelRequestGroups", 4);
+  private static final int WORK_ITEMS_PAGE_SIZE = Integer.getInteger("org.jetbrains.tfsIntegration.workItemsPageSize", 200);
+  private static final int WORK_ITEMS_UPDATE_BATCH_SIZE = Integer.getInteger("org.jetbrains.tfsIntegration.workItemsUpdateBatchSize", 50);
 
   private final URI myServerUri;
   private final String myInstanceId;
@@ -98,6 +107,20 @@ public class VersionControlServer {
     U merge(Collection<U> results);
   }
 
+  /**
+   * Marks operations whose groups of items must be sent to the server one after another, in the original order
+   * (e.g. because the result depends on the changes made by the previous group), and must not be sent again if the server could not be
+   * reached, since the changes could be already made
+   */
+  private interface NonIdempotentOperation {
+  }
+
+  private interface NonIdempotentOperationOnCollection<T, U> extends OperationOnCollection<T, U>, NonIdempotentOperation {
+  }
+
+  private interface NonIdempotentOperationOnList<T, U> extends OperationOnList<T, U>, NonIdempotentOperation {
+  }
+
   private <T, U> U execute(final OperationOnCollection<T, U> operation,
                            Object projectOrComponent,
                            final Collection<T> items, String progressTitle)
@@ -111,7 +134,7 @@ public class VersionControlServer {
       public U merge(Collection<U> results) {
         return operation.merge(results);
       }
-    }, projectOrComponent, new ArrayList<>(items), progressTitle);
+    }, projectOrComponent, new ArrayList<>(items), progressTitle, !(operation instanceof NonIdempotentOperation));
   }
 
   private <T, U> U execute(final OperationOnList<T, U> operation,
@@ -119,23 +142,51 @@ public class VersionControlServer {
                            final List<T> items,
                            final String progressTitle)
     throws TfsException {
+    return execute(operation, projectOrComponent, items, progressTitle, !(operation instanceof NonIdempotentOperation));
+  }
+
+  private <T, U> U execute(final OperationOnList<T, U> operation,
+                           final Object projectOrComponent,
+                           final List<T> items,
+                           final String progressTitle,
+                           final boolean idempotent)
+    throws TfsException {
     if (items.isEmpty()) {
       return operation.merge(Collections.emptyList());
     }
 
+    if (idempotent && items.size() > ITEMS_IN_GROUP && !ApplicationManager.getApplication().isDispatchThread()) {
+      // groups are independent, so send them simultaneously and merge the results in the original order
+      List<U> results = TfsParallelUtil.map(TfsParallelUtil.splitInParts(items, ITEMS_IN_GROUP), PARALLEL_GROUPS,
+                                            ProgressManager.getInstance().getProgressIndicator(),
+                                            ts -> executeGroup(operation, projectOrComponent, ts, progressTitle, true));
+      return operation.merge(results);
+    }
+
     final Collection<U> results = new ArrayList<>();
-    TfsUtil.consumeInParts(items, ITEMS_IN_GROUP, ts -> {
-      U result = TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<U>(progressTitle) {
-        @Override
-        public U execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
-          return operation.execute(ts, credentials, pi);
-        }
-      });
-      results.add(result);
-    });
+    TfsUtil.consumeInParts(items, ITEMS_IN_GROUP,
+                           ts -> results.add(executeGroup(operation, projectOrComponent, ts, progressTitle, idempotent)));
     return operation.merge(results);
   }
 
+  private <T, U> U executeGroup(final OperationOnList<T, U> operation,
+                                final Object projectOrComponent,
+                                final List<T> items,
+                                final String progressTitle,
+                                final boolean idempotent) throws TfsException {
+    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<U>(progressTitle) {
+      @Override
+      public U execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
+        return operation.execute(items, credentials, pi);
+      }
+
+      @Override
+      public boolean isIdempotent() {
+        return idempotent;
+      }
+    });
+  }
+
   public VersionControlServer(URI uri, @NotNull TfsBeansHolder beans, String instanceId) {
     myServerUri = uri;
     myBeans = beans;
@@ -164,28 +215,38 @@ public class VersionControlServer {
     return itemSpec;
   }
 
-  private List<Item> queryItemsById(final int[] itemIds,
-                                    final int changeSet,
-                                    final boolean generateDownloadUrl,
-                                    Object projectOrComponent,
-                                    String progressTitle)
+  /**
+   * @return items that exist at the given changeset, ids not found are skipped
+   */
+  public List<Item> queryItemsById(final Collection<Integer> itemIds,
+                                   final int changeSet,
+                                   final boolean generateDownloadUrl,
+                                   Object projectOrComponent,
+                                   String progressTitle)
     throws TfsException {
-    final ArrayOfInt arrayOfInt = new ArrayOfInt();
-    arrayOfInt.set_int(itemIds);
-    ArrayOfItem arrayOfItems =
-      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfItem>(progressTitle) {
-        @Override
-        public ArrayOfItem execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
-          final QueryItemsById param = new QueryItemsById();
-          param.setChangeSet(changeSet);
-          param.setItemIds(arrayOfInt);
-          param.setGenerateDownloadUrls(generateDownloadUrl);
-          return myBeans.getRepositoryStub(credentials, pi).queryItemsById(param).getQueryItemsByIdResult();
+    return execute(new OperationOnCollection<Integer, List<Item>>() {
+      @Override
+      public List<Item> execute(Collection<Integer> items, Credentials credentials, ProgressIndicator pi)
+        throws RemoteException, HostNotApplicableException {
+        final ArrayOfInt arrayOfInt = new ArrayOfInt();
+        arrayOfInt.set_int(ArrayUtil.toIntArray(items));
+        final QueryItemsById param = new QueryItemsById();
+        param.setChangeSet(changeSet);
+        param.setItemIds(arrayOfInt);
+        param.setGenerateDownloadUrls(generateDownloadUrl);
+        Item[] result = myBeans.getRepositoryStub(credentials, pi).queryItemsById(param).getQueryItemsByIdResult().getItem();
+        return result != null ? ContainerUtil.skipNulls(Arrays.asList(result)) : Collections.emptyList();
+      }
+
+      @Override
+      public List<Item> merge(Collection<List<Item>> results) {
+        List<Item> merged = new ArrayList<>();
+        for (List<Item> list : results) {
+          merged.addAll(list);
         }
-      });
-    ArrayList<Item> result = new ArrayList<>();
-    ContainerUtil.addAll(result, arrayOfItems.getItem());
-    return result;
+        return merged;
+      }
+    }, projectOrComponent, itemIds, progressTitle);
   }
 
   @Nullable
@@ -194,7 +255,7 @@ public class VersionControlServer {
                             final boolean generateDownloadUrl,
                             Object projectOrComponent,
                             String progressTitle) throws TfsException {
-    List<Item> items = queryItemsById(new int[]{itemId}, changeSet, generateDownloadUrl, projectOrComponent, progressTitle);
+    List<Item> items = queryItemsById(Collections.singletonList(itemId), changeSet, generateDownloadUrl, projectOrComponent, progressTitle);
     if (items.isEmpty()) {
       return null;
     }
@@ -345,7 +406,7 @@ public class VersionControlServer {
                                                            Object projectOrComponent,
                                                            String progressTitle) throws TfsException {
     OperationOnCollection<T, ResultWithFailures<GetOperation>> operation =
-      new OperationOnCollection<T, ResultWithFailures<GetOperation>>() {
+      new NonIdempotentOperationOnCollection<T, ResultWithFailures<GetOperation>>() {
         @Override
         public ResultWithFailures<GetOperation> execute(Collection<T> items, Credentials credentials, ProgressIndicator pi)
           throws RemoteException, HostNotApplicableException {
@@ -401,7 +462,7 @@ public class VersionControlServer {
 
   public Workspace loadWorkspace(final String workspaceName, final String workspaceOwner, Object projectOrComponent, boolean force)
     throws TfsException {
-    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, force, new TfsRequestManager.Request<Workspace>(
+    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, force, new TfsRequestManager.IdempotentRequest<Workspace>(
       TFSBundle.message("load.workspace.0", workspaceName)) {
       @Override
       public Workspace execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
@@ -463,11 +524,30 @@ public class VersionControlServer {
 
   public List<Item> getChildItems(final String parentServerItem, final boolean foldersOnly, Object projectOrComponent, String progressTitle)
     throws TfsException {
+    return getChildItems(Collections.singletonList(parentServerItem), foldersOnly, projectOrComponent, progressTitle)
+      .get(parentServerItem);
+  }
+
+  /**
+   * Queries the children of several folders in one request
+   *
+   * @return children by parent server path, in the order of parent paths
+   */
+  public Map<String, List<Item>> getChildItems(final Collection<String> parentServerItems,
+                                               final boolean foldersOnly,
+                                               Object projectOrComponent,
+                                               String progressTitle) throws TfsException {
+    final List<String> parents = new ArrayList<>(new LinkedHashSet<>(parentServerItems));
     final ArrayOfItemSpec itemSpecs = new ArrayOfItemSpec();
-    itemSpecs.setItemSpec(new ItemSpec[]{createItemSpec(parentServerItem, RecursionType.OneLevel)});
+    ItemSpec[] specs = new ItemSpec[parents.size()];
+    for (int i = 0; i < specs.length; i++) {
+      specs[i] = createItemSpec(parents.get(i), RecursionType.OneLevel);
+    }
+    itemSpecs.setItemSpec(specs);
 
     final ArrayOfItemSet arrayOfItemSet =
-      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfItemSet>(progressTitle) {
+      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ArrayOfItemSet>(
+        progressTitle) {
         @Override
         public ArrayOfItemSet execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
           QueryItems param = new QueryItems();
@@ -482,20 +562,25 @@ public class VersionControlServer {
         }
       });
 
-    TFSVcs.assertTrue(arrayOfItemSet.getItemSet() != null && arrayOfItemSet.getItemSet().length == 1);
-    final ItemSet itemSet = arrayOfItemSet.getItemSet()[0];
-    if (itemSet.getItems() != null && itemSet.getItems().getItem() != null) {
-      List<Item> result = new ArrayList<>(itemSet.getItems().getItem().length);
-      for (Item item : itemSet.getItems().getItem()) {
-        if (!item.getItem().equals(parentServerItem)) {
-          result.add(item);
+    TFSVcs.assertTrue(arrayOfItemSet.getItemSet() != null && arrayOfItemSet.getItemSet().length == parents.size());
+    Map<String, List<Item>> result = new LinkedHashMap<>();
+    for (int i = 0; i < parents.size(); i++) {
+      String parentServerItem = parents.get(i);
+      final ItemSet itemSet = arrayOfItemSet.getItemSet()[i];
+      if (itemSet.getItems() != null && itemSet.getItems().getItem() != null) {
+        List<Item> children = new ArrayList<>(itemSet.getItems().getItem().length);
+        for (Item item : itemSet.getItems().getItem()) {
+          if (!item.getItem().equals(parentServerItem)) {
+            children.add(item);
+          }
         }
+        result.put(parentServerItem, children);
+      }
+      else {
+        result.put(parentServerItem, Collections.emptyList());
       }
-      return result;
-    }
-    else {
-      return Collections.emptyList();
     }
+    return result;
   }
 
   public static class ExtendedItemsAndPendingChanges {
@@ -529,19 +614,12 @@ public class VersionControlServer {
           param.setItems(arrayOfItemSpec);
           param.setDeletedState(DeletedState.NonDeleted);
           param.setItemType(itemType);
-          ArrayOfExtendedItem[] extendedItemsArray =
-            myBeans.getRepositoryStub(credentials, pi).queryItemsExtended(param).getQueryItemsExtendedResult().getArrayOfExtendedItem();
-
-          TFSVcs.assertTrue(extendedItemsArray != null && extendedItemsArray.length == items.size());
-
           List<ExtendedItem> extendedItems = new ArrayList<>();
-          //noinspection ConstantConditions
-          for (ArrayOfExtendedItem extendedItem : extendedItemsArray) {
-            if (extendedItem.getExtendedItem() != null) {
-              // no need to chooseExtendedItem() since DeletedState.NonDeleted specified
-              ContainerUtil.addAll(extendedItems, extendedItem.getExtendedItem());
-            }
-          }
+          // no need to chooseExtendedItem() since DeletedState.NonDeleted specified
+          int results = RepositoryStreaming
+            .queryItemsExtended(myBeans.getRepositoryStub(credentials, pi), param, (index, extendedItem) -> extendedItems.add(extendedItem));
+
+          TFSVcs.assertTrue(results == items.size());
 
           QueryPendingSets param2 = new QueryPendingSets();
           param2.setLocalWorkspaceName(workspaceName);
@@ -588,58 +666,39 @@ public class VersionControlServer {
     final ArrayOfItemSpec arrayOfItemSpec = new ArrayOfItemSpec();
     arrayOfItemSpec.setItemSpec(new ItemSpec[]{createItemSpec(localPath, recursionType)});
 
-    ArrayOfExtendedItem[] extendedItems =
-      TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfExtendedItem[]>(progressTitle) {
-          @Override
-          public ArrayOfExtendedItem[] execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
-            final QueryItemsExtended param = new QueryItemsExtended();
-            param.setDeletedState(deletedState);
-            param.setItems(arrayOfItemSpec);
-            param.setItemType(ItemType.Any);
-            param.setWorkspaceName(workspaceName);
-            param.setWorkspaceOwner(ownerName);
-            return myBeans.getRepositoryStub(credentials, pi).queryItemsExtended(param).getQueryItemsExtendedResult()
-              .getArrayOfExtendedItem();
-          }
-        });
-
-    TFSVcs.assertTrue(extendedItems != null && extendedItems.length == 1);
-    //noinspection ConstantConditions
-    ExtendedItem[] resultItems = extendedItems[0].getExtendedItem();
-    if (resultItems != null) {
-      return chooseExtendedItem(resultItems);
-    }
-
-    return null;
-  }
-
-  private static ExtendedItem chooseExtendedItem(ExtendedItem[] extendedItems) {
-    // server may report more than one extended item for given local name if item with same name was created and deleted several times
-
-    TFSVcs.assertTrue(extendedItems.length > 0);
-    if (extendedItems.length > 1) {
-      // choose item that has non-null 'local' field...
-      for (ExtendedItem candidate : extendedItems) {
-        if (candidate.getLocal() != null) {
-          return candidate;
+    return TfsRequestManager
+      .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ExtendedItem>(progressTitle) {
+        @Override
+        public ExtendedItem execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
+          final QueryItemsExtended param = new QueryItemsExtended();
+          param.setDeletedState(deletedState);
+          param.setItems(arrayOfItemSpec);
+          param.setItemType(ItemType.Any);
+          param.setWorkspaceName(workspaceName);
+          param.setWorkspaceOwner(ownerName);
+          Ref<ExtendedItem> result = new Ref<>();
+          int results = RepositoryStreaming.queryItemsExtended(myBeans.getRepositoryStub(credentials, pi), param, (index, item) -> {
+            result.set(chooseExtendedItem(result.get(), item));
+            return true;
+          });
+          TFSVcs.assertTrue(results == 1);
+          return result.get();
         }
-      }
+      });
+  }
 
-      //  ...or latest one if not found
-      ExtendedItem latest = extendedItems[0];
-      for (ExtendedItem candidate : extendedItems) {
-        if (candidate.getLocal() != null) {
-          if (candidate.getLatest() > latest.getLatest()) {
-            latest = candidate;
-          }
-        }
-      }
-      return latest;
-    }
-    else {
-      return extendedItems[0];
+  /**
+   * Server may report more than one extended item for given local name if item with same name was created and deleted several times.
+   * The first item that has non-null 'local' field is chosen, or the first one if there is no such item.
+   *
+   * @param chosen the item chosen among the previous candidates, if any
+   */
+  @NotNull
+  private static ExtendedItem chooseExtendedItem(@Nullable ExtendedItem chosen, @NotNull ExtendedItem candidate) {
+    if (chosen == null || chosen.getLocal() == null && candidate.getLocal() != null) {
+      return candidate;
     }
+    return chosen;
   }
 
   public Map<FilePath, ExtendedItem> getExtendedItems(final String workspaceName,
@@ -663,20 +722,16 @@ public class VersionControlServer {
         param.setItems(arrayOfItemSpec);
         param.setDeletedState(deletedState);
         param.setItemType(ItemType.Any);
-        ArrayOfExtendedItem[] extendedItems =
-          myBeans.getRepositoryStub(credentials, pi).queryItemsExtended(param).getQueryItemsExtendedResult().getArrayOfExtendedItem();
+        ExtendedItem[] chosenItems = new ExtendedItem[items.size()];
+        int results = RepositoryStreaming.queryItemsExtended(myBeans.getRepositoryStub(credentials, pi), param, (index, item) -> {
+          chosenItems[index] = chooseExtendedItem(chosenItems[index], item);
+          return true;
+        });
 
-        TFSVcs.assertTrue(extendedItems != null && extendedItems.length == items.size());
+        TFSVcs.assertTrue(results == items.size());
         Map<FilePath, ExtendedItem> result = new HashMap<>();
-
-        //noinspection ConstantConditions
-        for (int i = 0; i < extendedItems.length; i++) {
-          ExtendedItem[] resultItems = extendedItems[i].getExtendedItem();
-          ExtendedItem item = null;
-          if (resultItems != null) {
-            item = chooseExtendedItem(resultItems);
-          }
-          result.put(items.get(i), item);
+        for (int i = 0; i < chosenItems.length; i++) {
+          result.put(items.get(i), chosenItems[i]);
         }
         return result;
       }
@@ -758,20 +813,47 @@ public class VersionControlServer {
                                       final VersionSpec versionTo,
                                       int maxCount,
                                       Object projectOrComponent, String progressTitle) throws TfsException {
-    // TODO: slot mode
+    List<Changeset> allChangeSets = new ArrayList<>();
+    queryHistory(workspaceName, workspaceOwner, itemSpec, user, itemVersion, versionFrom, versionTo, maxCount, projectOrComponent,
+                 progressTitle, false, changeset -> allChangeSets.add(changeset));
+    return allChangeSets;
+  }
+
+  /**
+   * Passes the changesets to the processor, latest first, while they are being read from the server.
+   *
+   * @param slotMode  if true, history of the item currently at the path is not followed through renames and previous items at the path
+   *                  are included
+   * @param processor is called on the thread that executes the request, once per changeset even if the request is retried; returns
+   *                  false to stop the query
+   */
+  public void queryHistory(final String workspaceName,
+                           final String workspaceOwner,
+                           final ItemSpec itemSpec,
+                           final String user,
+                           final VersionSpec itemVersion,
+                           final VersionSpec versionFrom,
+                           final VersionSpec versionTo,
+                           int maxCount,
+                           Object projectOrComponent, String progressTitle,
+                           final boolean slotMode,
+                           final Processor<Changeset> processor) throws TfsException {
     // TODO: include allChangeSets
 
-    List<Changeset> allChangeSets = new ArrayList<>();
     int total = maxCount > 0 ? maxCount : Integer.MAX_VALUE;
     final Ref<VersionSpec> versionToCurrent = new Ref<>(versionTo);
+    final Ref<Changeset> lastChangeSet = new Ref<>();
+    final Ref<Boolean> stopped = new Ref<>(false);
+    // a retried request reads the changesets passed to the processor by the failed attempt again
+    final Set<Integer> processed = new HashSet<>();
 
     while (total > 0) {
       final int batchMax = Math.min(256, total);
 
-      Changeset[] currentChangeSets =
-        TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<Changeset[]>(progressTitle) {
+      int batchSize =
+        TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<Integer>(progressTitle) {
           @Override
-          public Changeset[] execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
+          public Integer execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
             QueryHistory param = new QueryHistory();
             param.setWorkspaceName(workspaceName);
             param.setWorkspaceOwner(workspaceOwner);
@@ -783,30 +865,33 @@ public class VersionControlServer {
             param.setMaxCount(batchMax);
             param.setIncludeFiles(true);
             param.setGenerateDownloadUrls(false);
-            param.setSlotMode(false);
-            return myBeans.getRepositoryStub(credentials, pi).queryHistory(param).getQueryHistoryResult().getChangeset();
+            param.setSlotMode(slotMode);
+            int[] count = new int[1];
+            RepositoryStreaming.queryHistory(myBeans.getRepositoryStub(credentials, pi), param, (index, changeset) -> {
+              count[0]++;
+              lastChangeSet.set(changeset);
+              if (processed.add(changeset.getCset()) && !processor.process(changeset)) {
+                stopped.set(true);
+                return false;
+              }
+              return true;
+            });
+            return count[0];
           }
         });
 
-      if (currentChangeSets != null) {
-        ContainerUtil.addAll(allChangeSets, currentChangeSets);
-      }
-
-
-      if (currentChangeSets == null || currentChangeSets.length < batchMax) {
+      if (stopped.get() || batchSize < batchMax) {
         break;
       }
 
-      total -= currentChangeSets.length;
-      Changeset lastChangeSet = currentChangeSets[currentChangeSets.length - 1];
-      versionToCurrent.set(new ChangesetVersionSpec(lastChangeSet.getCset()));
+      total -= batchSize;
+      versionToCurrent.set(new ChangesetVersionSpec(lastChangeSet.get().getCset()));
     }
-    return allChangeSets;
   }
 
   public Workspace[] queryWorkspaces(final String computer, Object projectOrComponent, boolean force) throws TfsException {
     Workspace[] workspaces =
-      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, force, new TfsRequestManager.Request<Workspace[]>(
+      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, force, new TfsRequestManager.IdempotentRequest<Workspace[]>(
         TFSBundle.message("reload.workspaces")) {
         @Override
         public Workspace[] execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
@@ -880,7 +965,7 @@ public class VersionControlServer {
                                                              Collection<String> serverPaths,
                                                              Object projectOrComponent, String progressTitle) throws TfsException {
     OperationOnCollection<String, ResultWithFailures<GetOperation>> operation =
-      new OperationOnCollection<String, ResultWithFailures<GetOperation>>() {
+      new NonIdempotentOperationOnCollection<String, ResultWithFailures<GetOperation>>() {
         @Override
         public ResultWithFailures<GetOperation> execute(Collection<String> items, Credentials credentials, ProgressIndicator pi)
           throws RemoteException, HostNotApplicableException {
@@ -934,15 +1019,10 @@ public class VersionControlServer {
         param.setRequests(arrayOfGetRequests);
         param.setForce(true);
         param.setNoGet(false);
-        ArrayOfArrayOfGetOperation response = myBeans.getRepositoryStub(credentials, pi).get(param).getGetResult();
-        TFSVcs.assertTrue(response.getArrayOfGetOperation() != null && response.getArrayOfGetOperation().length >= items.size());
-
         List<GetOperation> results = new ArrayList<>();
-        for (ArrayOfGetOperation arrayOfGetOperation : response.getArrayOfGetOperation()) {
-          if (arrayOfGetOperation.getGetOperation() != null) {
-            ContainerUtil.addAll(results, arrayOfGetOperation.getGetOperation());
-          }
-        }
+        int responses =
+          RepositoryStreaming.get(myBeans.getRepositoryStub(credentials, pi), param, (index, operation) -> results.add(operation));
+        TFSVcs.assertTrue(responses >= items.size());
         return results;
       }
 
@@ -1070,27 +1150,31 @@ public class VersionControlServer {
 
   public void uploadItem(final WorkspaceInfo workspaceInfo, final PendingChange change, Object projectOrComponent, String progressTitle)
     throws TfsException, IOException {
+    uploadItem(workspaceInfo, change, null, projectOrComponent, progressTitle);
+  }
+
+  /**
+   * @param uploadedBytes is told the number of bytes accepted by the server as the upload goes
+   */
+  public void uploadItem(final WorkspaceInfo workspaceInfo,
+                         final PendingChange change,
+                         @Nullable final LongConsumer uploadedBytes,
+                         Object projectOrComponent,
+                         String progressTitle) throws TfsException, IOException {
     TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<Void>(progressTitle) {
       @Override
       public Void execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
         String uploadUrl = TfsUtil.appendPath(myServerUri, myBeans.getUploadUrl(credentials, pi));
         File file = VersionControlPath.getFile(change.getLocal());
-        long fileLength = file.length();
-
-        ArrayList<Part> parts = new ArrayList<>();
-        parts.add(new StringPart(SERVER_ITEM_FIELD, change.getItem(), "UTF-8"));
-        parts.add(new StringPart(WORKSPACE_NAME_FIELD, workspaceInfo.getName()));
-        parts.add(new StringPart(WORKSPACE_OWNER_FIELD, workspaceInfo.getOwnerName()));
-        parts.add(new StringPart(LENGTH_FIELD, Long.toString(fileLength)));
-        final byte[] hash = TfsFileUtil.calculateMD5(file);
-        parts.add(new StringPart(HASH_FIELD, Base64.getEncoder().encodeToString(hash)));
-        // TODO: handle files too large to fit in a single POST
-        parts.add(new StringPart(RANGE_FIELD, String.format("bytes=0-%d/%d", fileLength - 1, fileLength)));
-        FilePart filePart = new FilePart(CONTENT_FIELD, SERVER_ITEM_FIELD, file);
-        parts.add(filePart);
-        filePart.setCharSet(null);
-        WebServiceHelper
-          .httpPost(uploadUrl, parts.toArray(new Part[parts.size()]), null, credentials, serverUri, myBeans.getUploadDownloadClient(false));
+
+        ArrayList<Part> fields = new ArrayList<>();
+        fields.add(new StringPart(SERVER_ITEM_FIELD, change.getItem(), "UTF-8"));
+        fields.add(new StringPart(WORKSPACE_NAME_FIELD, workspaceInfo.getName()));
+        fields.add(new StringPart(WORKSPACE_OWNER_FIELD, workspaceInfo.getOwnerName()));
+        new ChunkedUpload(ChunkedUpload.CHUNK_SIZE, ChunkedUpload.MAX_ATTEMPTS).upload(
+          file, fields,
+          parts -> WebServiceHelper.httpPost(uploadUrl, parts, null, credentials, serverUri, myBeans.getUploadDownloadClient(false)), pi,
+          uploadedBytes);
         return null;
       }
     });
@@ -1204,7 +1288,7 @@ public class VersionControlServer {
     checkinOptions.setCheckinOptions_type0(new CheckinOptions_type0[]{CheckinOptions_type0.ValidateCheckinOwner}); // TODO checkin options
 
     OperationOnCollection<String, ResultWithFailures<CheckinResult>> operation =
-      new OperationOnCollection<String, ResultWithFailures<CheckinResult>>() {
+      new NonIdempotentOperationOnCollection<String, ResultWithFailures<CheckinResult>>() {
         @Override
         public ResultWithFailures<CheckinResult> execute(Collection<String> items, Credentials credentials, ProgressIndicator pi)
           throws RemoteException, HostNotApplicableException {
@@ -1296,7 +1380,8 @@ public class VersionControlServer {
                                                                      String progressTitle) throws TfsException {
     final ArrayOfCheckinNoteFieldDefinition result =
       TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfCheckinNoteFieldDefinition>(progressTitle) {
+        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ArrayOfCheckinNoteFieldDefinition>(
+          progressTitle) {
           @Override
           public ArrayOfCheckinNoteFieldDefinition execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi)
             throws Exception {
@@ -1319,7 +1404,8 @@ public class VersionControlServer {
                                                  String progressTitle,
                                                  boolean force) throws TfsException {
     final ArrayOfAnnotation arrayOfAnnotation =
-      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, force, new TfsRequestManager.Request<ArrayOfAnnotation>(progressTitle) {
+      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, force, new TfsRequestManager.IdempotentRequest<ArrayOfAnnotation>(
+        progressTitle) {
         @Override
         public ArrayOfAnnotation execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
           QueryAnnotation param = new QueryAnnotation();
@@ -1389,7 +1475,7 @@ public class VersionControlServer {
     arrayOfItemSpec.setItemSpec(new ItemSpec[]{createItemSpec(itemServerPath, RecursionType.None)});
 
     ItemSet[] items =
-      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ItemSet[]>(progressTitle) {
+      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ItemSet[]>(progressTitle) {
         @Override
         public ItemSet[] execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
           QueryItems param = new QueryItems();
@@ -1420,7 +1506,8 @@ public class VersionControlServer {
     itemSpecs.setItemSpec(new ItemSpec[]{itemSpec});
 
     final ArrayOfItemSet arrayOfItemSet =
-      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfItemSet>(progressTitle) {
+      TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ArrayOfItemSet>(
+        progressTitle) {
         @Override
         public ArrayOfItemSet execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
           QueryItems param = new QueryItems();
@@ -1450,7 +1537,8 @@ public class VersionControlServer {
 
 
   public Changeset queryChangeset(final int changesetId, Object projectOrComponent, String progressTitle) throws TfsException {
-    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<Changeset>(progressTitle) {
+    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<Changeset>(
+      progressTitle) {
       @Override
       public Changeset execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
         QueryChangeset param = new QueryChangeset();
@@ -1472,7 +1560,7 @@ public class VersionControlServer {
                                                Object projectOrComponent, String progressTitle) throws TfsException {
     VersionControlLabel[] labels =
       TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<VersionControlLabel[]>(progressTitle) {
+        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<VersionControlLabel[]>(progressTitle) {
           @Override
           public VersionControlLabel[] execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
             QueryLabels param = new QueryLabels();
@@ -1508,7 +1596,7 @@ public class VersionControlServer {
     versionControlLabel.setDate(TfsUtil.getZeroCalendar());
 
     OperationOnCollection<LabelItemSpec, ResultWithFailures<LabelResult>> operation =
-      new OperationOnCollection<LabelItemSpec, ResultWithFailures<LabelResult>>() {
+      new NonIdempotentOperationOnCollection<LabelItemSpec, ResultWithFailures<LabelResult>>() {
         @Override
         public ResultWithFailures<LabelResult> execute(Collection<LabelItemSpec> items, Credentials credentials, ProgressIndicator pi)
           throws RemoteException, HostNotApplicableException {
@@ -1546,7 +1634,8 @@ public class VersionControlServer {
 
     ArrayOfArrayOfBranchRelative result =
       TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfArrayOfBranchRelative>(progressTitle) {
+        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ArrayOfArrayOfBranchRelative>(
+          progressTitle) {
           @Override
           public ArrayOfArrayOfBranchRelative execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi)
             throws Exception {
@@ -1574,7 +1663,7 @@ public class VersionControlServer {
 
     final ArrayOfMergeCandidate result =
       TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<ArrayOfMergeCandidate>(progressTitle) {
+        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<ArrayOfMergeCandidate>(progressTitle) {
           @Override
           public ArrayOfMergeCandidate execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
             QueryMergeCandidates param = new QueryMergeCandidates();
@@ -1603,7 +1692,8 @@ public class VersionControlServer {
     final String factorValue = qualifiedUsername;
     final QueryMembership queryMembership = QueryMembership.None;
 
-    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<Identity>(progressTitle) {
+    return TfsRequestManager.executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<Identity>(
+      progressTitle) {
       @Override
       public Identity execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
         ReadIdentity param = new ReadIdentity();
@@ -1627,12 +1717,22 @@ public class VersionControlServer {
   }
 
   public List<WorkItem> queryWorkItems(Query_type0E query, Object projectOrComponent, String progressTitle) throws TfsException {
+    return queryWorkItems(query, null, projectOrComponent, progressTitle);
+  }
+
+  /**
+   * @param firstPageConsumer is given the first page of work items before the rest is loaded, if there are several pages
+   */
+  public List<WorkItem> queryWorkItems(Query_type0E query,
+                                       @Nullable Consumer<List<WorkItem>> firstPageConsumer,
+                                       Object projectOrComponent,
+                                       String progressTitle) throws TfsException {
     final PsQuery_type1 psQuery_type1 = new PsQuery_type1();
     psQuery_type1.setQuery(query);
 
     QueryWorkitemsResponse queryWorkitemsResponse =
       TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<QueryWorkitemsResponse>(progressTitle) {
+        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<QueryWorkitemsResponse>(progressTitle) {
           @Override
           public QueryWorkitemsResponse execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi) throws Exception {
             QueryWorkitems param = new QueryWorkitems();
@@ -1643,7 +1743,15 @@ public class VersionControlServer {
 
     final List<Integer> ids = parseWorkItemsIds(queryWorkitemsResponse);
     Collections.sort(ids);
-    return pageWorkitemsByIds(ids, projectOrComponent, progressTitle);
+    List<WorkItem> result = new ArrayList<>(ids.size());
+    for (List<Integer> page : TfsParallelUtil.splitInParts(ids, WORK_ITEMS_PAGE_SIZE)) {
+      result.addAll(pageWorkitemsByIds(page, projectOrComponent, progressTitle));
+      if (firstPageConsumer != null && result.size() < ids.size()) {
+        firstPageConsumer.consume(Collections.unmodifiableList(new ArrayList<>(result)));
+        firstPageConsumer = null;
+      }
+    }
+    return result;
   }
 
   private static List<Integer> parseWorkItemsIds(final QueryWorkitemsResponse queryWorkitemsResponse) {
@@ -1698,7 +1806,8 @@ public class VersionControlServer {
 
     PageWorkitemsByIdsResponse pageWorkitemsByIdsResponse =
       TfsRequestManager
-        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.Request<PageWorkitemsByIdsResponse>(progressTitle) {
+        .executeRequest(myServerUri, projectOrComponent, new TfsRequestManager.IdempotentRequest<PageWorkitemsByIdsResponse>(
+          progressTitle) {
           @Override
           public PageWorkitemsByIdsResponse execute(Credentials credentials, URI serverUri, @Nullable ProgressIndicator pi)
             throws Exception {
@@ -1729,20 +1838,59 @@ public class VersionControlServer {
     }
 
     String identity = readIdentity(workspaceOwnerName, projectOrComponent, progressTitle).getDisplayName();
+    List<UpdateWorkItem_type0> updates = new ArrayList<>();
     for (WorkItem workItem : workItems.keySet()) {
       CheckinWorkItemAction checkinWorkItemAction = workItems.get(workItem);
       if (checkinWorkItemAction != CheckinWorkItemAction.None) {
-        updateWorkItem(workItem, checkinWorkItemAction, changeSet, identity, projectOrComponent, progressTitle);
+        updates.add(createWorkItemUpdate(workItem, checkinWorkItemAction, changeSet, identity));
+      }
+    }
+    TfsException firstError = null;
+    for (List<UpdateWorkItem_type0> batch : TfsParallelUtil.splitInParts(updates, WORK_ITEMS_UPDATE_BATCH_SIZE)) {
+      try {
+        updateWorkItems(batch, projectOrComponent, progressTitle);
+      }
+      catch (UserCancelledException e) {
+        throw e;
+      }
+      catch (TfsException e) {
+        if (batch.size() == 1) {
+          firstError = addError(firstError, e);
+          continue;
+        }
+        // the whole package is rejected if one of the work items can't be updated, update the others one by one
+        LOG.info("Failed to update " + batch.size() + " work items at once, updating them separately", e);
+        for (UpdateWorkItem_type0 update : batch) {
+          try {
+            updateWorkItems(Collections.singletonList(update), projectOrComponent, progressTitle);
+          }
+          catch (UserCancelledException e1) {
+            throw e1;
+          }
+          catch (TfsException e1) {
+            firstError = addError(firstError, e1);
+          }
+        }
       }
     }
+    if (firstError != null) {
+      throw firstError;
+    }
   }
 
-  private void updateWorkItem(WorkItem workItem,
-                              CheckinWorkItemAction action,
-                              int changeSet,
-                              String identity,
-                              Object projectOrComponent,
-                              String progressTitle) throws TfsException {
+  @NotNull
+  private static TfsException addError(@Nullable TfsException firstError, @NotNull TfsException error) {
+    if (firstError == null) {
+      return error;
+    }
+    firstError.addSuppressed(error);
+    return firstError;
+  }
+
+  private static UpdateWorkItem_type0 createWorkItemUpdate(WorkItem workItem,
+                                                          CheckinWorkItemAction action,
+                                                          int changeSet,
+                                                          String identity) {
     UpdateWorkItem_type0 updateWorkItem_type0 = new UpdateWorkItem_type0();
     updateWorkItem_type0.setWorkItemID(workItem.getId());
     updateWorkItem_type0.setRevision(workItem.getRevision());
@@ -1752,10 +1900,15 @@ public class VersionControlServer {
       .setColumns(WorkItemSerialize.generateColumnsForUpdateRequest(workItem.getType(), workItem.getReason(), action, identity));
     updateWorkItem_type0.setInsertText(WorkItemSerialize.generateInsertTextForUpdateRequest(action, changeSet));
     updateWorkItem_type0.setInsertResourceLink(WorkItemSerialize.generateInsertResourceLinkforUpdateRequest(changeSet));
+    return updateWorkItem_type0;
+  }
 
-    Package_type0 package_type00 = new Package_type0();
+  private void updateWorkItems(List<UpdateWorkItem_type0> updates, Object projectOrComponent, String progressTitle) throws TfsException {
+    WorkItemUpdatePackage package_type00 = new WorkItemUpdatePackage();
     package_type00.setXmlns("");
-    package_type00.setUpdateWorkItem(updateWorkItem_type0);
+    for (UpdateWorkItem_type0 update : updates) {
+      package_type00.addUpdateWorkItem(update);
+    }
 
     final Package_type0E package_type_0 = new Package_type0E();
     package_type_0.setPackage(package_type00);
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.ide.util.DelegatingProgressIndicator;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Indicator for the tasks run on pooled threads on behalf of the caller. The text and the modality are the ones of the caller's
+ * indicator, cancelling the caller's indicator cancels the tasks, while {@link #cancel()} stops the tasks only.
+ * <p/>
+ * Several tasks report to the caller's indicator at the same time, so the state stack and the fraction are left for the caller.
+ */
+public class WorkerProgressIndicator extends DelegatingProgressIndicator {
+
+  private volatile boolean myCanceled;
+
+  public WorkerProgressIndicator(@Nullable ProgressIndicator callerIndicator) {
+    super(callerIndicator != null ? callerIndicator : new EmptyProgressIndicator());
+  }
+
+  @Override
+  public void cancel() {
+    myCanceled = true;
+  }
+
+  @Override
+  public boolean isCanceled() {
+    return myCanceled || super.isCanceled();
+  }
+
+  @Override
+  public void checkCanceled() {
+    if (isCanceled()) {
+      throw new ProcessCanceledException();
+    }
+  }
+
+  @Override
+  public void setFraction(double fraction) {
+  }
+
+  @Override
+  public void setIndeterminate(boolean indeterminate) {
+  }
+
+  @Override
+  public void pushState() {
+  }
+
+  @Override
+  public void popState() {
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.FilePath;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Prefix trees of workspace mappings by local and by server path, so that finding the nearest parent mapping takes a single descent
+ * over the path components instead of a scan over all the mappings.
+ * <p/>
+ * Both cloaked and active mappings are stored in the same trees, so the mapping found by a descent already tells whether the path
+ * is cloaked. Candidates found by a descent are double-checked with the same predicates the linear search used to have.
+ */
+class WorkingFoldersIndex {
+
+  private static class Node {
+    private final Map<String, Node> myChildren = new HashMap<>();
+    private final List<Integer> myMappings = new ArrayList<>(1); // indices in the mappings list, ascending
+
+    Node getOrCreateChild(String component) {
+      Node child = myChildren.get(component);
+      if (child == null) {
+        child = new Node();
+        myChildren.put(component, child);
+      }
+      return child;
+    }
+  }
+
+  private final List<WorkingFolderInfo> myMappings;
+  private final Node myLocalRoot = new Node();
+  private final Node myServerRoot = new Node();
+
+  WorkingFoldersIndex(@NotNull List<WorkingFolderInfo> mappings) {
+    myMappings = new ArrayList<>(mappings);
+    for (int i = 0; i < myMappings.size(); i++) {
+      WorkingFolderInfo mapping = myMappings.get(i);
+      insert(myLocalRoot, getLocalPathComponents(mapping.getLocalPath()), i);
+      if (!StringUtil.isEmpty(mapping.getServerPath())) {
+        insert(myServerRoot, getServerPathComponents(mapping.getServerPath()), i);
+      }
+    }
+  }
+
+  /**
+   * @return the deepest mapping with a server path that is a parent of (or equal to) the local path, last one if there are duplicates
+   */
+  @Nullable
+  WorkingFolderInfo findNearestMappingByLocalPath(@NotNull FilePath localPath) {
+    Condition<WorkingFolderInfo> isParent = m -> m.getServerPathByLocalPath(localPath) != null;
+    Node node = myLocalRoot;
+    WorkingFolderInfo result = findLast(node, isParent); // mapping of the file system root
+    for (String component : getLocalPathComponents(localPath)) {
+      node = node.myChildren.get(component);
+      if (node == null) {
+        break;
+      }
+      WorkingFolderInfo mapping = findLast(node, isParent);
+      if (mapping != null) {
+        result = mapping;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the deepest mapping which server path is a parent of (or equal to) the given one, last one if there are duplicates
+   */
+  @Nullable
+  WorkingFolderInfo findNearestMappingByServerPath(@NotNull String serverPath, boolean isDirectory) {
+    Condition<WorkingFolderInfo> isParent = m -> m.getLocalPathByServerPath(serverPath, isDirectory) != null;
+    WorkingFolderInfo result = null;
+    Node node = myServerRoot;
+    for (String component : getServerPathComponents(serverPath)) {
+      node = node.myChildren.get(component);
+      if (node == null) {
+        break;
+      }
+      WorkingFolderInfo mapping = findLast(node, isParent);
+      if (mapping != null) {
+        result = mapping;
+      }
+    }
+    return result;
+  }
+
+  boolean hasMapping(@NotNull FilePath localPath, boolean considerChildMappings) {
+    Condition<WorkingFolderInfo> isParent = m -> localPath.isUnder(m.getLocalPath(), false);
+    Node node = myLocalRoot;
+    if (findLast(node, isParent) != null) {
+      return true;
+    }
+    for (String component : getLocalPathComponents(localPath)) {
+      node = node.myChildren.get(component);
+      if (node == null) {
+        return false;
+      }
+      if (findLast(node, isParent) != null) {
+        return true;
+      }
+    }
+    return considerChildMappings && !getChildMappings(node, localPath).isEmpty();
+  }
+
+  /**
+   * @return mappings which local paths are under the given one, in the order of the mappings list
+   */
+  @NotNull
+  List<WorkingFolderInfo> findChildMappings(@NotNull FilePath localPath) {
+    Node node = myLocalRoot;
+    for (String component : getLocalPathComponents(localPath)) {
+      node = node.myChildren.get(component);
+      if (node == null) {
+        return Collections.emptyList();
+      }
+    }
+    return getChildMappings(node, localPath);
+  }
+
+  private List<WorkingFolderInfo> getChildMappings(Node node, FilePath localPath) {
+    List<Integer> indices = new ArrayList<>();
+    collectMappings(node, indices);
+    Collections.sort(indices);
+    List<WorkingFolderInfo> result = new ArrayList<>(indices.size());
+    for (int index : indices) {
+      WorkingFolderInfo mapping = myMappings.get(index);
+      if (mapping.getLocalPath().isUnder(localPath, false)) {
+        result.add(mapping);
+      }
+    }
+    return result;
+  }
+
+  private static void collectMappings(Node node, List<Integer> result) {
+    result.addAll(node.myMappings);
+    for (Node child : node.myChildren.values()) {
+      collectMappings(child, result);
+    }
+  }
+
+  @Nullable
+  private WorkingFolderInfo findLast(Node node, Condition<WorkingFolderInfo> condition) {
+    for (int i = node.myMappings.size() - 1; i >= 0; i--) {
+      WorkingFolderInfo mapping = myMappings.get(node.myMappings.get(i));
+      if (condition.value(mapping)) {
+        return mapping;
+      }
+    }
+    return null;
+  }
+
+  private static void insert(Node root, String[] components, int index) {
+    Node node = root;
+    for (String component : components) {
+      node = node.getOrCreateChild(component);
+    }
+    node.myMappings.add(index);
+  }
+
+  private static String[] getLocalPathComponents(FilePath localPath) {
+    String path = FileUtil.toSystemIndependentName(localPath.getPath());
+    if (!SystemInfo.isFileSystemCaseSensitive) {
+      path = path.toLowerCase(Locale.ENGLISH);
+    }
+    return path.split("/");
+  }
+
+  private static String[] getServerPathComponents(String serverPath) {
+    return VersionControlPath.getPathComponents(serverPath.toLowerCase());
+  }
+}
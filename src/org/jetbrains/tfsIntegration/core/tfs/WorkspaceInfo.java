@@ -51,6 +51,7 @@ public class WorkspaceInfo {
   private int myOptions;
 
   private List<WorkingFolderInfo> myWorkingFoldersInfos = new ArrayList<>();
+  @Nullable private WorkingFoldersIndex myWorkingFoldersIndex; // built lazily, reset when the mappings list changes
 
   public WorkspaceInfo(final @NotNull ServerInfo serverInfo, final @NotNull String owner, final @NotNull String computer) {
     myServerInfo = serverInfo;
@@ -177,13 +178,33 @@ public class WorkspaceInfo {
     myLoaded = true;
   }
 
+  @NotNull
+  private WorkingFoldersIndex getWorkingFoldersIndex(Object projectOrComponent) throws TfsException {
+    loadFromServer(projectOrComponent, false);
+    return getWorkingFoldersIndexCached();
+  }
+
+  @NotNull
+  private WorkingFoldersIndex getWorkingFoldersIndexCached() {
+    WorkingFoldersIndex index = myWorkingFoldersIndex;
+    if (index == null) {
+      index = new WorkingFoldersIndex(myWorkingFoldersInfos);
+      myWorkingFoldersIndex = index;
+    }
+    return index;
+  }
+
+  private void workingFoldersChanged() {
+    myWorkingFoldersIndex = null;
+  }
+
   boolean hasMappingCached(FilePath localPath, boolean considerChildMappings) {
-    return hasMapping(getWorkingFoldersCached(), localPath, considerChildMappings);
+    return hasMapping(getWorkingFoldersIndexCached(), localPath, considerChildMappings);
   }
 
   boolean hasMapping(FilePath localPath, boolean considerChildMappings, Object projectOrComponent) throws TfsException {
     // post-check current owner since it might have just been changed dirung getWorkingFolders() call
-    return hasMapping(getWorkingFolders(projectOrComponent), localPath, considerChildMappings) && hasCurrentOwnerAndComputer();
+    return hasMapping(getWorkingFoldersIndex(projectOrComponent), localPath, considerChildMappings) && hasCurrentOwnerAndComputer();
   }
 
   boolean hasCurrentOwnerAndComputer() {
@@ -220,10 +241,8 @@ public class WorkspaceInfo {
 
     if (considerChildMappings) {
       Collection<String> childMappings = new ArrayList<>();
-      for (WorkingFolderInfo workingFolder : getWorkingFolders(projectOrComponent)) {
-        if (workingFolder.getLocalPath().isUnder(localPathOnLocalFileSystem, false)) {
-          childMappings.add(workingFolder.getServerPath());
-        }
+      for (WorkingFolderInfo workingFolder : getWorkingFoldersIndex(projectOrComponent).findChildMappings(localPathOnLocalFileSystem)) {
+        childMappings.add(workingFolder.getServerPath());
       }
       return childMappings;
     }
@@ -243,36 +262,21 @@ public class WorkspaceInfo {
     return findLocalPathByServerPath(serverPath, false, projectOrComponent) != null;
   }
 
-  // TODO inline?
-
   @Nullable
   private WorkingFolderInfo findNearestParentMapping(final @NotNull FilePath localPath, Object projectOrComponent) throws TfsException {
-    WorkingFolderInfo mapping = null;
-    for (WorkingFolderInfo folderInfo : getWorkingFolders(projectOrComponent)) {
-      if (folderInfo.getServerPathByLocalPath(localPath) != null &&
-          (mapping == null || folderInfo.getLocalPath().isUnder(mapping.getLocalPath(), false))) {
-        mapping = folderInfo;
-      }
-    }
-    return mapping;
+    return getWorkingFoldersIndex(projectOrComponent).findNearestMappingByLocalPath(localPath);
   }
 
   @Nullable
   private WorkingFolderInfo findNearestParentMapping(final @NotNull String serverPath, boolean isDirectory, Object projectOrComponent)
     throws TfsException {
-    WorkingFolderInfo mapping = null;
-    for (WorkingFolderInfo folderInfo : getWorkingFolders(projectOrComponent)) {
-      if (folderInfo.getLocalPathByServerPath(serverPath, isDirectory) != null &&
-          (mapping == null || VersionControlPath.isUnder(mapping.getServerPath(), folderInfo.getServerPath()))) {
-        mapping = folderInfo;
-      }
-    }
-    return mapping;
+    return getWorkingFoldersIndex(projectOrComponent).findNearestMappingByServerPath(serverPath, isDirectory);
   }
 
 
   public void addWorkingFolderInfo(final WorkingFolderInfo workingFolderInfo) {
     myWorkingFoldersInfos.add(workingFolderInfo);
+    workingFoldersChanged();
   }
 
   public void addOwnerAlias(@NotNull String alias) {
@@ -282,12 +286,14 @@ public class WorkspaceInfo {
   public void removeWorkingFolderInfo(final WorkingFolderInfo folderInfo) {
     checkCurrentOwnerAndComputer();
     myWorkingFoldersInfos.remove(folderInfo);
+    workingFoldersChanged();
   }
 
   public void setWorkingFolders(final List<WorkingFolderInfo> workingFolders) {
     checkCurrentOwnerAndComputer();
     myWorkingFoldersInfos.clear();
     myWorkingFoldersInfos.addAll(workingFolders);
+    workingFoldersChanged();
   }
 
   public void saveToServer(Object projectOrComponent, WorkspaceInfo originalWorkspace) throws TfsException {
@@ -379,6 +385,7 @@ public class WorkspaceInfo {
       }
     }
     workspace.myWorkingFoldersInfos = workingFoldersInfos;
+    workspace.workingFoldersChanged();
   }
 
   public WorkspaceInfo getCopy() {
@@ -425,15 +432,9 @@ public class WorkspaceInfo {
     return true;
   }
 
-  private static boolean hasMapping(Collection<WorkingFolderInfo> mappings, FilePath localPath, boolean considerChildMappings) {
+  private static boolean hasMapping(WorkingFoldersIndex mappings, FilePath localPath, boolean considerChildMappings) {
     final FilePath localPathOnLocalFileSystem = VcsUtil.getFilePath(localPath.getPath(), localPath.isDirectory());
-    for (WorkingFolderInfo mapping : mappings) {
-      if (localPathOnLocalFileSystem.isUnder(mapping.getLocalPath(), false) ||
-          (considerChildMappings && mapping.getLocalPath().isUnder(localPathOnLocalFileSystem, false))) {
-        return true;
-      }
-    }
-    return false;
+    return mappings.hasMapping(localPathOnLocalFileSystem, considerChildMappings);
   }
 
   @SuppressWarnings({"HardCodedStringLiteral"})
@@ -17,15 +17,10 @@
 package org.jetbrains.tfsIntegration.core.tfs;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Ref;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
-import com.intellij.util.Function;
-import com.intellij.util.Functions;
-import com.intellij.util.JdomKt;
 import com.intellij.util.containers.ContainerUtil;
-import org.apache.axis2.databinding.utils.ConverterUtil;
-import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.config.TfsServerConnectionHelper;
@@ -34,11 +29,8 @@ import org.jetbrains.tfsIntegration.core.configuration.TFSConfigurationManager;
 import org.jetbrains.tfsIntegration.exceptions.DuplicateMappingException;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
 import org.jetbrains.tfsIntegration.exceptions.WorkspaceHasNoMappingException;
-import org.xml.sax.InputSource;
+import org.jetbrains.tfsIntegration.webservice.WebServiceHelper;
 
-import javax.xml.parsers.SAXParserFactory;
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
@@ -49,8 +41,6 @@ import java.util.Collections;
 import java.util.List;
 
 import static com.intellij.util.containers.ContainerUtil.newArrayList;
-import static org.jetbrains.tfsIntegration.core.tfs.TfsUtil.forcePluginClassLoader;
-import static org.jetbrains.tfsIntegration.core.tfs.XmlConstants.*;
 
 public class Workstation {
 
@@ -65,6 +55,8 @@ public class Workstation {
 
   private static String ourComputerName;
 
+  @NotNull private final WorkstationCachePersister myCachePersister = new WorkstationCachePersister();
+
   private Workstation() {
     myServerInfos = loadCache();
   }
@@ -111,11 +103,7 @@ public class Workstation {
     Path cacheFile = getCacheFile(true);
     if (cacheFile != null) {
       try {
-        WorkstationCacheReader reader = new WorkstationCacheReader();
-        try (BufferedReader stream = Files.newBufferedReader(cacheFile)) {
-          forcePluginClassLoader(() -> SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(stream), reader));
-        }
-        return reader.getServers();
+        return WorkstationCacheReader.read(cacheFile);
       }
       catch (Exception e) {
         LOG.info("Cannot read workspace cache", e);
@@ -140,64 +128,7 @@ public class Workstation {
 
     Path cacheFile = getCacheFile(false);
     if (cacheFile != null) {
-      try {
-        Element serversElement = new Element(SERVERS);
-
-        for (ServerInfo serverInfo : getServers()) {
-          Element serverInfoElement = new Element(SERVER_INFO)
-            .setAttribute(URI_ATTR, serverInfo.getUri().toString())
-            .setAttribute(GUID_ATTR, serverInfo.getGuid());
-
-          serversElement.addContent(serverInfoElement);
-
-          for (WorkspaceInfo workspaceInfo : serverInfo.getWorkspaces()) {
-            Element workspaceInfoElement = new Element(WORKSPACE_INFO)
-              .setAttribute(COMPUTER_ATTR, workspaceInfo.getComputer())
-              .setAttribute(OWNER_NAME_ATTR, workspaceInfo.getOwnerName())
-              .setAttribute(TIMESTAMP_ATTR, ConverterUtil.convertToString(workspaceInfo.getTimestamp()))
-              .setAttribute(NAME_ATTR, workspaceInfo.getName())
-              .setAttribute(IS_LOCAL_WORKSPACE_ATTR, String.valueOf(workspaceInfo.isLocal()))
-              .setAttribute(OPTIONS_ATTR, String.valueOf(workspaceInfo.getOptions()))
-              // "comment" and "ownerDisplayName" attributes are required (otherwise Eclipse TFS plug-in fails to read cache)
-              .setAttribute(COMMENT_ATTR, StringUtil.notNullize(workspaceInfo.getComment()))
-              .setAttribute(OWNER_DISPLAY_NAME_ATTR, StringUtil.notNullize(workspaceInfo.getOwnerDisplayName()));
-            setIfNotNull(workspaceInfoElement, SECURITY_TOKEN_ATTR, workspaceInfo.getSecurityToken());
-
-            addItems(workspaceInfoElement, MAPPED_PATHS, MAPPED_PATH, PATH_ATTR, workspaceInfo.getWorkingFoldersCached(),
-                     folderInfo -> folderInfo.getLocalPath().getPresentableUrl());
-
-            addItems(workspaceInfoElement, OWNER_ALIASES, OWNER_ALIAS, OWNER_ALIAS_ATTR,
-                     workspaceInfo.getOwnerAliases(), Functions.TO_STRING());
-
-            serverInfoElement.addContent(workspaceInfoElement);
-          }
-        }
-
-        JdomKt.write(new Element(ROOT).addContent(serversElement), cacheFile);
-      }
-      catch (IOException e) {
-        LOG.info("Cannot update workspace cache", e);
-      }
-    }
-  }
-
-  private static <T> void addItems(@NotNull Element parentElement,
-                                   @NotNull String elementName,
-                                   @NotNull String itemElementName,
-                                   @NotNull String itemAttributeName,
-                                   @NotNull List<T> items,
-                                   @NotNull Function<T, String> valueProvider) {
-    Element element = new Element(elementName);
-    parentElement.addContent(element);
-
-    for (T item : items) {
-      element.addContent(new Element(itemElementName).setAttribute(itemAttributeName, StringUtil.notNullize(valueProvider.fun(item))));
-    }
-  }
-
-  private static void setIfNotNull(@NotNull Element element, @NotNull String attributeName, @Nullable String value) {
-    if (value != null) {
-      element.setAttribute(attributeName, value);
+      myCachePersister.save(cacheFile, WorkstationCacheWriter.snapshot(getServers()));
     }
   }
 
@@ -210,9 +141,17 @@ public class Workstation {
     myServerInfos.remove(serverInfo);
 
     TFSConfigurationManager.getInstance().remove(serverInfo.getUri());
+    serverInfo.dispose();
+    if (!ContainerUtil.exists(myServerInfos, server -> isSameAddress(server.getUri(), serverInfo.getUri()))) {
+      WebServiceHelper.releaseStubConfigurationContext(serverInfo.getUri());
+    }
     update();
   }
 
+  private static boolean isSameAddress(@NotNull URI uri1, @NotNull URI uri2) {
+    return uri1.getScheme().equals(uri2.getScheme()) && Comparing.equal(uri1.getAuthority(), uri2.getAuthority());
+  }
+
   public synchronized static String getComputerName() {
     if (ourComputerName == null) {
       try {
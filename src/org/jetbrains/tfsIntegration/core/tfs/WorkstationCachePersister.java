@@ -0,0 +1,91 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ShutDownTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the workspace cache in background. The saves requested while a write is pending are merged into it, so that a burst of
+ * changes costs one write of the latest state. The pending state is written on exit as well.
+ */
+class WorkstationCachePersister {
+
+  private static final Logger LOG = Logger.getInstance(WorkstationCachePersister.class.getName());
+
+  private static final long SAVE_DELAY_MILLIS = Long.getLong("org.jetbrains.tfsIntegration.workstationCacheSaveDelay", 500);
+
+  private final Object myLock = new Object();
+  private final Object myWriteLock = new Object();
+
+  // guarded by myLock
+  @Nullable private Path myPendingFile;
+  @Nullable private List<WorkstationCacheWriter.ServerSnapshot> myPendingServers;
+  private boolean myFlushScheduled;
+
+  WorkstationCachePersister() {
+    ShutDownTracker.getInstance().registerShutdownTask(this::flush);
+  }
+
+  void save(@NotNull Path cacheFile, @NotNull List<WorkstationCacheWriter.ServerSnapshot> servers) {
+    synchronized (myLock) {
+      myPendingFile = cacheFile;
+      myPendingServers = servers;
+      if (myFlushScheduled) {
+        return;
+      }
+      myFlushScheduled = true;
+    }
+    // the delay is counted from the first change, so that the cache is saved even if the changes keep coming
+    JobScheduler.getScheduler()
+      .schedule(() -> ApplicationManager.getApplication().executeOnPooledThread(this::flush), SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  void flush() {
+    // writes go one after another, so that an older state never overwrites a newer one
+    synchronized (myWriteLock) {
+      Path cacheFile;
+      List<WorkstationCacheWriter.ServerSnapshot> servers;
+      synchronized (myLock) {
+        cacheFile = myPendingFile;
+        servers = myPendingServers;
+        myPendingFile = null;
+        myPendingServers = null;
+        myFlushScheduled = false;
+      }
+      if (cacheFile == null || servers == null) {
+        return;
+      }
+
+      try {
+        WorkstationCacheWriter.save(cacheFile, servers);
+      }
+      catch (IOException | XMLStreamException e) {
+        LOG.info("Cannot update workspace cache", e);
+      }
+    }
+  }
+}
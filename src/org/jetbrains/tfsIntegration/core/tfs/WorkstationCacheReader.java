@@ -21,15 +21,23 @@ import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.tfsIntegration.core.TfsBeansHolder;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Calendar;
 import java.util.List;
 
+import static org.jetbrains.tfsIntegration.core.tfs.TfsUtil.forcePluginClassLoader;
 import static org.jetbrains.tfsIntegration.core.tfs.XmlConstants.*;
 
 class WorkstationCacheReader extends DefaultHandler {
@@ -97,6 +105,15 @@ class WorkstationCacheReader extends DefaultHandler {
     }
   }
 
+  @NotNull
+  static List<ServerInfo> read(@NotNull Path cacheFile) throws IOException, SAXException, ParserConfigurationException {
+    WorkstationCacheReader reader = new WorkstationCacheReader();
+    try (BufferedReader stream = Files.newBufferedReader(cacheFile)) {
+      forcePluginClassLoader(() -> SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(stream), reader));
+    }
+    return reader.getServers();
+  }
+
   @NotNull
   public List<ServerInfo> getServers() {
     return myServerInfos;
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.tfsIntegration.core.tfs;
+
+import com.intellij.openapi.util.text.StringUtil;
+import org.apache.axis2.databinding.utils.ConverterUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.jetbrains.tfsIntegration.core.tfs.TfsUtil.forcePluginClassLoader;
+import static org.jetbrains.tfsIntegration.core.tfs.XmlConstants.*;
+
+/**
+ * Writes the workspace cache read by {@link WorkstationCacheReader}, element by element without building a document first.
+ */
+class WorkstationCacheWriter {
+
+  private static final String INDENT = "  ";
+
+  /**
+   * Copy of a server and its workspaces, so that the cache can be written while the model is being changed.
+   */
+  static class ServerSnapshot {
+    @NotNull private final String myUri;
+    @Nullable private final String myGuid;
+    @NotNull private final List<WorkspaceInfo> myWorkspaces;
+
+    ServerSnapshot(@NotNull ServerInfo server) {
+      myUri = server.getUri().toString();
+      myGuid = server.getGuid();
+      List<WorkspaceInfo> workspaces = server.getWorkspaces();
+      myWorkspaces = new ArrayList<>(workspaces.size());
+      for (WorkspaceInfo workspace : workspaces) {
+        myWorkspaces.add(workspace.getCopy());
+      }
+    }
+  }
+
+  @NotNull private final XMLStreamWriter myWriter;
+  private int myDepth;
+
+  private WorkstationCacheWriter(@NotNull XMLStreamWriter writer) {
+    myWriter = writer;
+  }
+
+  @NotNull
+  static List<ServerSnapshot> snapshot(@NotNull Collection<ServerInfo> servers) {
+    List<ServerSnapshot> result = new ArrayList<>(servers.size());
+    for (ServerInfo server : servers) {
+      result.add(new ServerSnapshot(server));
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the file at once: the cache is written next to it and then moved over it, so that readers never see it half-written.
+   */
+  static void save(@NotNull Path cacheFile, @NotNull List<ServerSnapshot> servers) throws IOException, XMLStreamException {
+    Path directory = cacheFile.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path tempFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        write(servers, writer);
+      }
+      try {
+        Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  static void write(@NotNull List<ServerSnapshot> servers, @NotNull Writer out) throws XMLStreamException {
+    XMLStreamWriter writer = forcePluginClassLoader(() -> XMLOutputFactory.newInstance().createXMLStreamWriter(out));
+    try {
+      new WorkstationCacheWriter(writer).writeDocument(servers);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private void writeDocument(@NotNull List<ServerSnapshot> servers) throws XMLStreamException {
+    myWriter.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+    startElement(ROOT);
+    startElement(SERVERS);
+    for (ServerSnapshot server : servers) {
+      startElement(SERVER_INFO);
+      myWriter.writeAttribute(URI_ATTR, server.myUri);
+      setIfNotNull(GUID_ATTR, server.myGuid);
+      for (WorkspaceInfo workspace : server.myWorkspaces) {
+        writeWorkspace(workspace);
+      }
+      endElement();
+    }
+    endElement();
+    endElement();
+    myWriter.writeCharacters("\n");
+    myWriter.writeEndDocument();
+  }
+
+  private void writeWorkspace(@NotNull WorkspaceInfo workspace) throws XMLStreamException {
+    startElement(WORKSPACE_INFO);
+    setIfNotNull(COMPUTER_ATTR, workspace.getComputer());
+    setIfNotNull(OWNER_NAME_ATTR, workspace.getOwnerName());
+    setIfNotNull(TIMESTAMP_ATTR, workspace.getTimestamp() != null ? ConverterUtil.convertToString(workspace.getTimestamp()) : null);
+    setIfNotNull(NAME_ATTR, workspace.getName());
+    myWriter.writeAttribute(IS_LOCAL_WORKSPACE_ATTR, String.valueOf(workspace.isLocal()));
+    myWriter.writeAttribute(OPTIONS_ATTR, String.valueOf(workspace.getOptions()));
+    // "comment" and "ownerDisplayName" attributes are required (otherwise Eclipse TFS plug-in fails to read cache)
+    myWriter.writeAttribute(COMMENT_ATTR, StringUtil.notNullize(workspace.getComment()));
+    myWriter.writeAttribute(OWNER_DISPLAY_NAME_ATTR, StringUtil.notNullize(workspace.getOwnerDisplayName()));
+    setIfNotNull(SECURITY_TOKEN_ATTR, workspace.getSecurityToken());
+
+    List<String> mappedPaths = new ArrayList<>();
+    for (WorkingFolderInfo workingFolder : workspace.getWorkingFoldersCached()) {
+      mappedPaths.add(workingFolder.getLocalPath().getPresentableUrl());
+    }
+    writeItems(MAPPED_PATHS, MAPPED_PATH, PATH_ATTR, mappedPaths);
+    writeItems(OWNER_ALIASES, OWNER_ALIAS, OWNER_ALIAS_ATTR, workspace.getOwnerAliases());
+    endElement();
+  }
+
+  private void writeItems(@NotNull String elementName,
+                          @NotNull String itemElementName,
+                          @NotNull String itemAttributeName,
+                          @NotNull List<String> values) throws XMLStreamException {
+    if (values.isEmpty()) {
+      emptyElement(elementName);
+      return;
+    }
+
+    startElement(elementName);
+    for (String value : values) {
+      emptyElement(itemElementName);
+      myWriter.writeAttribute(itemAttributeName, StringUtil.notNullize(value));
+    }
+    endElement();
+  }
+
+  private void setIfNotNull(@NotNull String attributeName, @Nullable String value) throws XMLStreamException {
+    if (value != null) {
+      myWriter.writeAttribute(attributeName, value);
+    }
+  }
+
+  private void startElement(@NotNull String name) throws XMLStreamException {
+    newLine();
+    myWriter.writeStartElement(name);
+    myDepth++;
+  }
+
+  private void emptyElement(@NotNull String name) throws XMLStreamException {
+    newLine();
+    myWriter.writeEmptyElement(name);
+  }
+
+  private void endElement() throws XMLStreamException {
+    myDepth--;
+    newLine();
+    myWriter.writeEndElement();
+  }
+
+  private void newLine() throws XMLStreamException {
+    myWriter.writeCharacters("\n" + StringUtil.repeat(INDENT, myDepth));
+  }
+}
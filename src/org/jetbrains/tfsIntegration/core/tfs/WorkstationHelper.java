@@ -16,14 +16,19 @@
 
 package org.jetbrains.tfsIntegration.core.tfs;
 
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.vcs.FilePath;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 // TODO: rename this class
 public class WorkstationHelper {
 
+  private static final int WORKSPACE_THREADS = Integer.getInteger("org.jetbrains.tfsIntegration.workspaceThreads", 4);
+
   private WorkstationHelper() {
   }
 
@@ -31,6 +36,24 @@ public class WorkstationHelper {
     void executeRequest(WorkspaceInfo workspace, List<ItemPath> paths) throws TfsException;
   }
 
+  public interface ProcessDelegate<T> {
+    T executeRequest(WorkspaceInfo workspace, List<ItemPath> paths) throws TfsException;
+  }
+
+  public interface ResultProcessor<T> {
+    void process(WorkspaceInfo workspace, T result) throws TfsException;
+  }
+
+  private static class Outcome<T> {
+    private final T myResult;
+    @Nullable private final TfsException myError;
+
+    private Outcome(T result, @Nullable TfsException error) {
+      myResult = result;
+      myError = error;
+    }
+  }
+
   /**
    * @param localPaths paths of local items
    * @param processor  operation processor
@@ -43,7 +66,83 @@ public class WorkstationHelper {
                                                    Object projectOrComponent,
                                                    VoidProcessDelegate processor) throws TfsException {
     List<FilePath> orphanPaths = new ArrayList<>();
-    Map<WorkspaceInfo, List<FilePath>> workspace2localPaths = new HashMap<>();
+    Map<WorkspaceInfo, List<ItemPath>> workspace2itemPaths =
+      groupByWorkspaces(localPaths, considerChildMappings, projectOrComponent, orphanPaths);
+    for (Map.Entry<WorkspaceInfo, List<ItemPath>> entry : workspace2itemPaths.entrySet()) {
+      processor.executeRequest(entry.getKey(), entry.getValue());
+    }
+    return orphanPaths;
+  }
+
+  /**
+   * Same as {@link #processByWorkspaces}, but the workspaces are processed in parallel: the ones of different servers at the same time,
+   * the ones of the same server by several threads, while their requests are still limited by the request manager of the server.
+   * <p/>
+   * The results are passed to {@code resultProcessor} on the calling thread, in the order the workspaces were found for the paths,
+   * as if the workspaces were processed one by one: if processing of a workspace fails, the results of the following ones are dropped
+   * and the error is rethrown, with the errors of the following workspaces added as suppressed.
+   *
+   * @param processor called on pooled threads
+   * @return local paths for which workspace was not found (orphan paths)
+   */
+  public static <T> List<FilePath> processByWorkspacesInParallel(Collection<FilePath> localPaths,
+                                                                 boolean considerChildMappings,
+                                                                 Object projectOrComponent,
+                                                                 @Nullable ProgressIndicator pi,
+                                                                 ProcessDelegate<T> processor,
+                                                                 ResultProcessor<T> resultProcessor) throws TfsException {
+    List<FilePath> orphanPaths = new ArrayList<>();
+    Map<WorkspaceInfo, List<ItemPath>> workspace2itemPaths =
+      groupByWorkspaces(localPaths, considerChildMappings, projectOrComponent, orphanPaths);
+
+    Map<ServerInfo, List<WorkspaceInfo>> server2workspaces = new LinkedHashMap<>();
+    for (WorkspaceInfo workspace : workspace2itemPaths.keySet()) {
+      server2workspaces.computeIfAbsent(workspace.getServer(), server -> new ArrayList<>()).add(workspace);
+    }
+
+    Map<WorkspaceInfo, Outcome<T>> outcomes = new ConcurrentHashMap<>();
+    TfsParallelUtil.map(new ArrayList<>(server2workspaces.values()), server2workspaces.size(), pi,
+                        workspaces -> TfsParallelUtil.map(workspaces, WORKSPACE_THREADS, pi, workspace -> {
+                          Outcome<T> outcome;
+                          try {
+                            outcome = new Outcome<>(processor.executeRequest(workspace, workspace2itemPaths.get(workspace)), null);
+                          }
+                          catch (TfsException e) {
+                            outcome = new Outcome<>(null, e);
+                          }
+                          outcomes.put(workspace, outcome);
+                          return null;
+                        }));
+
+    TfsException error = null;
+    for (WorkspaceInfo workspace : workspace2itemPaths.keySet()) {
+      Outcome<T> outcome = outcomes.get(workspace);
+      if (error != null) {
+        if (outcome.myError != null) {
+          error.addSuppressed(outcome.myError);
+        }
+      }
+      else if (outcome.myError != null) {
+        error = outcome.myError;
+      }
+      else {
+        resultProcessor.process(workspace, outcome.myResult);
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    return orphanPaths;
+  }
+
+  /**
+   * @return paths of the items by workspace, in the order the workspaces are found
+   */
+  private static Map<WorkspaceInfo, List<ItemPath>> groupByWorkspaces(Collection<FilePath> localPaths,
+                                                                      boolean considerChildMappings,
+                                                                      Object projectOrComponent,
+                                                                      List<FilePath> orphanPaths) throws TfsException {
+    Map<WorkspaceInfo, List<FilePath>> workspace2localPaths = new LinkedHashMap<>();
     for (FilePath localPath : localPaths) {
       Collection<WorkspaceInfo> workspaces = Workstation.getInstance().findWorkspaces(localPath, considerChildMappings, projectOrComponent);
       if (!workspaces.isEmpty()) {
@@ -61,6 +160,7 @@ public class WorkstationHelper {
       }
     }
 
+    Map<WorkspaceInfo, List<ItemPath>> workspace2itemPaths = new LinkedHashMap<>();
     for (WorkspaceInfo workspace : workspace2localPaths.keySet()) {
       List<FilePath> currentLocalPaths = workspace2localPaths.get(workspace);
       List<ItemPath> currentItemPaths = new ArrayList<>(currentLocalPaths.size());
@@ -77,9 +177,9 @@ public class WorkstationHelper {
           }
         }
       }
-      processor.executeRequest(workspace, currentItemPaths);
+      workspace2itemPaths.put(workspace, currentItemPaths);
     }
-    return orphanPaths;
+    return workspace2itemPaths;
   }
 
 }
@@ -20,11 +20,13 @@ import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservi
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemType;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.VersionSpec;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.tfsIntegration.core.tfs.TfsPath;
 
 public class ItemAndVersion {
 
   private final Item myItem;
   private final VersionSpec myVersionSpec;
+  private TfsPath myTfsPath;
 
   public ItemAndVersion(final @NotNull Item item, final @NotNull VersionSpec versionSpec) {
     myItem = item;
@@ -43,6 +45,14 @@ public class ItemAndVersion {
     return myItem.getItem();
   }
 
+  @NotNull
+  public TfsPath getTfsPath() {
+    if (myTfsPath == null) {
+      myTfsPath = TfsPath.create(getServerPath());
+    }
+    return myTfsPath;
+  }
+
   public boolean isDirectory() {
     return myItem.getType() == ItemType.Folder;
   }
@@ -18,6 +18,7 @@ package org.jetbrains.tfsIntegration.core.tfs.labels;
 
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.tfsIntegration.core.tfs.TfsPath;
 import org.jetbrains.tfsIntegration.core.tfs.VersionControlServer;
 import org.jetbrains.tfsIntegration.core.tfs.version.VersionSpecBase;
 
@@ -28,6 +29,7 @@ public class LabelItemSpecWithItems {
 
   private final LabelItemSpec myLabelItemSpec;
   private final List<Item> myItemsList;
+  private TfsPath myTfsPath;
 
   private LabelItemSpecWithItems(final @NotNull LabelItemSpec labelItemSpec, final @NotNull List<Item> itemsList) {
     myLabelItemSpec = labelItemSpec;
@@ -67,4 +69,12 @@ public class LabelItemSpecWithItems {
     return getLabelItemSpec().getItemSpec().getItem();
   }
 
+  @NotNull
+  public TfsPath getTfsPath() {
+    if (myTfsPath == null) {
+      myTfsPath = TfsPath.create(getServerPath());
+    }
+    return myTfsPath;
+  }
+
 }
@@ -19,6 +19,7 @@ package org.jetbrains.tfsIntegration.core.tfs.labels;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Item;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.LabelItemSpec;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.tfsIntegration.core.tfs.TfsPath;
 import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
 
 import java.util.*;
@@ -32,7 +33,7 @@ public class LabelModel {
     // removal spec should be added only if no parent removal spec exists
     for (Iterator<LabelItemSpecWithItems> iterator = myLabelSpecs.iterator(); iterator.hasNext();) {
       final LabelItemSpecWithItems existingSpec = iterator.next();
-      if (VersionControlPath.isUnder(newSpec.getServerPath(), existingSpec.getServerPath())) {
+      if (existingSpec.getTfsPath().isUnder(newSpec.getTfsPath())) {
         iterator.remove();
       }
     }
@@ -57,9 +58,10 @@ public class LabelModel {
       final LabelItemSpecWithItems labelSpec = myLabelSpecs.get(i);
       // removal label spec has no items anyway
       for (Item item : labelSpec.getItemsList()) {
+        TfsPath itemPath = TfsPath.create(item.getItem());
         boolean appearsUnderChild = false;
         for (int j = i + 1; j < myLabelSpecs.size(); j++) {
-          if (VersionControlPath.isUnder(myLabelSpecs.get(j).getServerPath(), item.getItem())) {
+          if (itemPath.isUnder(myLabelSpecs.get(j).getTfsPath())) {
             appearsUnderChild = true;
             break;
           }
@@ -93,6 +95,6 @@ public class LabelModel {
     (o1, o2) -> -VersionControlPath.compareParentToChild(o1.getServerPath(), o2.getServerPath());
 
   private static final Comparator<ItemAndVersion> ITEM_AND_VERSION_PARENT_FIRST =
-    (o1, o2) -> VersionControlPath.compareParentToChild(o1.getServerPath(), o1.isDirectory(), o2.getServerPath(), o2.isDirectory());
+    (o1, o2) -> TfsPath.compareParentToChild(o1.getTfsPath(), o1.isDirectory(), o2.getTfsPath(), o2.isDirectory());
 
 }
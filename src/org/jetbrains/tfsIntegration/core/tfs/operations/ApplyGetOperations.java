@@ -26,6 +26,7 @@ import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.update.FileGroup;
 import com.intellij.openapi.vcs.update.UpdatedFiles;
 import com.intellij.util.WaitForProgressToShow;
+import com.intellij.util.containers.ContainerUtil;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ChangeType_type0;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.GetOperation;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemType;
@@ -60,7 +61,9 @@ public class ApplyGetOperations {
   private final @Nullable UpdatedFiles myUpdatedFiles;
   private final Collection<VcsException> myErrors = new ArrayList<>();
   private final Collection<LocalVersionUpdate> myUpdateLocalVersions = new ArrayList<>();
+  private final GetOperationsUtil.MovedFolders myMovedFolders = new GetOperationsUtil.MovedFolders();
   private final DownloadMode myDownloadMode;
+  private @Nullable DownloadPrefetcher myPrefetcher;
 
   public enum DownloadMode {
     FORCE,
@@ -113,8 +116,12 @@ public class ApplyGetOperations {
     }
 
     // parent folders modificating operations should be processed before children to update affected child paths correctly
-    List<GetOperation> sortedOperations = new ArrayList<>(myOperations);//GetOperationsUtil.sortGetOperations(myOperations);
-    // TODO do we need to sort them or they come in apply order?
+    List<GetOperation> sortedOperations = GetOperationsUtil.sortGetOperations(myOperations);
+
+    if (myDownloadMode != DownloadMode.FORBID) {
+      myPrefetcher = new DownloadPrefetcher(myProject, myWorkspace, ContainerUtil.filter(sortedOperations, this::mayNeedDownload));
+      myPrefetcher.start();
+    }
 
     try {
       for (int i = 0; i < sortedOperations.size(); i++) {
@@ -123,6 +130,8 @@ public class ApplyGetOperations {
         }
 
         GetOperation operationToExecute = sortedOperations.get(i);
+        String originalSource = operationToExecute.getSlocal();
+        operationToExecute.setSlocal(myMovedFolders.getSourcePath(originalSource));
 
         String currentPath = VersionControlPath.localPathFromTfsRepresentation(
           operationToExecute.getTlocal() != null ? operationToExecute.getTlocal() : operationToExecute.getSlocal());
@@ -164,7 +173,7 @@ public class ApplyGetOperations {
         else {
           processFolderChange(operationToExecute);
           if (!operationToExecute.getSlocal().equals(operationToExecute.getTlocal())) {
-            GetOperationsUtil.updateSourcePaths(sortedOperations, i, operationToExecute);
+            myMovedFolders.folderMoved(originalSource, operationToExecute.getTlocal());
           }
         }
       }
@@ -176,6 +185,46 @@ public class ApplyGetOperations {
     catch (TfsException e) {
       myErrors.add(new VcsException(e));
     }
+    finally {
+      if (myPrefetcher != null) {
+        myPrefetcher.dispose();
+      }
+    }
+  }
+
+  /**
+   * Same conditions as in {@link #processCreateFile} and {@link #processFileChange}, except the ones that depend on the files changed
+   * by the previous operations
+   *
+   * @return true if content of the operation's target is going to be downloaded while applying the operation
+   */
+  private boolean mayNeedDownload(GetOperation operation) {
+    if (operation.getDurl() == null || operation.getTlocal() == null || operation.getType() != ItemType.File || operation.getCnflct()) {
+      return false;
+    }
+    File target = VersionControlPath.getFile(operation.getTlocal());
+    if (target.isDirectory()) {
+      return false;
+    }
+    // the user is asked about local conflicts, and the file is not downloaded unless they agree
+    boolean mayAskUser = myDownloadMode != DownloadMode.FORCE && myDownloadMode != DownloadMode.MERGE;
+    if (operation.getSlocal() == null) {
+      return !mayAskUser || !target.canWrite();
+    }
+
+    File source = VersionControlPath.getFile(operation.getSlocal());
+    ChangeTypeMask change = new ChangeTypeMask(operation.getChg());
+    if (source.equals(target) &&
+        operation.getLver() == operation.getSver() &&
+        (change.containsOnly(ChangeType_type0.Rename) || mayAskUser)) {
+      return false;
+    }
+    if (mayAskUser && !source.equals(target) && (source.canWrite() || target.canWrite())) {
+      return false;
+    }
+    // undoing Add does not download the file
+    return (myDownloadMode == DownloadMode.FORCE || myDownloadMode != DownloadMode.MERGE && operation.getLver() != operation.getSver()) &&
+           !change.contains(ChangeType_type0.Add);
   }
 
   private void processDeleteFile(final GetOperation operation) throws TfsException {
@@ -468,8 +517,10 @@ public class ApplyGetOperations {
           else {
             boolean childWillBeDeletedAnyway = false;
             for (GetOperation operation : myOperations) {
-              if (operation.getSlocal() != null &&
-                  VersionControlPath.getFile(operation.getSlocal()).equals(child) &&
+              // source paths of operations not applied yet are not updated
+              String source = myMovedFolders.getSourcePath(operation.getSlocal());
+              if (source != null &&
+                  VersionControlPath.getFile(source).equals(child) &&
                   operation.getTlocal() == null) {
                 childWillBeDeletedAnyway = true;
                 break;
@@ -521,12 +572,18 @@ public class ApplyGetOperations {
 
     final File target = VersionControlPath.getFile(operation.getTlocal());
     try {
-      TfsFileUtil.setFileContent(target, new TfsFileUtil.ContentWriter() {
-        public void write(final OutputStream outputStream) throws TfsException {
-          myWorkspace.getServer().getVCS()
-            .downloadItem(myProject, operation.getDurl(), outputStream, TFSBundle.message("downloading.0", target.getName()));
-        }
-      });
+      File downloaded = myPrefetcher != null ? myPrefetcher.takeDownloaded(operation, myProgress) : null;
+      if (downloaded != null) {
+        TfsFileUtil.moveFileContent(downloaded, target);
+      }
+      else {
+        TfsFileUtil.setFileContent(target, new TfsFileUtil.ContentWriter() {
+          public void write(final OutputStream outputStream) throws TfsException {
+            myWorkspace.getServer().getVCS()
+              .downloadItem(myProject, operation.getDurl(), outputStream, TFSBundle.message("downloading.0", target.getName()));
+          }
+        });
+      }
       if (!target.setReadOnly()) {
         String errorMessage = MessageFormat.format("Cannot write to file ''{0}''", target.getPath());
         myErrors.add(new VcsException(errorMessage));
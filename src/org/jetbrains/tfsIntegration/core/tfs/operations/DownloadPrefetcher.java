@@ -0,0 +1,280 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs.operations;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.GetOperation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.TFSBundle;
+import org.jetbrains.tfsIntegration.core.tfs.TfsFileUtil;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
+import org.jetbrains.tfsIntegration.core.tfs.WorkerProgressIndicator;
+import org.jetbrains.tfsIntegration.core.tfs.WorkspaceInfo;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.webservice.TfsRequestManager;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Downloads the content of get operations into temporary files on pooled threads, in the order the operations are going
+ * to be applied, so that the single-threaded apply stage does not wait for a server round trip per file.
+ * <p/>
+ * At most {@link #LOOK_AHEAD} files are downloaded ahead of the operation being applied, so that the temp files don't take the disk
+ * space of the whole update. Downloads are background requests, so there are no more threads than background requests allowed.
+ */
+class DownloadPrefetcher {
+  private static final Logger LOG = Logger.getInstance(DownloadPrefetcher.class.getName());
+
+  static final int DOWNLOAD_THREADS = Math.min(Integer.getInteger("org.jetbrains.tfsIntegration.downloadThreads",
+                                                                  TfsRequestManager.getMaxBackgroundRequests()),
+                                               TfsRequestManager.getMaxBackgroundRequests());
+  static final int LOOK_AHEAD = Math.max(1, Integer.getInteger("org.jetbrains.tfsIntegration.downloadLookAhead", 16));
+
+  private static final long POLL_TIMEOUT = 200; //ms
+
+  private final Project myProject;
+  private final WorkspaceInfo myWorkspace;
+  private final List<GetOperation> myOperations;
+  private final Map<GetOperation, Integer> myIndexes = new IdentityHashMap<>();
+  private final List<CompletableFuture<File>> myDownloads = new ArrayList<>();
+  private final List<Future<?>> myWorkers = new ArrayList<>();
+  private final ProgressIndicator myWorkersIndicator;
+  @Nullable private File myTempDir;
+
+  private final Object myLock = new Object();
+  private int myNextIndex; // guarded by myLock
+  private int myTakenIndex = -1; // guarded by myLock, index of the last operation the apply stage asked for
+
+  DownloadPrefetcher(Project project, WorkspaceInfo workspace, List<GetOperation> operations) {
+    myProject = project;
+    myWorkspace = workspace;
+    myOperations = operations;
+    myWorkersIndicator = new WorkerProgressIndicator(ProgressManager.getInstance().getProgressIndicator());
+  }
+
+  void start() {
+    if (myOperations.size() < 2 || DOWNLOAD_THREADS < 2) {
+      return;
+    }
+    try {
+      myTempDir = FileUtil.createTempDirectory("tfs", "download");
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to create temp folder, files will be downloaded sequentially", e);
+      return;
+    }
+
+    for (GetOperation operation : myOperations) {
+      myIndexes.put(operation, myDownloads.size());
+      myDownloads.add(new CompletableFuture<>());
+    }
+    for (int i = 0; i < Math.min(DOWNLOAD_THREADS, myOperations.size()); i++) {
+      myWorkers.add(ApplicationManager.getApplication().executeOnPooledThread(
+        () -> ProgressManager.getInstance().executeProcessUnderProgress(this::downloadAll, myWorkersIndicator)));
+    }
+  }
+
+  private void downloadAll() {
+    while (true) {
+      int index;
+      synchronized (myLock) {
+        while (!myWorkersIndicator.isCanceled() && myNextIndex < myOperations.size() && myNextIndex > myTakenIndex + LOOK_AHEAD) {
+          try {
+            myLock.wait(POLL_TIMEOUT);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (myWorkersIndicator.isCanceled() || myNextIndex >= myOperations.size()) {
+          return;
+        }
+        index = myNextIndex++;
+      }
+      download(index);
+    }
+  }
+
+  private void download(int index) {
+    final GetOperation operation = myOperations.get(index);
+    final CompletableFuture<File> download = myDownloads.get(index);
+    if (download.isDone()) {
+      // skipped by the apply stage
+      return;
+    }
+    final File tempFile = new File(myTempDir, String.valueOf(index));
+    final String fileName = VersionControlPath.getFile(operation.getTlocal()).getName();
+    try {
+      TfsFileUtil.setFileContent(tempFile, outputStream -> myWorkspace.getServer().getVCS()
+        .downloadItem(myProject, operation.getDurl(), new CancellableOutputStream(outputStream, download),
+                      TFSBundle.message("downloading.0", fileName)));
+      if (!download.complete(tempFile)) {
+        FileUtil.delete(tempFile);
+      }
+    }
+    catch (Throwable e) {
+      download.completeExceptionally(e);
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /**
+   * Waits for the content of the operation to be downloaded. Operations applied before this one that have not been taken are not
+   * going to be, so their downloads are dropped.
+   *
+   * @return temp file with the content, or null if the operation was not prefetched, or the apply is cancelled before the download
+   *         completes: the caller downloads the content itself then, so that the operation is applied consistently
+   */
+  @Nullable
+  File takeDownloaded(@NotNull GetOperation operation, @NotNull ApplyProgress progress) throws TfsException, IOException {
+    Integer index = myIndexes.get(operation);
+    if (index == null) {
+      return null;
+    }
+    synchronized (myLock) {
+      for (int i = myTakenIndex + 1; i < index; i++) {
+        discard(myDownloads.get(i));
+      }
+      myTakenIndex = Math.max(myTakenIndex, index);
+      myLock.notifyAll();
+    }
+
+    CompletableFuture<File> download = myDownloads.get(index);
+    while (true) {
+      if ((progress.isCancelled() || myWorkersIndicator.isCanceled()) && download.cancel(false)) {
+        return null;
+      }
+      try {
+        return download.get(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e) {
+        // continue waiting
+      }
+      catch (CancellationException | InterruptedException e) {
+        return null;
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof TfsException) {
+          throw (TfsException)cause;
+        }
+        if (cause instanceof IOException) {
+          throw (IOException)cause;
+        }
+        if (cause instanceof ProcessCanceledException) {
+          return null;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error)cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+
+  private static void discard(CompletableFuture<File> download) {
+    if (!download.cancel(false) && !download.isCompletedExceptionally()) {
+      FileUtil.delete(download.join());
+    }
+  }
+
+  /**
+   * Cancels the downloads and waits for the workers to stop before deleting the temp files
+   */
+  void dispose() {
+    myWorkersIndicator.cancel();
+    synchronized (myLock) {
+      myLock.notifyAll();
+    }
+    boolean interrupted = false;
+    for (Future<?> worker : myWorkers) {
+      while (true) {
+        try {
+          worker.get();
+          break;
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+        catch (ExecutionException e) {
+          LOG.error(e.getCause());
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (myTempDir != null) {
+      FileUtil.delete(myTempDir);
+    }
+  }
+
+  /**
+   * Stops a download in progress once the workers are cancelled or the apply stage doesn't need the file anymore
+   */
+  private class CancellableOutputStream extends FilterOutputStream {
+    private final CompletableFuture<File> myDownload;
+
+    CancellableOutputStream(OutputStream out, CompletableFuture<File> download) {
+      super(out);
+      myDownload = download;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      checkCanceled();
+      out.write(b);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+      checkCanceled();
+      out.write(b, off, len);
+    }
+
+    private void checkCanceled() {
+      if (myDownload.isDone()) {
+        throw new ProcessCanceledException();
+      }
+      myWorkersIndicator.checkCanceled();
+    }
+  }
+}
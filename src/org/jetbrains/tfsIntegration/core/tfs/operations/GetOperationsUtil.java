@@ -16,45 +16,153 @@
 
 package org.jetbrains.tfsIntegration.core.tfs.operations;
 
-import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.SystemInfo;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.GetOperation;
-import org.jetbrains.tfsIntegration.core.TFSVcs;
-import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 public class GetOperationsUtil {
-  static List<GetOperation> sortGetOperations(Collection<GetOperation> getOperations) {
-    List<GetOperation> result = new ArrayList<>(getOperations.size());
-    for (GetOperation newOperation : getOperations) {
-      TFSVcs.assertTrue(newOperation.getSlocal() != null || newOperation.getTlocal() != null);
-      int positionToInsert = result.size();
-      if (newOperation.getSlocal() != null) {
-        final File newOpPath = VersionControlPath.getFile(newOperation.getSlocal());
-        for (int i = 0; i < result.size(); i++) {
-          final GetOperation existingOperation = result.get(i);
-          if (existingOperation.getSlocal() == null ||
-              FileUtil.isAncestor(newOpPath, VersionControlPath.getFile(existingOperation.getSlocal()), false)) {
-            positionToInsert = i;
-            break;
-          }
+  private static final char SEPARATOR = '\\';
+
+  private static class Node {
+    private final Map<String, Node> myChildren = new LinkedHashMap<>();
+    private final List<GetOperation> myOperations = new ArrayList<>(1);
+    private final List<GetOperation> myDeletions = new ArrayList<>(1);
+  }
+
+  /**
+   * Orders operations so that the ones affecting a local item go before the ones affecting its children, except for deletions which go
+   * after the children are processed (a folder can only be deleted when empty). Operations that do not have a local source item go last.
+   * An operation that puts an item at a local path always goes after the ones deleting or moving away the item that was there before.
+   * Otherwise the original order is kept as much as possible.
+   */
+  public static List<GetOperation> sortGetOperations(Collection<GetOperation> getOperations) {
+    Node root = new Node();
+    List<GetOperation> withoutSource = new ArrayList<>();
+    for (GetOperation operation : getOperations) {
+      if (operation.getSlocal() == null) {
+        withoutSource.add(operation);
+        continue;
+      }
+      Node node = root;
+      for (String component : getPathKey(operation.getSlocal()).split("\\\\")) {
+        Node child = node.myChildren.get(component);
+        if (child == null) {
+          child = new Node();
+          node.myChildren.put(component, child);
+        }
+        node = child;
+      }
+      (operation.getTlocal() == null ? node.myDeletions : node.myOperations).add(operation);
+    }
+
+    List<GetOperation> ordered = new ArrayList<>(getOperations.size());
+    collect(root, ordered);
+    ordered.addAll(withoutSource);
+    return putSourcesBeforeTargets(ordered);
+  }
+
+  private static void collect(Node node, List<GetOperation> result) {
+    result.addAll(node.myOperations);
+    for (Node child : node.myChildren.values()) {
+      collect(child, result);
+    }
+    result.addAll(node.myDeletions);
+  }
+
+  /**
+   * Postpones every operation targeting a local path until all the operations having this path as a source are applied, otherwise
+   * e.g. an item renamed to a path would then be removed by the deletion of the item previously located there.
+   */
+  private static List<GetOperation> putSourcesBeforeTargets(List<GetOperation> operations) {
+    Map<String, Integer> pendingSources = new HashMap<>();
+    for (GetOperation operation : operations) {
+      if (operation.getSlocal() != null) {
+        pendingSources.merge(getPathKey(operation.getSlocal()), 1, Integer::sum);
+      }
+    }
+    Map<String, List<GetOperation>> waiting = new HashMap<>();
+    List<GetOperation> result = new ArrayList<>(operations.size());
+    for (GetOperation operation : operations) {
+      add(operation, pendingSources, waiting, result);
+    }
+    if (result.size() < operations.size()) {
+      // cyclic moves (e.g. two items swapping names) can't be ordered this way, keep them in the original order
+      Set<GetOperation> added = Collections.newSetFromMap(new IdentityHashMap<>());
+      added.addAll(result);
+      for (GetOperation operation : operations) {
+        if (!added.contains(operation)) {
+          result.add(operation);
         }
       }
-      result.add(positionToInsert, newOperation);
     }
     return result;
   }
 
-  public static void updateSourcePaths(final List<GetOperation> sortedOperations, final int index, final GetOperation operation) {
-    // TODO: replaceFirst to handle unix paths: problem if replace /a -> /aa in /a/a/a
-    for (GetOperation operationToUpdate : sortedOperations.subList(index + 1, sortedOperations.size())) {
-      if (operationToUpdate.getSlocal() != null) {
-        final String updated = operationToUpdate.getSlocal().replace(operation.getSlocal(), operation.getTlocal());
-        operationToUpdate.setSlocal(updated);
+  private static void add(GetOperation operation,
+                          Map<String, Integer> pendingSources,
+                          Map<String, List<GetOperation>> waiting,
+                          List<GetOperation> result) {
+    String source = operation.getSlocal() != null ? getPathKey(operation.getSlocal()) : null;
+    if (operation.getTlocal() != null) {
+      String target = getPathKey(operation.getTlocal());
+      int blockingSources = pendingSources.getOrDefault(target, 0) - (target.equals(source) ? 1 : 0);
+      if (blockingSources > 0) {
+        waiting.computeIfAbsent(target, k -> new ArrayList<>()).add(operation);
+        return;
+      }
+    }
+    result.add(operation);
+    if (source != null && pendingSources.merge(source, -1, Integer::sum) == 0) {
+      List<GetOperation> released = waiting.remove(source);
+      if (released != null) {
+        for (GetOperation waitingOperation : released) {
+          add(waitingOperation, pendingSources, waiting, result);
+        }
       }
     }
   }
+
+  /**
+   * Keeps track of local folders moved while operations are applied, so that source paths of the operations under them are updated
+   * when the operations are about to be applied. Paths are recorded as they were reported by the server, so that nested moves are
+   * resolved by a single lookup of the nearest moved parent.
+   */
+  public static class MovedFolders {
+    private final Map<String, String> myTargets = new HashMap<>();
+
+    /**
+     * @param originalSource source path of the folder as reported by the server (before {@link #getSourcePath} was applied to it)
+     * @param target         new path of the folder
+     */
+    public void folderMoved(@NotNull String originalSource, @NotNull String target) {
+      myTargets.put(getPathKey(originalSource), target);
+    }
+
+    /**
+     * @param originalSource source path of an operation as reported by the server
+     * @return actual path of the item taking into account the parent folders moved so far
+     */
+    @Nullable
+    public String getSourcePath(@Nullable String originalSource) {
+      if (originalSource == null || myTargets.isEmpty()) {
+        return originalSource;
+      }
+      String key = getPathKey(originalSource);
+      for (int end = key.length(); end > 0; end = key.lastIndexOf(SEPARATOR, end - 1)) {
+        String target = myTargets.get(key.substring(0, end));
+        if (target != null) {
+          return target + originalSource.substring(end);
+        }
+      }
+      return originalSource;
+    }
+  }
+
+  private static String getPathKey(String tfsLocalPath) {
+    String path = tfsLocalPath.replace('/', SEPARATOR);
+    return SystemInfo.isFileSystemCaseSensitive ? path : path.toLowerCase(Locale.ENGLISH);
+  }
 }
@@ -23,9 +23,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.exceptions.OperationFailedException;
 
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 public class WorkItemSerialize {
 
@@ -33,6 +31,15 @@ public class WorkItemSerialize {
                                                                  WorkItemField.TITLE, WorkItemField.REVISION, WorkItemField.TYPE,
                                                                  WorkItemField.REASON, WorkItemField.ASSIGNED_TO);
 
+  // position of the field value in a row of the query result
+  private static final Map<WorkItemField, Integer> FIELD_INDICES = new EnumMap<>(WorkItemField.class);
+
+  static {
+    for (int i = 0; i < FIELDS.size(); i++) {
+      FIELD_INDICES.put(FIELDS.get(i), i);
+    }
+  }
+
   private static final String SERVER_DATE_TIME = "ServerDateTime";
   private static final Logger LOG = Logger.getInstance(WorkItemSerialize.class);
 
@@ -42,15 +49,15 @@ public class WorkItemSerialize {
 
   public static WorkItem createFromFields(String[] workItemFieldsValues) throws OperationFailedException {
     try {
-      int id = Integer.parseInt(workItemFieldsValues[FIELDS.indexOf(WorkItemField.ID)]);
-      WorkItemState state = WorkItemState.from(workItemFieldsValues[FIELDS.indexOf(WorkItemField.STATE)]);
-      String title = workItemFieldsValues[FIELDS.indexOf(WorkItemField.TITLE)];
-      int revision = Integer.parseInt(workItemFieldsValues[FIELDS.indexOf(WorkItemField.REVISION)]);
-      WorkItemType type = WorkItemType.from(workItemFieldsValues[FIELDS.indexOf(WorkItemField.TYPE)]);
-      String reason = workItemFieldsValues[FIELDS.indexOf(WorkItemField.REASON)];
+      int id = Integer.parseInt(getValue(workItemFieldsValues, WorkItemField.ID));
+      WorkItemState state = WorkItemState.from(getValue(workItemFieldsValues, WorkItemField.STATE));
+      String title = getValue(workItemFieldsValues, WorkItemField.TITLE);
+      int revision = Integer.parseInt(getValue(workItemFieldsValues, WorkItemField.REVISION));
+      WorkItemType type = WorkItemType.from(getValue(workItemFieldsValues, WorkItemField.TYPE));
+      String reason = getValue(workItemFieldsValues, WorkItemField.REASON);
       @Nullable final String assignedTo;
-      if (workItemFieldsValues.length > FIELDS.indexOf(WorkItemField.ASSIGNED_TO)) {
-        assignedTo = workItemFieldsValues[FIELDS.indexOf(WorkItemField.ASSIGNED_TO)];
+      if (workItemFieldsValues.length > FIELD_INDICES.get(WorkItemField.ASSIGNED_TO)) {
+        assignedTo = getValue(workItemFieldsValues, WorkItemField.ASSIGNED_TO);
       } else {
         assignedTo = null;
       }
@@ -62,6 +69,10 @@ public class WorkItemSerialize {
     }
   }
 
+  private static String getValue(String[] workItemFieldsValues, WorkItemField field) {
+    return workItemFieldsValues[FIELD_INDICES.get(field)];
+  }
+
   @Nullable
   public static Columns_type0 generateColumnsForUpdateRequest(WorkItemType type,
                                                               String reason,
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.core.tfs.workitems;
+
+import com.microsoft.schemas.teamfoundation._2005._06.workitemtracking.clientservices._03.Package_type0;
+import com.microsoft.schemas.teamfoundation._2005._06.workitemtracking.clientservices._03.UpdateWorkItem_type0;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axis2.databinding.ADBException;
+import org.apache.axis2.databinding.utils.BeanUtil;
+import org.apache.axis2.databinding.utils.ConverterUtil;
+import org.apache.axis2.databinding.utils.reader.ADBXMLStreamReaderImpl;
+import org.apache.axis2.databinding.utils.writer.MTOMAwareXMLStreamWriter;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Update package with several {@code UpdateWorkItem} elements. The generated {@link Package_type0} holds only one, while the server
+ * accepts any number of them in one request. Serialized the same way as the generated bean.
+ */
+public class WorkItemUpdatePackage extends Package_type0 {
+
+  @NonNls private static final QName UPDATE_WORK_ITEM_QNAME =
+    new QName("http://schemas.microsoft.com/TeamFoundation/2005/06/WorkItemTracking/ClientServices/03", "UpdateWorkItem");
+
+  private final List<UpdateWorkItem_type0> myUpdates = new ArrayList<>();
+
+  public void addUpdateWorkItem(@NotNull UpdateWorkItem_type0 update) {
+    myUpdates.add(update);
+  }
+
+  @Override
+  public void serialize(QName parentQName, OMFactory factory, MTOMAwareXMLStreamWriter xmlWriter, boolean serializeType)
+    throws XMLStreamException, ADBException {
+    // same as the generated code, the type attribute is never requested for this element
+    String namespace = parentQName.getNamespaceURI();
+    if (namespace != null && namespace.trim().length() > 0) {
+      if (xmlWriter.getPrefix(namespace) != null) {
+        xmlWriter.writeStartElement(namespace, parentQName.getLocalPart());
+      }
+      else {
+        String prefix = parentQName.getPrefix();
+        if (prefix == null || prefix.length() == 0) {
+          prefix = BeanUtil.getUniquePrefix();
+        }
+        xmlWriter.writeStartElement(prefix, parentQName.getLocalPart(), namespace);
+        xmlWriter.writeNamespace(prefix, namespace);
+        xmlWriter.setPrefix(prefix, namespace);
+      }
+    }
+    else {
+      xmlWriter.writeStartElement(parentQName.getLocalPart());
+    }
+
+    if (getXmlns() != null) {
+      xmlWriter.writeAttribute("xmlns", getXmlns());
+    }
+    for (UpdateWorkItem_type0 update : myUpdates) {
+      update.serialize(UPDATE_WORK_ITEM_QNAME, factory, xmlWriter);
+    }
+    xmlWriter.writeEndElement();
+  }
+
+  @Override
+  public XMLStreamReader getPullParser(QName qName) throws ADBException {
+    List<Object> elementList = new ArrayList<>();
+    for (UpdateWorkItem_type0 update : myUpdates) {
+      elementList.add(UPDATE_WORK_ITEM_QNAME);
+      elementList.add(update);
+    }
+    List<Object> attribList = new ArrayList<>();
+    attribList.add(new QName("", "xmlns"));
+    attribList.add(ConverterUtil.convertToString(getXmlns()));
+    return new ADBXMLStreamReaderImpl(qName, elementList.toArray(), attribList.toArray());
+  }
+}
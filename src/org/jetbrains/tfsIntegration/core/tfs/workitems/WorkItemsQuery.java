@@ -16,7 +16,9 @@
 
 package org.jetbrains.tfsIntegration.core.tfs.workitems;
 
+import com.intellij.util.Consumer;
 import com.microsoft.schemas.teamfoundation._2005._06.workitemtracking.clientservices._03.*;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
 
@@ -24,7 +26,10 @@ import java.util.List;
 
 public enum WorkItemsQuery {
   AllMyActive("All My Active Work Items") {
-    public List<WorkItem> queryWorkItems(final ServerInfo server, Object projectOrComponent, String progressMessage) throws TfsException {
+    public List<WorkItem> queryWorkItems(final ServerInfo server,
+                                         @Nullable Consumer<List<WorkItem>> firstPageConsumer,
+                                         Object projectOrComponent,
+                                         String progressMessage) throws TfsException {
       Expression_type0 expression1 = new Expression_type0();
       expression1.setColumn(WorkItemField.ASSIGNED_TO.getSerialized());
       expression1.setOperator(OperatorType.equals);
@@ -43,11 +48,14 @@ public enum WorkItemsQuery {
       Query_type0E query_type01 = new Query_type0E();
       query_type01.setGroup(groupType);
 
-      return queryWorkItems(server, query_type01, projectOrComponent, progressMessage);
+      return queryWorkItems(server, query_type01, firstPageConsumer, projectOrComponent, progressMessage);
     }},
 
   AllMy("All My Work Items") {
-    public List<WorkItem> queryWorkItems(final ServerInfo server, Object projectOrComponent, String progressMessage) throws TfsException {
+    public List<WorkItem> queryWorkItems(final ServerInfo server,
+                                         @Nullable Consumer<List<WorkItem>> firstPageConsumer,
+                                         Object projectOrComponent,
+                                         String progressMessage) throws TfsException {
       Expression_type0 expression1 = new Expression_type0();
       expression1.setColumn(WorkItemField.ASSIGNED_TO.getSerialized());
       expression1.setOperator(OperatorType.equals);
@@ -57,11 +65,14 @@ public enum WorkItemsQuery {
       Query_type0E query_type01 = new Query_type0E();
       query_type01.setExpression(expression1);
 
-      return queryWorkItems(server, query_type01, projectOrComponent, progressMessage);
+      return queryWorkItems(server, query_type01, firstPageConsumer, projectOrComponent, progressMessage);
     }},
 
   AllActive("All Active Work Items") {
-    public List<WorkItem> queryWorkItems(final ServerInfo server, Object projectOrComponent, String progressMessage) throws TfsException {
+    public List<WorkItem> queryWorkItems(final ServerInfo server,
+                                         @Nullable Consumer<List<WorkItem>> firstPageConsumer,
+                                         Object projectOrComponent,
+                                         String progressMessage) throws TfsException {
       Expression_type0 expression1 = new Expression_type0();
       expression1.setColumn(WorkItemField.STATE.getSerialized());
       expression1.setOperator(OperatorType.equals);
@@ -70,11 +81,14 @@ public enum WorkItemsQuery {
       Query_type0E query_type01 = new Query_type0E();
       query_type01.setExpression(expression1);
 
-      return queryWorkItems(server, query_type01, projectOrComponent, progressMessage);
+      return queryWorkItems(server, query_type01, firstPageConsumer, projectOrComponent, progressMessage);
     }},
 
   All("All Work Items") {
-    public List<WorkItem> queryWorkItems(ServerInfo server, Object projectOrComponent, String progressMessage) throws TfsException {
+    public List<WorkItem> queryWorkItems(ServerInfo server,
+                                         @Nullable Consumer<List<WorkItem>> firstPageConsumer,
+                                         Object projectOrComponent,
+                                         String progressMessage) throws TfsException {
       Expression_type0 expression1 = new Expression_type0();
       expression1.setColumn(WorkItemField.ID.getSerialized());
       expression1.setOperator(OperatorType.equalsGreater);
@@ -83,7 +97,7 @@ public enum WorkItemsQuery {
       Query_type0E query_type01 = new Query_type0E();
       query_type01.setExpression(expression1);
 
-      return queryWorkItems(server, query_type01, projectOrComponent, progressMessage);
+      return queryWorkItems(server, query_type01, firstPageConsumer, projectOrComponent, progressMessage);
     }};
 
   private final String myName;
@@ -96,12 +110,19 @@ public enum WorkItemsQuery {
     return myName;
   }
 
-  public abstract List<WorkItem> queryWorkItems(ServerInfo server, Object projectOrComponent, String progressMessage) throws TfsException;
+  /**
+   * @param firstPageConsumer is given the first page of work items before the rest is loaded, if there are several pages
+   */
+  public abstract List<WorkItem> queryWorkItems(ServerInfo server,
+                                                @Nullable Consumer<List<WorkItem>> firstPageConsumer,
+                                                Object projectOrComponent,
+                                                String progressMessage) throws TfsException;
 
   protected static List<WorkItem> queryWorkItems(ServerInfo server,
                                                  Query_type0E query_type01,
+                                                 @Nullable Consumer<List<WorkItem>> firstPageConsumer,
                                                  Object projectOrComponent,
                                                  String progressMessage) throws TfsException {
-    return server.getVCS().queryWorkItems(query_type01, projectOrComponent, progressMessage);
+    return server.getVCS().queryWorkItems(query_type01, firstPageConsumer, projectOrComponent, progressMessage);
   }
 }
@@ -49,7 +49,7 @@ public class PredefinedQueryNode extends BaseQueryNode {
       @NotNull
       @Override
       public WorkItemsQueryResult run() throws TfsException, VcsException {
-        return new WorkItemsQueryResult(myQuery.queryWorkItems(getServer(), tree, null));
+        return new WorkItemsQueryResult(myQuery.queryWorkItems(getServer(), myQueriesTreeContext::showFirstPage, tree, null));
       }
     });
   }
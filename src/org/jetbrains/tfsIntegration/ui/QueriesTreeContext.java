@@ -5,6 +5,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.tfsIntegration.checkin.CheckinParameters;
 import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
 import org.jetbrains.tfsIntegration.core.tfs.TfsExecutionUtil;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItem;
+
+import java.util.List;
 
 public interface QueriesTreeContext {
 
@@ -18,4 +21,9 @@ public interface QueriesTreeContext {
   TFSTeamProjectCollection getProjectCollection();
 
   void queryWorkItems(@NotNull TfsExecutionUtil.Process<WorkItemsQueryResult> query);
+
+  /**
+   * Shows the work items loaded so far while the query is still running, may be called on any thread
+   */
+  void showFirstPage(@NotNull List<WorkItem> workItems);
 }
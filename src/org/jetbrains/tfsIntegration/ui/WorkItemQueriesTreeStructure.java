@@ -8,6 +8,9 @@ import org.jetbrains.tfsIntegration.checkin.CheckinParameters;
 import org.jetbrains.tfsIntegration.core.TfsSdkManager;
 import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
 import org.jetbrains.tfsIntegration.core.tfs.TfsExecutionUtil;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItem;
+
+import java.util.List;
 
 public class WorkItemQueriesTreeStructure extends SimpleTreeStructure implements QueriesTreeContext, Disposable {
 
@@ -63,6 +66,11 @@ public class WorkItemQueriesTreeStructure extends SimpleTreeStructure implements
     myPanel.queryWorkItems(query);
   }
 
+  @Override
+  public void showFirstPage(@NotNull List<WorkItem> workItems) {
+    myPanel.showFirstPage(workItems);
+  }
+
   @Override
   public void dispose() {
     myProjectCollection.close();
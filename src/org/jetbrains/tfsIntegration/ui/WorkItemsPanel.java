@@ -2,6 +2,8 @@ package org.jetbrains.tfsIntegration.ui;
 
 import com.intellij.ide.util.treeView.AbstractTreeStructure;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.ui.TreeTableSpeedSearch;
@@ -13,13 +15,16 @@ import com.intellij.util.ObjectUtils;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.util.ui.tree.TreeUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.tfsIntegration.checkin.CheckinParameters;
 import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
 import org.jetbrains.tfsIntegration.core.tfs.TfsExecutionUtil;
 import org.jetbrains.tfsIntegration.core.tfs.WorkItemsCheckinParameters;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItem;
 
 import javax.swing.*;
 import javax.swing.event.TableModelEvent;
+import java.util.List;
 
 /**
  * @author Konstantin Kolosovsky.
@@ -33,6 +38,8 @@ public class WorkItemsPanel implements Disposable {
   private WorkItemsTableModel myWorkItemsTableModel;
 
   private final CheckinParametersForm myForm;
+  // identity of the query being performed, if any
+  @Nullable private volatile Object myRunningQuery;
 
   public WorkItemsPanel(CheckinParametersForm form) {
     myForm = form;
@@ -53,8 +60,14 @@ public class WorkItemsPanel implements Disposable {
   }
 
   public void queryWorkItems(@NotNull TfsExecutionUtil.Process<WorkItemsQueryResult> query) {
-    final TfsExecutionUtil.ResultWithError<WorkItemsQueryResult> result =
-      TfsExecutionUtil.executeInBackground("Performing Query", getProject(), query);
+    myRunningQuery = new Object();
+    final TfsExecutionUtil.ResultWithError<WorkItemsQueryResult> result;
+    try {
+      result = TfsExecutionUtil.executeInBackground("Performing Query", getProject(), query);
+    }
+    finally {
+      myRunningQuery = null;
+    }
 
     final String title = "Query Work Items";
     if (result.cancelled || result.showDialogIfError(title)) {
@@ -66,6 +79,19 @@ public class WorkItemsPanel implements Disposable {
     updateWorkItemsTable();
   }
 
+  public void showFirstPage(@NotNull List<WorkItem> workItems) {
+    final Object query = myRunningQuery;
+    ApplicationManager.getApplication().invokeLater(() -> {
+      // the complete result may be already shown
+      if (query != null && query == myRunningQuery) {
+        WorkItemsCheckinParameters firstPage = new WorkItemsCheckinParameters();
+        firstPage.update(new WorkItemsQueryResult(workItems));
+        myWorkItemsTableModel.setContent(firstPage);
+        TreeUtil.expandAll(myWorkItemsTable.getTree());
+      }
+    }, ModalityState.any());
+  }
+
   private void updateWorkItemsTable() {
     myWorkItemsTableModel.setContent(getState().getWorkItems(myForm.getSelectedServer()));
     TreeUtil.expandAll(myWorkItemsTable.getTree());
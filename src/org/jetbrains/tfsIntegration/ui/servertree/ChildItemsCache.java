@@ -0,0 +1,186 @@
+package org.jetbrains.tfsIntegration.ui.servertree;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Pair;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Item;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ItemType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.TFSBundle;
+import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.webservice.TfsRequestManager;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Child items of server folders, shared by all server tree dialogs of a server. Items are kept for a limited time, so that reopening
+ * a dialog does not query the same folders again while changes made on the server still show up soon.
+ */
+class ChildItemsCache {
+
+  private static final Logger LOG = Logger.getInstance(ChildItemsCache.class.getName());
+
+  private static final long TTL_MILLIS = Long.getLong("org.jetbrains.tfsIntegration.serverTreeCacheTtl", 60000);
+  private static final int PREFETCH_LIMIT = Integer.getInteger("org.jetbrains.tfsIntegration.serverTreePrefetchLimit", 50);
+
+  private static final long POLL_TIMEOUT = 200; //ms
+
+  private static final Map<URI, ChildItemsCache> ourInstances = new ConcurrentHashMap<>();
+
+  private static class Entry {
+    private final CompletableFuture<List<Item>> myChildren = new CompletableFuture<>();
+    private final long myCreated = System.currentTimeMillis();
+
+    private boolean isExpired(long now) {
+      return now - myCreated > TTL_MILLIS;
+    }
+
+    private boolean isLoaded() {
+      return myChildren.isDone() && !myChildren.isCompletedExceptionally();
+    }
+  }
+
+  // key is (parent path, folders only)
+  private final ConcurrentMap<Pair<String, Boolean>, Entry> myEntries = new ConcurrentHashMap<>();
+
+  @NotNull
+  static ChildItemsCache getInstance(@NotNull ServerInfo server) {
+    return ourInstances.computeIfAbsent(server.getUri(), uri -> new ChildItemsCache());
+  }
+
+  @NotNull
+  List<Item> getChildItems(@NotNull ServerInfo server, @NotNull String path, boolean foldersOnly, Object projectOrComponent)
+    throws TfsException {
+    Pair<String, Boolean> key = Pair.create(path, foldersOnly);
+    if (foldersOnly && getEntry(key) == null) {
+      List<Item> allChildren = getLoaded(Pair.create(path, false));
+      if (allChildren != null) {
+        return getFolders(allChildren);
+      }
+    }
+
+    final Entry entry = new Entry();
+    Entry existing;
+    // reuse the entry being loaded by a prefetch or another dialog, if loading it fails query again to report the error to the user
+    while ((existing = myEntries.compute(key, (k, current) -> isValid(current) ? current : entry)) != entry) {
+      List<Item> children = waitFor(existing);
+      if (children != null) {
+        return children;
+      }
+    }
+    try {
+      List<Item> children = server.getVCS().getChildItems(path, foldersOnly, projectOrComponent, TFSBundle.message("loading.items"));
+      entry.myChildren.complete(children);
+      return children;
+    }
+    catch (TfsException | RuntimeException e) {
+      myEntries.remove(key, entry);
+      entry.myChildren.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Queries the children of the folders not cached yet on a pooled thread, several folders in one request.
+   */
+  void prefetch(@NotNull ServerInfo server, @NotNull Collection<String> paths, boolean foldersOnly, Object projectOrComponent) {
+    if (PREFETCH_LIMIT <= 0 || paths.isEmpty() || TfsRequestManager.shouldShowLoginDialog(server.getUri())) {
+      return;
+    }
+
+    removeExpired();
+    final Map<String, Entry> toLoad = new LinkedHashMap<>();
+    for (String path : paths) {
+      if (toLoad.size() >= PREFETCH_LIMIT) {
+        break;
+      }
+      final Entry entry = new Entry();
+      if (myEntries.compute(Pair.create(path, foldersOnly), (key, existing) -> isValid(existing) ? existing : entry) == entry) {
+        toLoad.put(path, entry);
+      }
+    }
+    if (toLoad.isEmpty()) {
+      return;
+    }
+
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      try {
+        Map<String, List<Item>> children = server.getVCS().getChildItems(toLoad.keySet(), foldersOnly, projectOrComponent, null);
+        for (Map.Entry<String, Entry> entry : toLoad.entrySet()) {
+          entry.getValue().myChildren.complete(children.get(entry.getKey()));
+        }
+      }
+      catch (Throwable e) {
+        LOG.debug(e);
+        for (Map.Entry<String, Entry> entry : toLoad.entrySet()) {
+          myEntries.remove(Pair.create(entry.getKey(), foldersOnly), entry.getValue());
+          entry.getValue().myChildren.completeExceptionally(e);
+        }
+      }
+    });
+  }
+
+  @Nullable
+  private Entry getEntry(@NotNull Pair<String, Boolean> key) {
+    Entry entry = myEntries.get(key);
+    if (entry != null && !isValid(entry)) {
+      myEntries.remove(key, entry);
+      return null;
+    }
+    return entry;
+  }
+
+  @Nullable
+  private List<Item> getLoaded(@NotNull Pair<String, Boolean> key) {
+    Entry entry = getEntry(key);
+    return entry != null && entry.isLoaded() ? entry.myChildren.getNow(null) : null;
+  }
+
+  private static boolean isValid(@Nullable Entry entry) {
+    return entry != null && !entry.isExpired(System.currentTimeMillis()) && !entry.myChildren.isCompletedExceptionally();
+  }
+
+  private void removeExpired() {
+    long now = System.currentTimeMillis();
+    myEntries.values().removeIf(entry -> entry.myChildren.isDone() && entry.isExpired(now));
+  }
+
+  /**
+   * @return null if loading failed
+   */
+  @Nullable
+  private static List<Item> waitFor(@NotNull Entry entry) {
+    while (true) {
+      ProgressManager.checkCanceled();
+      try {
+        return entry.myChildren.get(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e) {
+        // continue waiting
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        return null;
+      }
+    }
+  }
+
+  @NotNull
+  private static List<Item> getFolders(@NotNull List<Item> items) {
+    List<Item> result = new ArrayList<>();
+    for (Item item : items) {
+      if (item.getType() == ItemType.Folder) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+}
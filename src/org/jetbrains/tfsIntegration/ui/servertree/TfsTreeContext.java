@@ -3,10 +3,10 @@ package org.jetbrains.tfsIntegration.ui.servertree;
 import com.intellij.openapi.util.Condition;
 import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.Item;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.tfsIntegration.core.TFSBundle;
 import org.jetbrains.tfsIntegration.core.tfs.ServerInfo;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
 
+import java.util.Collection;
 import java.util.List;
 
 public class TfsTreeContext {
@@ -30,6 +30,13 @@ public class TfsTreeContext {
   }
 
   public List<Item> getChildItems(String path) throws TfsException {
-    return myServer.getVCS().getChildItems(path, myFoldersOnly, myProjectOrComponent, TFSBundle.message("loading.items"));
+    return ChildItemsCache.getInstance(myServer).getChildItems(myServer, path, myFoldersOnly, myProjectOrComponent);
+  }
+
+  /**
+   * Starts loading the children of the given folders in background, so that they are ready by the time the folders are expanded
+   */
+  public void prefetchChildItems(Collection<String> paths) {
+    ChildItemsCache.getInstance(myServer).prefetch(myServer, paths, myFoldersOnly, myProjectOrComponent);
   }
 }
@@ -67,9 +67,15 @@ public class TfsTreeNode extends SimpleNode {
     }
 
     final List<TfsTreeNode> result = new ArrayList<>(myVirtualChildren);
+    final List<String> childFolders = new ArrayList<>();
     for (final Item childItem : children) {
-      result.add(new TfsTreeNode(this, childItem.getItem(), childItem.getType() == ItemType.Folder, false));
+      boolean isDirectory = childItem.getType() == ItemType.Folder;
+      result.add(new TfsTreeNode(this, childItem.getItem(), isDirectory, false));
+      if (isDirectory) {
+        childFolders.add(childItem.getItem());
+      }
     }
+    myTreeContext.prefetchChildItems(childFolders);
     return result.toArray(new SimpleNode[result.size()]);
   }
 
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits the number of simultaneous requests to a single server.
+ * <p/>
+ * Foreground requests (the ones user waits for in a modal progress) and background requests have separate permits, so that
+ * background refreshes can't occupy all the connections, and both kinds share the total limit. In priority mode a background request
+ * does not start while there are foreground requests waiting for a permit, so that the freed connection goes to the foreground one.
+ */
+public class RequestLimiter {
+
+  private static final long POLL_TIMEOUT = 200; //ms
+
+  private final int myMaxTotal;
+  private final int myMaxForeground;
+  private final int myMaxBackground;
+  private final boolean myPrioritizeForeground;
+
+  private final Object myLock = new Object();
+  private int myRunningForeground;
+  private int myRunningBackground;
+  private int myWaitingForeground;
+  private int myWaitingBackground;
+
+  public RequestLimiter(int maxTotal, int maxForeground, int maxBackground, boolean prioritizeForeground) {
+    myMaxTotal = Math.max(1, maxTotal);
+    myMaxForeground = Math.max(1, maxForeground);
+    myMaxBackground = Math.max(1, maxBackground);
+    myPrioritizeForeground = prioritizeForeground;
+  }
+
+  /**
+   * @param pi if not null, waiting is interrupted with {@link ProcessCanceledException} when the indicator gets cancelled
+   */
+  public void acquire(boolean foreground, @Nullable ProgressIndicator pi) {
+    synchronized (myLock) {
+      if (foreground) {
+        myWaitingForeground++;
+      }
+      else {
+        myWaitingBackground++;
+      }
+      try {
+        while (!canStart(foreground)) {
+          if (pi != null) {
+            pi.checkCanceled();
+          }
+          try {
+            myLock.wait(POLL_TIMEOUT);
+          }
+          catch (InterruptedException e) {
+            throw new ProcessCanceledException(e);
+          }
+        }
+        if (foreground) {
+          myRunningForeground++;
+        }
+        else {
+          myRunningBackground++;
+        }
+      }
+      finally {
+        if (foreground) {
+          myWaitingForeground--;
+        }
+        else {
+          myWaitingBackground--;
+        }
+        // waiting background requests may be able to start now
+        myLock.notifyAll();
+      }
+    }
+  }
+
+  public void release(boolean foreground) {
+    synchronized (myLock) {
+      if (foreground) {
+        myRunningForeground--;
+      }
+      else {
+        myRunningBackground--;
+      }
+      myLock.notifyAll();
+    }
+  }
+
+  /**
+   * @return number of requests waiting for a permit
+   */
+  public int getWaitingCount(boolean foreground) {
+    synchronized (myLock) {
+      return foreground ? myWaitingForeground : myWaitingBackground;
+    }
+  }
+
+  private boolean canStart(boolean foreground) {
+    if (myRunningForeground + myRunningBackground >= myMaxTotal) {
+      return false;
+    }
+    if (foreground) {
+      return myRunningForeground < myMaxForeground;
+    }
+    return myRunningBackground < myMaxBackground && !(myPrioritizeForeground && myWaitingForeground > 0);
+  }
+}
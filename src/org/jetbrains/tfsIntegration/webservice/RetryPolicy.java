@@ -0,0 +1,225 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import org.apache.commons.httpclient.HttpStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.TFSBundle;
+import org.jetbrains.tfsIntegration.exceptions.ConnectionFailedException;
+import org.jetbrains.tfsIntegration.exceptions.ConnectionTimeoutException;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.exceptions.TfsExceptionManager;
+
+import java.util.Random;
+
+/**
+ * Retries of the requests to a single server that failed because the server could not be reached, and a circuit breaker for it.
+ * <p/>
+ * Only idempotent requests are retried, with exponential backoff and random jitter so that the requests failed at the same time are not
+ * sent again at the same time. After several failures in a row the circuit opens: requests that may fail fast are rejected without
+ * connecting until the open time passes, then the next request is sent as a probe. Any successful request closes the circuit.
+ */
+public class RetryPolicy {
+
+  private static final Logger LOG = Logger.getInstance(RetryPolicy.class.getName());
+
+  private static final int MAX_ATTEMPTS = Integer.getInteger("org.jetbrains.tfsIntegration.requestAttempts", 3);
+  private static final long INITIAL_DELAY = Long.getLong("org.jetbrains.tfsIntegration.requestRetryDelay", 500);
+  private static final long MAX_DELAY = Long.getLong("org.jetbrains.tfsIntegration.requestRetryMaxDelay", 5000);
+  private static final int FAILURES_TO_OPEN = Integer.getInteger("org.jetbrains.tfsIntegration.circuitBreakerFailures", 5);
+  private static final long OPEN_TIME = Long.getLong("org.jetbrains.tfsIntegration.circuitBreakerOpenTime", 30000);
+
+  private static final long POLL_TIMEOUT = 200; //ms
+
+  public interface Clock {
+    long currentTimeMillis();
+
+    void sleep(long millis) throws InterruptedException;
+  }
+
+  public static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+      Thread.sleep(millis);
+    }
+  };
+
+  public interface Attempt<T> {
+    T execute() throws Exception;
+  }
+
+  private final int myMaxAttempts;
+  private final long myInitialDelay;
+  private final long myMaxDelay;
+  private final int myFailuresToOpen;
+  private final long myOpenTime;
+  private final Clock myClock;
+  private final Random myRandom;
+
+  private final Object myLock = new Object();
+  private int myFailuresInRow;
+  private long myOpenUntil;
+  @Nullable private TfsException myLastFailure;
+
+  public RetryPolicy(int maxAttempts,
+                     long initialDelay,
+                     long maxDelay,
+                     int failuresToOpen,
+                     long openTime,
+                     @NotNull Clock clock,
+                     @NotNull Random random) {
+    myMaxAttempts = Math.max(1, maxAttempts);
+    myInitialDelay = Math.max(0, initialDelay);
+    myMaxDelay = Math.max(myInitialDelay, maxDelay);
+    myFailuresToOpen = failuresToOpen;
+    myOpenTime = openTime;
+    myClock = clock;
+    myRandom = random;
+  }
+
+  public static RetryPolicy createDefault() {
+    return new RetryPolicy(MAX_ATTEMPTS, INITIAL_DELAY, MAX_DELAY, FAILURES_TO_OPEN, OPEN_TIME, SYSTEM_CLOCK, new Random());
+  }
+
+  /**
+   * @param idempotent if true, the request is sent again when the server could not be reached
+   * @param failFast   if true, the request is rejected while the circuit is open
+   * @param pi         if not null, waiting before the next attempt is interrupted with {@link ProcessCanceledException} when the
+   *                   indicator gets cancelled
+   * @throws TfsException error of the last attempt, or {@link ConnectionFailedException} if the request was rejected
+   */
+  public <T> T execute(boolean idempotent, boolean failFast, @Nullable ProgressIndicator pi, @NotNull Attempt<T> attempt)
+    throws TfsException {
+    if (failFast) {
+      checkCircuit();
+    }
+
+    for (int attemptNumber = 1; ; attemptNumber++) {
+      TfsException error;
+      try {
+        T result = attempt.execute();
+        onSuccess();
+        return result;
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      catch (Exception e) {
+        error = TfsExceptionManager.processException(e);
+      }
+
+      if (!isTransient(error)) {
+        throw error;
+      }
+      onFailure(error);
+      if (!idempotent || attemptNumber >= myMaxAttempts) {
+        throw error;
+      }
+      long delay = getDelay(attemptNumber);
+      LOG.info("Request failed, attempt " + attemptNumber + " of " + myMaxAttempts + ", retrying in " + delay + " ms", error);
+      sleep(delay, pi);
+    }
+  }
+
+  /**
+   * @return true if the server could not be reached or is temporarily unavailable, so that the request may succeed later
+   */
+  public static boolean isTransient(@NotNull TfsException e) {
+    if (e instanceof ConnectionTimeoutException) {
+      return true;
+    }
+    if (e instanceof ConnectionFailedException) {
+      int status = ((ConnectionFailedException)e).getHttpStatusCode();
+      // the status is not defined for socket errors
+      return status == 0 || status == HttpStatus.SC_SERVICE_UNAVAILABLE || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+    return false;
+  }
+
+  public boolean isOpen() {
+    synchronized (myLock) {
+      return myFailuresInRow >= myFailuresToOpen && myClock.currentTimeMillis() < myOpenUntil;
+    }
+  }
+
+  /**
+   * @return delay before the attempt that follows the given failed one: half of the exponential delay plus up to the same random part
+   */
+  public long getDelay(int failedAttempt) {
+    long delay = myInitialDelay;
+    for (int i = 1; i < failedAttempt && delay < myMaxDelay; i++) {
+      delay *= 2;
+    }
+    delay = Math.min(delay, myMaxDelay);
+    return delay / 2 + (long)(myRandom.nextDouble() * (delay - delay / 2));
+  }
+
+  private void checkCircuit() throws ConnectionFailedException {
+    synchronized (myLock) {
+      if (myFailuresInRow < myFailuresToOpen) {
+        return;
+      }
+      long left = myOpenUntil - myClock.currentTimeMillis();
+      if (left > 0) {
+        throw new ConnectionFailedException(myLastFailure, TFSBundle.message("server.not.responding.0", (left + 999) / 1000));
+      }
+      // let this request probe the server, the rest are rejected until it completes
+      myOpenUntil = myClock.currentTimeMillis() + myOpenTime;
+    }
+  }
+
+  private void onSuccess() {
+    synchronized (myLock) {
+      myFailuresInRow = 0;
+      myLastFailure = null;
+    }
+  }
+
+  private void onFailure(@NotNull TfsException error) {
+    synchronized (myLock) {
+      myFailuresInRow++;
+      myLastFailure = error;
+      if (myFailuresInRow >= myFailuresToOpen) {
+        myOpenUntil = myClock.currentTimeMillis() + myOpenTime;
+      }
+    }
+  }
+
+  private void sleep(long delay, @Nullable ProgressIndicator pi) {
+    long end = myClock.currentTimeMillis() + delay;
+    for (long left = delay; left > 0; left = end - myClock.currentTimeMillis()) {
+      if (pi != null) {
+        pi.checkCanceled();
+      }
+      try {
+        myClock.sleep(Math.min(left, POLL_TIMEOUT));
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException(e);
+      }
+    }
+  }
+}
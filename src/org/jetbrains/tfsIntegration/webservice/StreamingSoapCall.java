@@ -0,0 +1,164 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAP11Constants;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.client.OperationClient;
+import org.apache.axis2.client.Stub;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.databinding.ADBException;
+import org.apache.axis2.description.WSDL2Constants;
+import org.apache.axis2.wsdl.WSDLConstants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.rmi.RemoteException;
+
+/**
+ * Calls a web service operation through the service client of a generated stub, and deserializes the elements of the response one by
+ * one while they are being read from the connection, instead of deserializing the whole response into arrays first.
+ * <p/>
+ * The elements are found by their depth: the response element has depth 0, e.g. in
+ * {@code <GetResponse><GetResult><ArrayOfGetOperation><GetOperation/>...} get operations have depth 3. The elements one level up
+ * group them, e.g. the results of every get request are in a separate {@code ArrayOfGetOperation}.
+ */
+public class StreamingSoapCall {
+
+  public interface RequestFactory {
+    @NotNull
+    OMElement createRequest(@NotNull SOAPFactory factory) throws ADBException;
+  }
+
+  public interface ElementParser<T> {
+    @Nullable
+    T parse(@NotNull XMLStreamReader reader) throws Exception;
+  }
+
+  public interface ElementConsumer<T> {
+    /**
+     * @param groupIndex index of the enclosing group among the groups of the response
+     * @return false to stop reading the response
+     */
+    boolean consume(int groupIndex, @NotNull T element);
+  }
+
+  /**
+   * @return number of groups read
+   */
+  public static <T> int execute(@NotNull Stub stub,
+                                @NotNull QName operationName,
+                                @NotNull String soapAction,
+                                @NotNull RequestFactory requestFactory,
+                                int elementDepth,
+                                @NotNull ElementParser<T> parser,
+                                @NotNull ElementConsumer<T> consumer) throws RemoteException {
+    MessageContext messageContext = new MessageContext();
+    try {
+      // see the generated stubs
+      OperationClient operationClient = stub._getServiceClient().createClient(operationName);
+      operationClient.getOptions().setAction(soapAction);
+      operationClient.getOptions().setExceptionToBeThrownOnSOAPFault(true);
+      operationClient.getOptions().setProperty(WSDL2Constants.ATTR_WHTTP_QUERY_PARAMETER_SEPARATOR, "&");
+
+      SOAPFactory factory = SOAP11Constants.SOAP_ENVELOPE_NAMESPACE_URI.equals(operationClient.getOptions().getSoapVersionURI())
+                            ? OMAbstractFactory.getSOAP11Factory()
+                            : OMAbstractFactory.getSOAP12Factory();
+      SOAPEnvelope envelope = factory.getDefaultEnvelope();
+      envelope.getBody().addChild(requestFactory.createRequest(factory));
+      stub._getServiceClient().addHeadersToEnvelope(envelope);
+      messageContext.setEnvelope(envelope);
+      operationClient.addMessageContext(messageContext);
+      operationClient.execute(true);
+
+      MessageContext returnMessageContext = operationClient.getMessageContext(WSDLConstants.MESSAGE_LABEL_IN_VALUE);
+      OMElement response = returnMessageContext.getEnvelope().getBody().getFirstElement();
+      return response != null ? readElements(response.getXMLStreamReaderWithoutCaching(), elementDepth, parser, consumer) : 0;
+    }
+    catch (AxisFault e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw AxisFault.makeFault(e);
+    }
+    finally {
+      if (messageContext.getTransportOut() != null) {
+        messageContext.getTransportOut().getSender().cleanup(messageContext);
+      }
+    }
+  }
+
+  /**
+   * Reads the elements of the given depth from the element the reader is positioned at
+   *
+   * @return number of groups read
+   */
+  public static <T> int readElements(@NotNull XMLStreamReader reader,
+                                     int elementDepth,
+                                     @NotNull ElementParser<T> parser,
+                                     @NotNull ElementConsumer<T> consumer) throws Exception {
+    int depth = -1;
+    int groupIndex = -1;
+    int event = reader.getEventType();
+    while (true) {
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        if (depth == elementDepth - 1) {
+          groupIndex++;
+        }
+        else if (depth == elementDepth) {
+          T element = parser.parse(reader);
+          // the parser stops at the end of the element, as in the generated array parsing code
+          skipToEndElement(reader);
+          depth--;
+          if (element != null && !consumer.consume(Math.max(groupIndex, 0), element)) {
+            break;
+          }
+        }
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+        if (depth < 0) {
+          break;
+        }
+      }
+      else if (event == XMLStreamConstants.END_DOCUMENT) {
+        break;
+      }
+
+      if (!reader.hasNext()) {
+        break;
+      }
+      event = reader.next();
+    }
+    return groupIndex + 1;
+  }
+
+  private static void skipToEndElement(@NotNull XMLStreamReader reader) throws XMLStreamException {
+    while (!reader.isEndElement()) {
+      reader.next();
+    }
+  }
+}
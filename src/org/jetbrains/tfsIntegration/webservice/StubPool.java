@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.ThrowableComputable;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.client.Stub;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Web service stubs of a single service that are reused by the requests. A stub keeps the options of the call being made, so it can't
+ * be used by several threads at the same time.
+ * <p/>
+ * A stub acquired inside {@link #withLeases} is leased to the current thread and returns to the pool when the innermost
+ * {@code withLeases} call it was acquired in completes, e.g. when the request completes, see {@link TfsRequestManager}. A stub acquired
+ * outside of it is not returned.
+ */
+public class StubPool<S extends Stub> {
+
+  private static final int MAX_IDLE_STUBS = Integer.getInteger("org.jetbrains.tfsIntegration.maxIdleStubs", 8);
+
+  public interface StubFactory<S extends Stub> {
+    @NotNull
+    S create() throws AxisFault;
+  }
+
+  private static class Leases {
+    private int myScopes;
+    private final List<Pair<StubPool<?>, Stub>> myStubs = new ArrayList<>();
+  }
+
+  private static final ThreadLocal<Leases> ourLeases = ThreadLocal.withInitial(Leases::new);
+
+  private final StubFactory<S> myFactory;
+  private final ConcurrentLinkedQueue<S> myIdle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger myIdleCount = new AtomicInteger();
+
+  public StubPool(@NotNull StubFactory<S> factory) {
+    myFactory = factory;
+  }
+
+  /**
+   * @return idle stub, or a new one if there are no idle stubs
+   */
+  @NotNull
+  public S acquire() throws AxisFault {
+    S stub = myIdle.poll();
+    if (stub != null) {
+      myIdleCount.decrementAndGet();
+    }
+    else {
+      stub = myFactory.create();
+    }
+
+    Leases leases = ourLeases.get();
+    if (leases.myScopes > 0) {
+      leases.myStubs.add(Pair.create(this, stub));
+    }
+    return stub;
+  }
+
+  /**
+   * Stubs acquired by the current thread while running the computable return to their pools after it completes
+   */
+  public static <T, E extends Exception> T withLeases(@NotNull ThrowableComputable<T, E> computable) throws E {
+    Leases leases = ourLeases.get();
+    int mark = leases.myStubs.size();
+    leases.myScopes++;
+    try {
+      return computable.compute();
+    }
+    finally {
+      leases.myScopes--;
+      while (leases.myStubs.size() > mark) {
+        Pair<StubPool<?>, Stub> lease = leases.myStubs.remove(leases.myStubs.size() - 1);
+        lease.first.release(lease.second);
+      }
+    }
+  }
+
+  private void release(@NotNull Stub stub) {
+    if (myIdleCount.incrementAndGet() <= MAX_IDLE_STUBS) {
+      //noinspection unchecked
+      myIdle.offer((S)stub);
+    }
+    else {
+      myIdleCount.decrementAndGet();
+    }
+  }
+}
@@ -2,9 +2,11 @@ package org.jetbrains.tfsIntegration.webservice;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.ClassLoaderUtil;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Ref;
@@ -20,11 +22,13 @@ import org.jetbrains.tfsIntegration.core.configuration.Credentials;
 import org.jetbrains.tfsIntegration.core.configuration.TFSConfigurationManager;
 import org.jetbrains.tfsIntegration.exceptions.*;
 import org.jetbrains.tfsIntegration.ui.TfsLoginDialog;
+import org.jetbrains.tfsIntegration.webservice.metrics.RequestMetricsRecorder;
 
 import javax.swing.*;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class TfsRequestManager {
@@ -46,11 +50,39 @@ public class TfsRequestManager {
     public boolean retrieveAuthorizedCredentials() {
       return true;
     }
+
+    /**
+     * @return true if the request may be sent again when the server could not be reached, e.g. it only queries the server
+     */
+    public boolean isIdempotent() {
+      return false;
+    }
+  }
+
+  public static abstract class IdempotentRequest<T> extends Request<T> {
+    public IdempotentRequest(String progressTitle) {
+      super(progressTitle);
+    }
+
+    @Override
+    public boolean isIdempotent() {
+      return true;
+    }
   }
 
   private static final long POLL_TIMEOUT = 200; //ms
 
+  private static final int MAX_REQUESTS = Integer.getInteger("org.jetbrains.tfsIntegration.maxRequestsPerServer", 4);
+  private static final int MAX_FOREGROUND_REQUESTS =
+    Integer.getInteger("org.jetbrains.tfsIntegration.maxForegroundRequestsPerServer", MAX_REQUESTS);
+  private static final int MAX_BACKGROUND_REQUESTS =
+    Integer.getInteger("org.jetbrains.tfsIntegration.maxBackgroundRequestsPerServer", Math.max(1, MAX_REQUESTS - 1));
+  private static final boolean PRIORITIZE_FOREGROUND_REQUESTS =
+    !Boolean.getBoolean("org.jetbrains.tfsIntegration.fairRequestOrder");
+
   private static final Map<URI, TfsRequestManager> ourInstances = new HashMap<>();
+  // requests made on behalf of the current thread are counted here, see countRequests()
+  private static final ThreadLocal<AtomicLong> ourRequestsCounter = new ThreadLocal<>();
   private static final Logger LOG = Logger.getInstance(TfsRequestManager.class.getName());
 
   @Nullable
@@ -59,10 +91,14 @@ public class TfsRequestManager {
   // shared lock to avoid showing login dialog for several servers at the same time
   private static final ReentrantLock ourShowDialogLock = new ReentrantLock();
 
-  // Don't make several requests to the same server simultaneously.
+  // Don't make too many requests to the same server simultaneously, and keep some room for the requests user is waiting for.
   // Indeed, this way we don't protect from simultaneous request to the existing server when trying to add it as a new one
   // (finally and getting 'duplicate server' error), but I believe it won't hurt
-  private final ReentrantLock myRequestLock = new ReentrantLock();
+  private final RequestLimiter myRequestLimiter =
+    new RequestLimiter(MAX_REQUESTS, MAX_FOREGROUND_REQUESTS, MAX_BACKGROUND_REQUESTS, PRIORITIZE_FOREGROUND_REQUESTS);
+
+  // background requests fail fast while the server is not responding, the ones user waits for are always sent
+  private final RetryPolicy myRetryPolicy = RetryPolicy.createDefault();
 
   private TfsRequestManager(@Nullable URI serverUri) {
     myServerUri = serverUri;
@@ -91,6 +127,7 @@ public class TfsRequestManager {
     boolean showDialog = shouldShowDialog(force);
     final Ref<String> message = new Ref<>();
     final Ref<Credentials> credentials = new Ref<>(TFSConfigurationManager.getInstance().getCredentials(myServerUri));
+    Credentials rejectedCredentials = null;
 
     while (true) {
       if (showDialog || !message.isNull()) {
@@ -98,7 +135,11 @@ public class TfsRequestManager {
           ourShowDialogLock.lock();
           ProgressManager.checkCanceled();
           showDialog = shouldShowDialog(force); // check again since another thread could already enter right credentials
-          // TODO we probably have to compare original password and current one
+          Credentials stored = TFSConfigurationManager.getInstance().getCredentials(myServerUri);
+          if (!message.isNull() && !showDialog && stored != null && !isSameLogin(stored, rejectedCredentials)) {
+            // another thread has been authorized while this one waited for the dialog, e.g. a parallel group of the same operation
+            message.set(null);
+          }
           if (!message.isNull() || showDialog) {
             ProgressIndicator pi = ProgressManager.getInstance().getProgressIndicator();
             if (pi != null) {
@@ -152,19 +193,23 @@ public class TfsRequestManager {
         }
       }
       LOG.assertTrue(!credentials.isNull());
+      Credentials attemptedCredentials = credentials.get();
+      ProgressIndicator pi = ProgressManager.getInstance().getProgressIndicator();
       try {
-        myRequestLock.lock();
         ProgressManager.checkCanceled();
-        ProgressIndicator pi = ProgressManager.getInstance().getProgressIndicator();
-        T result = executeRequestImpl(myServerUri, credentials, request, pi);
+        T result = executeWithRetries(false, myServerUri, credentials, request, pi, ourRequestsCounter.get());
         TFSConfigurationManager.getInstance().storeCredentials(myServerUri, credentials.get());
         return result;
       }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
       catch (Exception e) {
         final TfsException tfsException = TfsExceptionManager.processException(e);
         LOG.warn(tfsException);
         if (tfsException instanceof UnauthorizedException) {
           message.set(getMessage(tfsException, credentials.get().getType()));
+          rejectedCredentials = attemptedCredentials;
           continue;
         }
         else if (!(tfsException instanceof ConnectionFailedException)) {
@@ -172,9 +217,6 @@ public class TfsRequestManager {
         }
         throw tfsException;
       }
-      finally {
-        myRequestLock.unlock();
-      }
     }
   }
 
@@ -183,6 +225,7 @@ public class TfsRequestManager {
     private final Object myProjectOrComponent;
     private final Request<T> myRequest;
     private final URI myCurrentServerUri;
+    @Nullable private final AtomicLong myRequestsCounter; // of the thread that waits for the session
 
     private T myResult;
     private TfsException myError;
@@ -195,6 +238,7 @@ public class TfsRequestManager {
       myProjectOrComponent = projectOrComponent;
       myRequest = request;
       myCurrentServerUri = currentServerUri;
+      myRequestsCounter = ourRequestsCounter.get();
     }
 
     public TfsException getError() {
@@ -215,15 +259,16 @@ public class TfsRequestManager {
 
       ApplicationManager.getApplication().executeOnPooledThread(() -> {
         try {
-          myRequestLock.lock();
-          myResult = executeRequestImpl(myCurrentServerUri, myCredentials, myRequest, pi);
+          myResult = executeWithRetries(true, myCurrentServerUri, myCredentials, myRequest, pi, myRequestsCounter);
+        }
+        catch (ProcessCanceledException e) {
+          myError = new UserCancelledException();
         }
         catch (Exception e) {
           LOG.warn(e);
           myError = TfsExceptionManager.processException(e);
         }
         finally {
-          myRequestLock.unlock();
           done.up();
         }
       });
@@ -369,6 +414,13 @@ public class TfsRequestManager {
     }
   }
 
+  private static boolean isSameLogin(@NotNull Credentials credentials1, @Nullable Credentials credentials2) {
+    return credentials2 != null &&
+           credentials1.getType() == credentials2.getType() &&
+           credentials1.getQualifiedUsername().equals(credentials2.getQualifiedUsername()) &&
+           Comparing.equal(credentials1.getPassword(), credentials2.getPassword());
+  }
+
   private static String getMessage(final TfsException error, final Credentials.Type type) {
     if (error instanceof ConnectionFailedException &&
         ((ConnectionFailedException)error).getHttpStatusCode() == HttpStatus.SC_MOVED_TEMPORARILY) {
@@ -394,6 +446,36 @@ public class TfsRequestManager {
     return shouldShowLoginDialog(myServerUri);
   }
 
+  /**
+   * @return number of background requests sent to a server at the same time
+   */
+  public static int getMaxBackgroundRequests() {
+    return Math.min(MAX_BACKGROUND_REQUESTS, MAX_REQUESTS);
+  }
+
+  /**
+   * Runs {@code computable} counting the server calls it makes in {@code counter}, including the ones made by parallel tasks that
+   * pass {@link #getRequestsCounter()} on. Calls made by other threads at the same time are not counted.
+   */
+  public static <T, E extends Exception> T countRequests(@Nullable AtomicLong counter, ThrowableComputable<T, E> computable) throws E {
+    AtomicLong previous = ourRequestsCounter.get();
+    ourRequestsCounter.set(counter);
+    try {
+      return computable.compute();
+    }
+    finally {
+      ourRequestsCounter.set(previous);
+    }
+  }
+
+  /**
+   * @return the counter the requests of the current thread are counted in, if any
+   */
+  @Nullable
+  public static AtomicLong getRequestsCounter() {
+    return ourRequestsCounter.get();
+  }
+
   public static boolean shouldShowLoginDialog(URI serverUri) {
     Credentials credentials = TFSConfigurationManager.getInstance().getCredentials(serverUri);
     return credentials == null ||
@@ -401,24 +483,61 @@ public class TfsRequestManager {
            TfsLoginDialog.shouldPromptForProxyPassword(true);
   }
 
+  /**
+   * Background requests fail fast while the server is not responding, so the circuit is checked before waiting for a permit. Every
+   * attempt takes a permit of its own, so that other requests may be sent while this one waits to be retried.
+   */
+  private <T> T executeWithRetries(final boolean foreground,
+                                   final URI serverUri,
+                                   final Ref<Credentials> credentialsRef,
+                                   final Request<T> request,
+                                   final ProgressIndicator pi,
+                                   @Nullable final AtomicLong requestsCounter) throws TfsException {
+    return myRetryPolicy.execute(request.isIdempotent(), !foreground, pi, () -> {
+      long lockWaitStart = System.nanoTime();
+      myRequestLimiter.acquire(foreground, pi);
+      try {
+        return executeRequestImpl(serverUri, credentialsRef, request, pi, System.nanoTime() - lockWaitStart, requestsCounter);
+      }
+      finally {
+        myRequestLimiter.release(foreground);
+      }
+    });
+  }
+
   private static <T> T executeRequestImpl(final URI serverUri,
                                           final Ref<Credentials> credentialsRef,
                                           final Request<T> request,
-                                          final ProgressIndicator pi)
+                                          final ProgressIndicator pi,
+                                          final long lockWaitNanos,
+                                          @Nullable final AtomicLong requestsCounter)
     throws Exception {
     return ClassLoaderUtil.runWithClassLoader(TfsRequestManager.class.getClassLoader(), new ThrowableComputable<T, Exception>() {
       @Override
       public T compute() throws Exception {
-        Credentials credentials = credentialsRef.get();
-        boolean needsAuthentication =
-          credentials == null ||
-          request.retrieveAuthorizedCredentials() && (credentials.getUserName().length() == 0 || credentials.getDomain().length() == 0);
-        if (needsAuthentication) {
-          TfsServerConnectionHelper.ServerDescriptor descriptor =
-            TfsServerConnectionHelper.connect(serverUri, credentialsRef.get(), true, pi);
-          credentialsRef.set(descriptor.authorizedCredentials);
+        RequestMetricsRecorder.Session metrics = RequestMetricsRecorder.startSession(serverUri, lockWaitNanos);
+        boolean failed = true;
+        try {
+          Credentials credentials = credentialsRef.get();
+          boolean needsAuthentication =
+            credentials == null ||
+            request.retrieveAuthorizedCredentials() && (credentials.getUserName().length() == 0 || credentials.getDomain().length() == 0);
+          if (needsAuthentication) {
+            TfsServerConnectionHelper.ServerDescriptor descriptor =
+              TfsServerConnectionHelper.connect(serverUri, credentialsRef.get(), true, pi);
+            credentialsRef.set(descriptor.authorizedCredentials);
+          }
+          if (requestsCounter != null) {
+            requestsCounter.incrementAndGet();
+          }
+          // stubs are used by one request at a time
+          T result = StubPool.withLeases(() -> request.execute(credentialsRef.get(), serverUri, pi));
+          failed = false;
+          return result;
+        }
+        finally {
+          metrics.finish(failed);
         }
-        return request.execute(credentialsRef.get(), serverUri, pi);
       }
     });
   }
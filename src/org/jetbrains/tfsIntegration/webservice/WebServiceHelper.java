@@ -42,6 +42,7 @@ import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.params.HostParams;
+import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -52,18 +53,24 @@ import org.jetbrains.tfsIntegration.exceptions.OperationFailedException;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
 import org.jetbrains.tfsIntegration.exceptions.TfsExceptionManager;
 import org.jetbrains.tfsIntegration.webservice.auth.NativeNTLM2Scheme;
+import org.jetbrains.tfsIntegration.webservice.auth.NtlmSessions;
 import org.jetbrains.tfsIntegration.webservice.compatibility.CustomSOAP12Factory;
 import org.jetbrains.tfsIntegration.webservice.compatibility.CustomSOAPBuilder;
+import org.jetbrains.tfsIntegration.webservice.metrics.MeteredSOAPMessageFormatter;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.GZIPInputStream;
 
 public class WebServiceHelper {
@@ -77,6 +84,21 @@ public class WebServiceHelper {
 
   @SuppressWarnings("UseOfArchaicSystemPropertyAccessors")
   private static final int SOCKET_TIMEOUT = Integer.getInteger("org.jetbrains.tfsIntegration.socketTimeout", 30000);
+  private static final int MAX_CONNECTIONS_PER_SERVER = Integer.getInteger("org.jetbrains.tfsIntegration.maxConnectionsPerServer", 8);
+
+  // settings the stub options were set up with
+  @NonNls private static final String STUB_SETTINGS = WebServiceHelper.class.getName() + ".stubSettings";
+  private static final int MAX_CACHED_AUTH_HEADERS = 16;
+
+  // key is scheme and authority of the server URI
+  private static final ConcurrentMap<String, ConfigurationContext> ourConfigurationContexts = new ConcurrentHashMap<>();
+  // key is the stub settings
+  private static final Map<List<Object>, Map<String, String>> ourAuthHeaders = new ConcurrentHashMap<>();
+
+  // the passwords are hashed with it before being used as keys, so that they are not kept in the caches
+  private static final byte[] ourPasswordSalt = new SecureRandom().generateSeed(16);
+  // credentials the current thread has set up a stub or a client with, see CredentialsHttpClient
+  private static final ThreadLocal<String> ourCurrentCredentials = new ThreadLocal<>();
 
   static {
     // keep NTLM scheme first
@@ -113,9 +135,9 @@ public class WebServiceHelper {
     TFSVcs.assertTrue(downloadUrl != null);
     setupHttpClient(credentials, serverUri, httpClient);
 
-    HttpMethod method = new GetMethod(downloadUrl);
+    HttpMethodBase method = new GetMethod();
     try {
-      int statusCode = httpClient.executeMethod(method);
+      int statusCode = executeMethod(httpClient, method, downloadUrl, credentials);
       if (statusCode == HttpStatus.SC_OK) {
         StreamUtil.copyStreamContent(getInputStream(method), outputStream);
       }
@@ -141,13 +163,13 @@ public class WebServiceHelper {
     throws IOException, TfsException {
     setupHttpClient(credentials, serverUri, httpClient);
 
-    PostMethod method = new PostMethod(uploadUrl);
+    PostMethod method = new PostMethod();
     try {
       method.setRequestHeader("X-TFS-Version", "1.0.0.0");
       method.setRequestHeader("accept-language", "en-US");
       method.setRequestEntity(new MultipartRequestEntity(parts, method.getParams()));
 
-      int statusCode = httpClient.executeMethod(method);
+      int statusCode = executeMethod(httpClient, method, uploadUrl, credentials);
       if (statusCode == HttpStatus.SC_OK) {
         if (outputStream != null) {
           StreamUtil.copyStreamContent(getInputStream(method), outputStream);
@@ -165,11 +187,131 @@ public class WebServiceHelper {
     }
   }
 
-  public static ConfigurationContext getStubConfigurationContext() {
+  /**
+   * Sends the request over a connection of the user, see {@link NtlmSessions}
+   */
+  private static int executeMethod(@NotNull HttpClient httpClient,
+                                   @NotNull HttpMethodBase method,
+                                   @NotNull String url,
+                                   @NotNull Credentials credentials) throws IOException {
+    org.apache.commons.httpclient.URI uri = new org.apache.commons.httpclient.URI(url, true, method.getParams().getUriCharset());
+    HostConfiguration hostConfiguration = (HostConfiguration)httpClient.getHostConfiguration().clone();
+    hostConfiguration.setHost(uri.getHost(), uri.getPort(), NtlmSessions.getProtocol(uri.getScheme(), getUserKey(credentials)));
+    // the client would connect with the standard protocol if the method had an absolute URI
+    method.setPath(uri.getEscapedPath() != null ? uri.getEscapedPath() : "/");
+    method.setQueryString(uri.getEscapedQuery());
+    return httpClient.executeMethod(hostConfiguration, method);
+  }
+
+  /**
+   * @return key of the credentials that includes the password hash, so that a connection authenticated with the right password is not
+   * reused by a request sent with a wrong one, e.g. when the credentials entered in the login dialog are checked
+   */
+  @NotNull
+  private static String getUserKey(@NotNull Credentials credentials) {
+    return credentials.getType() + ":" + credentials.getDomain() + "\\" + credentials.getUserName() + ":" +
+           hashPassword(credentials.getPassword());
+  }
+
+  /**
+   * @return salted hash of the password that tells the passwords apart within this session
+   */
+  @Nullable
+  private static String hashPassword(@Nullable String password) {
+    if (password == null) {
+      return null;
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(ourPasswordSalt);
+      return new BigInteger(1, digest.digest(password.getBytes(StandardCharsets.UTF_8))).toString(Character.MAX_RADIX);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every Java platform implements SHA-256
+    }
+  }
+
+  /**
+   * HTTP client that keeps a separate state, i.e. credentials and cookies, for every set of credentials. Axis2 puts the credentials of a
+   * request into the state of the client shared by the stubs right before sending it, so the requests sent on behalf of different users at
+   * the same time would otherwise overwrite each other's credentials. The state is chosen by the credentials the current thread has set up
+   * a stub or the client with, see {@link #setupStub} and {@link #httpGet}.
+   */
+  private static class CredentialsHttpClient extends HttpClient {
+    private final ConcurrentMap<String, HttpState> myStates = new ConcurrentHashMap<>();
+
+    private CredentialsHttpClient(@NotNull HttpConnectionManager connectionManager) {
+      super(connectionManager);
+    }
+
+    @Override
+    public HttpState getState() {
+      String credentials = ourCurrentCredentials.get();
+      return credentials != null ? myStates.computeIfAbsent(credentials, key -> new HttpState()) : super.getState();
+    }
+  }
+
+  /**
+   * @return client to send the requests of several users over the connections of the manager, see {@link CredentialsHttpClient}
+   */
+  @NotNull
+  public static HttpClient createHttpClient(@NotNull HttpConnectionManager connectionManager) {
+    HttpClient httpClient = new CredentialsHttpClient(connectionManager);
+    HttpClientParams clientParams = new HttpClientParams();
+    // Set the default timeout in case we have a connection pool starvation to 30sec
+    clientParams.setConnectionManagerTimeout(30000);
+    httpClient.setParams(clientParams);
+    return httpClient;
+  }
+
+  /**
+   * @return configuration context shared by the stubs of the server, the HTTP connections to the server are reused by all of them
+   */
+  public static ConfigurationContext getStubConfigurationContext(@NotNull URI serverUri) {
+    String key = serverUri.getScheme() + "://" + serverUri.getAuthority();
+    ConfigurationContext configContext = ourConfigurationContexts.get(key);
+    if (configContext == null) {
+      configContext = createStubConfigurationContext();
+      if (configContext != null) {
+        ConfigurationContext existing = ourConfigurationContexts.putIfAbsent(key, configContext);
+        if (existing != null) {
+          configContext = existing;
+        }
+      }
+    }
+    return configContext;
+  }
+
+  /**
+   * Forgets the configuration context of the server and closes its connections. The context is shared by the servers at the same address,
+   * so it should be released after the last of them is removed.
+   */
+  public static void releaseStubConfigurationContext(@NotNull URI serverUri) {
+    ConfigurationContext configContext = ourConfigurationContexts.remove(serverUri.getScheme() + "://" + serverUri.getAuthority());
+    if (configContext != null) {
+      Object connectionManager = configContext.getProperty(HTTPConstants.MULTITHREAD_HTTP_CONNECTION_MANAGER);
+      if (connectionManager instanceof MultiThreadedHttpConnectionManager) {
+        ((MultiThreadedHttpConnectionManager)connectionManager).shutdown();
+      }
+    }
+    ourAuthHeaders.clear();
+  }
+
+  private static ConfigurationContext createStubConfigurationContext() {
     return ClassLoaderUtil.runWithClassLoader(TFSVcs.class.getClassLoader(), (Computable<ConfigurationContext>)() -> {
       try {
         ConfigurationContext configContext = ConfigurationContextFactory.createDefaultConfigurationContext();
         configContext.getAxisConfiguration().addMessageBuilder(SOAP_BUILDER_KEY, new CustomSOAPBuilder());
+        configContext.getAxisConfiguration().addMessageFormatter(SOAP_BUILDER_KEY, new MeteredSOAPMessageFormatter());
+
+        // by default the transport creates a client that keeps only 2 connections to the host
+        MultiThreadedHttpConnectionManager connectionManager = NtlmSessions.createConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_SERVER);
+        connectionManager.getParams().setMaxTotalConnections(MAX_CONNECTIONS_PER_SERVER * 2); // server and proxy
+        HttpClient httpClient = createHttpClient(connectionManager);
+        configContext.setProperty(HTTPConstants.MULTITHREAD_HTTP_CONNECTION_MANAGER, connectionManager);
+        configContext.setProperty(HTTPConstants.CACHED_HTTP_CLIENT, httpClient);
+        configContext.setProperty(HTTPConstants.REUSE_HTTP_CLIENT, Boolean.TRUE);
         return configContext;
       }
       catch (Exception e) {
@@ -195,6 +337,7 @@ public class WebServiceHelper {
   }
 
   private static void setupHttpClient(Credentials credentials, URI serverUri, HttpClient httpClient) {
+    ourCurrentCredentials.set(getUserKey(credentials));
     setCredentials(httpClient, credentials, serverUri);
     setProxy(httpClient);
     httpClient.getParams().setSoTimeout(SOCKET_TIMEOUT);
@@ -206,22 +349,36 @@ public class WebServiceHelper {
 
   public static void setupStub(final @NotNull Stub stub, final @NotNull Credentials credentials, final @NotNull URI serverUri) {
     Options options = stub._getServiceClient().getOptions();
+    final HTTPProxyInfo proxy = HTTPProxyInfo.getCurrent();
+    final boolean setConnectionTimeout = Registry.is("tfs.set.connection.timeout", false);
+    List<Object> settings = Arrays.asList(credentials.getType(), credentials.getUserName(), hashPassword(credentials.getPassword()),
+                                          credentials.getDomain(), serverUri.getHost(), proxy.host, proxy.port, proxy.user,
+                                          hashPassword(proxy.password), setConnectionTimeout);
+    // the stub is called by the current thread
+    ourCurrentCredentials.set(getUserKey(credentials));
+    if (settings.equals(options.getProperty(STUB_SETTINGS))) {
+      return; // already set up
+    }
 
     // http params
     options.setProperty(HTTPConstants.CHUNKED, Constants.VALUE_FALSE);
     options.setProperty(HTTPConstants.MC_ACCEPT_GZIP, Boolean.TRUE);
     options.setProperty(HTTPConstants.SO_TIMEOUT, SOCKET_TIMEOUT);
-    if (Registry.is("tfs.set.connection.timeout", false)) {
+    if (setConnectionTimeout) {
       options.setProperty(HTTPConstants.CONNECTION_TIMEOUT, SOCKET_TIMEOUT);
     }
 
     // credentials
     if (credentials.getType() == Credentials.Type.Alternate) {
-      String basicAuth =
-        BasicScheme.authenticate(new UsernamePasswordCredentials(credentials.getUserName(), credentials.getPassword()), "UTF-8");
-      Map<String, String> headers = new HashMap<>();
-      headers.put(HTTPConstants.HEADER_AUTHORIZATION, basicAuth);
+      Map<String, String> headers = ourAuthHeaders.get(settings);
+      if (headers == null) {
+        String basicAuth =
+          BasicScheme.authenticate(new UsernamePasswordCredentials(credentials.getUserName(), credentials.getPassword()), "UTF-8");
+        headers = Collections.singletonMap(HTTPConstants.HEADER_AUTHORIZATION, basicAuth);
+        cacheAuthHeaders(settings, headers);
+      }
       options.setProperty(HTTPConstants.HTTP_HEADERS, headers);
+      options.setProperty(HTTPConstants.AUTHENTICATE, null);
     }
     else {
       HttpTransportProperties.Authenticator auth = new HttpTransportProperties.Authenticator();
@@ -230,6 +387,7 @@ public class WebServiceHelper {
       auth.setDomain(credentials.getDomain());
       auth.setHost(serverUri.getHost());
       options.setProperty(HTTPConstants.AUTHENTICATE, auth);
+      options.setProperty(HTTPConstants.HTTP_HEADERS, null);
 
       HttpMethodParams params = new HttpMethodParams();
       params.setBooleanParameter(USE_NATIVE_CREDENTIALS, credentials.getType() == Credentials.Type.NtlmNative);
@@ -238,7 +396,6 @@ public class WebServiceHelper {
 
     // proxy
     final HttpTransportProperties.ProxyProperties proxyProperties;
-    final HTTPProxyInfo proxy = HTTPProxyInfo.getCurrent();
     if (proxy.host != null) {
       proxyProperties = new HttpTransportProperties.ProxyProperties();
       Pair<String, String> domainAndUser = getDomainAndUser(proxy.user);
@@ -253,6 +410,16 @@ public class WebServiceHelper {
     }
 
     options.setProperty(HTTPConstants.PROXY, proxyProperties);
+    // keeps the connections of different users apart
+    options.setProperty(HTTPConstants.CUSTOM_PROTOCOL_HANDLER, NtlmSessions.getProtocol(serverUri.getScheme(), getUserKey(credentials)));
+    options.setProperty(STUB_SETTINGS, settings);
+  }
+
+  private static void cacheAuthHeaders(@NotNull List<Object> settings, @NotNull Map<String, String> headers) {
+    if (ourAuthHeaders.size() >= MAX_CACHED_AUTH_HEADERS) {
+      ourAuthHeaders.clear(); // credentials changed too many times
+    }
+    ourAuthHeaders.put(settings, headers);
   }
 
   private static void setCredentials(final @NotNull HttpClient httpClient,
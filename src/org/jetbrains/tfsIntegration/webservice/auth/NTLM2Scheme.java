@@ -17,7 +17,7 @@
 package org.jetbrains.tfsIntegration.webservice.auth;
 
 // class copied from org.apache.commons.httpclient.auth.NTLMScheme
-// only last method is overridden
+// only last method is overridden, handshakes are counted for NtlmSessions
 // to be removed since Apache HttpClient 4.0
 
 import com.intellij.openapi.diagnostic.Logger;
@@ -339,7 +339,8 @@ public class NTLM2Scheme extends NTLMScheme {
      *
      * @since 3.0
      */
-    public String authenticate(Credentials credentials, HttpMethod method) throws AuthenticationException {
+    // final, so that the handshakes are counted for the subclasses as well, see NtlmSessions
+    public final String authenticate(Credentials credentials, HttpMethod method) throws AuthenticationException {
     if (state == UNINITIATED) {
       throw new IllegalStateException("NTLM authentication process was not initiated");
     }
@@ -354,6 +355,7 @@ public class NTLM2Scheme extends NTLMScheme {
 
     String response;
     if (state == INITIATED || state == FAILED) {
+      NtlmSessions.handshakeStarted();
       response = getType1MessageResponse(ntcredentials, method.getParams());
       state = TYPE1_MSG_GENERATED;
     }
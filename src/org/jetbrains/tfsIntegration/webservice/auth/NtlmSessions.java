@@ -0,0 +1,151 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.auth;
+
+import com.intellij.openapi.util.Pair;
+import org.apache.commons.httpclient.*;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the connections authenticated with NTLM for the requests that follow. NTLM authenticates a connection rather than a request:
+ * once the handshake has completed, the server accepts the requests sent over the same connection without challenging them again.
+ * <p/>
+ * The connections are kept alive by a connection manager created with {@link #createConnectionManager()}. Every user gets a protocol of
+ * its own, see {@link #getProtocol}, and since the protocol is a part of the host configuration the connections are pooled by, a request
+ * is never sent over a connection authenticated as somebody else.
+ * <p/>
+ * Counts the requests, the connections opened and the handshakes made, so that the reuse can be checked, see {@link #getStatistics()}.
+ */
+public class NtlmSessions {
+
+  private static final AtomicLong ourRequests = new AtomicLong();
+  private static final AtomicLong ourConnections = new AtomicLong();
+  private static final AtomicLong ourHandshakes = new AtomicLong();
+
+  // key is (scheme, user)
+  private static final ConcurrentMap<Pair<String, String>, Protocol> ourProtocols = new ConcurrentHashMap<>();
+
+  private NtlmSessions() {
+  }
+
+  /**
+   * @param user identifies the credentials the connections are authenticated with, e.g. domain, user name and a hash of the password
+   * @return protocol to connect to the server with on behalf of the user
+   */
+  @NotNull
+  public static Protocol getProtocol(@NotNull String scheme, @NotNull String user) {
+    return ourProtocols.computeIfAbsent(Pair.create(scheme, user), key -> {
+      // socket factory decides whether the protocol is secure
+      Protocol protocol = Protocol.getProtocol(scheme);
+      ProtocolSocketFactory socketFactory = protocol.isSecure() ? new SecureSocketFactory(scheme) : new SocketFactory(scheme);
+      return new Protocol(scheme, socketFactory, protocol.getDefaultPort());
+    });
+  }
+
+  @NotNull
+  public static MultiThreadedHttpConnectionManager createConnectionManager() {
+    return new MultiThreadedHttpConnectionManager() {
+      @Override
+      public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+        throws ConnectionPoolTimeoutException {
+        // called once per request, the authentication round trips reuse the connection
+        ourRequests.incrementAndGet();
+        return super.getConnectionWithTimeout(hostConfiguration, timeout);
+      }
+    };
+  }
+
+  static void handshakeStarted() {
+    ourHandshakes.incrementAndGet();
+  }
+
+  public static long getRequestCount() {
+    return ourRequests.get();
+  }
+
+  public static long getConnectionCount() {
+    return ourConnections.get();
+  }
+
+  public static long getHandshakeCount() {
+    return ourHandshakes.get();
+  }
+
+  @NotNull
+  public static String getStatistics() {
+    return String.format("%d requests, %d connections opened, %d NTLM handshakes", getRequestCount(), getConnectionCount(),
+                         getHandshakeCount());
+  }
+
+  /**
+   * Creates the sockets with the factory of the standard protocol, which is looked up every time since it may be replaced, e.g. to
+   * accept the certificates trusted by the IDE
+   */
+  private static class SocketFactory implements ProtocolSocketFactory {
+    @NotNull private final String myScheme;
+
+    private SocketFactory(@NotNull String scheme) {
+      myScheme = scheme;
+    }
+
+    protected ProtocolSocketFactory getDelegate() {
+      return Protocol.getProtocol(myScheme).getSocketFactory();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException {
+      ourConnections.incrementAndGet();
+      return getDelegate().createSocket(host, port, localAddress, localPort);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort, HttpConnectionParams params)
+      throws IOException, ConnectTimeoutException {
+      ourConnections.incrementAndGet();
+      return getDelegate().createSocket(host, port, localAddress, localPort, params);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      ourConnections.incrementAndGet();
+      return getDelegate().createSocket(host, port);
+    }
+  }
+
+  private static class SecureSocketFactory extends SocketFactory implements SecureProtocolSocketFactory {
+    private SecureSocketFactory(@NotNull String scheme) {
+      super(scheme);
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+      // tunnel through a proxy, the connection is already counted
+      return ((SecureProtocolSocketFactory)getDelegate()).createSocket(socket, host, port, autoClose);
+    }
+  }
+}
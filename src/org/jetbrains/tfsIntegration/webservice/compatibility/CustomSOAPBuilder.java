@@ -29,6 +29,7 @@ import org.apache.axis2.Constants;
 import org.apache.axis2.builder.Builder;
 import org.apache.axis2.builder.BuilderUtil;
 import org.apache.axis2.context.MessageContext;
+import org.jetbrains.tfsIntegration.webservice.metrics.RequestMetricsRecorder;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -50,6 +51,9 @@ public class CustomSOAPBuilder implements Builder {
             // Apply a detachable inputstream.  This can be used later
             // to (a) get the length of the incoming message or (b)
             // free transport resources.
+            // [IntelliJ ++++++++++++]
+            inputStream = RequestMetricsRecorder.responseReceived(messageContext, inputStream);
+            // [IntelliJ ------------]
             DetachableInputStream is = new DetachableInputStream(inputStream);
             messageContext.setProperty(Constants.DETACHABLE_INPUT_STREAM, is);
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.metrics;
+
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the measurements to a file, one JSON object per line. The file is kept open until the sink is disposed.
+ */
+public class JsonLinesMetricsSink implements RequestMetricsListener, Disposable {
+
+  private static final Logger LOG = Logger.getInstance(JsonLinesMetricsSink.class.getName());
+
+  @NotNull private final Path myFile;
+  private Writer myWriter;
+  private boolean myFailed; // or disposed
+
+  public JsonLinesMetricsSink(@NotNull Path file) {
+    myFile = file;
+  }
+
+  @Override
+  public void requestFinished(@NotNull RequestMetrics metrics) {
+    String line;
+    try {
+      line = toJson(metrics);
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      return;
+    }
+
+    synchronized (this) {
+      if (myFailed) {
+        return;
+      }
+      try {
+        if (myWriter == null) {
+          myWriter = Files.newBufferedWriter(myFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        myWriter.write(line);
+        myWriter.write('\n');
+        myWriter.flush();
+      }
+      catch (IOException e) {
+        // don't try on every request
+        myFailed = true;
+        LOG.warn("Cannot write request metrics to " + myFile, e);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void dispose() {
+    myFailed = true; // requests finishing later are not written
+    if (myWriter != null) {
+      try {
+        myWriter.close();
+      }
+      catch (IOException e) {
+        LOG.warn("Cannot close " + myFile, e);
+      }
+      myWriter = null;
+    }
+  }
+
+  @NotNull
+  static String toJson(@NotNull RequestMetrics metrics) throws IOException {
+    StringWriter result = new StringWriter();
+    JsonWriter writer = new JsonWriter(result);
+    writer.beginObject();
+    writer.name("timestamp").value(metrics.getTimestamp());
+    writer.name("server").value(metrics.getServerUri() != null ? metrics.getServerUri().toString() : null);
+    writer.name("operation").value(metrics.getOperation());
+    writer.name("lockWaitNanos").value(metrics.getLockWaitNanos());
+    writer.name("executeNanos").value(metrics.getExecuteNanos());
+    writer.name("requestBytes").value(metrics.getRequestBytes());
+    writer.name("responseBytes").value(metrics.getResponseBytes());
+    writer.name("responseWireBytes").value(metrics.getResponseWireBytes());
+    writer.name("failed").value(metrics.isFailed());
+    writer.endObject();
+    writer.close();
+    return result.toString();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.metrics;
+
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.SOAPMessageFormatter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reports the size of the SOAP requests to {@link RequestMetricsRecorder}
+ */
+public class MeteredSOAPMessageFormatter extends SOAPMessageFormatter {
+
+  @Override
+  public byte[] getBytes(MessageContext msgCtxt, OMOutputFormat format) throws AxisFault {
+    byte[] result = super.getBytes(msgCtxt, format);
+    RequestMetricsRecorder.requestSent(msgCtxt, result.length);
+    return result;
+  }
+
+  @Override
+  public void writeTo(MessageContext msgCtxt, OMOutputFormat format, OutputStream out, boolean preserve) throws AxisFault {
+    CountingOutputStream countingStream = new CountingOutputStream(out);
+    super.writeTo(msgCtxt, format, countingStream, preserve);
+    RequestMetricsRecorder.requestSent(msgCtxt, countingStream.myCount);
+  }
+
+  private static class CountingOutputStream extends FilterOutputStream {
+    private long myCount;
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      myCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      myCount += len;
+    }
+  }
+}
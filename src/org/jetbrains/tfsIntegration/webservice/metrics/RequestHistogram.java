@@ -0,0 +1,160 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.metrics;
+
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of the SOAP calls and histograms of their times per server and operation, kept in memory since the application start.
+ */
+public class RequestHistogram implements RequestMetricsListener {
+
+  // bucket i counts the times below 2^i ms, the last one counts the rest
+  private static final int BUCKETS = 20;
+  private static final long NANOS_PER_MILLI = 1000000;
+
+  private final Map<Pair<URI, String>, Entry> myEntries = new HashMap<>();
+
+  @Override
+  public synchronized void requestFinished(@NotNull RequestMetrics metrics) {
+    Pair<URI, String> key = Pair.create(metrics.getServerUri(), metrics.getOperation());
+    Entry entry = myEntries.get(key);
+    if (entry == null) {
+      entry = new Entry(key.first, key.second);
+      myEntries.put(key, entry);
+    }
+    entry.add(metrics);
+  }
+
+  public synchronized void clear() {
+    myEntries.clear();
+  }
+
+  /**
+   * @return one line per server and operation, the operations taking the most time first
+   */
+  @NotNull
+  public synchronized String dump() {
+    List<Entry> entries = new ArrayList<>(myEntries.values());
+    entries.sort(Comparator.comparing((Entry entry) -> String.valueOf(entry.myServerUri))
+                   .thenComparing(Comparator.comparingLong((Entry entry) -> entry.myTotalExecuteNanos).reversed()));
+
+    StringBuilder result = new StringBuilder();
+    for (Entry entry : entries) {
+      result.append(entry).append('\n');
+    }
+    return result.toString();
+  }
+
+  private static class Entry {
+    private final URI myServerUri;
+    private final String myOperation;
+
+    private long myCount;
+    private long myFailures;
+    private long myTotalExecuteNanos;
+    private long myMaxExecuteNanos;
+    private long myTotalLockWaitNanos;
+    private long myMaxLockWaitNanos;
+    private long myRequestBytes;
+    private long myResponseBytes;
+    // of the responses with known compressed size only
+    private long myCompressedResponseBytes;
+    private long myCompressedResponseWireBytes;
+    private final long[] myExecuteBuckets = new long[BUCKETS];
+    private final long[] myLockWaitBuckets = new long[BUCKETS];
+
+    private Entry(URI serverUri, String operation) {
+      myServerUri = serverUri;
+      myOperation = operation;
+    }
+
+    private void add(@NotNull RequestMetrics metrics) {
+      myCount++;
+      if (metrics.isFailed()) {
+        myFailures++;
+      }
+      myTotalExecuteNanos += metrics.getExecuteNanos();
+      myMaxExecuteNanos = Math.max(myMaxExecuteNanos, metrics.getExecuteNanos());
+      myExecuteBuckets[getBucket(metrics.getExecuteNanos())]++;
+      myTotalLockWaitNanos += metrics.getLockWaitNanos();
+      myMaxLockWaitNanos = Math.max(myMaxLockWaitNanos, metrics.getLockWaitNanos());
+      myLockWaitBuckets[getBucket(metrics.getLockWaitNanos())]++;
+      myRequestBytes += metrics.getRequestBytes();
+      myResponseBytes += metrics.getResponseBytes();
+      if (metrics.getResponseWireBytes() != RequestMetrics.UNKNOWN) {
+        myCompressedResponseBytes += metrics.getResponseBytes();
+        myCompressedResponseWireBytes += metrics.getResponseWireBytes();
+      }
+    }
+
+    /**
+     * @return upper bound of the given percentile in milliseconds
+     */
+    private long getPercentileMillis(long[] buckets, long maxNanos, double percentile) {
+      long threshold = (long)Math.ceil(myCount * percentile);
+      long count = 0;
+      for (int i = 0; i < buckets.length - 1; i++) {
+        count += buckets[i];
+        if (count >= threshold) {
+          return Math.min(1L << i, toMillis(maxNanos));
+        }
+      }
+      return toMillis(maxNanos);
+    }
+
+    @Override
+    public String toString() {
+      String compressionRatio = myCompressedResponseBytes > 0
+                                ? String.format("%.2f", (double)myCompressedResponseWireBytes / myCompressedResponseBytes)
+                                : "n/a";
+      return String.format("%s %s: %d calls, %d failed; execute ms avg %d, p50 %d, p90 %d, p99 %d, max %d; " +
+                           "lock wait ms avg %d, p90 %d, max %d; sent %d bytes, received %d bytes, gzip ratio %s",
+                           myServerUri, myOperation, myCount, myFailures,
+                           toMillis(myTotalExecuteNanos / myCount),
+                           getPercentileMillis(myExecuteBuckets, myMaxExecuteNanos, 0.5),
+                           getPercentileMillis(myExecuteBuckets, myMaxExecuteNanos, 0.9),
+                           getPercentileMillis(myExecuteBuckets, myMaxExecuteNanos, 0.99),
+                           toMillis(myMaxExecuteNanos),
+                           toMillis(myTotalLockWaitNanos / myCount),
+                           getPercentileMillis(myLockWaitBuckets, myMaxLockWaitNanos, 0.9),
+                           toMillis(myMaxLockWaitNanos),
+                           myRequestBytes, myResponseBytes, compressionRatio);
+    }
+  }
+
+  private static int getBucket(long nanos) {
+    long millis = toMillis(nanos);
+    int bucket = 0;
+    while (bucket < BUCKETS - 1 && millis >= 1L << bucket) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  private static long toMillis(long nanos) {
+    return nanos / NANOS_PER_MILLI;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.metrics;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URI;
+
+/**
+ * Measurements of a single SOAP call.
+ */
+public class RequestMetrics {
+
+  /**
+   * Operation name of a request that failed before anything was sent to the server
+   */
+  @NonNls public static final String NOT_SENT = "<not sent>";
+
+  public static final long UNKNOWN = -1;
+
+  @Nullable private final URI myServerUri;
+  @NotNull private final String myOperation;
+  private final long myTimestamp;
+  private final long myLockWaitNanos;
+  private final long myExecuteNanos;
+  private final long myRequestBytes;
+  private final long myResponseBytes;
+  private final long myResponseWireBytes;
+  private final boolean myFailed;
+
+  public RequestMetrics(@Nullable URI serverUri,
+                        @NotNull String operation,
+                        long timestamp,
+                        long lockWaitNanos,
+                        long executeNanos,
+                        long requestBytes,
+                        long responseBytes,
+                        long responseWireBytes,
+                        boolean failed) {
+    myServerUri = serverUri;
+    myOperation = operation;
+    myTimestamp = timestamp;
+    myLockWaitNanos = lockWaitNanos;
+    myExecuteNanos = executeNanos;
+    myRequestBytes = requestBytes;
+    myResponseBytes = responseBytes;
+    myResponseWireBytes = responseWireBytes;
+    myFailed = failed;
+  }
+
+  /**
+   * @return null for a server that is being added
+   */
+  @Nullable
+  public URI getServerUri() {
+    return myServerUri;
+  }
+
+  @NotNull
+  public String getOperation() {
+    return myOperation;
+  }
+
+  /**
+   * @return time the call was started at, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return myTimestamp;
+  }
+
+  /**
+   * @return time the request waited for a free connection to the server; the first call of a request gets all of it
+   */
+  public long getLockWaitNanos() {
+    return myLockWaitNanos;
+  }
+
+  /**
+   * @return time from sending the request to receiving the last byte of the response
+   */
+  public long getExecuteNanos() {
+    return myExecuteNanos;
+  }
+
+  public long getRequestBytes() {
+    return myRequestBytes;
+  }
+
+  /**
+   * @return size of the response after decompression
+   */
+  public long getResponseBytes() {
+    return myResponseBytes;
+  }
+
+  /**
+   * @return size of a gzip response as received, {@link #UNKNOWN} if the response is not compressed or the server didn't report it
+   */
+  public long getResponseWireBytes() {
+    return myResponseWireBytes;
+  }
+
+  /**
+   * @return compressed size to decompressed size, {@link #UNKNOWN} if not known
+   */
+  public double getCompressionRatio() {
+    if (myResponseWireBytes == UNKNOWN || myResponseBytes <= 0) {
+      return UNKNOWN;
+    }
+    return (double)myResponseWireBytes / myResponseBytes;
+  }
+
+  public boolean isFailed() {
+    return myFailed;
+  }
+
+  @Override
+  public String toString() {
+    return myServerUri + " " + myOperation + (myFailed ? " failed" : "") + ": wait " + myLockWaitNanos / 1000000 + " ms, execute " +
+           myExecuteNanos / 1000000 + " ms, sent " + myRequestBytes + " bytes, received " + myResponseBytes + " bytes";
+  }
+}
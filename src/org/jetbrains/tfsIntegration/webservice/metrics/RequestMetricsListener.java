@@ -0,0 +1,28 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives measurements of SOAP calls, see {@link RequestMetricsRecorder#addListener}. Called on the thread that made the call, so
+ * implementations should be fast and thread-safe.
+ */
+public interface RequestMetricsListener {
+
+  void requestFinished(@NotNull RequestMetrics metrics);
+}
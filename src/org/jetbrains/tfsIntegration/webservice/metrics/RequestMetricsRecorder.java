@@ -0,0 +1,284 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.webservice.metrics;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.util.containers.ContainerUtil;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the SOAP calls made by {@link org.jetbrains.tfsIntegration.webservice.TfsRequestManager} requests and reports them to the
+ * listeners. A request is bound to the thread executing it, and its calls are reported by the message formatter and builder
+ * registered in the Axis2 configuration, see {@link org.jetbrains.tfsIntegration.webservice.WebServiceHelper#getStubConfigurationContext}.
+ * <p/>
+ * The measurements are always collected into {@link #getHistogram()}, and are written to the file given by the
+ * {@code org.jetbrains.tfsIntegration.requestMetricsLog} property, if any.
+ */
+public class RequestMetricsRecorder {
+
+  private static final Logger LOG = Logger.getInstance(RequestMetricsRecorder.class.getName());
+
+  private static final String LOG_FILE = System.getProperty("org.jetbrains.tfsIntegration.requestMetricsLog");
+
+  private static final RequestHistogram ourHistogram = new RequestHistogram();
+  private static final List<RequestMetricsListener> ourListeners = ContainerUtil.createLockFreeCopyOnWriteList();
+  private static final ThreadLocal<Session> ourCurrentSession = new ThreadLocal<>();
+
+  static {
+    ourListeners.add(ourHistogram);
+    if (LOG_FILE != null) {
+      JsonLinesMetricsSink sink = new JsonLinesMetricsSink(Paths.get(LOG_FILE));
+      ourListeners.add(sink);
+      ShutDownTracker.getInstance().registerShutdownTask(() -> Disposer.dispose(sink));
+    }
+  }
+
+  public static void addListener(@NotNull RequestMetricsListener listener, @NotNull Disposable parentDisposable) {
+    ourListeners.add(listener);
+    Disposer.register(parentDisposable, () -> ourListeners.remove(listener));
+  }
+
+  @NotNull
+  public static RequestHistogram getHistogram() {
+    return ourHistogram;
+  }
+
+  /**
+   * Binds a request to the current thread until {@link Session#finish} is called
+   */
+  @NotNull
+  public static Session startSession(@Nullable URI serverUri, long lockWaitNanos) {
+    Session session = new Session(serverUri, lockWaitNanos, ourCurrentSession.get());
+    ourCurrentSession.set(session);
+    return session;
+  }
+
+  /**
+   * Called when a request message is serialized, may be called several times for the same message if it is sent again
+   */
+  public static void requestSent(@NotNull MessageContext context, long bytes) {
+    Session session = ourCurrentSession.get();
+    if (session != null) {
+      session.requestSent(context, bytes);
+    }
+  }
+
+  /**
+   * @return the stream to read the response from
+   */
+  @NotNull
+  public static InputStream responseReceived(@NotNull MessageContext context, @NotNull InputStream stream) {
+    Session session = ourCurrentSession.get();
+    return session != null ? session.responseReceived(context, stream) : stream;
+  }
+
+  private static void fire(@NotNull RequestMetrics metrics) {
+    for (RequestMetricsListener listener : ourListeners) {
+      try {
+        listener.requestFinished(metrics);
+      }
+      catch (RuntimeException e) {
+        LOG.error(e);
+      }
+    }
+  }
+
+  public static class Session {
+    @Nullable private final URI myServerUri;
+    private final long myLockWaitNanos;
+    @Nullable private final Session myOuterSession;
+    private final long myStartTimestamp = System.currentTimeMillis();
+    private final long myStartNanos = System.nanoTime();
+    @NotNull private final List<Call> myCalls = new ArrayList<>();
+
+    private Session(@Nullable URI serverUri, long lockWaitNanos, @Nullable Session outerSession) {
+      myServerUri = serverUri;
+      myLockWaitNanos = lockWaitNanos;
+      myOuterSession = outerSession;
+    }
+
+    private void requestSent(@NotNull MessageContext context, long bytes) {
+      Call lastCall = ContainerUtil.getLastItem(myCalls);
+      if (lastCall != null && lastCall.myRequestContext == context) {
+        lastCall.myRequestBytes = bytes;
+      }
+      else {
+        myCalls.add(new Call(context, getOperationName(context), bytes));
+      }
+    }
+
+    @NotNull
+    private InputStream responseReceived(@NotNull MessageContext context, @NotNull InputStream stream) {
+      Call lastCall = ContainerUtil.getLastItem(myCalls);
+      if (lastCall == null) {
+        return stream;
+      }
+      lastCall.myResponseContext = context;
+      CountingInputStream result = new CountingInputStream(stream);
+      lastCall.myResponse = result;
+      return result;
+    }
+
+    /**
+     * Reports the calls made within the request, the last one is reported as failed if the request failed
+     */
+    public void finish(boolean failed) {
+      if (myOuterSession != null) {
+        ourCurrentSession.set(myOuterSession);
+      }
+      else {
+        ourCurrentSession.remove();
+      }
+
+      long endNanos = System.nanoTime();
+      if (myCalls.isEmpty()) {
+        if (failed) {
+          fire(new RequestMetrics(myServerUri, RequestMetrics.NOT_SENT, myStartTimestamp, myLockWaitNanos, endNanos - myStartNanos,
+                                  0, 0, 0, true));
+        }
+        return;
+      }
+
+      for (int i = 0; i < myCalls.size(); i++) {
+        Call call = myCalls.get(i);
+        boolean isLast = i == myCalls.size() - 1;
+        CountingInputStream response = call.myResponse;
+        long callEndNanos = response != null && response.myCount > 0 ? response.myLastReadNanos : endNanos;
+        long responseBytes = response != null ? response.myCount : 0;
+        long responseWireBytes = call.myResponseContext != null ? getResponseWireBytes(call.myResponseContext) : RequestMetrics.UNKNOWN;
+        fire(new RequestMetrics(myServerUri, call.myOperation, call.myStartTimestamp, i == 0 ? myLockWaitNanos : 0,
+                                callEndNanos - call.myStartNanos, call.myRequestBytes, responseBytes, responseWireBytes,
+                                failed && isLast));
+      }
+    }
+  }
+
+  private static class Call {
+    @NotNull private final MessageContext myRequestContext;
+    @NotNull private final String myOperation;
+    private final long myStartTimestamp = System.currentTimeMillis();
+    private final long myStartNanos = System.nanoTime();
+    private long myRequestBytes;
+    @Nullable private MessageContext myResponseContext;
+    @Nullable private CountingInputStream myResponse;
+
+    private Call(@NotNull MessageContext requestContext, @NotNull String operation, long requestBytes) {
+      myRequestContext = requestContext;
+      myOperation = operation;
+      myRequestBytes = requestBytes;
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    private volatile long myCount;
+    private volatile long myLastReadNanos;
+
+    private CountingInputStream(@NotNull InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result = super.read();
+      if (result != -1) {
+        count(1);
+      }
+      return result;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+      int result = super.read(b, off, len);
+      if (result > 0) {
+        count(result);
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long result = super.skip(n);
+      count(result);
+      return result;
+    }
+
+    private void count(long bytes) {
+      myCount += bytes;
+      myLastReadNanos = System.nanoTime();
+    }
+  }
+
+  @NotNull
+  private static String getOperationName(@NotNull MessageContext context) {
+    if (context.getAxisOperation() != null && context.getAxisOperation().getName() != null) {
+      return context.getAxisOperation().getName().getLocalPart();
+    }
+    String action = context.getSoapAction();
+    if (action != null) {
+      return action.substring(action.lastIndexOf('/') + 1);
+    }
+    return RequestMetrics.NOT_SENT;
+  }
+
+  @Nullable
+  private static String getHeader(@NotNull MessageContext context, @NotNull String name) {
+    Object headers = context.getProperty(MessageContext.TRANSPORT_HEADERS);
+    if (headers instanceof Map) {
+      for (Map.Entry<?, ?> header : ((Map<?, ?>)headers).entrySet()) {
+        if (name.equalsIgnoreCase(String.valueOf(header.getKey()))) {
+          return String.valueOf(header.getValue());
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return compressed size of a gzip response as received, or {@link RequestMetrics#UNKNOWN} if the response is not compressed or its
+   * length is not known, so that the compression ratio is computed over the compressed responses only
+   */
+  private static long getResponseWireBytes(@NotNull MessageContext context) {
+    if (!HTTPConstants.COMPRESSION_GZIP.equalsIgnoreCase(getHeader(context, HTTPConstants.HEADER_CONTENT_ENCODING))) {
+      return RequestMetrics.UNKNOWN;
+    }
+    String contentLength = getHeader(context, HTTPConstants.HEADER_CONTENT_LENGTH);
+    if (contentLength == null) {
+      return RequestMetrics.UNKNOWN;
+    }
+    try {
+      return Long.parseLong(contentLength.trim());
+    }
+    catch (NumberFormatException e) {
+      return RequestMetrics.UNKNOWN;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.httpclient.methods.multipart.Part;
+import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.jetbrains.tfsIntegration.core.tfs.ChunkedUpload;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlServer;
+import org.jetbrains.tfsIntegration.tests.fakeserver.MultipartParser;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads files to a local HTTP handler that accepts ranges the way TFS upload handler does
+ */
+public class ChunkedUploadTest extends TestCase {
+
+  private static final String BOUNDARY = "----TfsUploadTestBoundary";
+  private static final int READ_TIMEOUT = 1000; // ms
+
+  private HttpServer myServer;
+  private File myFile;
+
+  // handler state
+  private final List<String> myRanges = Collections.synchronizedList(new ArrayList<>());
+  private final Set<String> myRangesToTimeOut = Collections.synchronizedSet(new HashSet<>());
+  private final Set<String> myHashes = Collections.synchronizedSet(new HashSet<>());
+  private volatile byte[] myReceived;
+  // assertion failures on the server thread would only make the request fail, so they are rethrown on the test thread
+  private final AtomicReference<Throwable> myHandlerError = new AtomicReference<>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    myServer.createContext("/upload", this::handle);
+    myServer.setExecutor(Executors.newCachedThreadPool()); // serve the retry while the timed out request is still being handled
+    myServer.start();
+    myFile = File.createTempFile("tfs", "upload");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myServer.stop(0);
+    myFile.delete();
+    super.tearDown();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      doHandle(exchange);
+    }
+    catch (Throwable e) {
+      myHandlerError.compareAndSet(null, e);
+      exchange.sendResponseHeaders(500, -1);
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private void doHandle(HttpExchange exchange) throws IOException {
+    Map<String, byte[]> fields = MultipartParser.parse(MultipartParser.readAll(exchange.getRequestBody()), BOUNDARY);
+    String range = new String(fields.get(VersionControlServer.RANGE_FIELD), StandardCharsets.UTF_8);
+    myRanges.add(range);
+    myHashes.add(new String(fields.get(VersionControlServer.HASH_FIELD), StandardCharsets.UTF_8));
+
+    // bytes=first-last/total
+    String[] bounds = range.substring("bytes=".length()).split("[-/]");
+    long first = Long.parseLong(bounds[0]);
+    long total = Long.parseLong(bounds[2]);
+    assertEquals(total, Long.parseLong(new String(fields.get(VersionControlServer.LENGTH_FIELD), StandardCharsets.UTF_8)));
+    byte[] content = fields.get(VersionControlServer.CONTENT_FIELD);
+    if (myReceived == null) {
+      myReceived = new byte[(int)total];
+    }
+    System.arraycopy(content, 0, myReceived, (int)first, content.length);
+
+    if (myRangesToTimeOut.remove(range)) {
+      try {
+        Thread.sleep(READ_TIMEOUT * 2);
+      }
+      catch (InterruptedException e) {
+        // ignore
+      }
+    }
+    exchange.sendResponseHeaders(200, -1);
+  }
+
+  private void post(Part[] parts) throws IOException {
+    URL url = new URL("http://localhost:" + myServer.getAddress().getPort() + "/upload");
+    HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+    try {
+      connection.setDoOutput(true);
+      connection.setReadTimeout(READ_TIMEOUT);
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+      OutputStream output = connection.getOutputStream();
+      Part.sendParts(output, parts, BOUNDARY.getBytes(StandardCharsets.US_ASCII));
+      output.close();
+      assertEquals(200, connection.getResponseCode());
+    }
+    finally {
+      connection.disconnect();
+    }
+  }
+
+  private byte[] writeFile(int length) throws IOException {
+    byte[] content = new byte[length];
+    new Random(length).nextBytes(content);
+    OutputStream output = new FileOutputStream(myFile);
+    try {
+      output.write(content);
+    }
+    finally {
+      output.close();
+    }
+    return content;
+  }
+
+  private void doUpload(int chunkSize) throws Exception {
+    List<Part> fields = new ArrayList<>();
+    fields.add(new StringPart(VersionControlServer.SERVER_ITEM_FIELD, "$/project/file.bin", "UTF-8"));
+    try {
+      new ChunkedUpload(chunkSize, 3).upload(myFile, fields, this::post, null);
+    }
+    finally {
+      Throwable error = myHandlerError.get();
+      if (error != null) {
+        throw new AssertionError("Upload handler failed", error);
+      }
+    }
+  }
+
+  private static String md5(byte[] content) throws Exception {
+    return Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+  }
+
+  public void testChunkBoundaries() throws Exception {
+    byte[] content = writeFile(2500);
+    doUpload(1000);
+
+    assertEquals(Arrays.asList("bytes=0-999/2500", "bytes=1000-1999/2500", "bytes=2000-2499/2500"), myRanges);
+    assertEquals(Collections.singleton(md5(content)), myHashes);
+    assertTrue(Arrays.equals(content, myReceived));
+  }
+
+  public void testSingleChunk() throws Exception {
+    byte[] content = writeFile(1000);
+    doUpload(1000);
+
+    assertEquals(Collections.singletonList("bytes=0-999/1000"), myRanges);
+    assertEquals(Collections.singleton(md5(content)), myHashes);
+    assertTrue(Arrays.equals(content, myReceived));
+  }
+
+  public void testResumeAfterTimeout() throws Exception {
+    byte[] content = writeFile(3000);
+    myRangesToTimeOut.add("bytes=1000-1999/3000");
+    doUpload(1000);
+
+    // the range that timed out is sent again, the previous one is not
+    assertEquals(Arrays.asList("bytes=0-999/3000", "bytes=1000-1999/3000", "bytes=1000-1999/3000", "bytes=2000-2999/3000"), myRanges);
+    assertEquals(Collections.singleton(md5(content)), myHashes);
+    assertTrue(Arrays.equals(content, myReceived));
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.revision.TFSContentCache;
+import org.jetbrains.tfsIntegration.core.revision.TFSContentStore;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ContentCacheTest extends TestCase {
+
+  private static final String SERVER_GUID = "0A8B3C9D-1E2F-4A5B-8C7D-6E5F4A3B2C1D";
+
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("tfs", "cache");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  private static byte[] content(int size, int seed) {
+    byte[] result = new byte[size];
+    Arrays.fill(result, (byte)seed);
+    return result;
+  }
+
+  private static void save(TFSContentCache cache, int itemId, int revision, byte[] content) throws IOException, TfsException {
+    // as TFSContentRevision does, the revision may be evicted after that
+    saveWithoutLoading(cache, itemId, revision, content).loadContent();
+  }
+
+  private static TFSContentStore saveWithoutLoading(TFSContentCache cache, int itemId, int revision, byte[] content)
+    throws IOException, TfsException {
+    TFSContentStore store = cache.create(SERVER_GUID, itemId, revision);
+    store.saveContent(outputStream -> {
+      try {
+        outputStream.write(content);
+      }
+      catch (IOException e) {
+        throw new TfsException(e);
+      }
+    });
+    return store;
+  }
+
+  /**
+   * @return null if the revision is not cached, the store found is released by loading the content as TFSContentRevision does
+   */
+  @Nullable
+  private static byte[] load(TFSContentCache cache, int itemId, int revision) throws IOException, TfsException {
+    TFSContentStore store = cache.find(SERVER_GUID, itemId, revision);
+    return store != null ? store.loadContent() : null;
+  }
+
+  public void testRoundTrip() throws Exception {
+    for (boolean compress : new boolean[]{false, true}) {
+      TFSContentCache cache = new TFSContentCache(new File(myDir, String.valueOf(compress)), 1024 * 1024, compress);
+      assertNull(cache.find(SERVER_GUID, 1, 10));
+
+      byte[] content = content(10000, 1);
+      save(cache, 1, 10, content);
+
+      TFSContentStore store = cache.find(SERVER_GUID, 1, 10);
+      assertNotNull(store);
+      assertTrue(Arrays.equals(content, store.loadContent()));
+      assertNull(cache.find(SERVER_GUID, 1, 11));
+      assertEquals(compress, cache.getTotalSize() < content.length);
+    }
+  }
+
+  public void testLeastRecentlyUsedEvicted() throws Exception {
+    TFSContentCache cache = new TFSContentCache(myDir, 2500, false);
+    save(cache, 1, 1, content(1000, 1));
+    save(cache, 2, 1, content(1000, 2));
+    assertNotNull(load(cache, 1, 1)); // item 2 is now the least recently used one
+    save(cache, 3, 1, content(1000, 3));
+
+    assertNotNull(load(cache, 1, 1));
+    assertNull(load(cache, 2, 1));
+    assertNotNull(load(cache, 3, 1));
+    assertEquals(2000, cache.getTotalSize());
+  }
+
+  public void testStoreInUseNotEvicted() throws Exception {
+    TFSContentCache cache = new TFSContentCache(myDir, 2500, false);
+    save(cache, 1, 1, content(1000, 1));
+    save(cache, 2, 1, content(1000, 2));
+    TFSContentStore store = cache.find(SERVER_GUID, 1, 1);
+    assertNotNull(store);
+    assertNotNull(load(cache, 2, 1)); // item 1 is the least recently used one, but it is in use
+    save(cache, 3, 1, content(1000, 3));
+
+    // the more recently used item is evicted instead of waiting for item 1 to be loaded
+    assertNull(load(cache, 2, 1));
+    assertEquals(2000, cache.getTotalSize());
+    assertTrue(Arrays.equals(content(1000, 1), store.loadContent()));
+    assertNotNull(load(cache, 1, 1));
+    assertNotNull(load(cache, 3, 1));
+    assertEquals(2000, cache.getTotalSize());
+  }
+
+  public void testStoreInUseEvictedOnceLoaded() throws Exception {
+    TFSContentCache cache = new TFSContentCache(myDir, 1500, false);
+    save(cache, 1, 1, content(1000, 1));
+    TFSContentStore store = cache.find(SERVER_GUID, 1, 1);
+    assertNotNull(store);
+    // the only other revision is the one just saved, it is kept until loaded
+    TFSContentStore saved = saveWithoutLoading(cache, 2, 1, content(1000, 2));
+    assertEquals(2000, cache.getTotalSize());
+
+    assertTrue(Arrays.equals(content(1000, 1), store.loadContent()));
+    assertNull(load(cache, 1, 1)); // evicted once loaded
+    assertTrue(Arrays.equals(content(1000, 2), saved.loadContent()));
+    assertNotNull(load(cache, 2, 1));
+    assertEquals(1000, cache.getTotalSize());
+  }
+
+  public void testIndexReloaded() throws Exception {
+    TFSContentCache cache = new TFSContentCache(myDir, 1024 * 1024, true);
+    byte[] content = content(1000, 7);
+    save(cache, 5, 42, content);
+    cache.flush();
+
+    TFSContentCache reopened = new TFSContentCache(myDir, 1024 * 1024, true);
+    TFSContentStore store = reopened.find(SERVER_GUID.toLowerCase(), 5, 42);
+    assertNotNull(store);
+    assertTrue(Arrays.equals(content, store.loadContent()));
+    assertEquals(cache.getTotalSize(), reopened.getTotalSize());
+  }
+
+  public void testFailedDownloadNotStored() throws Exception {
+    TFSContentCache cache = new TFSContentCache(myDir, 1024 * 1024, false);
+    try {
+      cache.create(SERVER_GUID, 1, 1).saveContent(outputStream -> {
+        throw new TfsException("download failed");
+      });
+      fail();
+    }
+    catch (TfsException e) {
+      // expected
+    }
+    assertNull(cache.find(SERVER_GUID, 1, 1));
+  }
+
+  public void testUnindexedFilesDeleted() throws Exception {
+    TFSContentCache cache = new TFSContentCache(myDir, 1024 * 1024, false);
+    save(cache, 1, 1, content(1000, 1));
+    cache.flush();
+    File orphan = new File(myDir, "download.tmp");
+    FileUtil.writeToFile(orphan, content(1000, 2));
+
+    TFSContentCache reopened = new TFSContentCache(myDir, 1024 * 1024, false);
+    assertNotNull(load(reopened, 1, 1));
+    assertFalse(orphan.exists());
+    assertEquals(1000, reopened.getTotalSize());
+  }
+}
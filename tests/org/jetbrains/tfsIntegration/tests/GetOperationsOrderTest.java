@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.GetOperation;
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.core.tfs.operations.GetOperationsUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GetOperationsOrderTest extends TestCase {
+
+  private static GetOperation operation(int id, String source, String target) {
+    GetOperation result = new GetOperation();
+    result.setItemid(id);
+    result.setSlocal(source);
+    result.setTlocal(target);
+    return result;
+  }
+
+  private static List<Integer> sortedIds(GetOperation... operations) {
+    List<Integer> result = new ArrayList<>();
+    for (GetOperation operation : GetOperationsUtil.sortGetOperations(Arrays.asList(operations))) {
+      result.add(operation.getItemid());
+    }
+    return result;
+  }
+
+  public void testParentsFirst() {
+    assertEquals(Arrays.asList(1, 2, 3, 4), sortedIds(operation(3, "C:\\ws\\a\\b\\c.txt", "C:\\ws\\a\\b\\c.txt"),
+                                                      operation(2, "C:\\ws\\a\\b", "C:\\ws\\x"),
+                                                      operation(1, "C:\\ws\\a", "C:\\ws\\a"),
+                                                      operation(4, "C:\\ws\\d.txt", "C:\\ws\\d.txt")));
+  }
+
+  public void testDeletionsAfterChildren() {
+    assertEquals(Arrays.asList(2, 3, 1), sortedIds(operation(1, "C:\\ws\\a", null),
+                                                   operation(2, "C:\\ws\\a\\b.txt", "C:\\ws\\b.txt"),
+                                                   operation(3, "C:\\ws\\a\\c.txt", null)));
+  }
+
+  public void testOperationsWithoutSourceLast() {
+    assertEquals(Arrays.asList(2, 3, 1, 4), sortedIds(operation(1, null, "C:\\ws\\new"),
+                                                      operation(2, "C:\\ws\\a", "C:\\ws\\new\\a"),
+                                                      operation(3, "C:\\ws\\a\\b.txt", "C:\\ws\\new\\a\\b.txt"),
+                                                      operation(4, null, "C:\\ws\\new\\c.txt")));
+  }
+
+  public void testDeletionBeforeRenameToSamePath() {
+    assertEquals(Arrays.asList(1, 2, 3), sortedIds(operation(1, "C:\\ws\\x\\1.txt", "C:\\ws\\x\\1.txt"),
+                                                   operation(2, "C:\\ws\\y\\a.txt", null),
+                                                   operation(3, "C:\\ws\\x\\b.txt", "C:\\ws\\y\\a.txt")));
+  }
+
+  public void testRenameAwayBeforeRenameToSamePath() {
+    assertEquals(Arrays.asList(2, 1, 3), sortedIds(operation(1, "C:\\ws\\a\\b.txt", "C:\\ws\\c\\d.txt"),
+                                                   operation(2, "C:\\ws\\c\\d.txt", "C:\\ws\\c\\e.txt"),
+                                                   operation(3, null, "C:\\ws\\a\\b.txt")));
+  }
+
+  public void testSwappedNamesKeepOrder() {
+    assertEquals(Arrays.asList(1, 2), sortedIds(operation(1, "C:\\ws\\a.txt", "C:\\ws\\b.txt"),
+                                                operation(2, "C:\\ws\\b.txt", "C:\\ws\\a.txt")));
+  }
+
+  public void testMovedFolders() {
+    GetOperationsUtil.MovedFolders movedFolders = new GetOperationsUtil.MovedFolders();
+    assertEquals("C:\\ws\\a\\b\\c.txt", movedFolders.getSourcePath("C:\\ws\\a\\b\\c.txt"));
+    assertNull(movedFolders.getSourcePath(null));
+
+    movedFolders.folderMoved("C:\\ws\\a", "C:\\ws\\x");
+    movedFolders.folderMoved("C:\\ws\\a\\b", "C:\\ws\\y\\z");
+    assertEquals("C:\\ws\\x\\d.txt", movedFolders.getSourcePath("C:\\ws\\a\\d.txt"));
+    assertEquals("C:\\ws\\y\\z\\c.txt", movedFolders.getSourcePath("C:\\ws\\a\\b\\c.txt"));
+    assertEquals("C:\\ws\\y\\z", movedFolders.getSourcePath("C:\\ws\\a\\b"));
+    // prefix of a name is not a parent
+    assertEquals("C:\\ws\\ab\\c.txt", movedFolders.getSourcePath("C:\\ws\\ab\\c.txt"));
+  }
+}
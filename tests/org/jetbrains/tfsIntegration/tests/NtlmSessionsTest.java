@@ -0,0 +1,190 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jcifs.ntlmssp.Type2Message;
+import jcifs.ntlmssp.Type3Message;
+import jcifs.util.Base64;
+import junit.framework.TestCase;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.NTCredentials;
+import org.apache.commons.httpclient.auth.AuthPolicy;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.jetbrains.tfsIntegration.webservice.WebServiceHelper;
+import org.jetbrains.tfsIntegration.webservice.auth.NativeNTLM2Scheme;
+import org.jetbrains.tfsIntegration.webservice.auth.NtlmSessions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests to a local HTTP server that authenticates the connections with NTLM, the way IIS does
+ */
+public class NtlmSessionsTest extends TestCase {
+
+  private static final byte[] CHALLENGE = {1, 2, 3, 4, 5, 6, 7, 8};
+
+  static {
+    // same as the plugin does, see WebServiceHelper
+    AuthPolicy.registerAuthScheme(AuthPolicy.NTLM, NativeNTLM2Scheme.class);
+  }
+
+  // user the connection is authenticated as, by remote address of the connection
+  private final Map<SocketAddress, String> myAuthenticated = new ConcurrentHashMap<>();
+  private final AtomicInteger myServerHandshakes = new AtomicInteger();
+  private final AtomicInteger myWrongUserRequests = new AtomicInteger();
+  private HttpServer myServer;
+  private HttpClient myClient;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    myServer.createContext("/", this::handle);
+    myServer.start();
+    myClient = new HttpClient(NtlmSessions.createConnectionManager());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myServer.stop(0);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      SocketAddress connection = exchange.getRemoteAddress();
+      String user = myAuthenticated.get(connection);
+      String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      if (user == null && authorization != null && authorization.startsWith("NTLM ")) {
+        byte[] message = Base64.decode(authorization.substring("NTLM ".length()));
+        if (message[8] == 1) {
+          myServerHandshakes.incrementAndGet();
+          Type2Message type2 = new Type2Message(Type2Message.getDefaultFlags(), CHALLENGE, "DOMAIN");
+          sendUnauthorized(exchange, "NTLM " + Base64.encode(type2.toByteArray()));
+          return;
+        }
+        user = new Type3Message(message).getUser();
+        myAuthenticated.put(connection, user);
+      }
+
+      if (user == null) {
+        sendUnauthorized(exchange, "NTLM");
+        return;
+      }
+
+      if (!user.equals(exchange.getRequestHeaders().getFirst("X-Test-User"))) {
+        myWrongUserRequests.incrementAndGet();
+      }
+      sendResponse(exchange, HttpStatus.SC_OK, user);
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private static void sendUnauthorized(HttpExchange exchange, String challenge) throws IOException {
+    exchange.getResponseHeaders().set("WWW-Authenticate", challenge);
+    // the server closes the connection after a response without a body, which would break the handshake
+    sendResponse(exchange, HttpStatus.SC_UNAUTHORIZED, "Unauthorized");
+  }
+
+  private static void sendResponse(HttpExchange exchange, int status, String text) throws IOException {
+    byte[] body = text.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private void get(String user) throws IOException {
+    get(user, false);
+  }
+
+  private void get(String user, boolean nativeCredentials) throws IOException {
+    myClient.getParams().setBooleanParameter(WebServiceHelper.USE_NATIVE_CREDENTIALS, nativeCredentials);
+    myClient.getState().setCredentials(AuthScope.ANY, new NTCredentials(user, "password", "localhost", "DOMAIN"));
+    HostConfiguration hostConfiguration = new HostConfiguration();
+    hostConfiguration.setHost("localhost", myServer.getAddress().getPort(), NtlmSessions.getProtocol("http", "DOMAIN\\" + user));
+    GetMethod method = new GetMethod("/service.asmx");
+    method.setRequestHeader("X-Test-User", user);
+    try {
+      assertEquals(HttpStatus.SC_OK, myClient.executeMethod(hostConfiguration, method));
+      if (!nativeCredentials) {
+        assertEquals(user, method.getResponseBodyAsString());
+      }
+    }
+    finally {
+      method.releaseConnection();
+    }
+  }
+
+  public void testConnectionReused() throws Exception {
+    long requests = NtlmSessions.getRequestCount();
+    long connections = NtlmSessions.getConnectionCount();
+    long handshakes = NtlmSessions.getHandshakeCount();
+
+    for (int i = 0; i < 5; i++) {
+      get("alice");
+    }
+
+    assertEquals(1, myServerHandshakes.get());
+    assertEquals(5, NtlmSessions.getRequestCount() - requests);
+    assertEquals(1, NtlmSessions.getConnectionCount() - connections);
+    assertEquals(1, NtlmSessions.getHandshakeCount() - handshakes);
+  }
+
+  public void testConnectionsPinnedPerUser() throws Exception {
+    long handshakes = NtlmSessions.getHandshakeCount();
+
+    for (int i = 0; i < 3; i++) {
+      get("alice");
+      get("bob");
+    }
+
+    assertEquals(0, myWrongUserRequests.get());
+    assertEquals(2, myServerHandshakes.get());
+    assertEquals(2, NtlmSessions.getHandshakeCount() - handshakes);
+  }
+
+  public void testNativeCredentialsHandshakesCounted() throws Exception {
+    long handshakes = NtlmSessions.getHandshakeCount();
+
+    // the current Windows user authenticates the connection if the native authentication is available
+    for (int i = 0; i < 3; i++) {
+      get("alice", true);
+    }
+
+    assertEquals(1, myServerHandshakes.get());
+    assertEquals(1, NtlmSessions.getHandshakeCount() - handshakes);
+  }
+}
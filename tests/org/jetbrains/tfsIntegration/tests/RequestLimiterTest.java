@@ -0,0 +1,112 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.webservice.RequestLimiter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class RequestLimiterTest extends TestCase {
+
+  private static final long TIMEOUT = 5; // seconds
+
+  /**
+   * Acquires a permit, logs {@code name} and counts down {@code acquired}, then waits for {@code release} before releasing the permit
+   */
+  private static Thread start(RequestLimiter limiter,
+                              boolean foreground,
+                              List<String> log,
+                              String name,
+                              CountDownLatch acquired,
+                              CountDownLatch release) {
+    Thread thread = new Thread(() -> {
+      limiter.acquire(foreground, null);
+      try {
+        log.add(name);
+        acquired.countDown();
+        release.await(TIMEOUT, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      finally {
+        limiter.release(foreground);
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+    while (!condition.getAsBoolean()) {
+      assertTrue("condition not reached", System.nanoTime() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  public void testBackgroundDoesNotTakeForegroundPermits() throws InterruptedException {
+    RequestLimiter limiter = new RequestLimiter(2, 1, 1, false);
+    limiter.acquire(false, null);
+
+    // the total limit allows one more request, but the permit is left for a foreground one
+    List<String> log = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch backgroundAcquired = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread background = start(limiter, false, log, "background", backgroundAcquired, release);
+    waitFor(() -> limiter.getWaitingCount(false) == 1);
+
+    CountDownLatch foregroundAcquired = new CountDownLatch(1);
+    Thread foreground = start(limiter, true, log, "foreground", foregroundAcquired, release);
+    assertTrue(foregroundAcquired.await(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(1, backgroundAcquired.getCount());
+    assertEquals(1, limiter.getWaitingCount(false));
+
+    limiter.release(false);
+    assertTrue(backgroundAcquired.await(TIMEOUT, TimeUnit.SECONDS));
+    release.countDown();
+    background.join();
+    foreground.join();
+    assertEquals(Arrays.asList("foreground", "background"), log);
+  }
+
+  public void testForegroundGoesFirst() throws InterruptedException {
+    RequestLimiter limiter = new RequestLimiter(1, 1, 1, true);
+    limiter.acquire(false, null);
+
+    List<String> log = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch acquired = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(0);
+    Thread background = start(limiter, false, log, "background", acquired, release);
+    waitFor(() -> limiter.getWaitingCount(false) == 1);
+    Thread foreground = start(limiter, true, log, "foreground", acquired, release);
+    waitFor(() -> limiter.getWaitingCount(true) == 1);
+
+    limiter.release(false);
+    assertTrue(acquired.await(TIMEOUT, TimeUnit.SECONDS));
+    background.join();
+    foreground.join();
+    assertEquals(Arrays.asList("foreground", "background"), log);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import junit.framework.TestCase;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.jetbrains.tfsIntegration.webservice.metrics.JsonLinesMetricsSink;
+import org.jetbrains.tfsIntegration.webservice.metrics.RequestHistogram;
+import org.jetbrains.tfsIntegration.webservice.metrics.RequestMetrics;
+import org.jetbrains.tfsIntegration.webservice.metrics.RequestMetricsRecorder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RequestMetricsTest extends TestCase {
+
+  private static final URI SERVER = URI.create("http://tfs:8080/tfs");
+
+  private final List<RequestMetrics> myMetrics = new ArrayList<>();
+  private Disposable myDisposable;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDisposable = Disposer.newDisposable();
+    RequestMetricsRecorder.addListener(myMetrics::add, myDisposable);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Disposer.dispose(myDisposable);
+    super.tearDown();
+  }
+
+  public void testCallsOfRequest() throws IOException {
+    RequestMetricsRecorder.Session session = RequestMetricsRecorder.startSession(SERVER, 1000);
+    MessageContext first = new MessageContext();
+    first.setSoapAction("http://schemas.microsoft.com/TeamFoundation/2005/06/VersionControl/ClientServices/03/QueryItems");
+    RequestMetricsRecorder.requestSent(first, 100);
+    // same message sent again on authentication
+    RequestMetricsRecorder.requestSent(first, 120);
+    readAll(RequestMetricsRecorder.responseReceived(new MessageContext(), new ByteArrayInputStream(new byte[300])));
+
+    MessageContext second = new MessageContext();
+    second.setSoapAction("http://schemas.microsoft.com/TeamFoundation/2005/06/VersionControl/ClientServices/03/Get");
+    RequestMetricsRecorder.requestSent(second, 50);
+    MessageContext response = new MessageContext();
+    Map<String, String> headers = new HashMap<>();
+    headers.put("content-encoding", "gzip");
+    headers.put(HTTPConstants.HEADER_CONTENT_LENGTH, "250");
+    response.setProperty(MessageContext.TRANSPORT_HEADERS, headers);
+    readAll(RequestMetricsRecorder.responseReceived(response, new ByteArrayInputStream(new byte[1000])));
+    session.finish(true);
+
+    assertEquals(2, myMetrics.size());
+    RequestMetrics queryItems = myMetrics.get(0);
+    assertEquals("QueryItems", queryItems.getOperation());
+    assertEquals(SERVER, queryItems.getServerUri());
+    assertEquals(1000, queryItems.getLockWaitNanos());
+    assertEquals(120, queryItems.getRequestBytes());
+    assertEquals(300, queryItems.getResponseBytes());
+    assertEquals(RequestMetrics.UNKNOWN, queryItems.getResponseWireBytes()); // not compressed
+    assertFalse(queryItems.isFailed());
+
+    RequestMetrics get = myMetrics.get(1);
+    assertEquals("Get", get.getOperation());
+    assertEquals(0, get.getLockWaitNanos());
+    assertEquals(1000, get.getResponseBytes());
+    assertEquals(0.25, get.getCompressionRatio(), 0.001);
+    assertTrue(get.isFailed());
+  }
+
+  public void testRequestFailedBeforeSending() {
+    RequestMetricsRecorder.startSession(SERVER, 0).finish(true);
+    assertEquals(1, myMetrics.size());
+    assertEquals(RequestMetrics.NOT_SENT, myMetrics.get(0).getOperation());
+    assertTrue(myMetrics.get(0).isFailed());
+
+    // not within a request
+    RequestMetricsRecorder.requestSent(new MessageContext(), 10);
+    assertEquals(1, myMetrics.size());
+  }
+
+  public void testHistogram() {
+    RequestHistogram histogram = new RequestHistogram();
+    assertEquals("", histogram.dump());
+    histogram.requestFinished(new RequestMetrics(SERVER, "QueryItems", 0, 0, 3000000, 100, 400, 100, false));
+    histogram.requestFinished(new RequestMetrics(SERVER, "QueryItems", 0, 5000000, 100000000, 100, 400, 100, true));
+    histogram.requestFinished(new RequestMetrics(SERVER, "Get", 0, 0, 1000000, 10, 10, 10, false));
+
+    String[] lines = histogram.dump().split("\n");
+    assertEquals(2, lines.length);
+    assertTrue(lines[0], lines[0].startsWith(SERVER + " QueryItems: 2 calls, 1 failed; execute ms avg 51, p50 4, p90 100"));
+    assertTrue(lines[0], lines[0].endsWith("sent 200 bytes, received 800 bytes, gzip ratio 0.25"));
+    assertTrue(lines[1], lines[1].startsWith(SERVER + " Get: 1 calls, 0 failed"));
+  }
+
+  public void testJsonLinesSink() throws IOException {
+    Path file = Files.createTempFile("metrics", ".jsonl");
+    try {
+      JsonLinesMetricsSink sink = new JsonLinesMetricsSink(file);
+      sink.requestFinished(new RequestMetrics(SERVER, "QueryItems", 0, 0, 3000000, 100, 400, 100, false));
+      Disposer.dispose(sink);
+      sink.requestFinished(new RequestMetrics(SERVER, "Get", 0, 0, 1000000, 10, 10, 10, false));
+
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      assertEquals(1, lines.size());
+      assertTrue(lines.get(0), lines.get(0).contains("\"operation\":\"QueryItems\""));
+      // the writer is closed, so the file can be removed
+      Files.delete(file);
+    }
+    finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void readAll(InputStream stream) throws IOException {
+    byte[] buffer = new byte[128];
+    //noinspection StatementWithEmptyBody
+    while (stream.read(buffer) != -1) ;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.exceptions.ConnectionFailedException;
+import org.jetbrains.tfsIntegration.exceptions.ConnectionTimeoutException;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.webservice.RetryPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the retry policy against a local HTTP server that fails the requests as told, with a clock that does not really sleep
+ */
+public class RetryPolicyTest extends TestCase {
+
+  private static final int SLOW = -1; // respond after the client times out
+  private static final int READ_TIMEOUT = 300; //ms
+
+  private static class FakeClock implements RetryPolicy.Clock {
+    private long myTime = 1000000;
+
+    @Override
+    public synchronized long currentTimeMillis() {
+      return myTime;
+    }
+
+    @Override
+    public synchronized void sleep(long millis) {
+      myTime += millis;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<Integer> myFaults = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger myRequests = new AtomicInteger();
+  private volatile boolean myAlwaysUnavailable;
+  private HttpServer myServer;
+  private FakeClock myClock;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myClock = new FakeClock();
+    myServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    myServer.createContext("/", exchange -> {
+      try {
+        myRequests.incrementAndGet();
+        Integer fault = myAlwaysUnavailable ? Integer.valueOf(503) : myFaults.poll();
+        if (fault != null && fault == SLOW) {
+          try {
+            Thread.sleep(READ_TIMEOUT * 3);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+        else if (fault != null) {
+          exchange.sendResponseHeaders(fault, -1);
+          return;
+        }
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      }
+      finally {
+        exchange.close();
+      }
+    });
+    myServer.setExecutor(Executors.newCachedThreadPool());
+    myServer.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myServer.stop(0);
+    super.tearDown();
+  }
+
+  private RetryPolicy createPolicy(int maxAttempts, int failuresToOpen) {
+    return new RetryPolicy(maxAttempts, 100, 1000, failuresToOpen, 10000, myClock, new Random(1));
+  }
+
+  private String request() throws IOException, TfsException {
+    URL url = new URL("http://localhost:" + myServer.getAddress().getPort() + "/");
+    HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+    connection.setReadTimeout(READ_TIMEOUT);
+    try {
+      int status = connection.getResponseCode();
+      if (status != 200) {
+        throw new ConnectionFailedException(null, status);
+      }
+      try (InputStream in = connection.getInputStream()) {
+        byte[] buffer = new byte[16];
+        int read = in.read(buffer);
+        return new String(buffer, 0, read, StandardCharsets.UTF_8);
+      }
+    }
+    finally {
+      connection.disconnect();
+    }
+  }
+
+  private static void assertFails(Class<? extends TfsException> errorClass, RetryPolicy policy, boolean idempotent, boolean failFast,
+                                  RetryPolicy.Attempt<?> attempt) {
+    try {
+      policy.execute(idempotent, failFast, null, attempt);
+      fail(errorClass.getSimpleName() + " expected");
+    }
+    catch (TfsException e) {
+      assertTrue(e.toString(), errorClass.isInstance(e));
+    }
+  }
+
+  public void testRetriesIdempotentRequest() throws TfsException {
+    myFaults.add(503);
+    myFaults.add(504);
+    long start = myClock.currentTimeMillis();
+
+    assertEquals("ok", createPolicy(3, 10).execute(true, true, null, this::request));
+    assertEquals(3, myRequests.get());
+    // 50..100 ms before the second attempt, 100..200 ms before the third one
+    long waited = myClock.currentTimeMillis() - start;
+    assertTrue(String.valueOf(waited), waited >= 150 && waited <= 300);
+  }
+
+  public void testRetriesTimeout() throws TfsException {
+    myFaults.add(SLOW);
+    assertEquals("ok", createPolicy(3, 10).execute(true, true, null, this::request));
+    assertEquals(2, myRequests.get());
+  }
+
+  public void testNonIdempotentRequestNotRetried() {
+    myFaults.add(503);
+    assertFails(ConnectionFailedException.class, createPolicy(3, 10), false, true, this::request);
+    assertEquals(1, myRequests.get());
+  }
+
+  public void testPermanentErrorNotRetried() {
+    myFaults.add(500);
+    assertFails(ConnectionFailedException.class, createPolicy(3, 10), true, true, this::request);
+    assertEquals(1, myRequests.get());
+  }
+
+  public void testGivesUpAfterMaxAttempts() {
+    myFaults.add(SLOW);
+    myFaults.add(SLOW);
+    assertFails(ConnectionTimeoutException.class, createPolicy(2, 10), true, true, this::request);
+    assertEquals(2, myRequests.get());
+  }
+
+  public void testDelayGrowsUpToMax() {
+    RetryPolicy policy = createPolicy(10, 10);
+    for (int attempt = 1; attempt <= 8; attempt++) {
+      long max = Math.min(1000, 100L << (attempt - 1));
+      long delay = policy.getDelay(attempt);
+      assertTrue(attempt + ": " + delay, delay >= max / 2 && delay <= max);
+    }
+  }
+
+  public void testCircuitBreaker() throws TfsException {
+    RetryPolicy policy = createPolicy(2, 2);
+    myAlwaysUnavailable = true;
+    assertFails(ConnectionFailedException.class, policy, true, true, this::request);
+    assertEquals(2, myRequests.get());
+    assertTrue(policy.isOpen());
+
+    // fails fast without connecting
+    assertFails(ConnectionFailedException.class, policy, true, true, this::request);
+    assertEquals(2, myRequests.get());
+
+    // requests that are not allowed to fail fast are sent anyway
+    assertFails(ConnectionFailedException.class, policy, false, false, this::request);
+    assertEquals(3, myRequests.get());
+
+    myAlwaysUnavailable = false;
+    myClock.sleep(10001);
+    assertFalse(policy.isOpen());
+    assertEquals("ok", policy.execute(true, true, null, this::request));
+    assertEquals(4, myRequests.get());
+    assertFalse(policy.isOpen());
+  }
+}
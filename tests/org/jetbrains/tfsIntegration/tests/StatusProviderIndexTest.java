@@ -0,0 +1,93 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.ExtendedItem;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.PendingChange;
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.core.tfs.StatusProvider;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matching of local items against server items in {@link StatusProvider#visitByStatus}
+ */
+public class StatusProviderIndexTest extends TestCase {
+
+  private static File getLocalFile(int i) {
+    return new File(new File(new File("root"), "folder" + i / 100), "file" + i + ".txt").getAbsoluteFile();
+  }
+
+  private static void doTest(int size) {
+    List<ExtendedItem> extendedItems = new ArrayList<>(size);
+    List<PendingChange> pendingChanges = new ArrayList<>(size / 10);
+    for (int i = 0; i < size; i++) {
+      String local = VersionControlPath.toTfsRepresentation(getLocalFile(i).getPath());
+      ExtendedItem item = new ExtendedItem();
+      item.setItemid(i);
+      item.setLocal(local);
+      extendedItems.add(item);
+      if (i % 10 == 0) {
+        PendingChange change = new PendingChange();
+        change.setItemid(i);
+        change.setLocal(local);
+        pendingChanges.add(change);
+      }
+    }
+
+    StatusProvider.ServerItemsIndex index = new StatusProvider.ServerItemsIndex(pendingChanges, extendedItems);
+    int matchedChanges = 0;
+    for (int i = size - 1; i >= 0; i--) {
+      File localFile = getLocalFile(i);
+      StatusProvider.ServerItemsIndex.Match match = index.match(localFile);
+      if (match.pendingChange != null) {
+        matchedChanges++;
+      }
+      assertNotNull(localFile.getPath(), match.extendedItem);
+      assertEquals(i, match.extendedItem.getItemid());
+    }
+
+    assertEquals(pendingChanges.size(), matchedChanges);
+    assertTrue(index.getRemainingExtendedItems().isEmpty());
+    assertTrue(index.matchRemaining().isEmpty());
+  }
+
+  public void testMatchOnce() {
+    File localFile = getLocalFile(0);
+    ExtendedItem item = new ExtendedItem();
+    item.setItemid(1);
+    item.setLocal(VersionControlPath.toTfsRepresentation(localFile.getPath()));
+    List<ExtendedItem> items = new ArrayList<>();
+    items.add(item);
+    StatusProvider.ServerItemsIndex index = new StatusProvider.ServerItemsIndex(new ArrayList<>(), items);
+
+    assertSame(item, index.match(localFile).extendedItem);
+    assertNull(index.match(localFile).extendedItem);
+    assertTrue(index.matchRemaining().isEmpty());
+  }
+
+  public void test10k() {
+    doTest(10000);
+  }
+
+  public void test100k() {
+    doTest(100000);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.GetOperation;
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.webservice.StreamingSoapCall;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StreamingSoapCallTest extends TestCase {
+
+  private static final String GET_RESPONSE =
+    "<GetResponse xmlns=\"http://schemas.microsoft.com/TeamFoundation/2005/06/VersionControl/ClientServices/03\">" +
+    "<GetResult>" +
+    "<ArrayOfGetOperation>" +
+    "<GetOperation type=\"File\" itemid=\"1\" slocal=\"C:\\ws\\a.txt\" tlocal=\"C:\\ws\\a.txt\"/>" +
+    "<GetOperation type=\"Folder\" itemid=\"2\" tlocal=\"C:\\ws\\b\"><HashValue>AAAA</HashValue></GetOperation>" +
+    "</ArrayOfGetOperation>" +
+    "<ArrayOfGetOperation/>" +
+    "<ArrayOfGetOperation>" +
+    "<GetOperation type=\"File\" itemid=\"3\" tlocal=\"C:\\ws\\b\\c.txt\"/>" +
+    "</ArrayOfGetOperation>" +
+    "</GetResult>" +
+    "</GetResponse>";
+
+  private static XMLStreamReader createReader() throws Exception {
+    XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(GET_RESPONSE));
+    reader.nextTag();
+    return reader;
+  }
+
+  public void testGroups() throws Exception {
+    List<String> result = new ArrayList<>();
+    int groups = StreamingSoapCall.readElements(createReader(), 3, GetOperation.Factory::parse, (groupIndex, operation) -> {
+      result.add(groupIndex + ":" + operation.getItemid());
+      return true;
+    });
+    assertEquals(3, groups);
+    assertEquals(Arrays.asList("0:1", "0:2", "2:3"), result);
+  }
+
+  public void testStop() throws Exception {
+    List<Integer> result = new ArrayList<>();
+    StreamingSoapCall.readElements(createReader(), 3, GetOperation.Factory::parse, (groupIndex, operation) -> {
+      result.add(operation.getItemid());
+      return result.size() < 2;
+    });
+    assertEquals(Arrays.asList(1, 2), result);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import junit.framework.TestCase;
+import org.apache.axis2.client.Stub;
+import org.jetbrains.tfsIntegration.webservice.StubPool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StubPoolTest extends TestCase {
+
+  private static class TestStub extends Stub {
+  }
+
+  private final AtomicInteger myCreated = new AtomicInteger();
+  private final StubPool<TestStub> myPool = new StubPool<>(() -> {
+    myCreated.incrementAndGet();
+    return new TestStub();
+  });
+
+  public void testReturnedAfterRequest() throws Exception {
+    List<TestStub> leased = StubPool.withLeases(() -> {
+      TestStub stub = myPool.acquire();
+      // the leased stub is not given to anyone else
+      TestStub another = myPool.acquire();
+      assertNotSame(stub, another);
+      return Arrays.asList(stub, another);
+    });
+    assertEquals(2, myCreated.get());
+    TestStub reused = StubPool.withLeases(myPool::acquire);
+    assertEquals(2, myCreated.get());
+    assertTrue(leased.contains(reused));
+  }
+
+  public void testNestedRequest() throws Exception {
+    StubPool.withLeases(() -> {
+      TestStub outer = myPool.acquire();
+      StubPool.withLeases(myPool::acquire);
+      // the stub of the outer request is still leased
+      TestStub stub = myPool.acquire();
+      assertNotSame(outer, stub);
+      assertEquals(2, myCreated.get());
+      return null;
+    });
+  }
+
+  public void testNotReturnedOutsideRequest() throws Exception {
+    TestStub stub = myPool.acquire();
+    assertNotSame(stub, StubPool.withLeases(myPool::acquire));
+    assertEquals(2, myCreated.get());
+  }
+}
@@ -53,6 +53,7 @@ import org.jetbrains.tfsIntegration.core.tfs.conflicts.ConflictsEnvironment;
 import org.jetbrains.tfsIntegration.core.tfs.operations.ApplyGetOperations;
 import org.jetbrains.tfsIntegration.core.tfs.version.ChangesetVersionSpec;
 import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.tests.fakeserver.FakeTfsServer;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -85,6 +86,13 @@ public abstract class TFSTestCase extends AbstractJunitVcsTestCase  {
   private static final String PROXY = null; //"http://tfs-proxy-01:8081/";
 
 
+  /**
+   * Run against an in-process {@link FakeTfsServer} instead of {@link #SERVER}
+   */
+  private static final boolean USE_FAKE_SERVER = Boolean.getBoolean("org.jetbrains.tfsIntegration.tests.fakeServer");
+
+  private static FakeTfsServer ourFakeServer;
+
   private static final String WORKSPACE_NAME_PREFIX = "__testWorkspace_";
   private static final String SANDBOX_PREFIX = "sandbox_";
 
@@ -133,8 +141,19 @@ public abstract class TFSTestCase extends AbstractJunitVcsTestCase  {
     ConflictsEnvironment.setNameMerger(null);
   }
 
-  private void prepareServer() throws URISyntaxException, TfsException {
-    final URI serverUri = new URI(SERVER);
+  private static synchronized URI getServerUri() throws URISyntaxException, IOException {
+    if (!USE_FAKE_SERVER) {
+      return new URI(SERVER);
+    }
+    if (ourFakeServer == null) {
+      ourFakeServer = new FakeTfsServer(DOMAIN, USER);
+      ourFakeServer.getRepository().addItems("test root created", Collections.singletonMap(SERVER_ROOT, (byte[])null));
+    }
+    return ourFakeServer.getUri();
+  }
+
+  private void prepareServer() throws URISyntaxException, TfsException, IOException {
+    final URI serverUri = getServerUri();
 
     myOriginalServerCredentials = TFSConfigurationManager.getInstance().getCredentials(serverUri);
     myOriginalProxyUri = TFSConfigurationManager.getInstance().getProxyUri(serverUri);
@@ -172,17 +191,20 @@ public abstract class TFSTestCase extends AbstractJunitVcsTestCase  {
     }
     finally {
       if (myOriginalServerCredentials != null) {
-        TFSConfigurationManager.getInstance().storeCredentials(new URI(SERVER), myOriginalServerCredentials);
+        TFSConfigurationManager.getInstance().storeCredentials(getServerUri(), myOriginalServerCredentials);
       }
     }
 
-    TFSConfigurationManager.getInstance().setProxyUri(new URI(SERVER), myOriginalProxyUri);
+    TFSConfigurationManager.getInstance().setProxyUri(getServerUri(), myOriginalProxyUri);
 
     tearDownProject();
     if (myTempDirFixture != null) {
       myTempDirFixture.tearDown();
       myTempDirFixture = null;
     }
+    if (ourFakeServer != null) {
+      ourFakeServer.checkNoErrors();
+    }
   }
 
   protected TFSVcs getVcs() {
@@ -197,9 +219,9 @@ public abstract class TFSTestCase extends AbstractJunitVcsTestCase  {
     setStandardConfirmation(TFSVcs.TFS_NAME, op, VcsShowConfirmationOption.Value.DO_NOTHING_SILENTLY);
   }
 
-  private void createNewWorkspaceFor(File root) throws URISyntaxException, TfsException {
+  private void createNewWorkspaceFor(File root) throws URISyntaxException, TfsException, IOException {
     final String workspaceName = WORKSPACE_NAME_PREFIX + Workstation.getComputerName();
-    final ServerInfo server = Workstation.getInstance().getServer(new URI(SERVER));
+    final ServerInfo server = Workstation.getInstance().getServer(getServerUri());
     server.refreshWorkspacesForCurrentOwnerAndComputer(myProject, true);
     for (WorkspaceInfo workspace : server.getWorkspacesForCurrentOwnerAndComputer()) {
       if (workspace.getName().equals(workspaceName)) {
@@ -214,8 +236,8 @@ public abstract class TFSTestCase extends AbstractJunitVcsTestCase  {
     myTestWorkspace.saveToServer(myProject, null);
   }
 
-  private void removeWorkspace(WorkspaceInfo workspace) throws URISyntaxException, TfsException {
-    final ServerInfo server = Workstation.getInstance().getServer(new URI(SERVER));
+  private void removeWorkspace(WorkspaceInfo workspace) throws URISyntaxException, TfsException, IOException {
+    final ServerInfo server = Workstation.getInstance().getServer(getServerUri());
     if (server != null) {
       server.refreshWorkspacesForCurrentOwnerAndComputer(myProject, true);
       server.deleteWorkspace(workspace, myProject, true);
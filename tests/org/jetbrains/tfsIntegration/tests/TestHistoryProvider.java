@@ -170,4 +170,32 @@ public class TestHistoryProvider extends TFSTestCase {
     Assert.assertArrayEquals(fileRenamedModifiedContent2.getBytes(), lastRevision.getContent());
   }
 
+  @Test
+  public void testManyRenamesLoadedWithConstantRequests() throws VcsException, IOException {
+    doActionSilently(VcsConfiguration.StandardConfirmation.ADD);
+    final int filesCount = 10;
+    final VirtualFile root = createDirInCommand(mySandboxRoot, "root");
+    final VirtualFile[] files = new VirtualFile[filesCount];
+    for (int i = 0; i < filesCount; i++) {
+      files[i] = createFileInCommand(root, "file" + i, "content" + i);
+    }
+    commit(getChanges().getChanges(), "files added");
+
+    for (int i = 0; i < filesCount; i++) {
+      rename(files[i], "file" + i + "_renamed");
+    }
+    commit(getChanges().getChanges(), "files renamed");
+
+    final RepositoryLocation location = getVcs().getCommittedChangesProvider().getLocationFor(TfsFileUtil.getFilePath(root));
+    final List<TFSChangeList> historyList =
+      getVcs().getCommittedChangesProvider().getCommittedChanges(new ChangeBrowserSettings(), location, 0);
+    Assert.assertEquals(2, historyList.size());
+
+    final TFSChangeList changelist = historyList.get(0);
+    String dump = ChangeHelper.toString(changelist.getChanges(), mySandboxRoot);
+    Assert.assertEquals(dump, TFSChangeList.IDEADEV_29451_WORKAROUND ? 2 * filesCount : filesCount, changelist.getChanges().size());
+    // the changeset and the original paths of all the renamed items, not the history of every item
+    Assert.assertEquals(2, changelist.getLoadRequestsCount());
+  }
+
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests;
+
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.core.tfs.TfsPath;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlPath;
+
+public class TfsPathTest extends TestCase {
+
+  private static final String[] PATHS =
+    {"$/", "$/Project", "$/project", "$/Project/src", "$/Project/src/Main.java", "$/Project/Src/Main.java", "$/Project/srcx", "$/Other/src"};
+
+  public void testInterned() {
+    TfsPath path = TfsPath.create("$/Project/src/Main.java");
+    assertSame(path, TfsPath.create("$/Project/src/Main.java"));
+    assertSame(path.getParent(), TfsPath.create("$/Project/src"));
+    assertSame(TfsPath.create("$/Project/src"), TfsPath.create("$/Project/src/"));
+    assertEquals("$/", TfsPath.create("$/").getPath());
+    assertSame(TfsPath.create("$/"), TfsPath.create("$/Project").getParent());
+    assertNull(TfsPath.create("$/").getParent());
+    assertEquals(4, path.getDepth());
+    assertEquals("Main.java", path.getName());
+    assertSame(TfsPath.create("$/project/src/main.java"), path.toLowerCase());
+  }
+
+  public void testSameAsStrings() {
+    for (String path1 : PATHS) {
+      for (String path2 : PATHS) {
+        TfsPath tfsPath1 = TfsPath.create(path1);
+        TfsPath tfsPath2 = TfsPath.create(path2);
+        String message = path1 + ", " + path2;
+        assertEquals(message, VersionControlPath.isUnder(path1, path2), tfsPath2.isUnder(tfsPath1));
+        assertEquals(message, VersionControlPath.getCommonAncestor(path1, path2), tfsPath1.getCommonAncestor(tfsPath2).getPath());
+        for (boolean isDirectory1 : new boolean[]{false, true}) {
+          for (boolean isDirectory2 : new boolean[]{false, true}) {
+            assertEquals(message, Integer.signum(VersionControlPath.compareParentToChild(path1, isDirectory1, path2, isDirectory2)),
+                         Integer.signum(TfsPath.compareParentToChild(tfsPath1, isDirectory1, tfsPath2, isDirectory2)));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.annotation;
+
+import com.intellij.util.diff.Diff;
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.core.tfs.AnnotationBuilder;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link AnnotationBuilder.LineMapping} against the straightforward list of line numbers
+ */
+public class LineMappingTest extends TestCase {
+
+  /**
+   * @return random ordered changes of a file with the given number of lines
+   */
+  private static Diff.Change generateChanges(Random random, int lineCount) {
+    List<int[]> hunks = new ArrayList<>(); // line0, line1, deleted, inserted
+    int line0 = 0;
+    int line1 = 0;
+    while (true) {
+      int unchanged = 1 + random.nextInt(50);
+      line0 += unchanged;
+      line1 += unchanged;
+      if (line1 > lineCount) {
+        break;
+      }
+      int inserted = Math.min(random.nextInt(5), lineCount - line1);
+      int deleted = random.nextInt(5);
+      if (inserted + deleted > 0) {
+        hunks.add(new int[]{line0, line1, deleted, inserted});
+      }
+      line0 += deleted;
+      line1 += inserted;
+    }
+    Diff.Change result = null;
+    for (int i = hunks.size() - 1; i >= 0; i--) {
+      int[] hunk = hunks.get(i);
+      result = new Diff.Change(hunk[0], hunk[1], hunk[2], hunk[3], result);
+    }
+    return result;
+  }
+
+  private static void applyToList(List<Integer> lineNumbers, Diff.Change changesList, List<Integer> inserted) {
+    for (Diff.Change change = changesList; change != null; change = change.link) {
+      for (int line = change.line1; line < change.line1 + change.inserted; line++) {
+        if (lineNumbers.get(line) != null) {
+          inserted.add(lineNumbers.get(line));
+        }
+      }
+    }
+    int removedLinesCount = 0;
+    for (Diff.Change change = changesList; change != null; change = change.link) {
+      for (int i = 0; i < change.inserted; i++) {
+        lineNumbers.remove(change.line1 - removedLinesCount);
+      }
+      removedLinesCount += change.inserted;
+    }
+    for (Diff.Change change = changesList; change != null; change = change.link) {
+      for (int i = 0; i < change.deleted; i++) {
+        lineNumbers.add(change.line0, null);
+      }
+    }
+  }
+
+  public void testSameAsList() {
+    Random random = new Random(239);
+    int lineCount = 500;
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < lineCount; i++) {
+      expected.add(i);
+    }
+    AnnotationBuilder.LineMapping mapping = new AnnotationBuilder.LineMapping(lineCount);
+
+    for (int revision = 0; revision < 200; revision++) {
+      Diff.Change changes = generateChanges(random, expected.size());
+      List<Integer> expectedInserted = new ArrayList<>();
+      applyToList(expected, changes, expectedInserted);
+      List<Integer> inserted = new ArrayList<>();
+      mapping.apply(changes, inserted::add);
+
+      assertEquals(expectedInserted, inserted);
+      assertEquals(expected.size(), mapping.getLineCount());
+      for (int line = 0; line < expected.size(); line++) {
+        Integer expectedLine = expected.get(line);
+        assertEquals(expectedLine != null ? expectedLine : -1, mapping.get(line));
+      }
+    }
+  }
+
+  public void testNoChanges() {
+    AnnotationBuilder.LineMapping mapping = new AnnotationBuilder.LineMapping(3);
+    mapping.apply(null, line -> fail());
+    assertEquals(3, mapping.getLineCount());
+    assertEquals(2, mapping.get(2));
+  }
+
+  /**
+   * The list is too slow for a file of this size, so checks that every original line is either reported as inserted exactly once
+   * or is still mapped, in the original order
+   */
+  public void testBigFile() {
+    Random random = new Random(42);
+    int lineCount = 20000;
+    AnnotationBuilder.LineMapping mapping = new AnnotationBuilder.LineMapping(lineCount);
+
+    BitSet reported = new BitSet(lineCount);
+    int expectedLineCount = lineCount;
+    for (int revision = 0; revision < 500; revision++) {
+      Diff.Change changes = generateChanges(random, mapping.getLineCount());
+      for (Diff.Change change = changes; change != null; change = change.link) {
+        expectedLineCount += change.deleted - change.inserted;
+      }
+      mapping.apply(changes, line -> {
+        assertFalse("Line " + line + " reported twice", reported.get(line));
+        reported.set(line);
+      });
+      assertEquals(expectedLineCount, mapping.getLineCount());
+    }
+
+    int previous = -1;
+    for (int line = 0; line < mapping.getLineCount(); line++) {
+      int originalLine = mapping.get(line);
+      if (originalLine != -1) {
+        assertTrue(originalLine > previous);
+        assertFalse(reported.get(originalLine));
+        reported.set(originalLine);
+        previous = originalLine;
+      }
+    }
+    assertEquals(lineCount, reported.cardinality());
+  }
+}
@@ -0,0 +1,1130 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * In-memory versioned item store behind {@link FakeTfsServer}: items with their versions, changesets, labels, workspaces with local
+ * versions and pending changes.
+ * <p/>
+ * Server paths are compared case-insensitively, local paths are kept in TFS (Windows) representation. Get does not report conflicts:
+ * items with pending changes are left as is.
+ */
+public class FakeRepository {
+
+  public static final String ROOT = "$/";
+  private static final String SEPARATOR = "/";
+  private static final String LOCAL_SEPARATOR = "\\";
+
+  public enum Recursion {
+    None, OneLevel, Full
+  }
+
+  public enum Deleted {
+    NonDeleted, Deleted, Any
+  }
+
+  public static class ItemVersion {
+    public final int itemId;
+    public final int changeset;
+    public final String path;
+    public final boolean folder;
+    public final int deletionId;
+    public final int encoding;
+    @Nullable public final byte[] content;
+
+    ItemVersion(int itemId, int changeset, String path, boolean folder, int deletionId, int encoding, @Nullable byte[] content) {
+      this.itemId = itemId;
+      this.changeset = changeset;
+      this.path = path;
+      this.folder = folder;
+      this.deletionId = deletionId;
+      this.encoding = encoding;
+      this.content = content;
+    }
+
+    public boolean isDeleted() {
+      return deletionId != 0;
+    }
+  }
+
+  private static class ItemHistory {
+    private final List<ItemVersion> myVersions = new ArrayList<>(); // ascending changesets
+
+    @Nullable
+    ItemVersion at(int changeset) {
+      ItemVersion result = null;
+      for (ItemVersion version : myVersions) {
+        if (version.changeset > changeset) {
+          break;
+        }
+        result = version;
+      }
+      return result;
+    }
+
+    ItemVersion latest() {
+      return myVersions.get(myVersions.size() - 1);
+    }
+  }
+
+  public static class Change {
+    public final String changeType;
+    public final ItemVersion item;
+
+    Change(String changeType, ItemVersion item) {
+      this.changeType = changeType;
+      this.item = item;
+    }
+  }
+
+  public static class Changeset {
+    public final int id;
+    public final String owner;
+    public final String comment;
+    public final Date date;
+    public final List<Change> changes = new ArrayList<>();
+
+    Changeset(int id, String owner, String comment, Date date) {
+      this.id = id;
+      this.owner = owner;
+      this.comment = comment;
+      this.date = date;
+    }
+  }
+
+  public static class Label {
+    public final int id;
+    public final String name;
+    public final String scope;
+    public final String owner;
+    public final String comment;
+    public final Date date;
+    public final Map<Integer, Integer> itemVersions = new LinkedHashMap<>(); // item id -> changeset
+
+    Label(int id, String name, String scope, String owner, String comment, Date date) {
+      this.id = id;
+      this.name = name;
+      this.scope = scope;
+      this.owner = owner;
+      this.comment = comment;
+      this.date = date;
+    }
+  }
+
+  public static class Mapping {
+    public final String serverItem;
+    @Nullable public final String localItem; // null for cloaked folders
+    public final int depth;
+
+    public Mapping(String serverItem, @Nullable String localItem, int depth) {
+      this.serverItem = serverItem;
+      this.localItem = localItem;
+      this.depth = depth;
+    }
+
+    public boolean isCloak() {
+      return localItem == null;
+    }
+  }
+
+  public static class LocalVersion {
+    public final String local;
+    public final int version;
+
+    LocalVersion(String local, int version) {
+      this.local = local;
+      this.version = version;
+    }
+  }
+
+  public static class PendingChange {
+    public final int id;
+    public final int itemId;
+    public final boolean folder;
+    public final int version; // 0 for added and branched items
+    public final Set<String> changeTypes = new LinkedHashSet<>();
+    public final Date date;
+    public String serverItem;
+    @Nullable public String sourceServerItem; // committed path of renamed items and the source of branched ones
+    public int encoding;
+    public String lock = "None";
+    @Nullable public byte[] content; // uploaded or branched content
+
+    PendingChange(int id, int itemId, boolean folder, int version, String serverItem, int encoding) {
+      this.id = id;
+      this.itemId = itemId;
+      this.folder = folder;
+      this.version = version;
+      this.serverItem = serverItem;
+      this.encoding = encoding;
+      date = new Date();
+    }
+
+    public boolean isAdd() {
+      return changeTypes.contains("Add") || changeTypes.contains("Branch");
+    }
+
+    public String getChangeType() {
+      return String.join(" ", changeTypes);
+    }
+  }
+
+  public static class Workspace {
+    public String name;
+    public final String owner;
+    public String computer;
+    public String comment;
+    public List<Mapping> mappings = new ArrayList<>();
+    public Date lastAccessDate = new Date();
+    public final Map<Integer, LocalVersion> localVersions = new HashMap<>();
+    public final Map<Integer, PendingChange> pendingChanges = new LinkedHashMap<>(); // by item id
+
+    public Workspace(String name, String owner, String computer) {
+      this.name = name;
+      this.owner = owner;
+      this.computer = computer;
+    }
+
+    @Nullable
+    public String toServerPath(String path) {
+      if (isServerPath(path)) {
+        return path;
+      }
+      Mapping best = null;
+      for (Mapping mapping : mappings) {
+        if (mapping.localItem != null &&
+            isUnderLocal(mapping.localItem, path) &&
+            (best == null || best.localItem.length() < mapping.localItem.length())) {
+          best = mapping;
+        }
+      }
+      if (best == null) {
+        return null;
+      }
+      String remainder = path.substring(best.localItem.length()).replace(LOCAL_SEPARATOR, SEPARATOR);
+      if (remainder.startsWith(SEPARATOR)) {
+        remainder = remainder.substring(1);
+      }
+      return remainder.isEmpty() ? best.serverItem : combine(best.serverItem, remainder);
+    }
+
+    @Nullable
+    public String toLocalPath(String serverPath) {
+      Mapping best = null;
+      for (Mapping mapping : mappings) {
+        if (isUnder(mapping.serverItem, serverPath, Recursion.Full) &&
+            (best == null || best.serverItem.length() < mapping.serverItem.length())) {
+          best = mapping;
+        }
+      }
+      if (best == null || best.isCloak()) {
+        return null;
+      }
+      String remainder = serverPath.substring(best.serverItem.length());
+      if (remainder.startsWith(SEPARATOR)) {
+        remainder = remainder.substring(1);
+      }
+      if (best.depth == 1 && remainder.contains(SEPARATOR)) {
+        return null;
+      }
+      return remainder.isEmpty() ? best.localItem : best.localItem + LOCAL_SEPARATOR + remainder.replace(SEPARATOR, LOCAL_SEPARATOR);
+    }
+
+    /**
+     * @return server path of the committed item in this workspace, i.e. with pending renames of the item and its parents applied
+     */
+    public String getTargetPath(ItemVersion item) {
+      PendingChange own = pendingChanges.get(item.itemId);
+      if (own != null) {
+        return own.serverItem;
+      }
+      PendingChange rename = null;
+      for (PendingChange change : pendingChanges.values()) {
+        if (change.sourceServerItem != null && change.changeTypes.contains("Rename") &&
+            isUnder(change.sourceServerItem, item.path, Recursion.Full) &&
+            (rename == null || rename.sourceServerItem.length() < change.sourceServerItem.length())) {
+          rename = change;
+        }
+      }
+      return rename != null ? rename.serverItem + item.path.substring(rename.sourceServerItem.length()) : item.path;
+    }
+  }
+
+  /**
+   * Parsed version spec of a request
+   */
+  public static class Version {
+    public enum Kind {
+      Latest, Changeset, Date, Label, Workspace
+    }
+
+    public final Kind kind;
+    public final int changeset;
+    @Nullable public final Date date;
+    @Nullable public final String name; // label or workspace name
+    @Nullable public final String owner; // label scope or workspace owner
+
+    public Version(Kind kind, int changeset, @Nullable Date date, @Nullable String name, @Nullable String owner) {
+      this.kind = kind;
+      this.changeset = changeset;
+      this.date = date;
+      this.name = name;
+      this.owner = owner;
+    }
+
+    public static final Version LATEST = new Version(Kind.Latest, 0, null, null, null);
+
+    public static Version changeset(int changeset) {
+      return new Version(Kind.Changeset, changeset, null, null, null);
+    }
+  }
+
+  public static class Failure extends Exception {
+    public final String code;
+    @Nullable public final String item;
+
+    public Failure(String code, @Nullable String item, String message) {
+      super(message);
+      this.code = code;
+      this.item = item;
+    }
+  }
+
+  private final Map<Integer, ItemHistory> myItems = new HashMap<>();
+  private final TreeMap<String, Integer> myLatestPaths = new TreeMap<>(); // lower-cased paths of not deleted items
+  private final List<Changeset> myChangesets = new ArrayList<>();
+  private final List<Label> myLabels = new ArrayList<>();
+  private final Map<String, Workspace> myWorkspaces = new LinkedHashMap<>();
+  private final Map<String, byte[]> myUploads = new HashMap<>();
+  private int myNextItemId = 1;
+  private int myNextPendingChangeId = 1;
+  private int myNextLabelId = 1;
+  private final String myOwner;
+
+  public FakeRepository(String owner) {
+    myOwner = owner;
+    Changeset changeset = newChangeset(owner, "Root folder created");
+    commitVersion(changeset, "Add", new ItemVersion(myNextItemId++, changeset.id, ROOT, true, 0, -3, null));
+  }
+
+  // paths
+
+  static boolean isServerPath(String path) {
+    return path.startsWith("$");
+  }
+
+  static String combine(String parent, String name) {
+    return parent.endsWith(SEPARATOR) ? parent + name : parent + SEPARATOR + name;
+  }
+
+  @Nullable
+  static String getParent(String serverPath) {
+    if (ROOT.equals(serverPath)) {
+      return null;
+    }
+    int index = serverPath.lastIndexOf(SEPARATOR);
+    return index <= 1 ? ROOT : serverPath.substring(0, index);
+  }
+
+  static String key(String path) {
+    return path.toLowerCase(Locale.ENGLISH);
+  }
+
+  static boolean isUnder(String parent, String path, Recursion recursion) {
+    String parentKey = key(parent);
+    String pathKey = key(path);
+    if (parentKey.equals(pathKey)) {
+      return true;
+    }
+    switch (recursion) {
+      case OneLevel:
+        String pathParent = getParent(pathKey);
+        return parentKey.equals(pathParent);
+      case Full:
+        return pathKey.startsWith(parentKey.endsWith(SEPARATOR) ? parentKey : parentKey + SEPARATOR);
+      default:
+        return false;
+    }
+  }
+
+  static boolean isUnderLocal(String parent, String path) {
+    String parentKey = key(parent);
+    String pathKey = key(path);
+    return pathKey.equals(parentKey) || pathKey.startsWith(parentKey.endsWith(LOCAL_SEPARATOR) ? parentKey : parentKey + LOCAL_SEPARATOR);
+  }
+
+  // items
+
+  public synchronized int getLatestChangeset() {
+    return myChangesets.get(myChangesets.size() - 1).id;
+  }
+
+  @Nullable
+  public synchronized Changeset getChangeset(int id) {
+    return id >= 1 && id <= myChangesets.size() ? myChangesets.get(id - 1) : null;
+  }
+
+  public synchronized List<Changeset> getChangesets() {
+    return new ArrayList<>(myChangesets);
+  }
+
+  @Nullable
+  public synchronized ItemVersion getItem(int itemId, int changeset) {
+    ItemHistory history = myItems.get(itemId);
+    return history != null ? history.at(changeset) : null;
+  }
+
+  @Nullable
+  public synchronized ItemVersion findItem(String serverPath, int changeset) {
+    if (changeset >= getLatestChangeset()) {
+      Integer itemId = myLatestPaths.get(key(serverPath));
+      return itemId != null ? myItems.get(itemId).latest() : null;
+    }
+    for (ItemHistory history : myItems.values()) {
+      ItemVersion version = history.at(changeset);
+      if (version != null && !version.isDeleted() && key(version.path).equals(key(serverPath))) {
+        return version;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds files and folders in a new changeset, missing parent folders are added as well
+   *
+   * @param items server paths mapped to file content, {@code null} content stands for a folder
+   * @return the changeset number
+   */
+  public synchronized int addItems(String comment, Map<String, byte[]> items) {
+    Changeset changeset = newChangeset(myOwner, comment);
+    for (Map.Entry<String, byte[]> entry : new TreeMap<>(items).entrySet()) {
+      addParentFolders(changeset, entry.getKey());
+      if (!myLatestPaths.containsKey(key(entry.getKey()))) {
+        boolean folder = entry.getValue() == null;
+        commitVersion(changeset, folder ? "Add Encoding" : "Add Edit Encoding",
+                      new ItemVersion(myNextItemId++, changeset.id, entry.getKey(), folder, 0, folder ? -3 : 1252, entry.getValue()));
+      }
+    }
+    return changeset.id;
+  }
+
+  /**
+   * Commits new content of existing files in a new changeset
+   *
+   * @return the changeset number
+   */
+  public synchronized int editItems(String comment, Map<String, byte[]> items) {
+    Changeset changeset = newChangeset(myOwner, comment);
+    for (Map.Entry<String, byte[]> entry : items.entrySet()) {
+      ItemVersion current = Objects.requireNonNull(findItem(entry.getKey(), changeset.id), entry.getKey());
+      commitVersion(changeset, "Edit",
+                    new ItemVersion(current.itemId, changeset.id, current.path, false, 0, current.encoding, entry.getValue()));
+    }
+    return changeset.id;
+  }
+
+  private void addParentFolders(Changeset changeset, String path) {
+    String parent = getParent(path);
+    if (parent != null && !myLatestPaths.containsKey(key(parent))) {
+      addParentFolders(changeset, parent);
+      commitVersion(changeset, "Add Encoding", new ItemVersion(myNextItemId++, changeset.id, parent, true, 0, -3, null));
+    }
+  }
+
+  private Changeset newChangeset(String owner, String comment) {
+    Changeset changeset = new Changeset(myChangesets.size() + 1, owner, comment, new Date());
+    myChangesets.add(changeset);
+    return changeset;
+  }
+
+  private void commitVersion(@Nullable Changeset changeset, @Nullable String changeType, ItemVersion version) {
+    ItemHistory history = myItems.computeIfAbsent(version.itemId, id -> new ItemHistory());
+    if (!history.myVersions.isEmpty()) {
+      myLatestPaths.remove(key(history.latest().path), version.itemId);
+    }
+    history.myVersions.add(version);
+    if (!version.isDeleted()) {
+      myLatestPaths.put(key(version.path), version.itemId);
+    }
+    if (changeset != null && changeType != null) {
+      changeset.changes.add(new Change(changeType, version));
+    }
+  }
+
+  /**
+   * @return items matching the spec, at the requested version
+   */
+  public synchronized List<ItemVersion> queryItems(String path,
+                                                   Recursion recursion,
+                                                   Version version,
+                                                   Deleted deleted,
+                                                   @Nullable Boolean folders,
+                                                   @Nullable Workspace workspace) throws Failure {
+    if (path.endsWith("/*")) {
+      // wildcard stands for the children
+      path = path.substring(0, path.length() - 2);
+      if (path.equals("$")) {
+        path = ROOT;
+      }
+      recursion = Recursion.OneLevel;
+    }
+    List<ItemVersion> candidates = new ArrayList<>();
+    if (version.kind == Version.Kind.Label) {
+      Label label = findLabel(version.name, version.owner);
+      if (label == null) {
+        throw new Failure("LabelNotFoundException", null, "Label " + version.name + " not found");
+      }
+      for (Map.Entry<Integer, Integer> entry : label.itemVersions.entrySet()) {
+        addIfNotNull(candidates, getItem(entry.getKey(), entry.getValue()));
+      }
+    }
+    else if (version.kind == Version.Kind.Workspace) {
+      Workspace versionWorkspace = getWorkspace(version.name, version.owner);
+      for (Map.Entry<Integer, LocalVersion> entry : versionWorkspace.localVersions.entrySet()) {
+        addIfNotNull(candidates, getItem(entry.getKey(), entry.getValue().version));
+      }
+    }
+    else {
+      int changeset = resolveChangeset(version);
+      if (changeset >= getLatestChangeset() && deleted == Deleted.NonDeleted) {
+        String pathKey = key(path);
+        SortedMap<String, Integer> subtree =
+          ROOT.equals(pathKey) ? myLatestPaths : myLatestPaths.subMap(pathKey, pathKey + SEPARATOR + Character.MAX_VALUE);
+        for (Integer itemId : subtree.values()) {
+          candidates.add(myItems.get(itemId).latest());
+        }
+      }
+      else {
+        for (ItemHistory history : myItems.values()) {
+          addIfNotNull(candidates, history.at(changeset));
+        }
+      }
+    }
+
+    List<ItemVersion> result = new ArrayList<>();
+    for (ItemVersion candidate : candidates) {
+      if (isUnder(path, candidate.path, recursion) &&
+          (deleted == Deleted.Any || candidate.isDeleted() == (deleted == Deleted.Deleted)) &&
+          (folders == null || candidate.folder == folders)) {
+        result.add(candidate);
+      }
+    }
+    result.sort(Comparator.comparing(item -> key(item.path)));
+    return result;
+  }
+
+  public synchronized int resolveChangeset(Version version) {
+    switch (version.kind) {
+      case Changeset:
+        return version.changeset;
+      case Date:
+        int result = 1;
+        for (Changeset changeset : myChangesets) {
+          if (!changeset.date.after(version.date)) {
+            result = changeset.id;
+          }
+        }
+        return result;
+      default:
+        return getLatestChangeset();
+    }
+  }
+
+  // history
+
+  public synchronized List<Changeset> queryHistory(String path,
+                                                   Recursion recursion,
+                                                   Version itemVersion,
+                                                   @Nullable String user,
+                                                   @Nullable Version from,
+                                                   @Nullable Version to,
+                                                   int maxCount,
+                                                   boolean ascending,
+                                                   @Nullable Workspace workspace,
+                                                   Set<Integer> itemIds) throws Failure {
+    for (ItemVersion item : queryItems(path, recursion, itemVersion, Deleted.Any, null, workspace)) {
+      itemIds.add(item.itemId);
+    }
+    int first = from != null ? resolveChangeset(from) : 1;
+    int last = to != null ? resolveChangeset(to) : getLatestChangeset();
+    List<Changeset> result = new ArrayList<>();
+    for (int id = first; id <= last && id <= myChangesets.size(); id++) {
+      Changeset changeset = myChangesets.get(id - 1);
+      if (user != null && !key(user).equals(key(changeset.owner))) {
+        continue;
+      }
+      for (Change change : changeset.changes) {
+        if (itemIds.contains(change.item.itemId)) {
+          result.add(changeset);
+          break;
+        }
+      }
+    }
+    if (!ascending) {
+      Collections.reverse(result);
+    }
+    return maxCount > 0 && result.size() > maxCount ? new ArrayList<>(result.subList(0, maxCount)) : result;
+  }
+
+  // labels
+
+  @Nullable
+  private Label findLabel(String name, @Nullable String scope) {
+    for (Label label : myLabels) {
+      if (key(label.name).equals(key(name)) && (scope == null || key(label.scope).equals(key(scope)))) {
+        return label;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return true if a new label was created
+   */
+  public synchronized boolean label(String name,
+                                    @Nullable String scope,
+                                    String owner,
+                                    @Nullable String comment,
+                                    Map<Integer, Integer> itemVersions,
+                                    boolean replace) {
+    Label existing = findLabel(name, scope != null ? scope : ROOT);
+    Label label = new Label(myNextLabelId++, name, scope != null ? scope : ROOT, owner, comment, new Date());
+    if (existing != null) {
+      myLabels.remove(existing);
+      if (!replace) {
+        label.itemVersions.putAll(existing.itemVersions);
+      }
+    }
+    label.itemVersions.putAll(itemVersions);
+    myLabels.add(label);
+    return existing == null;
+  }
+
+  public synchronized List<Label> queryLabels(@Nullable String name,
+                                              @Nullable String scope,
+                                              @Nullable String owner,
+                                              @Nullable String filterItem) {
+    List<Label> result = new ArrayList<>();
+    for (Label label : myLabels) {
+      if (name != null && !matchesWildcard(name, label.name)) {
+        continue;
+      }
+      if (scope != null && !isUnder(scope, label.scope, Recursion.Full)) {
+        continue;
+      }
+      if (owner != null && !key(owner).equals(key(label.owner))) {
+        continue;
+      }
+      if (filterItem != null && !labelContains(label, filterItem)) {
+        continue;
+      }
+      result.add(label);
+    }
+    return result;
+  }
+
+  private boolean labelContains(Label label, String path) {
+    for (Map.Entry<Integer, Integer> entry : label.itemVersions.entrySet()) {
+      ItemVersion item = getItem(entry.getKey(), entry.getValue());
+      if (item != null && isUnder(path, item.path, Recursion.Full)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesWildcard(String pattern, String value) {
+    StringBuilder regex = new StringBuilder();
+    for (char c : key(pattern).toCharArray()) {
+      if (c == '*') {
+        regex.append(".*");
+      }
+      else if (c == '?') {
+        regex.append('.');
+      }
+      else {
+        regex.append(java.util.regex.Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return key(value).matches(regex.toString());
+  }
+
+  // workspaces
+
+  private static String workspaceKey(String name, String owner) {
+    return key(name) + ";" + key(owner);
+  }
+
+  public synchronized Workspace getWorkspace(@Nullable String name, @Nullable String owner) throws Failure {
+    Workspace workspace = name != null && owner != null ? myWorkspaces.get(workspaceKey(name, owner)) : null;
+    if (workspace == null) {
+      throw new Failure("WorkspaceNotFoundException", null, "Workspace " + name + ";" + owner + " not found");
+    }
+    return workspace;
+  }
+
+  public synchronized List<Workspace> queryWorkspaces(@Nullable String owner, @Nullable String computer) {
+    List<Workspace> result = new ArrayList<>();
+    for (Workspace workspace : myWorkspaces.values()) {
+      if ((owner == null || key(owner).equals(key(workspace.owner))) &&
+          (computer == null || key(computer).equals(key(workspace.computer)))) {
+        result.add(workspace);
+      }
+    }
+    return result;
+  }
+
+  public synchronized void createWorkspace(Workspace workspace) throws Failure {
+    String key = workspaceKey(workspace.name, workspace.owner);
+    if (myWorkspaces.containsKey(key)) {
+      throw new Failure("WorkspaceExistsException", null, "Workspace " + workspace.name + " already exists");
+    }
+    myWorkspaces.put(key, workspace);
+  }
+
+  public synchronized Workspace updateWorkspace(String oldName,
+                                                String owner,
+                                                String newName,
+                                                String computer,
+                                                @Nullable String comment,
+                                                List<Mapping> mappings) throws Failure {
+    Workspace workspace = getWorkspace(oldName, owner);
+    myWorkspaces.remove(workspaceKey(oldName, owner));
+    workspace.name = newName;
+    workspace.computer = computer;
+    workspace.comment = comment;
+    workspace.mappings = mappings;
+    workspace.lastAccessDate = new Date();
+    myWorkspaces.put(workspaceKey(newName, owner), workspace);
+    return workspace;
+  }
+
+  public synchronized void deleteWorkspace(String name, String owner) throws Failure {
+    getWorkspace(name, owner);
+    myWorkspaces.remove(workspaceKey(name, owner));
+  }
+
+  public synchronized void updateLocalVersion(Workspace workspace, int itemId, @Nullable String local, int version) {
+    if (local == null || version == 0) {
+      workspace.localVersions.remove(itemId);
+    }
+    else {
+      workspace.localVersions.put(itemId, new LocalVersion(local, version));
+    }
+  }
+
+  // get
+
+  public static class GetOperation {
+    public final ItemVersion item;
+    @Nullable public final String sourceLocal;
+    @Nullable public final String targetLocal;
+    public final String targetItem;
+    public final int localVersion; // 0 if not present locally
+    public final int serverVersion; // 0 if not present on server
+    @Nullable public final PendingChange pendingChange;
+
+    GetOperation(ItemVersion item,
+                 @Nullable String sourceLocal,
+                 @Nullable String targetLocal,
+                 String targetItem,
+                 int localVersion,
+                 int serverVersion,
+                 @Nullable PendingChange pendingChange) {
+      this.item = item;
+      this.sourceLocal = sourceLocal;
+      this.targetLocal = targetLocal;
+      this.targetItem = targetItem;
+      this.localVersion = localVersion;
+      this.serverVersion = serverVersion;
+      this.pendingChange = pendingChange;
+    }
+  }
+
+  public synchronized List<GetOperation> get(Workspace workspace, String path, Recursion recursion, Version version, boolean force)
+    throws Failure {
+    String serverPath = toServerPath(workspace, path);
+    List<GetOperation> result = new ArrayList<>();
+    Set<Integer> targetItems = new HashSet<>();
+    for (ItemVersion target : queryItems(serverPath, recursion, version, Deleted.NonDeleted, null, workspace)) {
+      targetItems.add(target.itemId);
+      if (workspace.pendingChanges.containsKey(target.itemId)) {
+        continue;
+      }
+      String targetPath = workspace.getTargetPath(target);
+      String targetLocal = workspace.toLocalPath(targetPath);
+      LocalVersion local = workspace.localVersions.get(target.itemId);
+      if (targetLocal == null && local == null) {
+        continue;
+      }
+      if (force || local == null || local.version != target.changeset || targetLocal == null || !targetLocal.equals(local.local)) {
+        result.add(new GetOperation(target, local != null ? local.local : null, targetLocal, targetPath, local != null ? local.version : 0,
+                                    targetLocal != null ? target.changeset : 0, null));
+      }
+    }
+
+    // items present locally but not in the requested version are removed
+    for (Map.Entry<Integer, LocalVersion> entry : workspace.localVersions.entrySet()) {
+      if (targetItems.contains(entry.getKey()) || workspace.pendingChanges.containsKey(entry.getKey())) {
+        continue;
+      }
+      ItemVersion local = getItem(entry.getKey(), entry.getValue().version);
+      if (local != null && isUnder(serverPath, local.path, recursion)) {
+        result.add(new GetOperation(local, entry.getValue().local, null, local.path, entry.getValue().version, 0, null));
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static String toServerPath(Workspace workspace, String path) throws Failure {
+    String serverPath = workspace.toServerPath(path);
+    if (serverPath == null) {
+      throw new Failure("ItemNotMappedException", path, "The path " + path + " is not mapped in workspace " + workspace.name);
+    }
+    return serverPath;
+  }
+
+  // pending changes
+
+  public synchronized List<GetOperation> pendAdd(Workspace workspace, String path, boolean folder, int encoding) throws Failure {
+    String serverPath = toServerPath(workspace, path);
+    if (findItem(serverPath, getLatestChangeset()) != null) {
+      throw new Failure("ItemExistsException", serverPath, "The item " + serverPath + " already exists");
+    }
+    if (findPendingChange(workspace, serverPath) != null) {
+      throw new Failure("PendingChangeExistsException", serverPath, "The item " + serverPath + " already has a pending change");
+    }
+    PendingChange change = new PendingChange(myNextPendingChangeId++, myNextItemId++, folder, 0, serverPath, encoding);
+    change.changeTypes.addAll(folder ? Arrays.asList("Add", "Encoding") : Arrays.asList("Add", "Edit", "Encoding"));
+    workspace.pendingChanges.put(change.itemId, change);
+    String local = workspace.toLocalPath(serverPath);
+    ItemVersion item = new ItemVersion(change.itemId, 0, serverPath, folder, 0, encoding, null);
+    return Collections.singletonList(new GetOperation(item, local, local, serverPath, 0, 0, change));
+  }
+
+  public synchronized List<GetOperation> pendEdit(Workspace workspace, String path, Recursion recursion) throws Failure {
+    List<GetOperation> result = new ArrayList<>();
+    for (ItemVersion item : findWorkspaceItems(workspace, path, recursion)) {
+      if (item.folder) {
+        continue;
+      }
+      PendingChange change = getOrCreatePendingChange(workspace, item);
+      change.changeTypes.add("Edit");
+      result.add(createOperation(workspace, item, change, workspace.toLocalPath(change.serverItem)));
+    }
+    return result;
+  }
+
+  public synchronized List<GetOperation> pendDelete(Workspace workspace, String path) throws Failure {
+    String serverPath = toServerPath(workspace, path);
+    PendingChange pendingAdd = findPendingChange(workspace, serverPath);
+    if (pendingAdd != null && pendingAdd.isAdd()) {
+      throw new Failure("PendingChangeExistsException", serverPath, "The item " + serverPath + " has a pending add, undo it instead");
+    }
+    List<GetOperation> result = new ArrayList<>();
+    List<ItemVersion> items = findWorkspaceItems(workspace, path, Recursion.Full);
+    for (ItemVersion item : items) {
+      if (item.itemId == items.get(0).itemId) {
+        PendingChange change = getOrCreatePendingChange(workspace, item);
+        change.changeTypes.remove("Edit");
+        change.changeTypes.add("Delete");
+        result.add(createOperation(workspace, item, change, null));
+      }
+      else {
+        // children are deleted implicitly
+        LocalVersion local = workspace.localVersions.get(item.itemId);
+        if (local != null) {
+          result.add(new GetOperation(item, local.local, null, workspace.getTargetPath(item), local.version, local.version, null));
+        }
+      }
+    }
+    return result;
+  }
+
+  public synchronized List<GetOperation> pendRename(Workspace workspace, String path, String target) throws Failure {
+    String sourcePath = toServerPath(workspace, path);
+    String targetPath = toServerPath(workspace, target);
+    List<GetOperation> result = new ArrayList<>();
+
+    PendingChange pendingAdd = findPendingChange(workspace, sourcePath);
+    if (pendingAdd != null && pendingAdd.isAdd()) {
+      renamePendingChanges(workspace, sourcePath, targetPath);
+      String local = workspace.toLocalPath(targetPath);
+      result.add(new GetOperation(new ItemVersion(pendingAdd.itemId, 0, targetPath, pendingAdd.folder, 0, pendingAdd.encoding, null),
+                                  workspace.toLocalPath(sourcePath), local, targetPath, 0, 0, pendingAdd));
+      return result;
+    }
+
+    List<ItemVersion> items = findWorkspaceItems(workspace, path, Recursion.Full);
+    ItemVersion renamed = items.get(0);
+    Map<Integer, String> sourceLocals = new HashMap<>();
+    for (ItemVersion item : items) {
+      sourceLocals.put(item.itemId, workspace.toLocalPath(workspace.getTargetPath(item)));
+    }
+    PendingChange change = getOrCreatePendingChange(workspace, renamed);
+    renamePendingChanges(workspace, sourcePath, targetPath);
+    change.changeTypes.add("Rename");
+    change.serverItem = targetPath;
+
+    for (ItemVersion item : items) {
+      String newPath = workspace.getTargetPath(item);
+      PendingChange itemChange = workspace.pendingChanges.get(item.itemId);
+      LocalVersion local = workspace.localVersions.get(item.itemId);
+      int version = local != null ? local.version : item.changeset;
+      result.add(new GetOperation(item, sourceLocals.get(item.itemId), workspace.toLocalPath(newPath), newPath, version, version,
+                                  itemChange));
+    }
+    return result;
+  }
+
+  private static void renamePendingChanges(Workspace workspace, String sourcePath, String targetPath) {
+    for (PendingChange change : workspace.pendingChanges.values()) {
+      if (isUnder(sourcePath, change.serverItem, Recursion.Full)) {
+        change.serverItem = targetPath + change.serverItem.substring(sourcePath.length());
+      }
+    }
+  }
+
+  public synchronized List<GetOperation> pendLock(Workspace workspace, String path, String lock) throws Failure {
+    List<GetOperation> result = new ArrayList<>();
+    for (ItemVersion item : findWorkspaceItems(workspace, path, Recursion.None)) {
+      PendingChange change = getOrCreatePendingChange(workspace, item);
+      if ("None".equals(lock)) {
+        change.changeTypes.remove("Lock");
+        if (change.changeTypes.isEmpty()) {
+          workspace.pendingChanges.remove(item.itemId);
+        }
+      }
+      else {
+        change.changeTypes.add("Lock");
+      }
+      change.lock = lock;
+      result.add(createOperation(workspace, item, change, workspace.toLocalPath(change.serverItem)));
+    }
+    return result;
+  }
+
+  public synchronized List<GetOperation> pendBranch(Workspace workspace, String path, String target, Version version) throws Failure {
+    String sourcePath = toServerPath(workspace, path);
+    String targetPath = toServerPath(workspace, target);
+    List<GetOperation> result = new ArrayList<>();
+    List<ItemVersion> items = queryItems(sourcePath, Recursion.Full, version, Deleted.NonDeleted, null, workspace);
+    if (items.isEmpty()) {
+      throw new Failure("ItemNotFoundException", sourcePath, "No matching items found in " + sourcePath);
+    }
+    for (ItemVersion source : items) {
+      String branchPath = targetPath + source.path.substring(sourcePath.length());
+      PendingChange change = new PendingChange(myNextPendingChangeId++, myNextItemId++, source.folder, 0, branchPath, source.encoding);
+      change.changeTypes.addAll(Arrays.asList("Branch", "Encoding"));
+      change.sourceServerItem = source.path;
+      change.content = source.content;
+      workspace.pendingChanges.put(change.itemId, change);
+      ItemVersion item = new ItemVersion(change.itemId, source.changeset, branchPath, source.folder, 0, source.encoding, source.content);
+      result.add(new GetOperation(item, null, workspace.toLocalPath(branchPath), branchPath, 0, source.changeset, change));
+    }
+    return result;
+  }
+
+  /**
+   * @return committed items at the path in the workspace, the item itself goes first
+   */
+  private List<ItemVersion> findWorkspaceItems(Workspace workspace, String path, Recursion recursion) throws Failure {
+    String serverPath = toServerPath(workspace, path);
+    List<ItemVersion> result = new ArrayList<>();
+    for (ItemHistory history : myItems.values()) {
+      ItemVersion item = history.latest();
+      if (!item.isDeleted() && isUnder(serverPath, workspace.getTargetPath(item), recursion)) {
+        if (key(workspace.getTargetPath(item)).equals(key(serverPath))) {
+          result.add(0, item);
+        }
+        else {
+          result.add(item);
+        }
+      }
+    }
+    if (result.isEmpty() || !key(workspace.getTargetPath(result.get(0))).equals(key(serverPath))) {
+      throw new Failure("ItemNotFoundException", serverPath, "No matching items found in " + serverPath);
+    }
+    return result;
+  }
+
+  private PendingChange getOrCreatePendingChange(Workspace workspace, ItemVersion item) {
+    PendingChange change = workspace.pendingChanges.get(item.itemId);
+    if (change == null) {
+      LocalVersion local = workspace.localVersions.get(item.itemId);
+      change = new PendingChange(myNextPendingChangeId++, item.itemId, item.folder, local != null ? local.version : item.changeset,
+                                 workspace.getTargetPath(item), item.encoding);
+      workspace.pendingChanges.put(item.itemId, change);
+    }
+    return change;
+  }
+
+  private static GetOperation createOperation(Workspace workspace, ItemVersion item, PendingChange change, @Nullable String targetLocal) {
+    LocalVersion local = workspace.localVersions.get(item.itemId);
+    return new GetOperation(item, local != null ? local.local : null, targetLocal, change.serverItem, change.version, change.version,
+                            change);
+  }
+
+  @Nullable
+  private static PendingChange findPendingChange(Workspace workspace, String serverPath) {
+    for (PendingChange change : workspace.pendingChanges.values()) {
+      if (key(change.serverItem).equals(key(serverPath))) {
+        return change;
+      }
+    }
+    return null;
+  }
+
+  public synchronized List<PendingChange> queryPendingChanges(Workspace workspace, String path, Recursion recursion) throws Failure {
+    String serverPath = toServerPath(workspace, path);
+    List<PendingChange> result = new ArrayList<>();
+    for (PendingChange change : workspace.pendingChanges.values()) {
+      if (isUnder(serverPath, change.serverItem, recursion)) {
+        result.add(change);
+      }
+    }
+    return result;
+  }
+
+  public synchronized List<GetOperation> undo(Workspace workspace, String path, Recursion recursion) throws Failure {
+    List<GetOperation> result = new ArrayList<>();
+    List<PendingChange> changes = queryPendingChanges(workspace, path, recursion);
+    if (changes.isEmpty()) {
+      throw new Failure("ItemNotCheckedOutException", path, "No pending changes were found for " + path);
+    }
+    // collect the paths before any rename is undone
+    Map<PendingChange, String> currentLocals = new HashMap<>();
+    for (PendingChange change : changes) {
+      currentLocals.put(change, workspace.toLocalPath(change.serverItem));
+    }
+    for (PendingChange change : changes) {
+      workspace.pendingChanges.remove(change.itemId);
+      ItemVersion item = getItem(change.itemId, change.version);
+      if (item == null) {
+        // added or branched item: the local copy is left as is
+        myUploads.remove(uploadKey(workspace, change.serverItem));
+        ItemVersion added = new ItemVersion(change.itemId, 0, change.serverItem, change.folder, 0, change.encoding, null);
+        result.add(new GetOperation(added, null, null, change.serverItem, 0, 0, null));
+        continue;
+      }
+      myUploads.remove(uploadKey(workspace, change.serverItem));
+      String originalLocal = workspace.toLocalPath(workspace.getTargetPath(item));
+      LocalVersion local = workspace.localVersions.get(change.itemId);
+      String sourceLocal = change.changeTypes.contains("Delete") && local == null ? null : currentLocals.get(change);
+      result.add(new GetOperation(item, sourceLocal, originalLocal, workspace.getTargetPath(item), change.version, change.version, null));
+      if (change.changeTypes.contains("Rename")) {
+        // children of the renamed folder move back as well
+        for (ItemVersion child : queryItems(item.path, Recursion.Full, Version.LATEST, Deleted.NonDeleted, null, workspace)) {
+          LocalVersion childLocal = workspace.localVersions.get(child.itemId);
+          if (child.itemId != item.itemId && childLocal != null) {
+            String childTarget = workspace.toLocalPath(workspace.getTargetPath(child));
+            result.add(new GetOperation(child, childLocal.local, childTarget, workspace.getTargetPath(child), childLocal.version,
+                                        childLocal.version, null));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  // check in
+
+  private static String uploadKey(Workspace workspace, String serverItem) {
+    return workspaceKey(workspace.name, workspace.owner) + ";" + key(serverItem);
+  }
+
+  public synchronized void upload(String workspaceName, String owner, String serverItem, byte[] content) throws Failure {
+    myUploads.put(uploadKey(getWorkspace(workspaceName, owner), serverItem), content);
+  }
+
+  public synchronized Changeset checkIn(Workspace workspace, Collection<String> serverItems, String owner, @Nullable String comment)
+    throws Failure {
+    Set<String> keys = new HashSet<>();
+    for (String serverItem : serverItems) {
+      keys.add(key(serverItem));
+    }
+    List<PendingChange> changes = new ArrayList<>();
+    for (PendingChange change : workspace.pendingChanges.values()) {
+      if (keys.contains(key(change.serverItem)) && !"Lock".equals(change.getChangeType())) {
+        changes.add(change);
+      }
+    }
+    if (changes.isEmpty()) {
+      throw new Failure("NoPendingChangesException", null, "There are no pending changes to check in");
+    }
+    // parents go first
+    changes.sort(Comparator.comparing(change -> key(change.serverItem)));
+
+    Changeset changeset = newChangeset(owner, comment);
+    for (PendingChange change : changes) {
+      workspace.pendingChanges.remove(change.itemId);
+      byte[] uploaded = myUploads.remove(uploadKey(workspace, change.serverItem));
+      ItemHistory history = myItems.get(change.itemId);
+      ItemVersion previous = history != null ? history.latest() : null;
+      byte[] content = change.folder ? null : uploaded != null ? uploaded : change.content != null ? change.content :
+                                                                             previous != null ? previous.content : new byte[0];
+      boolean delete = change.changeTypes.contains("Delete");
+      ItemVersion version =
+        new ItemVersion(change.itemId, changeset.id, change.serverItem, change.folder, delete ? changeset.id : 0, change.encoding, content);
+      Set<String> changeTypes = new LinkedHashSet<>(change.changeTypes);
+      changeTypes.remove("Lock");
+      commitVersion(changeset, String.join(" ", changeTypes), version);
+
+      String local = workspace.toLocalPath(change.serverItem);
+      if (delete || local == null) {
+        workspace.localVersions.remove(change.itemId);
+      }
+      else {
+        workspace.localVersions.put(change.itemId, new LocalVersion(local, changeset.id));
+      }
+
+      if (previous != null && change.folder && (delete || !key(previous.path).equals(key(change.serverItem)))) {
+        // children of deleted and renamed folders
+        for (ItemHistory childHistory : new ArrayList<>(myItems.values())) {
+          ItemVersion child = childHistory.latest();
+          if (child.itemId == change.itemId || child.isDeleted() || !isUnder(previous.path, child.path, Recursion.Full) ||
+              workspace.pendingChanges.containsKey(child.itemId)) {
+            continue;
+          }
+          String childPath = change.serverItem + child.path.substring(previous.path.length());
+          commitVersion(null, null, new ItemVersion(child.itemId, changeset.id, childPath, child.folder, delete ? changeset.id : 0,
+                                                    child.encoding, child.content));
+          String childLocal = workspace.toLocalPath(childPath);
+          if (delete || childLocal == null) {
+            workspace.localVersions.remove(child.itemId);
+          }
+          else if (workspace.localVersions.containsKey(child.itemId)) {
+            workspace.localVersions.put(child.itemId, new LocalVersion(childLocal, changeset.id));
+          }
+        }
+      }
+    }
+    return changeset;
+  }
+
+  private static <T> void addIfNotNull(Collection<T> collection, @Nullable T item) {
+    if (item != null) {
+      collection.add(item);
+    }
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.core.TFSConstants;
+import org.jetbrains.tfsIntegration.core.tfs.VersionControlServer;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded HTTP server that speaks enough of the TFS 2005/2008 web services for {@code RepositoryStub}, {@code ClientService2Stub} and
+ * therefore {@link VersionControlServer} to run unmodified against localhost: registration, authentication check, identities, version
+ * control (workspaces, pending changes, get, check in, history, labels), upload/download and basic work items.
+ * <p/>
+ * Services are dispatched by the path suffix, so both the collection URI returned by {@link #getUri()} and the bare one work. The content
+ * lives in {@link #getRepository()} which tests fill directly.
+ */
+public class FakeTfsServer {
+
+  static final String SOAP12_NAMESPACE = "http://www.w3.org/2003/05/soap-envelope";
+  private static final String REGISTRATION_NAMESPACE = "http://schemas.microsoft.com/TeamFoundation/2005/06/Services/Registration/03";
+  private static final String SERVER_STATUS_NAMESPACE = "http://schemas.microsoft.com/TeamFoundation/2005/06/Services/ServerStatus/03";
+  private static final String GROUP_SECURITY_NAMESPACE = "http://schemas.microsoft.com/TeamFoundation/2005/06/Services/GroupSecurity/03";
+  private static final String AUTHORIZATION_NAMESPACE = "http://schemas.microsoft.com/TeamFoundation/2005/06/Services/Authorization/03";
+
+  private static final String COLLECTION_PATH = "/tfs";
+  private static final String REPOSITORY_PATH = "VersionControl/v1.0/repository.asmx";
+  private static final String REPOSITORY_4_PATH = "VersionControl/v4.0/repository.asmx";
+  private static final String DOWNLOAD_PATH = "VersionControl/v1.0/item.asmx";
+  private static final String UPLOAD_PATH = "VersionControl/v1.0/upload.asmx";
+  private static final String WORK_ITEM_PATH = "WorkItemTracking/v1.0/ClientService.asmx";
+  private static final String GROUP_SECURITY_PATH = "Services/v1.0/GroupSecurityService.asmx";
+
+  private static final String INSTANCE_ID = "8C9A3F0E-6B1D-4E2A-9F7C-5D4B3A2E1F00";
+
+  // bytes=first-last/total, last is -1 for an empty file
+  private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(-?\\d+)/(\\d+)");
+
+  interface SoapHandler {
+    void handle(String operation, SoapElement request, SoapWriter writer) throws FakeRepository.Failure, XMLStreamException;
+  }
+
+  private final HttpServer myServer;
+  private final ExecutorService myExecutor = Executors.newCachedThreadPool();
+  private final String myDomain;
+  private final String myUser;
+  private final FakeRepository myRepository;
+  private final RepositoryService myRepositoryService;
+  private final WorkItemService myWorkItemService;
+  private final Map<String, AtomicInteger> myRequestCounts = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> myPartialUploads = new HashMap<>();
+  private final List<Throwable> myErrors = Collections.synchronizedList(new ArrayList<>());
+
+  public FakeTfsServer(String domain, String user) throws IOException {
+    myDomain = domain;
+    myUser = user;
+    myRepository = new FakeRepository(getQualifiedUsername());
+    myRepositoryService = new RepositoryService(myRepository, getQualifiedUsername());
+    myWorkItemService = new WorkItemService(getQualifiedUsername());
+    myServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    myServer.createContext("/", this::handle);
+    myServer.setExecutor(myExecutor);
+    myServer.start();
+  }
+
+  public URI getUri() {
+    return URI.create("http://localhost:" + myServer.getAddress().getPort() + COLLECTION_PATH);
+  }
+
+  public FakeRepository getRepository() {
+    return myRepository;
+  }
+
+  public WorkItemService getWorkItems() {
+    return myWorkItemService;
+  }
+
+  public String getQualifiedUsername() {
+    return myDomain + "\\" + myUser;
+  }
+
+  public String getInstanceId() {
+    return INSTANCE_ID;
+  }
+
+  /**
+   * Fails if the server could not handle a request because of its own error, as opposed to a SOAP fault it has reported on purpose
+   */
+  public void checkNoErrors() {
+    synchronized (myErrors) {
+      if (!myErrors.isEmpty()) {
+        AssertionError error = new AssertionError("Fake server failed to handle " + myErrors.size() + " request(s)");
+        for (Throwable e : myErrors) {
+          error.addSuppressed(e);
+        }
+        throw error;
+      }
+    }
+  }
+
+  /**
+   * @param operation SOAP operation name, e.g. {@code QueryItems}, or {@code Download}/{@code Upload}
+   */
+  public int getRequestCount(String operation) {
+    AtomicInteger count = myRequestCounts.get(operation);
+    return count != null ? count.get() : 0;
+  }
+
+  public void resetRequestCounts() {
+    myRequestCounts.clear();
+  }
+
+  public void stop() {
+    myServer.stop(0);
+    myExecutor.shutdownNow();
+  }
+
+  private void countRequest(String operation) {
+    myRequestCounts.computeIfAbsent(operation, o -> new AtomicInteger()).incrementAndGet();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath().toLowerCase(Locale.ENGLISH);
+      if (endsWith(path, TFSConstants.REGISTRATION_ASMX)) {
+        handleSoap(exchange, REGISTRATION_NAMESPACE, this::handleRegistration);
+      }
+      else if (endsWith(path, TFSConstants.SERVER_STATUS_ASMX)) {
+        handleSoap(exchange, SERVER_STATUS_NAMESPACE, (operation, request, writer) -> {
+          writer.startResponse("CheckAuthenticationResponse").element("CheckAuthenticationResult", getQualifiedUsername()).end();
+        });
+      }
+      else if (endsWith(path, GROUP_SECURITY_PATH)) {
+        handleSoap(exchange, GROUP_SECURITY_NAMESPACE, this::handleGroupSecurity);
+      }
+      else if (endsWith(path, REPOSITORY_PATH) || endsWith(path, REPOSITORY_4_PATH)) {
+        handleSoap(exchange, RepositoryService.NAMESPACE, myRepositoryService);
+      }
+      else if (endsWith(path, WORK_ITEM_PATH)) {
+        handleSoap(exchange, WorkItemService.NAMESPACE, myWorkItemService);
+      }
+      else if (endsWith(path, DOWNLOAD_PATH)) {
+        handleDownload(exchange);
+      }
+      else if (endsWith(path, UPLOAD_PATH)) {
+        handleUpload(exchange);
+      }
+      else {
+        // TFS 2010 location service among others: the client falls back to the registration service
+        exchange.sendResponseHeaders(404, -1);
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      // the client sees an internal server error, the test fails in checkNoErrors()
+      myErrors.add(e);
+      if (exchange.getResponseCode() == -1) {
+        exchange.sendResponseHeaders(500, -1);
+      }
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private static boolean endsWith(String path, String servicePath) {
+    return path.endsWith("/" + servicePath.toLowerCase(Locale.ENGLISH));
+  }
+
+  private void handleSoap(HttpExchange exchange, String namespace, SoapHandler handler) throws IOException {
+    SoapElement envelope = SoapElement.parse(exchange.getRequestBody());
+    SoapElement body = envelope.getChild("Body");
+    SoapElement request = body != null ? body.getFirstChild() : null;
+    if (request == null) {
+      exchange.sendResponseHeaders(400, -1);
+      return;
+    }
+    String operation = request.getName();
+    countRequest(operation);
+
+    String contentType = (SOAP12_NAMESPACE.equals(envelope.getNamespace()) ? "application/soap+xml" : "text/xml") + "; charset=utf-8";
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    int status = 200;
+    try {
+      SoapWriter writer = new SoapWriter(response, envelope.getNamespace(), namespace);
+      try {
+        handler.handle(operation, request, writer);
+      }
+      catch (FakeRepository.Failure failure) {
+        response.reset();
+        writer = new SoapWriter(response, envelope.getNamespace(), namespace);
+        writeFault(writer, envelope.getNamespace(), failure);
+        status = 500;
+      }
+      writer.finish();
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    exchange.sendResponseHeaders(status, response.size());
+    OutputStream output = exchange.getResponseBody();
+    response.writeTo(output);
+    output.close();
+  }
+
+  private static void writeFault(SoapWriter writer, String envelopeNamespace, FakeRepository.Failure failure) throws XMLStreamException {
+    writer.start("Fault", envelopeNamespace);
+    if (SOAP12_NAMESPACE.equals(envelopeNamespace)) {
+      writer.start("Code").element("Value", "soap:Receiver").start("Subcode").element("Value", failure.code).end().end();
+      writer.start("Reason").start("Text").attribute("xml:lang", "en").text(failure.getMessage()).end().end();
+    }
+    else {
+      writer.startUnqualified("faultcode").text("soap:Server").end();
+      writer.startUnqualified("faultstring").text(failure.getMessage()).end();
+    }
+    writer.end();
+  }
+
+  private void handleRegistration(String operation, SoapElement request, SoapWriter writer) throws XMLStreamException {
+    writer.startResponse("GetRegistrationEntriesResponse").start("GetRegistrationEntriesResult");
+    writeRegistrationEntry(writer, TFSConstants.VERSION_CONTROL_ENTRY_TYPE, new String[][]{
+      {TFSConstants.ISCC_PROVIDER_SERVICE_NAME, REPOSITORY_PATH},
+      {TFSConstants.ISCC_PROVIDER_4_SERVICE_NAME, REPOSITORY_4_PATH},
+      {TFSConstants.DOWNLOAD_SERVICE_NAME, DOWNLOAD_PATH},
+      {TFSConstants.UPLOAD_SERVICE_NAME, UPLOAD_PATH}});
+    writeRegistrationEntry(writer, TFSConstants.WORK_ITEM_TRACKING_ENTRY_TYPE, new String[][]{
+      {TFSConstants.WORKITEM_SERVICE_NAME, WORK_ITEM_PATH}});
+    writeRegistrationEntry(writer, TFSConstants.VSTFS_ENTRY_TYPE, new String[][]{
+      {TFSConstants.GROUP_SECURITY_SERVICE_NAME, GROUP_SECURITY_PATH}});
+    writer.end().end();
+  }
+
+  private static void writeRegistrationEntry(SoapWriter writer, String type, String[][] interfaces) throws XMLStreamException {
+    writer.start("RegistrationEntry").element("Type", type).start("ServiceInterfaces");
+    for (String[] anInterface : interfaces) {
+      writer.start("ServiceInterface").element("Name", anInterface[0]).element("Url", "/" + anInterface[1]).end();
+    }
+    writer.end();
+    if (TFSConstants.VSTFS_ENTRY_TYPE.equals(type)) {
+      writer.start("RegistrationExtendedAttributes").start("RegistrationExtendedAttribute")
+        .element("Name", TFSConstants.INSTANCE_ID_ATTRIBUTE).element("Value", INSTANCE_ID).end().end();
+    }
+    writer.end();
+  }
+
+  private void handleGroupSecurity(String operation, SoapElement request, SoapWriter writer)
+    throws XMLStreamException, FakeRepository.Failure {
+    if (!"ReadIdentity".equals(operation)) {
+      throw new FakeRepository.Failure("NotSupportedException", null, operation + " is not supported");
+    }
+    writer.startResponse("ReadIdentityResponse").start("ReadIdentityResult");
+    writer.start("Type", AUTHORIZATION_NAMESPACE).text("WindowsUser").end();
+    writer.start("Sid", AUTHORIZATION_NAMESPACE).text("S-1-5-21-" + Math.abs(getQualifiedUsername().hashCode())).end();
+    writer.start("DisplayName", AUTHORIZATION_NAMESPACE).text(myUser).end();
+    writer.start("Domain", AUTHORIZATION_NAMESPACE).text(myDomain).end();
+    writer.start("AccountName", AUTHORIZATION_NAMESPACE).text(myUser).end();
+    writer.start("SpecialType", AUTHORIZATION_NAMESPACE).text("Generic").end();
+    writer.start("Deleted", AUTHORIZATION_NAMESPACE).text("false").end();
+    writer.end().end();
+  }
+
+  private void handleDownload(HttpExchange exchange) throws IOException {
+    countRequest("Download");
+    Map<String, String> parameters = new HashMap<>();
+    String query = exchange.getRequestURI().getQuery();
+    for (String parameter : query != null ? query.split("&") : new String[0]) {
+      int index = parameter.indexOf('=');
+      if (index > 0) {
+        parameters.put(parameter.substring(0, index), parameter.substring(index + 1));
+      }
+    }
+    FakeRepository.ItemVersion item = null;
+    try {
+      item = myRepository.getItem(Integer.parseInt(parameters.get("iid")), Integer.parseInt(parameters.get("cs")));
+    }
+    catch (NumberFormatException e) {
+      // bad download key
+    }
+    if (item == null || item.content == null) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+    exchange.sendResponseHeaders(200, item.content.length == 0 ? -1 : item.content.length);
+    OutputStream output = exchange.getResponseBody();
+    output.write(item.content);
+    output.close();
+  }
+
+  private void handleUpload(HttpExchange exchange) throws IOException {
+    countRequest("Upload");
+    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    int boundaryIndex = contentType != null ? contentType.indexOf("boundary=") : -1;
+    if (boundaryIndex < 0) {
+      exchange.sendResponseHeaders(400, -1);
+      return;
+    }
+    Map<String, byte[]> fields =
+      MultipartParser.parse(MultipartParser.readAll(exchange.getRequestBody()), contentType.substring(boundaryIndex + 9));
+    String item = getField(fields, VersionControlServer.SERVER_ITEM_FIELD);
+    String workspace = getField(fields, VersionControlServer.WORKSPACE_NAME_FIELD);
+    String owner = getField(fields, VersionControlServer.WORKSPACE_OWNER_FIELD);
+    String range = getField(fields, VersionControlServer.RANGE_FIELD);
+    byte[] content = fields.get(VersionControlServer.CONTENT_FIELD);
+    if (item == null || workspace == null || owner == null || range == null || content == null) {
+      exchange.sendResponseHeaders(400, -1);
+      return;
+    }
+
+    Matcher matcher = RANGE_PATTERN.matcher(range);
+    if (!matcher.matches()) {
+      exchange.sendResponseHeaders(400, -1);
+      return;
+    }
+    int first = Integer.parseInt(matcher.group(1));
+    int last = Integer.parseInt(matcher.group(2));
+    int total = Integer.parseInt(matcher.group(3));
+    if (last - first + 1 != content.length || first + content.length > total) {
+      exchange.sendResponseHeaders(400, -1);
+      return;
+    }
+    String key = workspace + ";" + owner + ";" + item;
+    byte[] complete = null;
+    synchronized (myPartialUploads) {
+      byte[] received = myPartialUploads.get(key);
+      if (received == null || received.length != total) {
+        received = new byte[total];
+        myPartialUploads.put(key, received);
+      }
+      System.arraycopy(content, 0, received, first, content.length);
+      if (first + content.length >= total) {
+        complete = myPartialUploads.remove(key);
+      }
+    }
+    if (complete != null) {
+      try {
+        myRepository.upload(workspace, owner, item, complete);
+      }
+      catch (FakeRepository.Failure failure) {
+        exchange.sendResponseHeaders(500, -1);
+        return;
+      }
+    }
+    exchange.sendResponseHeaders(200, -1);
+  }
+
+  @Nullable
+  private static String getField(Map<String, byte[]> fields, String name) {
+    byte[] value = fields.get(name);
+    return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+  }
+}
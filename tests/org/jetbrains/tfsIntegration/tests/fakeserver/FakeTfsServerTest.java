@@ -0,0 +1,294 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.microsoft.schemas.teamfoundation._2005._06.versioncontrol.clientservices._03.*;
+import junit.framework.TestCase;
+import org.jetbrains.tfsIntegration.core.TfsBeansHolder;
+import org.jetbrains.tfsIntegration.core.configuration.Credentials;
+import org.jetbrains.tfsIntegration.core.configuration.TFSConfigurationManager;
+import org.jetbrains.tfsIntegration.core.tfs.*;
+import org.jetbrains.tfsIntegration.core.tfs.version.ChangesetVersionSpec;
+import org.jetbrains.tfsIntegration.core.tfs.version.LatestVersionSpec;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItem;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItemState;
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItemType;
+import org.jetbrains.tfsIntegration.exceptions.TfsException;
+import org.jetbrains.tfsIntegration.exceptions.WorkspaceNotFoundException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Runs {@link VersionControlServer}, and therefore the generated {@code RepositoryStub}, against {@link FakeTfsServer} on localhost
+ */
+public class FakeTfsServerTest extends TestCase {
+
+  private static final String DOMAIN = "DOMAIN";
+  private static final String USER = "user";
+  private static final String WORKSPACE = "ws";
+  private static final String COMPUTER = "computer";
+  private static final String TITLE = "test";
+
+  private IdeaProjectTestFixture myFixture;
+  private FakeTfsServer myServer;
+  private VersionControlServer myVcs;
+  private WorkspaceInfo myWorkspace;
+  private File myLocalRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFixture = IdeaTestFixtureFactory.getFixtureFactory().createLightFixtureBuilder().getFixture();
+    EdtTestUtil.runInEdtAndWait(() -> myFixture.setUp());
+
+    myServer = new FakeTfsServer(DOMAIN, USER);
+    URI uri = myServer.getUri();
+    Credentials credentials = new Credentials(USER, DOMAIN, "password", false, Credentials.Type.NtlmExplicit);
+    TFSConfigurationManager.getInstance().storeCredentials(uri, credentials);
+    ServerInfo server = new ServerInfo(uri, myServer.getInstanceId(), new TfsBeansHolder(uri));
+    myVcs = server.getVCS();
+    myWorkspace = new WorkspaceInfo(server, myServer.getQualifiedUsername(), COMPUTER);
+    myWorkspace.setName(WORKSPACE);
+    myLocalRoot = FileUtil.createTempDirectory("tfs", "workspace");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myServer.stop();
+      TFSConfigurationManager.getInstance().remove(myServer.getUri());
+      FileUtil.delete(myLocalRoot);
+      EdtTestUtil.runInEdtAndWait(() -> myFixture.tearDown());
+      myServer.checkNoErrors();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private Project getProject() {
+    return myFixture.getProject();
+  }
+
+  private String getOwner() {
+    return myServer.getQualifiedUsername();
+  }
+
+  private String local(String relativePath) {
+    String path = myLocalRoot.getPath() + (relativePath.isEmpty() ? "" : File.separator + relativePath);
+    return VersionControlPath.toTfsRepresentation(path);
+  }
+
+  private void createWorkspace() throws TfsException {
+    WorkingFolder folder = new WorkingFolder();
+    folder.setItem("$/Test");
+    folder.setLocal(local(""));
+    folder.setType(WorkingFolderType.Map);
+    ArrayOfWorkingFolder folders = new ArrayOfWorkingFolder();
+    folders.addWorkingFolder(folder);
+    Workspace workspace = new Workspace();
+    workspace.setName(WORKSPACE);
+    workspace.setOwner(getOwner());
+    workspace.setComputer(COMPUTER);
+    workspace.setFolders(folders);
+    workspace.setLastAccessDate(Calendar.getInstance());
+    myVcs.createWorkspace(workspace, getProject());
+  }
+
+  private List<GetOperation> getLatest(String path) throws TfsException {
+    return myVcs.get(WORKSPACE, getOwner(), path, LatestVersionSpec.INSTANCE, RecursionType.Full, getProject(), TITLE);
+  }
+
+  private void updateLocalVersions(List<GetOperation> operations) throws TfsException {
+    List<LocalVersionUpdate> updates = new ArrayList<>();
+    for (GetOperation operation : operations) {
+      updates.add(VersionControlServer.getLocalVersionUpdate(operation));
+    }
+    myVcs.updateLocalVersions(WORKSPACE, getOwner(), updates, getProject(), TITLE);
+  }
+
+  private byte[] download(String downloadKey) throws TfsException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    myVcs.downloadItem(getProject(), downloadKey, result, TITLE);
+    return result.toByteArray();
+  }
+
+  private Collection<PendingChange> queryPendingChanges() throws TfsException {
+    return myVcs.queryPendingSetsByServerItems(WORKSPACE, getOwner(), Collections.singletonList("$/Test"), RecursionType.Full,
+                                               getProject(), TITLE);
+  }
+
+  private ItemPath itemPath(String relativePath, String serverPath) {
+    return new ItemPath(VersionControlPath.getFilePath(local(relativePath), false), serverPath);
+  }
+
+  public void testGetEditCheckIn() throws Exception {
+    byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+    Map<String, byte[]> items = new HashMap<>();
+    items.put("$/Test/a.txt", content);
+    items.put("$/Test/dir/b.txt", content);
+    int changeset = myServer.getRepository().addItems("initial", items);
+    createWorkspace();
+
+    List<GetOperation> operations = getLatest(local(""));
+    assertEquals(4, operations.size()); // $/Test, $/Test/a.txt, $/Test/dir, $/Test/dir/b.txt
+    GetOperation file = null;
+    for (GetOperation operation : operations) {
+      assertNull(operation.getSlocal());
+      assertEquals(changeset, operation.getSver());
+      if ("$/Test/a.txt".equals(operation.getTitem())) {
+        file = operation;
+      }
+    }
+    assertNotNull(file);
+    assertEquals(local("a.txt"), file.getTlocal());
+    assertTrue(Arrays.equals(content, download(file.getDurl())));
+    updateLocalVersions(operations);
+
+    ResultWithFailures<GetOperation> edit =
+      myVcs.checkoutForEdit(WORKSPACE, getOwner(), Collections.singletonList(itemPath("a.txt", "$/Test/a.txt")), getProject(), TITLE);
+    assertTrue(edit.getFailures().isEmpty());
+    assertEquals(1, edit.getResult().size());
+    Collection<PendingChange> pendingChanges = queryPendingChanges();
+    assertEquals(1, pendingChanges.size());
+    PendingChange pendingChange = pendingChanges.iterator().next();
+    assertEquals("Edit", pendingChange.getChg().toString());
+
+    byte[] newContent = "new content".getBytes(StandardCharsets.UTF_8);
+    FileUtil.writeToFile(VersionControlPath.getFile(pendingChange.getLocal()), newContent);
+    myVcs.uploadItem(myWorkspace, pendingChange, getProject(), TITLE);
+    ResultWithFailures<CheckinResult> checkIn =
+      myVcs.checkIn(WORKSPACE, getOwner(), Collections.singletonList("$/Test/a.txt"), "edited", Collections.emptyMap(),
+                    Collections.emptyList(), null, getProject(), TITLE);
+    assertTrue(checkIn.getFailures().isEmpty());
+    int newChangeset = checkIn.getResult().iterator().next().getCset();
+    assertEquals(changeset + 1, newChangeset);
+    assertTrue(queryPendingChanges().isEmpty());
+
+    List<Changeset> history =
+      myVcs.queryHistory(WORKSPACE, getOwner(), VersionControlServer.createItemSpec("$/Test/a.txt", RecursionType.None), null,
+                         LatestVersionSpec.INSTANCE, null, LatestVersionSpec.INSTANCE, Integer.MAX_VALUE, getProject(), TITLE);
+    assertEquals(2, history.size());
+    assertEquals(newChangeset, history.get(0).getCset());
+    assertEquals("edited", history.get(0).getComment());
+    assertEquals(changeset, history.get(1).getCset());
+
+    GetOperation edited = myVcs.get(WORKSPACE, getOwner(), "$/Test/a.txt", LatestVersionSpec.INSTANCE, getProject(), TITLE);
+    assertTrue(Arrays.equals(newContent, download(edited.getDurl())));
+    assertEquals(2, getLatest(local("dir")).size());
+  }
+
+  public void testAddAndUndo() throws Exception {
+    myServer.getRepository().addItems("initial", Collections.singletonMap("$/Test", null));
+    createWorkspace();
+    updateLocalVersions(getLatest(local("")));
+
+    ResultWithFailures<GetOperation> add =
+      myVcs.scheduleForAddition(WORKSPACE, getOwner(), Collections.singletonList(itemPath("new.txt", "$/Test/new.txt")), getProject(),
+                                TITLE);
+    assertTrue(add.getFailures().isEmpty());
+    GetOperation operation = add.getResult().iterator().next();
+    assertEquals("$/Test/new.txt", operation.getTitem());
+    assertEquals(Integer.MIN_VALUE, operation.getSver());
+
+    ExtendedItem extendedItem = myVcs.getExtendedItem(WORKSPACE, getOwner(), VersionControlPath.getFilePath(local("new.txt"), false),
+                                                      RecursionType.None, DeletedState.NonDeleted, getProject(), TITLE);
+    assertNotNull(extendedItem);
+    assertEquals("Add Edit Encoding", extendedItem.getChg().toString());
+    assertEquals(Integer.MIN_VALUE, extendedItem.getLver());
+    assertEquals(local("new.txt"), extendedItem.getLocal());
+
+    List<String> serverPaths = Collections.singletonList("$/Test/new.txt");
+    ResultWithFailures<GetOperation> undo = myVcs.undoPendingChanges(WORKSPACE, getOwner(), serverPaths, getProject(), TITLE);
+    assertTrue(undo.getFailures().isEmpty());
+    assertTrue(queryPendingChanges().isEmpty());
+
+    // the second undo fails
+    undo = myVcs.undoPendingChanges(WORKSPACE, getOwner(), serverPaths, getProject(), TITLE);
+    assertEquals(1, undo.getFailures().size());
+  }
+
+  public void testLabel() throws Exception {
+    int changeset = myServer.getRepository().addItems("initial", Collections.singletonMap("$/Test/a.txt", new byte[]{1}));
+    myServer.getRepository().editItems("edited", Collections.singletonMap("$/Test/a.txt", new byte[]{2}));
+
+    LabelItemSpec labelSpec = new LabelItemSpec();
+    labelSpec.setItemSpec(VersionControlServer.createItemSpec("$/Test", RecursionType.Full));
+    labelSpec.setVersion(new ChangesetVersionSpec(changeset));
+    labelSpec.setEx(false);
+    ResultWithFailures<LabelResult> label =
+      myVcs.labelItem("release", "first", Collections.singletonList(labelSpec), getProject(), TITLE);
+    assertTrue(label.getFailures().isEmpty());
+    assertEquals("Created", label.getResult().iterator().next().getStatus().toString());
+
+    myServer.resetRequestCounts();
+    List<VersionControlLabel> labels = myVcs.queryLabels("rel*", null, null, true, null, null, false, getProject(), TITLE);
+    assertEquals(1, labels.size());
+    assertEquals("first", labels.get(0).getComment());
+    Item[] items = labels.get(0).getItems().getItem();
+    assertEquals(2, items.length); // $/Test and $/Test/a.txt
+    for (Item item : items) {
+      assertEquals(changeset, item.getCs());
+    }
+    assertEquals(1, myServer.getRequestCount("QueryLabels"));
+  }
+
+  public void testWorkItemsUpdatedSeparatelyWhenBatchRejected() throws Exception {
+    WorkItemService service = myServer.getWorkItems();
+    Map<WorkItem, CheckinWorkItemAction> workItems = new LinkedHashMap<>();
+    for (int i = 0; i < 3; i++) {
+      int id = service.addWorkItem(WorkItemType.TASK.getName(), "task " + i, WorkItemState.ACTIVE.getName());
+      // the second one is out of date
+      int revision = i == 1 ? 0 : 1;
+      workItems.put(new WorkItem(id, getOwner(), WorkItemState.ACTIVE, "task " + i, revision, WorkItemType.TASK, "New"),
+                    CheckinWorkItemAction.Associate);
+    }
+
+    try {
+      myVcs.updateWorkItemsAfterCheckin(getOwner(), workItems, 5, getProject(), TITLE);
+      fail();
+    }
+    catch (TfsException e) {
+      // the stale work item is reported
+    }
+    // the batch, then one request per work item
+    assertEquals(4, myServer.getRequestCount("Update"));
+    String link = "vstfs:///VersionControl/Changeset/5";
+    assertTrue(service.getHistory(1).contains(link));
+    assertTrue(service.getHistory(2).isEmpty());
+    assertTrue(service.getHistory(3).contains(link));
+  }
+
+  public void testFault() throws Exception {
+    try {
+      myVcs.loadWorkspace("missing", getOwner(), getProject(), true);
+      fail();
+    }
+    catch (WorkspaceNotFoundException e) {
+      // the SOAP fault subcode is mapped to the exception
+    }
+  }
+}
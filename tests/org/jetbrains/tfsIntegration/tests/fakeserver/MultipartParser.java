@@ -0,0 +1,79 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads multipart/form-data requests such as the ones posted to the upload handler
+ */
+public class MultipartParser {
+
+  private MultipartParser() {
+  }
+
+  public static byte[] readAll(InputStream stream) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = stream.read(buffer)) > 0) {
+      result.write(buffer, 0, read);
+    }
+    return result.toByteArray();
+  }
+
+  /**
+   * @return content of the parts by their names
+   */
+  public static Map<String, byte[]> parse(byte[] body, String boundary) {
+    Map<String, byte[]> result = new HashMap<>();
+    byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+    int start = indexOf(body, delimiter, 0) + delimiter.length;
+    while (true) {
+      int end = indexOf(body, delimiter, start);
+      if (end < 0) {
+        break;
+      }
+      int headersEnd = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII), start);
+      String headers = new String(body, start, headersEnd - start, StandardCharsets.US_ASCII);
+      int nameStart = headers.indexOf("name=\"") + "name=\"".length();
+      String name = headers.substring(nameStart, headers.indexOf('"', nameStart));
+      result.put(name, Arrays.copyOfRange(body, headersEnd + 4, end - 2)); // part content is followed by CRLF
+      start = end + delimiter.length;
+    }
+    return result;
+  }
+
+  private static int indexOf(byte[] array, byte[] pattern, int from) {
+    outer:
+    for (int i = from; i <= array.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (array[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,661 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.tfsIntegration.tests.fakeserver.FakeRepository.*;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLStreamException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Version control web service ({@code Repository.asmx}) on top of {@link FakeRepository}
+ */
+class RepositoryService implements FakeTfsServer.SoapHandler {
+  static final String NAMESPACE = "http://schemas.microsoft.com/TeamFoundation/2005/06/VersionControl/ClientServices/03";
+
+  private static final String REPOSITORY_ID = "3A9B1C7E-2D4F-4B6A-8E0C-1F2A3B4C5D6E";
+
+  private final FakeRepository myRepository;
+  private final String myUser;
+
+  RepositoryService(FakeRepository repository, String user) {
+    myRepository = repository;
+    myUser = user;
+  }
+
+  @Override
+  public void handle(String operation, SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    switch (operation) {
+      case "GetRepositoryProperties":
+        writer.startResponse("GetRepositoryPropertiesResponse").start("GetRepositoryPropertiesResult")
+          .attribute("id", REPOSITORY_ID).attribute("name", "FakeTfsServer").attribute("lcset", myRepository.getLatestChangeset())
+          .attribute("ver", "2").attribute("features", 0).end().end();
+        break;
+      case "QueryWorkspaces":
+        queryWorkspaces(request, writer);
+        break;
+      case "QueryWorkspace":
+        writeWorkspace(writer.startResponse("QueryWorkspaceResponse"), "QueryWorkspaceResult",
+                       myRepository.getWorkspace(request.getChildText("workspaceName"), request.getChildText("ownerName")));
+        writer.end();
+        break;
+      case "CreateWorkspace":
+        createWorkspace(request, writer);
+        break;
+      case "UpdateWorkspace":
+        updateWorkspace(request, writer);
+        break;
+      case "DeleteWorkspace":
+        myRepository.deleteWorkspace(request.getChildText("workspaceName"), request.getChildText("ownerName"));
+        writer.startResponse("DeleteWorkspaceResponse").end();
+        break;
+      case "QueryItems":
+        queryItems(request, writer);
+        break;
+      case "QueryItemsExtended":
+        queryItemsExtended(request, writer);
+        break;
+      case "QueryItemsById":
+        queryItemsById(request, writer);
+        break;
+      case "Get":
+        get(request, writer);
+        break;
+      case "PendChanges":
+        pendChanges(request, writer);
+        break;
+      case "UndoPendingChanges":
+        undoPendingChanges(request, writer);
+        break;
+      case "UpdateLocalVersion":
+        updateLocalVersion(request, writer);
+        break;
+      case "QueryPendingSets":
+        queryPendingSets(request, writer);
+        break;
+      case "CheckIn":
+        checkIn(request, writer);
+        break;
+      case "QueryHistory":
+        queryHistory(request, writer);
+        break;
+      case "QueryChangeset":
+        queryChangeset(request, writer);
+        break;
+      case "LabelItem":
+        labelItem(request, writer);
+        break;
+      case "QueryLabels":
+        queryLabels(request, writer);
+        break;
+      case "QueryConflicts":
+        // conflicts are never created
+        writer.startResponse("QueryConflictsResponse").empty("QueryConflictsResult").end();
+        break;
+      default:
+        throw new Failure("NotSupportedException", null, operation + " is not supported by the fake server");
+    }
+  }
+
+  // workspaces
+
+  private void queryWorkspaces(SoapElement request, SoapWriter writer) throws XMLStreamException {
+    List<Workspace> workspaces = myRepository.queryWorkspaces(request.getChildText("ownerName"), request.getChildText("computer"));
+    writer.startResponse("QueryWorkspacesResponse").start("QueryWorkspacesResult");
+    for (Workspace workspace : workspaces) {
+      writeWorkspace(writer, "Workspace", workspace);
+    }
+    writer.end().end();
+  }
+
+  private void createWorkspace(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    SoapElement element = request.getChild("workspace");
+    Workspace workspace = new Workspace(element.getAttribute("name"), owner(element.getAttribute("owner")), element.getAttribute("computer"));
+    workspace.comment = element.getChildText("Comment");
+    workspace.mappings = parseMappings(element);
+    myRepository.createWorkspace(workspace);
+    writeWorkspace(writer.startResponse("CreateWorkspaceResponse"), "CreateWorkspaceResult", workspace);
+    writer.end();
+  }
+
+  private void updateWorkspace(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    SoapElement element = request.getChild("newWorkspace");
+    Workspace workspace = myRepository
+      .updateWorkspace(request.getChildText("oldWorkspaceName"), owner(request.getChildText("ownerName")), element.getAttribute("name"),
+                       element.getAttribute("computer"), element.getChildText("Comment"), parseMappings(element));
+    writeWorkspace(writer.startResponse("UpdateWorkspaceResponse"), "UpdateWorkspaceResult", workspace);
+    writer.end();
+  }
+
+  private String owner(@Nullable String owner) {
+    return owner != null ? owner : myUser;
+  }
+
+  private static List<Mapping> parseMappings(SoapElement workspace) {
+    List<Mapping> result = new ArrayList<>();
+    for (SoapElement folder : workspace.getArray("Folders", "WorkingFolder")) {
+      boolean cloak = "Cloak".equals(folder.getAttribute("type"));
+      result.add(new Mapping(folder.getAttribute("item"), cloak ? null : folder.getAttribute("local"),
+                             "1".equals(folder.getAttribute("depth")) ? 1 : 120));
+    }
+    return result;
+  }
+
+  private static void writeWorkspace(SoapWriter writer, String elementName, Workspace workspace) throws XMLStreamException {
+    writer.start(elementName).attribute("computer", workspace.computer).attribute("islocal", "false").attribute("name", workspace.name)
+      .attribute("owner", workspace.owner).attribute("ownerdisp", workspace.owner);
+    writer.element("Comment", workspace.comment);
+    writer.start("Folders");
+    for (Mapping mapping : workspace.mappings) {
+      writer.start("WorkingFolder").attribute("item", mapping.serverItem).attribute("local", mapping.localItem)
+        .attribute("type", mapping.isCloak() ? "Cloak" : "Map").attribute("depth", mapping.depth == 1 ? "1" : null).end();
+    }
+    writer.end();
+    writer.element("LastAccessDate", workspace.lastAccessDate);
+    writer.end();
+  }
+
+  // items
+
+  @Nullable
+  private Workspace findWorkspace(SoapElement request, String nameElement, String ownerElement) throws Failure {
+    String name = request.getChildText(nameElement);
+    return name != null ? myRepository.getWorkspace(name, owner(request.getChildText(ownerElement))) : null;
+  }
+
+  private static String toServerPath(@Nullable Workspace workspace, String path) throws Failure {
+    if (FakeRepository.isServerPath(path)) {
+      return path;
+    }
+    String result = workspace != null ? workspace.toServerPath(path) : null;
+    if (result == null) {
+      throw new Failure("ItemNotMappedException", path, "The path " + path + " is not mapped");
+    }
+    return result;
+  }
+
+  private static Recursion recursion(SoapElement itemSpec) {
+    String recurse = itemSpec.getAttribute("recurse");
+    return recurse != null ? Recursion.valueOf(recurse) : Recursion.None;
+  }
+
+  @Nullable
+  private static Boolean folders(SoapElement request) {
+    String itemType = request.getChildText("itemType");
+    return "Folder".equals(itemType) ? Boolean.TRUE : "File".equals(itemType) ? Boolean.FALSE : null;
+  }
+
+  private static Deleted deleted(SoapElement request) {
+    String deletedState = request.getChildText("deletedState");
+    return deletedState != null ? Deleted.valueOf(deletedState) : Deleted.NonDeleted;
+  }
+
+  private void queryItems(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = findWorkspace(request, "workspaceName", "workspaceOwner");
+    Version version = parseVersion(request.getChild("version"));
+    writer.startResponse("QueryItemsResponse").start("QueryItemsResult");
+    for (SoapElement itemSpec : request.getArray("items", "ItemSpec")) {
+      String path = toServerPath(workspace, itemSpec.getAttribute("item"));
+      List<ItemVersion> items = myRepository.queryItems(path, recursion(itemSpec), version, deleted(request), folders(request), workspace);
+      writer.start("ItemSet").element("QueryPath", path).start("Items");
+      for (ItemVersion item : items) {
+        writeItem(writer, "Item", item);
+      }
+      writer.end().end();
+    }
+    writer.end().end();
+  }
+
+  private void queryItemsById(SoapElement request, SoapWriter writer) throws XMLStreamException {
+    int changeset = request.getChildInt("changeSet", 0);
+    if (changeset <= 0) {
+      changeset = myRepository.getLatestChangeset();
+    }
+    writer.startResponse("QueryItemsByIdResponse").start("QueryItemsByIdResult");
+    for (SoapElement itemId : request.getArray("itemIds", "int")) {
+      ItemVersion item = myRepository.getItem(Integer.parseInt(itemId.getText().trim()), changeset);
+      if (item != null) {
+        writeItem(writer, "Item", item);
+      }
+    }
+    writer.end().end();
+  }
+
+  private void writeItem(SoapWriter writer, String elementName, ItemVersion item) throws XMLStreamException {
+    Changeset changeset = myRepository.getChangeset(item.changeset);
+    writer.start(elementName).attribute("cs", item.changeset).attribute("date", changeset != null ? changeset.date : new Date())
+      .attribute("did", item.isDeleted() ? item.deletionId : null).attribute("enc", item.encoding)
+      .attribute("type", item.folder ? "Folder" : "File").attribute("itemid", item.itemId).attribute("item", item.path);
+    if (!item.folder && item.content != null) {
+      writer.attribute("hash", hash(item.content)).attribute("len", item.content.length).attribute("durl", downloadKey(item));
+    }
+    writer.end();
+  }
+
+  private static String downloadKey(ItemVersion item) {
+    return "iid=" + item.itemId + "&cs=" + item.changeset;
+  }
+
+  private static String hash(byte[] content) {
+    try {
+      return Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void queryItemsExtended(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = findWorkspace(request, "workspaceName", "workspaceOwner");
+    if (workspace == null) {
+      throw new Failure("WorkspaceNotFoundException", null, "Workspace is not specified");
+    }
+    Deleted deleted = deleted(request);
+    Boolean folders = folders(request);
+    writer.startResponse("QueryItemsExtendedResponse").start("QueryItemsExtendedResult");
+    for (SoapElement itemSpec : request.getArray("items", "ItemSpec")) {
+      String path = toServerPath(workspace, itemSpec.getAttribute("item"));
+      Recursion recursion = recursion(itemSpec);
+      writer.start("ArrayOfExtendedItem");
+      synchronized (myRepository) {
+        Set<Integer> written = new HashSet<>();
+        // committed items, at their paths in the workspace
+        for (ItemVersion item : myRepository.queryItems(FakeRepository.ROOT, Recursion.Full, Version.LATEST, deleted, folders, workspace)) {
+          if (FakeRepository.isUnder(path, workspace.getTargetPath(item), recursion)) {
+            writeExtendedItem(writer, workspace, item, workspace.pendingChanges.get(item.itemId));
+            written.add(item.itemId);
+          }
+        }
+        // pending adds and branches
+        if (deleted != Deleted.Deleted) {
+          for (PendingChange change : workspace.pendingChanges.values()) {
+            if (!written.contains(change.itemId) && change.isAdd() && FakeRepository.isUnder(path, change.serverItem, recursion) &&
+                (folders == null || folders == change.folder)) {
+              writeExtendedItem(writer, workspace, null, change);
+            }
+          }
+        }
+      }
+      writer.end();
+    }
+    writer.end().end();
+  }
+
+  private static void writeExtendedItem(SoapWriter writer, Workspace workspace, @Nullable ItemVersion latest, @Nullable PendingChange change)
+    throws XMLStreamException {
+    int itemId = latest != null ? latest.itemId : change.itemId;
+    LocalVersion local = workspace.localVersions.get(itemId);
+    String targetPath = change != null ? change.serverItem : workspace.getTargetPath(latest);
+    String localPath = local != null ? local.local : change != null && change.isAdd() ? workspace.toLocalPath(change.serverItem) : null;
+    boolean folder = latest != null ? latest.folder : change.folder;
+    writer.start("ExtendedItem").attribute("lver", local != null ? local.version : null)
+      .attribute("did", latest != null && latest.isDeleted() ? latest.deletionId : null)
+      .attribute("latest", latest != null ? latest.changeset : null).attribute("type", folder ? "Folder" : "File")
+      .attribute("enc", latest != null ? latest.encoding : change.encoding).attribute("itemid", itemId).attribute("local", localPath)
+      .attribute("titem", targetPath).attribute("sitem", latest != null ? latest.path : null)
+      .attribute("chg", change != null ? change.getChangeType() : "None").attribute("lock", change != null ? change.lock : null)
+      .end();
+  }
+
+  // get and pending changes
+
+  private void get(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = myRepository.getWorkspace(request.getChildText("workspaceName"), owner(request.getChildText("ownerName")));
+    boolean force = request.getChildBoolean("force");
+    writer.startResponse("GetResponse").start("GetResult");
+    for (SoapElement getRequest : request.getArray("requests", "GetRequest")) {
+      SoapElement itemSpec = getRequest.getChild("ItemSpec");
+      String path = itemSpec != null ? itemSpec.getAttribute("item") : FakeRepository.ROOT;
+      Recursion recursion = itemSpec != null ? recursion(itemSpec) : Recursion.Full;
+      List<GetOperation> operations = myRepository.get(workspace, path, recursion, parseVersion(getRequest.getChild("VersionSpec")), force);
+      writeGetOperations(writer, "ArrayOfGetOperation", operations);
+    }
+    writer.end().end();
+  }
+
+  private void writeGetOperations(SoapWriter writer, String elementName, List<GetOperation> operations) throws XMLStreamException {
+    writer.start(elementName);
+    for (GetOperation operation : operations) {
+      writeGetOperation(writer, operation);
+    }
+    writer.end();
+  }
+
+  private void writeGetOperation(SoapWriter writer, GetOperation operation) throws XMLStreamException {
+    ItemVersion item = operation.item;
+    PendingChange change = operation.pendingChange;
+    writer.start("GetOperation").attribute("type", item.folder ? "Folder" : "File").attribute("itemid", item.itemId)
+      .attribute("slocal", operation.sourceLocal).attribute("tlocal", operation.targetLocal).attribute("titem", operation.targetItem)
+      .attribute("sitem", item.changeset > 0 ? item.path : null)
+      .attribute("sver", operation.serverVersion > 0 ? operation.serverVersion : null)
+      .attribute("lver", operation.localVersion > 0 ? operation.localVersion : null)
+      .attribute("chg", change != null ? change.getChangeType() : null).attribute("lock", change != null ? change.lock : null)
+      .attribute("pcid", change != null ? change.id : null).attribute("enc", item.encoding);
+    if (!item.folder && operation.serverVersion > 0) {
+      ItemVersion content = change != null && change.changeTypes.contains("Branch") && change.sourceServerItem != null
+                            ? myRepository.findItem(change.sourceServerItem, operation.serverVersion)
+                            : myRepository.getItem(item.itemId, operation.serverVersion);
+      if (content != null) {
+        writer.attribute("durl", downloadKey(content));
+      }
+    }
+    writer.end();
+  }
+
+  private static void writeFailures(SoapWriter writer, List<Failure> failures) throws XMLStreamException {
+    writer.start("failures");
+    for (Failure failure : failures) {
+      writer.start("Failure").attribute("code", failure.code).attribute("sev", "Error").attribute("item", failure.item)
+        .element("Message", failure.getMessage()).end();
+    }
+    writer.end();
+  }
+
+  private void pendChanges(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = myRepository.getWorkspace(request.getChildText("workspaceName"), owner(request.getChildText("ownerName")));
+    List<GetOperation> operations = new ArrayList<>();
+    List<Failure> failures = new ArrayList<>();
+    for (SoapElement changeRequest : request.getArray("changes", "ChangeRequest")) {
+      SoapElement itemSpec = changeRequest.getChild("item");
+      String path = itemSpec.getAttribute("item");
+      String requestType = changeRequest.getAttribute("req");
+      try {
+        switch (requestType != null ? requestType : "None") {
+          case "Add":
+            operations.addAll(myRepository.pendAdd(workspace, path, "Folder".equals(changeRequest.getAttribute("type")),
+                                                   changeRequest.getIntAttribute("enc", 1252)));
+            break;
+          case "Edit":
+            operations.addAll(myRepository.pendEdit(workspace, path, recursion(itemSpec)));
+            break;
+          case "Delete":
+            operations.addAll(myRepository.pendDelete(workspace, path));
+            break;
+          case "Rename":
+            operations.addAll(myRepository.pendRename(workspace, path, changeRequest.getAttribute("target")));
+            break;
+          case "Lock":
+            String lock = changeRequest.getAttribute("lock");
+            operations.addAll(myRepository.pendLock(workspace, path, lock != null ? lock : "None"));
+            break;
+          case "Branch":
+            operations.addAll(myRepository.pendBranch(workspace, path, changeRequest.getAttribute("target"),
+                                                      parseVersion(changeRequest.getChild("vspec"))));
+            break;
+          default:
+            throw new Failure("NotSupportedException", path, requestType + " is not supported by the fake server");
+        }
+      }
+      catch (Failure failure) {
+        failures.add(failure);
+      }
+    }
+    writer.startResponse("PendChangesResponse");
+    writeGetOperations(writer, "PendChangesResult", operations);
+    writeFailures(writer, failures);
+    writer.end();
+  }
+
+  private void undoPendingChanges(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = myRepository.getWorkspace(request.getChildText("workspaceName"), owner(request.getChildText("ownerName")));
+    List<GetOperation> operations = new ArrayList<>();
+    List<Failure> failures = new ArrayList<>();
+    for (SoapElement itemSpec : request.getArray("items", "ItemSpec")) {
+      try {
+        operations.addAll(myRepository.undo(workspace, itemSpec.getAttribute("item"), recursion(itemSpec)));
+      }
+      catch (Failure failure) {
+        failures.add(failure);
+      }
+    }
+    writer.startResponse("UndoPendingChangesResponse");
+    writeGetOperations(writer, "UndoPendingChangesResult", operations);
+    writeFailures(writer, failures);
+    writer.end();
+  }
+
+  private void updateLocalVersion(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = myRepository.getWorkspace(request.getChildText("workspaceName"), owner(request.getChildText("ownerName")));
+    for (SoapElement update : request.getArray("updates", "LocalVersionUpdate")) {
+      myRepository.updateLocalVersion(workspace, update.getIntAttribute("itemid", 0), update.getAttribute("tlocal"),
+                                      update.getIntAttribute("lver", 0));
+    }
+    writer.startResponse("UpdateLocalVersionResponse").end();
+  }
+
+  private void queryPendingSets(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace localWorkspace = findWorkspace(request, "localWorkspaceName", "localWorkspaceOwner");
+    String queryWorkspace = request.getChildText("queryWorkspaceName");
+    String owner = request.getChildText("ownerName");
+    List<Workspace> workspaces = queryWorkspace != null
+                                 ? Collections.singletonList(myRepository.getWorkspace(queryWorkspace, owner(owner)))
+                                 : myRepository.queryWorkspaces(owner, null);
+    List<Failure> failures = new ArrayList<>();
+    writer.startResponse("QueryPendingSetsResponse").start("QueryPendingSetsResult");
+    for (Workspace workspace : workspaces) {
+      Map<Integer, PendingChange> changes = new LinkedHashMap<>();
+      for (SoapElement itemSpec : request.getArray("itemSpecs", "ItemSpec")) {
+        try {
+          String path = toServerPath(localWorkspace, itemSpec.getAttribute("item"));
+          for (PendingChange change : myRepository.queryPendingChanges(workspace, path, recursion(itemSpec))) {
+            changes.put(change.itemId, change);
+          }
+        }
+        catch (Failure failure) {
+          failures.add(failure);
+        }
+      }
+      if (!changes.isEmpty()) {
+        writer.start("PendingSet").attribute("computer", workspace.computer).attribute("owner", workspace.owner)
+          .attribute("ownerdisp", workspace.owner).attribute("name", workspace.name).attribute("type", "Workspace");
+        writer.start("PendingChanges");
+        for (PendingChange change : changes.values()) {
+          writePendingChange(writer, workspace, change);
+        }
+        writer.end().end();
+      }
+    }
+    writer.end();
+    writeFailures(writer, failures);
+    writer.end();
+  }
+
+  private void writePendingChange(SoapWriter writer, Workspace workspace, PendingChange change) throws XMLStreamException {
+    LocalVersion local = workspace.localVersions.get(change.itemId);
+    String localPath = local != null ? local.local : change.changeTypes.contains("Delete") ? null : workspace.toLocalPath(change.serverItem);
+    writer.start("PendingChange").attribute("chg", change.getChangeType()).attribute("date", change.date)
+      .attribute("type", change.folder ? "Folder" : "File").attribute("enc", change.encoding).attribute("itemid", change.itemId)
+      .attribute("local", localPath).attribute("lock", change.lock).attribute("item", change.serverItem)
+      .attribute("srcitem", change.sourceServerItem).attribute("ver", change.version > 0 ? change.version : null)
+      .attribute("pcid", change.id);
+    ItemVersion committed = change.version > 0 ? myRepository.getItem(change.itemId, change.version) : null;
+    if (committed != null && committed.content != null) {
+      writer.attribute("hash", hash(committed.content)).attribute("len", committed.content.length).attribute("durl", downloadKey(committed));
+    }
+    writer.end();
+  }
+
+  // check in and history
+
+  private void checkIn(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = myRepository.getWorkspace(request.getChildText("workspaceName"), owner(request.getChildText("ownerName")));
+    List<String> serverItems = new ArrayList<>();
+    for (SoapElement item : request.getArray("serverItems", "string")) {
+      serverItems.add(item.getText());
+    }
+    SoapElement info = request.getChild("info");
+    String owner = info != null && info.getAttribute("owner") != null ? info.getAttribute("owner") : workspace.owner;
+    Changeset changeset = myRepository.checkIn(workspace, serverItems, owner, info != null ? info.getChildText("Comment") : null);
+    writer.startResponse("CheckInResponse").start("CheckInResult").attribute("cset", changeset.id).attribute("date", changeset.date).end();
+    writeFailures(writer, Collections.emptyList());
+    writer.end();
+  }
+
+  private void queryHistory(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = findWorkspace(request, "workspaceName", "workspaceOwner");
+    SoapElement itemSpec = request.getChild("itemSpec");
+    String path = toServerPath(workspace, itemSpec.getAttribute("item"));
+    SoapElement versionFrom = request.getChild("versionFrom");
+    SoapElement versionTo = request.getChild("versionTo");
+    Set<Integer> itemIds = new HashSet<>();
+    List<Changeset> changesets = myRepository
+      .queryHistory(path, recursion(itemSpec), parseVersion(request.getChild("versionItem")), request.getChildText("user"),
+                    versionFrom != null ? parseVersion(versionFrom) : null, versionTo != null ? parseVersion(versionTo) : null,
+                    request.getChildInt("maxCount", Integer.MAX_VALUE), request.getChildBoolean("sortAscending"), workspace, itemIds);
+    boolean includeFiles = request.getChildBoolean("includeFiles");
+    writer.startResponse("QueryHistoryResponse").start("QueryHistoryResult");
+    for (Changeset changeset : changesets) {
+      writeChangeset(writer, "Changeset", changeset, includeFiles ? itemIds : null);
+    }
+    writer.end().end();
+  }
+
+  private void queryChangeset(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    int id = request.getChildInt("changesetId", 0);
+    Changeset changeset = myRepository.getChangeset(id);
+    if (changeset == null) {
+      throw new Failure("ChangesetNotFoundException", null, "Changeset " + id + " does not exist");
+    }
+    writer.startResponse("QueryChangesetResponse");
+    writeChangeset(writer, "QueryChangesetResult", changeset, request.getChildBoolean("includeChanges") ? Collections.emptySet() : null);
+    writer.end();
+  }
+
+  /**
+   * @param itemIds items whose changes are written, {@code null} to omit changes, empty set to write all of them
+   */
+  private void writeChangeset(SoapWriter writer, String elementName, Changeset changeset, @Nullable Set<Integer> itemIds)
+    throws XMLStreamException {
+    writer.start(elementName).attribute("cmtr", changeset.owner).attribute("cmtrdisp", changeset.owner).attribute("date", changeset.date)
+      .attribute("cset", changeset.id).attribute("owner", changeset.owner).attribute("ownerdisp", changeset.owner);
+    writer.element("Comment", changeset.comment);
+    if (itemIds != null) {
+      writer.start("Changes");
+      for (Change change : changeset.changes) {
+        if (itemIds.isEmpty() || itemIds.contains(change.item.itemId)) {
+          writer.start("Change").attribute("type", change.changeType);
+          writeItem(writer, "Item", change.item);
+          writer.end();
+        }
+      }
+      writer.end();
+    }
+    writer.end();
+  }
+
+  // labels
+
+  private void labelItem(SoapElement request, SoapWriter writer) throws Failure, XMLStreamException {
+    Workspace workspace = findWorkspace(request, "workspaceName", "workspaceOwner");
+    SoapElement label = request.getChild("label");
+    String name = label.getAttribute("name");
+    String scope = label.getAttribute("scope");
+    Map<Integer, Integer> itemVersions = new LinkedHashMap<>();
+    List<Failure> failures = new ArrayList<>();
+    for (SoapElement labelSpec : request.getArray("labelSpecs", "LabelItemSpec")) {
+      SoapElement itemSpec = labelSpec.getChild("ItemSpec");
+      try {
+        String path = toServerPath(workspace, itemSpec.getAttribute("item"));
+        Version version = parseVersion(labelSpec.getChild("Version"));
+        List<ItemVersion> items = myRepository.queryItems(path, recursion(itemSpec), version, Deleted.NonDeleted, null, workspace);
+        if (items.isEmpty()) {
+          throw new Failure("ItemNotFoundException", path, "No matching items found in " + path);
+        }
+        for (ItemVersion item : items) {
+          if ("true".equals(labelSpec.getAttribute("ex"))) {
+            itemVersions.remove(item.itemId);
+          }
+          else {
+            itemVersions.put(item.itemId, item.changeset);
+          }
+        }
+      }
+      catch (Failure failure) {
+        failures.add(failure);
+      }
+    }
+    writer.startResponse("LabelItemResponse").start("LabelItemResult");
+    if (failures.isEmpty()) {
+      boolean created = myRepository.label(name, scope, owner(label.getAttribute("owner")), label.getChildText("Comment"), itemVersions,
+                                           "Replace".equals(request.getChildText("children")));
+      writer.start("LabelResult").attribute("label", name).attribute("scope", scope != null ? scope : FakeRepository.ROOT)
+        .attribute("status", created ? "Created" : "Updated").end();
+    }
+    writer.end();
+    writeFailures(writer, failures);
+    writer.end();
+  }
+
+  private void queryLabels(SoapElement request, SoapWriter writer) throws XMLStreamException {
+    List<Label> labels = myRepository.queryLabels(request.getChildText("labelName"), request.getChildText("labelScope"),
+                                                  request.getChildText("owner"), request.getChildText("filterItem"));
+    boolean includeItems = request.getChildBoolean("includeItems");
+    writer.startResponse("QueryLabelsResponse").start("QueryLabelsResult");
+    for (Label label : labels) {
+      writer.start("VersionControlLabel").attribute("date", label.date).attribute("name", label.name).attribute("owner", label.owner)
+        .attribute("ownerdisp", label.owner).attribute("scope", label.scope).attribute("lid", label.id);
+      writer.element("Comment", label.comment);
+      if (includeItems) {
+        writer.start("Items");
+        for (Map.Entry<Integer, Integer> entry : label.itemVersions.entrySet()) {
+          ItemVersion item = myRepository.getItem(entry.getKey(), entry.getValue());
+          if (item != null) {
+            writeItem(writer, "Item", item);
+          }
+        }
+        writer.end();
+      }
+      writer.end();
+    }
+    writer.end().end();
+  }
+
+  // versions
+
+  private static Version parseVersion(@Nullable SoapElement versionSpec) throws Failure {
+    String type = versionSpec != null ? versionSpec.getType() : null;
+    if (type == null || "LatestVersionSpec".equals(type)) {
+      return Version.LATEST;
+    }
+    switch (type) {
+      case "ChangesetVersionSpec":
+        return Version.changeset(versionSpec.getIntAttribute("cs", 0));
+      case "DateVersionSpec":
+        return new Version(Version.Kind.Date, 0, parseDate(versionSpec.getAttribute("date")), null, null);
+      case "LabelVersionSpec":
+        return new Version(Version.Kind.Label, 0, null, versionSpec.getAttribute("label"), versionSpec.getAttribute("scope"));
+      case "WorkspaceVersionSpec":
+        return new Version(Version.Kind.Workspace, 0, null, versionSpec.getAttribute("name"), versionSpec.getAttribute("owner"));
+      default:
+        throw new Failure("NotSupportedException", null, type + " is not supported by the fake server");
+    }
+  }
+
+  private static Date parseDate(String date) {
+    try {
+      return DatatypeFactory.newInstance().newXMLGregorianCalendar(date).toGregorianCalendar().getTime();
+    }
+    catch (DatatypeConfigurationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
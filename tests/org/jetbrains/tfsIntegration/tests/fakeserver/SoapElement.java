@@ -0,0 +1,149 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of a SOAP request element, children and attributes are looked up by local name
+ */
+class SoapElement {
+  private static final String XSI_NAMESPACE = XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI;
+
+  private final Element myElement;
+
+  private SoapElement(Element element) {
+    myElement = element;
+  }
+
+  /**
+   * @return the envelope
+   */
+  static SoapElement parse(InputStream stream) throws IOException {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      Document document = factory.newDocumentBuilder().parse(stream);
+      return new SoapElement(document.getDocumentElement());
+    }
+    catch (ParserConfigurationException | SAXException e) {
+      throw new IOException(e);
+    }
+  }
+
+  String getName() {
+    return myElement.getLocalName();
+  }
+
+  String getNamespace() {
+    return myElement.getNamespaceURI();
+  }
+
+  @Nullable
+  SoapElement getChild(String name) {
+    for (Node node = myElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element && name.equals(node.getLocalName())) {
+        return new SoapElement((Element)node);
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  SoapElement getFirstChild() {
+    for (Node node = myElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element) {
+        return new SoapElement((Element)node);
+      }
+    }
+    return null;
+  }
+
+  List<SoapElement> getChildren(String name) {
+    List<SoapElement> result = new ArrayList<>();
+    for (Node node = myElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element && name.equals(node.getLocalName())) {
+        result.add(new SoapElement((Element)node));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return elements of the array child, e.g. {@code <items><ItemSpec/><ItemSpec/></items>}
+   */
+  List<SoapElement> getArray(String name, String itemName) {
+    SoapElement array = getChild(name);
+    return array != null ? array.getChildren(itemName) : new ArrayList<>();
+  }
+
+  @NotNull
+  String getText() {
+    return myElement.getTextContent();
+  }
+
+  @Nullable
+  String getChildText(String name) {
+    SoapElement child = getChild(name);
+    return child != null && !isNil(child) ? child.getText() : null;
+  }
+
+  int getChildInt(String name, int defaultValue) {
+    String text = getChildText(name);
+    return text != null && !text.isEmpty() ? Integer.parseInt(text.trim()) : defaultValue;
+  }
+
+  boolean getChildBoolean(String name) {
+    return Boolean.parseBoolean(getChildText(name));
+  }
+
+  @Nullable
+  String getAttribute(String name) {
+    return myElement.hasAttribute(name) ? myElement.getAttribute(name) : null;
+  }
+
+  int getIntAttribute(String name, int defaultValue) {
+    String value = getAttribute(name);
+    return value != null && !value.isEmpty() ? Integer.parseInt(value) : defaultValue;
+  }
+
+  /**
+   * @return local part of the {@code xsi:type} attribute
+   */
+  @Nullable
+  String getType() {
+    String type = myElement.hasAttributeNS(XSI_NAMESPACE, "type") ? myElement.getAttributeNS(XSI_NAMESPACE, "type") : null;
+    return type != null ? type.substring(type.indexOf(':') + 1) : null;
+  }
+
+  private static boolean isNil(SoapElement element) {
+    return "true".equals(element.myElement.getAttributeNS(XSI_NAMESPACE, "nil"));
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Writes SOAP response envelope, elements are written in the namespace of the service unless stated otherwise
+ */
+class SoapWriter {
+  private final XMLStreamWriter myWriter;
+  private final String myNamespace;
+
+  SoapWriter(OutputStream stream, String envelopeNamespace, String namespace) throws XMLStreamException {
+    myNamespace = namespace;
+    myWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "utf-8");
+    myWriter.writeStartDocument("utf-8", "1.0");
+    myWriter.writeStartElement("soap", "Envelope", envelopeNamespace);
+    myWriter.writeNamespace("soap", envelopeNamespace);
+    myWriter.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+    myWriter.writeStartElement("soap", "Body", envelopeNamespace);
+  }
+
+  /**
+   * Starts the response element, it declares the service namespace as the default one
+   */
+  SoapWriter startResponse(String name) throws XMLStreamException {
+    myWriter.writeStartElement("", name, myNamespace);
+    myWriter.writeDefaultNamespace(myNamespace);
+    return this;
+  }
+
+  SoapWriter start(String name) throws XMLStreamException {
+    myWriter.writeStartElement(name);
+    return this;
+  }
+
+  /**
+   * Starts the element with no namespace, it is inherited by the children
+   */
+  SoapWriter startUnqualified(String name) throws XMLStreamException {
+    myWriter.writeStartElement(name);
+    myWriter.writeDefaultNamespace("");
+    return this;
+  }
+
+  /**
+   * Starts the element in the given namespace, it is inherited by the children
+   */
+  SoapWriter start(String name, String namespace) throws XMLStreamException {
+    myWriter.writeStartElement(name);
+    myWriter.writeDefaultNamespace(namespace);
+    return this;
+  }
+
+  /**
+   * Attributes with {@code null} values are omitted
+   */
+  SoapWriter attribute(String name, @Nullable Object value) throws XMLStreamException {
+    if (value != null) {
+      myWriter.writeAttribute(name, value instanceof Date ? formatDate((Date)value) : value.toString());
+    }
+    return this;
+  }
+
+  SoapWriter type(String type) throws XMLStreamException {
+    myWriter.writeAttribute("xsi", "http://www.w3.org/2001/XMLSchema-instance", "type", type);
+    return this;
+  }
+
+  SoapWriter text(String text) throws XMLStreamException {
+    myWriter.writeCharacters(text);
+    return this;
+  }
+
+  /**
+   * Writes the element with text content, omitted if the text is {@code null}
+   */
+  SoapWriter element(String name, @Nullable Object text) throws XMLStreamException {
+    if (text != null) {
+      myWriter.writeStartElement(name);
+      myWriter.writeCharacters(text instanceof Date ? formatDate((Date)text) : text.toString());
+      myWriter.writeEndElement();
+    }
+    return this;
+  }
+
+  SoapWriter empty(String name) throws XMLStreamException {
+    myWriter.writeEmptyElement(name);
+    return this;
+  }
+
+  SoapWriter end() throws XMLStreamException {
+    myWriter.writeEndElement();
+    return this;
+  }
+
+  void finish() throws XMLStreamException {
+    myWriter.writeEndDocument();
+    myWriter.close();
+  }
+
+  static String formatDate(Date date) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(date);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2000-2008 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.tfsIntegration.tests.fakeserver;
+
+import org.jetbrains.tfsIntegration.core.tfs.workitems.WorkItemField;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.*;
+
+/**
+ * Work item tracking web service ({@code ClientService.asmx}): work items are plain field maps, every query returns all of them
+ * regardless of the WIQL sent
+ */
+public class WorkItemService implements FakeTfsServer.SoapHandler {
+  static final String NAMESPACE = "http://schemas.microsoft.com/TeamFoundation/2005/06/WorkItemTracking/ClientServices/03";
+
+  private final String myUser;
+  private final Map<Integer, Map<String, String>> myWorkItems = new TreeMap<>();
+  private final Map<Integer, List<String>> myHistory = new HashMap<>();
+
+  WorkItemService(String user) {
+    myUser = user;
+  }
+
+  /**
+   * @return id of the new work item
+   */
+  public synchronized int addWorkItem(String type, String title, String state) {
+    int id = myWorkItems.size() + 1;
+    Map<String, String> fields = new HashMap<>();
+    fields.put(WorkItemField.ID.getSerialized(), String.valueOf(id));
+    fields.put(WorkItemField.TYPE.getSerialized(), type);
+    fields.put(WorkItemField.TITLE.getSerialized(), title);
+    fields.put(WorkItemField.STATE.getSerialized(), state);
+    fields.put(WorkItemField.REVISION.getSerialized(), "1");
+    fields.put(WorkItemField.REASON.getSerialized(), "New");
+    fields.put(WorkItemField.ASSIGNED_TO.getSerialized(), myUser);
+    myWorkItems.put(id, fields);
+    return id;
+  }
+
+  public synchronized String getField(int id, WorkItemField field) {
+    return myWorkItems.get(id).get(field.getSerialized());
+  }
+
+  /**
+   * @return history entries and links added by updates
+   */
+  public synchronized List<String> getHistory(int id) {
+    List<String> history = myHistory.get(id);
+    return history != null ? new ArrayList<>(history) : Collections.emptyList();
+  }
+
+  @Override
+  public synchronized void handle(String operation, SoapElement request, SoapWriter writer)
+    throws FakeRepository.Failure, XMLStreamException {
+    switch (operation) {
+      case "QueryWorkitems":
+        writer.startResponse("QueryWorkitemsResponse").start("resultIds").startUnqualified("QueryIds");
+        for (Integer id : myWorkItems.keySet()) {
+          writer.start("id").attribute("s", id).end();
+        }
+        writer.end().end().element("asOfDate", new Date()).end();
+        break;
+      case "PageWorkitemsByIds":
+        pageWorkitemsByIds(request, writer);
+        break;
+      case "Update":
+        update(request);
+        writer.startResponse("UpdateResponse").end();
+        break;
+      default:
+        throw new FakeRepository.Failure("NotSupportedException", null, operation + " is not supported by the fake server");
+    }
+  }
+
+  private void pageWorkitemsByIds(SoapElement request, SoapWriter writer) throws XMLStreamException {
+    List<String> columns = new ArrayList<>();
+    for (SoapElement column : request.getArray("columns", "string")) {
+      columns.add(column.getText());
+    }
+    writer.startResponse("PageWorkitemsByIdsResponse").start("items").start("table").attribute("name", "Items").start("columns");
+    for (String column : columns) {
+      writer.start("c").element("n", column).element("t", "System.String").end();
+    }
+    writer.end().start("rows");
+    for (SoapElement id : request.getArray("ids", "int")) {
+      Map<String, String> fields = myWorkItems.get(Integer.parseInt(id.getText().trim()));
+      if (fields != null) {
+        writer.start("r");
+        for (String column : columns) {
+          String value = fields.get(column);
+          writer.start("f").text(value != null ? value : "").end();
+        }
+        writer.end();
+      }
+    }
+    writer.end().end().end().end();
+  }
+
+  /**
+   * Applies all the {@code UpdateWorkItem} elements of the package, or none of them if one can't be applied
+   */
+  private void update(SoapElement request) throws FakeRepository.Failure {
+    SoapElement aPackage = request.getChild("package");
+    List<SoapElement> updates = aPackage != null && aPackage.getChild("Package") != null
+                                ? aPackage.getChild("Package").getChildren("UpdateWorkItem")
+                                : Collections.emptyList();
+    if (updates.isEmpty()) {
+      throw new FakeRepository.Failure("InvalidPackageException", null, "UpdateWorkItem is expected");
+    }
+    for (SoapElement updateWorkItem : updates) {
+      int id = updateWorkItem.getIntAttribute("WorkItemID", 0);
+      Map<String, String> fields = myWorkItems.get(id);
+      if (fields == null) {
+        throw new FakeRepository.Failure("WorkItemNotFoundException", null, "Work item " + id + " does not exist");
+      }
+      String revision = fields.get(WorkItemField.REVISION.getSerialized());
+      if (!revision.equals(updateWorkItem.getAttribute("Revision"))) {
+        throw new FakeRepository.Failure("WorkItemRevisionMismatchException", null, "Work item " + id + " has revision " + revision);
+      }
+    }
+    for (SoapElement updateWorkItem : updates) {
+      applyUpdate(updateWorkItem);
+    }
+  }
+
+  private void applyUpdate(SoapElement updateWorkItem) {
+    int id = updateWorkItem.getIntAttribute("WorkItemID", 0);
+    Map<String, String> fields = myWorkItems.get(id);
+    for (SoapElement column : updateWorkItem.getArray("Columns", "Column")) {
+      String value = column.getChildText("Value");
+      fields.put(column.getAttribute("Column"), value != null ? value : "");
+    }
+    String revision = fields.get(WorkItemField.REVISION.getSerialized());
+    fields.put(WorkItemField.REVISION.getSerialized(), String.valueOf(Integer.parseInt(revision) + 1));
+    List<String> history = myHistory.computeIfAbsent(id, i -> new ArrayList<>());
+    SoapElement insertText = updateWorkItem.getChild("InsertText");
+    if (insertText != null) {
+      history.add(insertText.getText());
+    }
+    SoapElement link = updateWorkItem.getChild("InsertResourceLink");
+    if (link != null) {
+      history.add(link.getAttribute("Location"));
+    }
+  }
+}